@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineMetaVisitor;
+import com.lympid.core.behaviorstatemachines.validation.AllValidatorVisitor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to build generated machines as they grow along each dimension.
+ *
+ * {@code instance} measures the whole build: vertices and transitions
+ * creation, validation and all the visitors run by
+ * {@link StateMachineBuilder#instance()}. {@code validate} and {@code meta}
+ * isolate the {@link AllValidatorVisitor} and the
+ * {@link StateMachineMetaVisitor} passes.
+ *
+ * @author Fabien Renaud
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BuildScalingBenchmark {
+
+  @Param
+  public ScalingDimension dimension;
+
+  @Param({"1", "2", "4", "8"})
+  public int size;
+
+  private MachineGenerator generator;
+  private StateMachine machine;
+
+  @Setup
+  public void setUp() {
+    generator = dimension.generator(size);
+    machine = generator.builder().instance();
+  }
+
+  @Benchmark
+  public StateMachine instance() {
+    return generator.builder().instance();
+  }
+
+  @Benchmark
+  public StateMachine validate() {
+    machine.accept(new AllValidatorVisitor());
+    return machine;
+  }
+
+  @Benchmark
+  public Object meta() {
+    StateMachineMetaVisitor visitor = new StateMachineMetaVisitor();
+    machine.accept(visitor);
+    return visitor.getMeta();
+  }
+}
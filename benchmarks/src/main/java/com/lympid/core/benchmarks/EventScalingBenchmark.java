@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.benchmarks;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of one event as generated machines grow along each dimension.
+ *
+ * Events are taken from a fixed random sequence by a
+ * {@link SyncStateMachineExecutor} so that only the engine is measured. Some
+ * of them are accepted and fire transitions, the others are denied.
+ *
+ * @author Fabien Renaud
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventScalingBenchmark {
+
+  private static final int SEQUENCE_LENGTH = 1024;
+
+  @Param
+  public ScalingDimension dimension;
+
+  @Param({"1", "2", "4", "8"})
+  public int size;
+
+  private StateMachineExecutor<Object> executor;
+  private Event[] sequence;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    MachineGenerator generator = dimension.generator(size);
+    executor = new SyncStateMachineExecutor.Builder<>()
+      .setStateMachine(generator.builder().instance())
+      .setContext(new Object())
+      .build();
+    executor.go();
+
+    String[] names = generator.eventSequence(SEQUENCE_LENGTH);
+    sequence = new Event[names.length];
+    for (int i = 0; i < names.length; i++) {
+      sequence[i] = new StringEvent(names[i]);
+    }
+  }
+
+  @Benchmark
+  public void take() {
+    executor.take(sequence[next]);
+    next = (next + 1) & (SEQUENCE_LENGTH - 1);
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.CombiningStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.ExecutorConfiguration;
+import com.lympid.core.behaviorstatemachines.impl.LockStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.PoolStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+
+/**
+ * The state machine executors being benchmarked.
+ *
+ * @author Fabien Renaud
+ */
+public enum ExecutorKind {
+
+  SYNC(false) {
+    @Override
+    StateMachineExecutor<Object> build(final StateMachine machine, final ExecutorConfiguration configuration, final StateMachineShardPoolExecutor<Object> pool) {
+      return new SyncStateMachineExecutor.Builder<>()
+        .setStateMachine(machine)
+        .setConfiguration(configuration)
+        .setContext(new Object())
+        .build();
+    }
+  },
+  LOCK(false) {
+    @Override
+    StateMachineExecutor<Object> build(final StateMachine machine, final ExecutorConfiguration configuration, final StateMachineShardPoolExecutor<Object> pool) {
+      return new LockStateMachineExecutor.Builder<>()
+        .setStateMachine(machine)
+        .setConfiguration(configuration)
+        .setContext(new Object())
+        .build();
+    }
+  },
+  COMBINING(false) {
+    @Override
+    StateMachineExecutor<Object> build(final StateMachine machine, final ExecutorConfiguration configuration, final StateMachineShardPoolExecutor<Object> pool) {
+      return new CombiningStateMachineExecutor.Builder<>()
+        .setStateMachine(machine)
+        .setConfiguration(configuration)
+        .setContext(new Object())
+        .build();
+    }
+  },
+  POOL(true) {
+    @Override
+    StateMachineExecutor<Object> build(final StateMachine machine, final ExecutorConfiguration configuration, final StateMachineShardPoolExecutor<Object> pool) {
+      return new PoolStateMachineExecutor.Builder<>(pool)
+        .setStateMachine(machine)
+        .setConfiguration(configuration)
+        .setContext(new Object())
+        .build();
+    }
+  };
+
+  private final boolean async;
+
+  private ExecutorKind(final boolean async) {
+    this.async = async;
+  }
+
+  /**
+   * Returns whether events are processed by another thread than the one
+   * taking them.
+   *
+   * @return true when {@code take} returns before the event is processed.
+   */
+  boolean isAsync() {
+    return async;
+  }
+
+  /**
+   * Creates an executor of this kind.
+   *
+   * @param machine The state machine to run.
+   * @param configuration The configuration of the executor.
+   * @param pool The shard pool running asynchronous executors. Ignored by
+   * synchronous executors.
+   * @return A new executor, not started yet.
+   */
+  abstract StateMachineExecutor<Object> build(StateMachine machine, ExecutorConfiguration configuration, StateMachineShardPoolExecutor<Object> pool);
+}
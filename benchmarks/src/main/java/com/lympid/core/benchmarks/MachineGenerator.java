@@ -0,0 +1,284 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.builder.ChoiceBuilder;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.JunctionBuilder;
+import com.lympid.core.behaviorstatemachines.builder.OneKindTransitionSource;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.RegionBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.builder.TransitionTrigger;
+import java.util.Random;
+
+/**
+ * Generates random but valid state machines of arbitrary size.
+ *
+ * Every region has an initial pseudo state and {@code width} states. Down to
+ * {@code depth} levels, the first state of every region is a composite state
+ * with {@code regions} regions, i.e. an orthogonal state when there is more
+ * than one region. Every state has {@code fanOut} outgoing transitions
+ * triggered by random events and targeting random states of the same region.
+ * A transition goes through a junction or a choice with a probability of
+ * {@code pseudoStates} and has a guard with a probability of {@code guards}.
+ * Machines have no final state and thus never terminate.
+ *
+ * The same generator always generates the same machine.
+ *
+ * @author Fabien Renaud
+ */
+public final class MachineGenerator {
+
+  private int depth = 2;
+  private int width = 4;
+  private int fanOut = 2;
+  private int regions = 1;
+  private double pseudoStates;
+  private double guards;
+  private int events = 8;
+  private long seed = 42;
+
+  private Random random;
+  private int names;
+
+  /**
+   * Sets the number of levels of nested composite states.
+   *
+   * Default is 2.
+   *
+   * @param depth The number of levels, 0 for a flat machine.
+   * @return Returns the current generator instance.
+   */
+  public MachineGenerator depth(final int depth) {
+    this.depth = depth;
+    return this;
+  }
+
+  /**
+   * Sets the number of states per region.
+   *
+   * Default is 4.
+   *
+   * @param width The number of states per region.
+   * @return Returns the current generator instance.
+   */
+  public MachineGenerator width(final int width) {
+    this.width = width;
+    return this;
+  }
+
+  /**
+   * Sets the number of outgoing transitions per state.
+   *
+   * Default is 2.
+   *
+   * @param fanOut The number of outgoing transitions per state.
+   * @return Returns the current generator instance.
+   */
+  public MachineGenerator fanOut(final int fanOut) {
+    this.fanOut = fanOut;
+    return this;
+  }
+
+  /**
+   * Sets the number of regions of composite states.
+   *
+   * Default is 1.
+   *
+   * @param regions The number of regions of composite states.
+   * @return Returns the current generator instance.
+   */
+  public MachineGenerator regions(final int regions) {
+    this.regions = regions;
+    return this;
+  }
+
+  /**
+   * Sets the ratio of transitions going through a junction or a choice.
+   *
+   * Default is 0.
+   *
+   * @param pseudoStates A ratio between 0 and 1.
+   * @return Returns the current generator instance.
+   */
+  public MachineGenerator pseudoStates(final double pseudoStates) {
+    this.pseudoStates = pseudoStates;
+    return this;
+  }
+
+  /**
+   * Sets the ratio of guarded transitions.
+   *
+   * Default is 0.
+   *
+   * @param guards A ratio between 0 and 1.
+   * @return Returns the current generator instance.
+   */
+  public MachineGenerator guards(final double guards) {
+    this.guards = guards;
+    return this;
+  }
+
+  /**
+   * Sets the number of distinct events triggering transitions.
+   *
+   * Default is 8.
+   *
+   * @param events The number of distinct events.
+   * @return Returns the current generator instance.
+   */
+  public MachineGenerator events(final int events) {
+    this.events = events;
+    return this;
+  }
+
+  /**
+   * Sets the seed of the random generator.
+   *
+   * Default is 42.
+   *
+   * @param seed The seed.
+   * @return Returns the current generator instance.
+   */
+  public MachineGenerator seed(final long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /**
+   * Generates a new state machine builder.
+   *
+   * @return A state machine builder which instance has not been created yet.
+   */
+  public StateMachineBuilder<Object> builder() {
+    random = new Random(seed);
+    names = 0;
+
+    StateMachineBuilder<Object> builder = new StateMachineBuilder<>("generated");
+    populate(builder.region(), "s", 0);
+    return builder;
+  }
+
+  /**
+   * Generates a random sequence of the events triggering the transitions of
+   * the machines.
+   *
+   * @param length The number of events.
+   * @return The names of the events.
+   */
+  public String[] eventSequence(final int length) {
+    final Random r = new Random(seed);
+    final String[] sequence = new String[length];
+    for (int i = 0; i < length; i++) {
+      sequence[i] = event(r.nextInt(events));
+    }
+    return sequence;
+  }
+
+  private static String event(final int i) {
+    return "e" + i;
+  }
+
+  private void populate(final RegionBuilder<Object> region, final String prefix, final int level) {
+    region
+      .initial()
+        .transition(name("t"))
+          .target(prefix + 0);
+
+    for (int i = 0; i < width; i++) {
+      final String name = prefix + i;
+      if (i == 0 && level < depth) {
+        if (regions == 1) {
+          CompositeStateBuilder<Object> composite = new CompositeStateBuilder<>(name);
+          populate(composite.region(), name + "_", level + 1);
+          outgoing(region, region.state(composite), prefix);
+        } else {
+          OrthogonalStateBuilder<Object> orthogonal = new OrthogonalStateBuilder<>(name);
+          for (int r = 0; r < regions; r++) {
+            populate(orthogonal.region("r" + r), name + "_" + r + "_", level + 1);
+          }
+          outgoing(region, region.state(orthogonal), prefix);
+        }
+      } else {
+        outgoing(region, region.state(name), prefix);
+      }
+    }
+  }
+
+  private void outgoing(final RegionBuilder<Object> region, final OneKindTransitionSource<? extends TransitionTrigger<?, Object, ?>> state, final String prefix) {
+    for (int i = 0; i < fanOut; i++) {
+      final String event = event(random.nextInt(events));
+      final String target = random.nextDouble() < pseudoStates
+        ? pseudoState(region, prefix)
+        : prefix + random.nextInt(width);
+
+      if (random.nextDouble() < guards) {
+        final boolean value = random.nextBoolean();
+        state
+          .transition(name("t"))
+            .on(event)
+            .guard((e, c) -> value)
+            .target(target);
+      } else {
+        state
+          .transition(name("t"))
+            .on(event)
+            .target(target);
+      }
+    }
+  }
+
+  /**
+   * Adds a junction or a choice with two outgoing transitions: a guarded one
+   * and a default one, both targeting random states of the region.
+   *
+   * @return The name of the pseudo state.
+   */
+  private String pseudoState(final RegionBuilder<Object> region, final String prefix) {
+    final boolean value = random.nextBoolean();
+    final String first = prefix + random.nextInt(width);
+    final String second = prefix + random.nextInt(width);
+
+    if (random.nextBoolean()) {
+      final String name = name("j");
+      JunctionBuilder<Object> junction = region.junction(name);
+      junction
+        .transition(name("t"))
+          .guard(c -> value)
+          .target(first);
+      junction
+        .transition(name("t"))
+          .target(second);
+      return name;
+    } else {
+      final String name = name("c");
+      ChoiceBuilder<Object> choice = region.choice(name);
+      choice
+        .transition(name("t"))
+          .guard(c -> value)
+          .target(first);
+      choice
+        .transition(name("t"))
+          .target(second);
+      return name;
+    }
+  }
+
+  private String name(final String prefix) {
+    return prefix + names++;
+  }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.benchmarks;
+
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.ForkBuilder;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Representative state machine shapes, modeled after the machines of the
+ * functional tests.
+ *
+ * Every shape comes with a cycle of events that brings the machine back to
+ * the active state configuration it was in before the cycle. Benchmarks can
+ * thus take the same cycle over and over again without ever reaching a final
+ * state.
+ *
+ * @author Fabien Renaud
+ */
+public enum MachineShape {
+
+  /**
+   * Two simple states toggling on the same event.
+   */
+  SIMPLE("go", "go") {
+    @Override
+    StateMachineBuilder<Object> builder() {
+      StateMachineBuilder<Object> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("A");
+
+      builder
+        .region()
+          .state("A")
+            .transition("t1")
+              .on("go")
+              .target("B");
+
+      builder
+        .region()
+          .state("B")
+            .transition("t2")
+              .on("go")
+              .target("A");
+
+      return builder;
+    }
+  },
+  /**
+   * A composite state left and re-entered through its initial pseudo state.
+   */
+  COMPOSITE("go", "out", "in") {
+    @Override
+    StateMachineBuilder<Object> builder() {
+      StateMachineBuilder<Object> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("C");
+
+      builder
+        .region()
+          .state(composite("C"))
+            .transition("t1")
+              .on("out")
+              .target("D");
+
+      builder
+        .region()
+          .state("D")
+            .transition("t2")
+              .on("in")
+              .target("C");
+
+      return builder;
+    }
+  },
+  /**
+   * An orthogonal state which regions both react to the same event.
+   */
+  ORTHOGONAL("go", "go") {
+    @Override
+    StateMachineBuilder<Object> builder() {
+      StateMachineBuilder<Object> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("ortho");
+
+      builder
+        .region()
+          .state(orthogonal("ortho", true));
+
+      return builder;
+    }
+  },
+  /**
+   * A composite state left and re-entered through its shallow history pseudo
+   * state.
+   */
+  HISTORY("go", "out", "back", "go") {
+    @Override
+    StateMachineBuilder<Object> builder() {
+      StateMachineBuilder<Object> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("C");
+
+      CompositeStateBuilder<Object> composite = composite("C");
+      composite
+        .region()
+          .shallowHistory("H")
+            .transition("t3")
+              .target("A1");
+
+      builder
+        .region()
+          .state(composite)
+            .transition("t1")
+              .on("out")
+              .target("D");
+
+      builder
+        .region()
+          .state("D")
+            .transition("t2")
+              .on("back")
+              .target("H");
+
+      return builder;
+    }
+  },
+  /**
+   * An orthogonal state entered through a fork and left through a join.
+   */
+  FORK_JOIN("go", "go") {
+    @Override
+    StateMachineBuilder<Object> builder() {
+      StateMachineBuilder<Object> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("A");
+
+      builder
+        .region()
+          .state("A")
+            .transition("t1")
+              .on("go")
+              .target(new ForkBuilder<Object>("fork")
+                .transition("t2")
+                  .target("X1")
+                .transition("t3")
+                  .target("Y1")
+              );
+
+      builder
+        .region()
+          .state(orthogonal("ortho", false));
+
+      builder
+        .region()
+          .join("join")
+            .transition("t4")
+              .target("A");
+
+      return builder;
+    }
+  },
+  /**
+   * A sub machine state which completes and is entered again.
+   */
+  SUBMACHINE("go", "go") {
+    @Override
+    StateMachineBuilder<Object> builder() {
+      StateMachineBuilder<Object> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("sub");
+
+      builder
+        .region()
+          .state(subMachine("sub"))
+            .transition("t1")
+              .target("D");
+
+      builder
+        .region()
+          .state("D")
+            .transition("t2")
+              .on("go")
+              .target("sub");
+
+      return builder;
+    }
+  },
+  /**
+   * A state which schedules a time event every time it is entered and cancels
+   * it when it is left.
+   */
+  TIME_EVENT("go", "go") {
+    @Override
+    StateMachineBuilder<Object> builder() {
+      StateMachineBuilder<Object> builder = new StateMachineBuilder<>(name());
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("A");
+
+      builder
+        .region()
+          .state("A")
+            .transition("t1")
+              .after(1, TimeUnit.HOURS)
+              .target("B")
+            .transition("t2")
+              .on("go")
+              .target("B");
+
+      builder
+        .region()
+          .state("B")
+            .transition("t3")
+              .on("go")
+              .target("A");
+
+      return builder;
+    }
+  };
+
+  private final String[] cycle;
+  private StateMachine machine;
+
+  private MachineShape(final String... cycle) {
+    this.cycle = cycle;
+  }
+
+  /**
+   * Gets the events that bring the machine back to its initial active state
+   * configuration.
+   *
+   * @return The names of the events, in the order they must be taken.
+   */
+  public String[] cycle() {
+    return cycle.clone();
+  }
+
+  /**
+   * Gets the state machine of this shape. The machine is only built once.
+   *
+   * @return The state machine.
+   */
+  public synchronized StateMachine machine() {
+    if (machine == null) {
+      machine = builder().instance();
+    }
+    return machine;
+  }
+
+  abstract StateMachineBuilder<Object> builder();
+
+  private static CompositeStateBuilder<Object> composite(final String name) {
+    CompositeStateBuilder<Object> builder = new CompositeStateBuilder<>(name);
+
+    builder
+      .region()
+        .initial()
+          .transition("t10")
+            .target("A1");
+
+    builder
+      .region()
+        .state("A1")
+          .transition("t11")
+            .on("go")
+            .target("A2");
+
+    builder
+      .region()
+        .state("A2")
+          .transition("t12")
+            .on("go")
+            .target("A1");
+
+    return builder;
+  }
+
+  /**
+   * Builds an orthogonal state with two regions.
+   *
+   * @param name The name of the orthogonal state.
+   * @param toggle When true, each region toggles between two states on "go".
+   * Otherwise, each region moves on "go" to a state which completes to the
+   * "join" vertex.
+   */
+  private static OrthogonalStateBuilder<Object> orthogonal(final String name, final boolean toggle) {
+    OrthogonalStateBuilder<Object> builder = new OrthogonalStateBuilder<>(name);
+
+    for (String r : new String[]{"X", "Y"}) {
+      if (toggle) {
+        builder
+          .region(r)
+            .initial()
+              .transition()
+                .target(r + "1");
+      }
+
+      builder
+        .region(r)
+          .state(r + "1")
+            .transition()
+              .on("go")
+              .target(r + "2");
+
+      if (toggle) {
+        builder
+          .region(r)
+            .state(r + "2")
+              .transition()
+                .on("go")
+                .target(r + "1");
+      } else {
+        builder
+          .region(r)
+            .state(r + "2")
+              .transition()
+                .target("join");
+      }
+    }
+
+    return builder;
+  }
+
+  private static StateMachineBuilder<Object> subMachine(final String name) {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder<>(name);
+
+    builder
+      .region()
+        .initial()
+          .transition("t20")
+            .target("S1");
+
+    builder
+      .region()
+        .state("S1")
+          .transition("t21")
+            .on("go")
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    return builder;
+  }
+}
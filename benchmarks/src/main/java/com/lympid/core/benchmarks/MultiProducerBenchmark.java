@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput and latency of several producers feeding the same executor.
+ *
+ * One operation is one cycle of the machine shape. Cycles of different
+ * producers interleave, so part of the events are denied: this measures the
+ * contention on the executor rather than the cost of firing transitions.
+ *
+ * @author Fabien Renaud
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MultiProducerBenchmark {
+
+  @Param
+  public ExecutorKind executor;
+
+  @Param({"SIMPLE", "ORTHOGONAL", "TIME_EVENT"})
+  public MachineShape shape;
+
+  private Workload workload;
+
+  @Setup
+  public void setUp() {
+    workload = new Workload(executor, shape);
+  }
+
+  @TearDown
+  public void tearDown() throws InterruptedException {
+    workload.close();
+  }
+
+  @Benchmark
+  public int cycle() {
+    return workload.cycle();
+  }
+}
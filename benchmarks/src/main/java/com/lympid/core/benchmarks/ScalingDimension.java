@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.benchmarks;
+
+/**
+ * Dimensions along which generated machines grow.
+ *
+ * All dimensions start from the default {@link MachineGenerator} and only
+ * change one of its parameters according to a size factor.
+ *
+ * @author Fabien Renaud
+ */
+public enum ScalingDimension {
+
+  /**
+   * Levels of nested composite states: {@code size}.
+   */
+  DEPTH {
+    @Override
+    MachineGenerator apply(final MachineGenerator generator, final int size) {
+      return generator.depth(size);
+    }
+  },
+  /**
+   * States per region: {@code 4 * size}.
+   */
+  WIDTH {
+    @Override
+    MachineGenerator apply(final MachineGenerator generator, final int size) {
+      return generator.width(4 * size);
+    }
+  },
+  /**
+   * Outgoing transitions per state: {@code 2 * size}.
+   */
+  FAN_OUT {
+    @Override
+    MachineGenerator apply(final MachineGenerator generator, final int size) {
+      return generator.fanOut(2 * size);
+    }
+  },
+  /**
+   * Regions per composite state: {@code size}.
+   */
+  ORTHOGONALITY {
+    @Override
+    MachineGenerator apply(final MachineGenerator generator, final int size) {
+      return generator.regions(size);
+    }
+  },
+  /**
+   * Ratio of transitions going through a pseudo state: {@code size / 8}.
+   */
+  PSEUDO_STATES {
+    @Override
+    MachineGenerator apply(final MachineGenerator generator, final int size) {
+      return generator.pseudoStates(Math.min(1, size / 8.0));
+    }
+  },
+  /**
+   * Ratio of guarded transitions: {@code size / 8}.
+   */
+  GUARDS {
+    @Override
+    MachineGenerator apply(final MachineGenerator generator, final int size) {
+      return generator.guards(Math.min(1, size / 8.0));
+    }
+  };
+
+  /**
+   * Creates a generator for a given size.
+   *
+   * @param size The size factor, 1 being the smallest size.
+   * @return A new generator.
+   */
+  public MachineGenerator generator(final int size) {
+    return apply(new MachineGenerator(), size);
+  }
+
+  abstract MachineGenerator apply(MachineGenerator generator, int size);
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.benchmarks;
+
+import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.impl.ExecutorConfiguration;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A started executor running a machine shape, along with the threads it
+ * needs.
+ *
+ * Events are created once and reused so that allocations measured by the GC
+ * profiler are those of the executor only.
+ *
+ * @author Fabien Renaud
+ */
+final class Workload implements AutoCloseable {
+
+  private final ExecutorKind kind;
+  private final Event[] cycle;
+  private final ScheduledThreadPoolExecutor timers;
+  private final StateMachineShardPoolExecutor<Object> pool;
+  private final StateMachineExecutor<Object> executor;
+  private final AtomicLong taken = new AtomicLong();
+  private final AtomicLong processed = new AtomicLong();
+
+  Workload(final ExecutorKind kind, final MachineShape shape) {
+    this(kind, shape, new ExecutorConfiguration());
+  }
+
+  Workload(final ExecutorKind kind, final MachineShape shape, final ExecutorConfiguration configuration) {
+    this.kind = kind;
+
+    String[] names = shape.cycle();
+    this.cycle = new Event[names.length];
+    for (int i = 0; i < names.length; i++) {
+      cycle[i] = new StringEvent(names[i]);
+    }
+
+    this.timers = new ScheduledThreadPoolExecutor(1);
+    this.timers.setRemoveOnCancelPolicy(true);
+    this.pool = kind.isAsync() ? new StateMachineShardPoolExecutor<>(1) : null;
+    this.executor = kind.build(shape.machine(), configuration.executor(timers), pool);
+    if (kind.isAsync()) {
+      executor.listeners().addEventAcceptedListener((e, m, c, ev) -> processed(ev));
+      executor.listeners().addEventDeniedListener((e, m, c, ev) -> processed(ev));
+    }
+    executor.go();
+  }
+
+  private void processed(final Event event) {
+    if (!(event instanceof CompletionEvent)) {
+      processed.incrementAndGet();
+    }
+  }
+
+  /**
+   * Takes every event of the cycle of the machine shape and, for asynchronous
+   * executors, waits until they have all been processed.
+   *
+   * When several threads share the workload, each of them waits for all the
+   * events taken so far by all the threads.
+   *
+   * @return The number of events taken.
+   */
+  int cycle() {
+    for (Event e : cycle) {
+      executor.take(e);
+    }
+    if (kind.isAsync()) {
+      final long target = taken.addAndGet(cycle.length);
+      while (processed.get() < target) {
+        Thread.yield();
+      }
+    }
+    return cycle.length;
+  }
+
+  /**
+   * Gets the executor running the machine.
+   *
+   * @return The executor.
+   */
+  StateMachineExecutor<Object> executor() {
+    return executor;
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    if (pool != null) {
+      pool.shutdown();
+      pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    timers.shutdownNow();
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.basicbehaviors;
+
+/**
+ * An event interned by the event registry of a state machine, along with the
+ * dense integer code the registry assigned to it.
+ *
+ * Event types are created once, when the state machine is built, and can be
+ * taken by executors as many times as needed without allocating new events.
+ *
+ * @author Fabien Renaud
+ */
+public final class EventType {
+
+  private final int code;
+  private final Event event;
+
+  public EventType(final int code, final Event event) {
+    this.code = code;
+    this.event = event;
+  }
+
+  /**
+   * Gets the code of the event, unique within its registry.
+   *
+   * @return A code between 0 and the size of the registry, exclusive.
+   */
+  public int code() {
+    return code;
+  }
+
+  /**
+   * Gets the interned event, i.e. the instance that triggers transitions.
+   *
+   * @return The interned event.
+   */
+  public Event event() {
+    return event;
+  }
+
+  @Override
+  public String toString() {
+    return event + "#" + code;
+  }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.basicbehaviors;
+
+import java.util.function.Consumer;
+
+/**
+ * An event of a given type which carries a mutable payload.
+ *
+ * Two payload events are equal when they have the same type, whatever their
+ * payloads. A trigger defined with a payload event is thus matched by any
+ * payload event of the same type, which lets producers reuse instances rather
+ * than allocate one event per message.
+ *
+ * Executors release a payload event once they are done with it, i.e. at the
+ * end of the run-to-completion step processing it, whether the event was
+ * accepted, denied or an exception was thrown, or when a pool executor drops
+ * it. Releasing clears the payload and hands the event to its recycler, if
+ * any. The payload of an event must therefore not be read outside of the
+ * guards, effects and listeners of the step processing it.
+ *
+ * @param <T> Type of the payload.
+ *
+ * @see PayloadEventPool
+ *
+ * @author Fabien Renaud
+ */
+public class PayloadEvent<T> implements Event {
+
+  private final String type;
+  private final Consumer<? super PayloadEvent<T>> recycler;
+  private T payload;
+
+  /**
+   * Creates a payload event which is not recycled when released.
+   *
+   * @param type The type of the event.
+   */
+  public PayloadEvent(final String type) {
+    this(type, null);
+  }
+
+  /**
+   * Creates a payload event which is handed to a recycler when released.
+   *
+   * @param type The type of the event.
+   * @param recycler The recycler to hand the event to once released or null.
+   */
+  public PayloadEvent(final String type, final Consumer<? super PayloadEvent<T>> recycler) {
+    if (type == null) {
+      throw new IllegalArgumentException("type can not be null");
+    }
+    this.type = type;
+    this.recycler = recycler;
+  }
+
+  /**
+   * Gets the type of the event.
+   *
+   * @return The type of the event.
+   */
+  public String type() {
+    return type;
+  }
+
+  /**
+   * Gets the payload of the event.
+   *
+   * @return The payload of the event or null.
+   */
+  public T payload() {
+    return payload;
+  }
+
+  /**
+   * Sets the payload of the event.
+   *
+   * @param payload The payload of the event.
+   * @return Returns the current event instance.
+   */
+  public PayloadEvent<T> payload(final T payload) {
+    this.payload = payload;
+    return this;
+  }
+
+  /**
+   * Signals that the event is no longer in use by any executors. Clears the
+   * payload and hands the event to its recycler.
+   *
+   * This method is invoked by executors and should not be invoked for an event
+   * that has been given to an executor.
+   */
+  public void release() {
+    payload = null;
+    if (recycler != null) {
+      recycler.accept(this);
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return type.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (obj == null) {
+      return false;
+    }
+    if (getClass() != obj.getClass()) {
+      return false;
+    }
+    final PayloadEvent<?> other = (PayloadEvent<?>) obj;
+    return type.equals(other.type);
+  }
+
+  @Override
+  public String toString() {
+    return type;
+  }
+
+}
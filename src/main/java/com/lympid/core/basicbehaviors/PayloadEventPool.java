@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.basicbehaviors;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of payload events of a given type.
+ *
+ * Events acquired from the pool go back to it on their own once released by
+ * the executor which processed them. The pool is thread safe: events can be
+ * acquired by producer threads and released by the worker threads of a pool
+ * executor.
+ *
+ * When the pool is empty, a new event is created. When the pool is full, a
+ * released event is left to the garbage collector.
+ *
+ * @param <T> Type of the payload.
+ *
+ * @author Fabien Renaud
+ */
+public final class PayloadEventPool<T> {
+
+  private final String type;
+  private final BlockingQueue<PayloadEvent<T>> events;
+
+  /**
+   * Creates a pool of payload events.
+   *
+   * @param type The type of the events of the pool.
+   * @param capacity The maximum number of released events kept by the pool.
+   */
+  public PayloadEventPool(final String type, final int capacity) {
+    if (type == null) {
+      throw new IllegalArgumentException("type can not be null");
+    }
+    this.type = type;
+    this.events = new ArrayBlockingQueue<>(capacity);
+  }
+
+  /**
+   * Gets an event of the pool, or a new one when the pool is empty.
+   *
+   * @param payload The payload of the event.
+   * @return An event of the type of the pool carrying the given payload.
+   */
+  public PayloadEvent<T> acquire(final T payload) {
+    PayloadEvent<T> event = events.poll();
+    if (event == null) {
+      event = new PayloadEvent<>(type, events::offer);
+    }
+    return event.payload(payload);
+  }
+
+  /**
+   * Gets the number of released events currently available in the pool.
+   *
+   * @return The number of events available in the pool.
+   */
+  public int available() {
+    return events.size();
+  }
+
+}
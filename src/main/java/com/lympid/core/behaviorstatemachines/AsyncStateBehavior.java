@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Represents an activity behavior that starts an asynchronous operation and
+ * returns right away.
+ *
+ * The executor starts the activity when the state is entered and the state
+ * completes once the returned stage completes, normally or exceptionally. No
+ * thread is held while the operation runs. When the state is exited before
+ * the operation is done, the stage is cancelled through
+ * {@link java.util.concurrent.CompletableFuture#cancel(boolean)}: operations
+ * may listen to the cancellation of the stage they return to stop early.
+ *
+ * Executors running activities synchronously call {@link #accept(Object)},
+ * which waits for the stage to complete.
+ *
+ * @param <C> Type of the state machine context
+ *
+ * @author Fabien Renaud
+ */
+@FunctionalInterface
+public interface AsyncStateBehavior<C> extends StateBehavior<C> {
+
+  /**
+   * Starts the activity.
+   *
+   * @param context The context of the state machine.
+   * @return The stage completed once the activity is done.
+   */
+  CompletionStage<?> start(C context);
+
+  /**
+   * Runs the activity and waits for it to complete.
+   *
+   * @param context The context of the state machine.
+   */
+  @Override
+  default void accept(final C context) {
+    start(context).toCompletableFuture().join();
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+
+/**
+ * Registry of the events triggering the transitions of a state machine and
+ * its sub machines.
+ *
+ * Every event is interned and gets a dense integer code when the state
+ * machine is built. Time events and completion events are not registered.
+ *
+ * @author Fabien Renaud
+ */
+public interface EventRegistry {
+
+  /**
+   * Gets the number of registered events.
+   *
+   * @return The number of registered events.
+   */
+  int size();
+
+  /**
+   * Gets the event type of a code.
+   *
+   * @param code The code of the event.
+   * @return The event type.
+   * @throws IllegalArgumentException When no event has that code.
+   */
+  EventType type(int code);
+
+  /**
+   * Gets the event type of an event.
+   *
+   * @param event Any event equal to a registered one.
+   * @return The event type or null when the event is not registered.
+   */
+  EventType type(Event event);
+
+  /**
+   * Gets the event type of a {@link com.lympid.core.basicbehaviors.StringEvent}
+   * by name.
+   *
+   * @param name The name of the event.
+   * @return The event type or null when the event is not registered.
+   */
+  EventType type(String name);
+
+  /**
+   * Gets the code of an event.
+   *
+   * @param event Any event.
+   * @return The code of the event or -1 when it is not registered.
+   */
+  int code(Event event);
+}
@@ -69,4 +69,11 @@ public interface StateMachine extends Behavior, UmlElement, Visitable, RegionOwn
    * @return The state machine meta data
    */
   StateMachineMeta metadata();
+
+  /**
+   * Registry of the events triggering the transitions of the state machine.
+   *
+   * @return The event registry.
+   */
+  EventRegistry events();
 }
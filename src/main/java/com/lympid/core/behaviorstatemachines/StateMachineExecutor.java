@@ -16,11 +16,18 @@
 package com.lympid.core.behaviorstatemachines;
 
 import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
 import com.lympid.core.behaviorstatemachines.impl.ExecutorConfiguration;
 import com.lympid.core.behaviorstatemachines.impl.ExecutorListener;
 import com.lympid.core.behaviorstatemachines.impl.LockStateMachineExecutor;
 import com.lympid.core.behaviorstatemachines.impl.PoolStateMachineExecutor;
 import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+import com.lympid.core.common.StringTree;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Interface for processing a state machine.
@@ -72,12 +79,93 @@ public interface StateMachineExecutor<C> {
    * Takes an event and attempts to process it. The executor only takes events
    * if the state machine has been started with {@link #go}.
    *
+   * Payload events are released once the executor is done with them.
+   *
    * @param event The event to process.
+   *
+   * @see com.lympid.core.basicbehaviors.PayloadEvent#release()
    */
   void take(final Event event);
 
+  /**
+   * Takes an event interned by the event registry of the state machine.
+   *
+   * Producers holding on to event types or codes do not need to allocate
+   * events. The executors of this library carry the type along and never look
+   * the event up in the registry again. The default implementation takes the
+   * interned event.
+   *
+   * @param type The type of the event to process.
+   *
+   * @see StateMachine#events()
+   */
+  default void take(final EventType type) {
+    take(type.event());
+  }
+
+  /**
+   * Takes an event by its code in the event registry of the state machine.
+   *
+   * @param eventCode The code of the event to process.
+   * @throws IllegalArgumentException When no event has that code.
+   *
+   * @see StateMachine#events()
+   */
+  default void take(final int eventCode) {
+    take(stateMachine().events().type(eventCode));
+  }
+
   StateMachineSnapshot<C> snapshot();
 
+  /**
+   * Checks whether a state was active at the end of the last
+   * run-to-completion step.
+   *
+   * This never blocks nor waits for the executor: the active states are read
+   * from an immutable view the executor publishes at the end of every step.
+   * The result may thus already be outdated when the method returns.
+   *
+   * The default implementation looks the state up in
+   * {@link #activeStateIds()}.
+   *
+   * @param stateId The id of a state of the state machine.
+   * @return true when the state was active.
+   */
+  default boolean isActive(final String stateId) {
+    return activeStateIds().contains(stateId);
+  }
+
+  /**
+   * Gets the ids of the states which were active at the end of the last
+   * run-to-completion step.
+   *
+   * This never blocks nor waits for the executor. The default implementation
+   * however collects the ids from a {@link #snapshot()}, which may wait for
+   * the executor; the executors of this library override it.
+   *
+   * @return An immutable set of state ids.
+   *
+   * @see #isActive(String)
+   */
+  default Set<String> activeStateIds() {
+    final StringTree root = snapshot().stateConfiguration();
+    if (root == null) {
+      return Collections.emptySet();
+    }
+
+    final Set<String> ids = new HashSet<>();
+    final Deque<StringTree> pending = new ArrayDeque<>();
+    pending.push(root);
+    while (!pending.isEmpty()) {
+      StringTree node = pending.pop();
+      ids.add(node.state());
+      if (node.children() != null) {
+        node.children().forEach(pending::push);
+      }
+    }
+    return Collections.unmodifiableSet(ids);
+  }
+
   /**
    * Pauses the state machine.
    *
@@ -79,6 +79,16 @@ public interface StateMachineMeta {
    */
   boolean hasActivities();
 
+  /**
+   * Gets whether the state machine has states that define activities which
+   * are not {@link AsyncStateBehavior}s, i.e. activities that need a thread
+   * to run on.
+   *
+   * @return true when the state machine has at least one state with an
+   * activity that is not asynchronous
+   */
+  boolean hasBlockingActivities();
+
   /**
    * Gets the number of the specified pseudo state kind the state machine or any
    * of its sub machines has.
@@ -102,6 +112,18 @@ public interface StateMachineMeta {
    * @return The maximum number of leaves in the state machine.
    */
   int countOfLeaves();
+
+  /**
+   * Gets the number of transitions the state machine and all of its sub
+   * machines have.
+   *
+   * <p>
+   * Transitions are numbered from 0 to that count excluded, in the order they
+   * were visited.</p>
+   *
+   * @return The number of transitions in the state machine.
+   */
+  int countOfTransitions();
   
   /**
    * Gets the {@code State} in the state machine that has the specified id.
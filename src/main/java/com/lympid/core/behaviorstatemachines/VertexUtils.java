@@ -59,6 +59,27 @@ public final class VertexUtils {
     return ancestor(s1, v2.container().state());
   }
 
+  /**
+   * Checks whether a vertex is contained, directly or not, by a region.
+   * Connection points are contained by the regions containing their state.
+   *
+   * @param region The region that is expected to contain the vertex.
+   * @param v The vertex that is expected to be contained.
+   * @return true when v is contained by region.
+   */
+  public static boolean contains(final Region region, final Vertex v) {
+    if (v == null) {
+      return false;
+    }
+    if (v.container() == null) {
+      return contains(region, ((PseudoState) v).state());
+    }
+    if (v.container() == region) {
+      return true;
+    }
+    return contains(region, v.container().state());
+  }
+
   /**
    * Checks all the given regions belong to the same orthogonal state and are at
    * the same level.
@@ -18,6 +18,8 @@ package com.lympid.core.behaviorstatemachines.builder;
 import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.PseudoStateKind;
 import com.lympid.core.behaviorstatemachines.TransitionKind;
+import com.lympid.core.behaviorstatemachines.impl.DecisionTable;
+import java.util.function.Function;
 
 /**
  * Builder for a choice pseudo state.
@@ -31,6 +33,8 @@ import com.lympid.core.behaviorstatemachines.TransitionKind;
  */
 public final class ChoiceBuilder<C> extends PseudoStateBuilder<ChoiceBuilder<C>, C> implements PseudoStateTransitionSource<PseudoTransitionGuard<ChoiceBuilder<C>, C>> {
 
+  private DecisionTable<C> decisionTable;
+
   /**
    * Instantiates a choice builder with a name.
    *
@@ -58,4 +62,87 @@ public final class ChoiceBuilder<C> extends PseudoStateBuilder<ChoiceBuilder<C>,
   public PseudoTransitionGuard<ChoiceBuilder<C>, C> transition() {
     return transition(null);
   }
+
+  /**
+   * Turns this choice into a decision table: all the outgoing transitions
+   * subsequently added with {@link #when(String, Object)},
+   * {@link #whenRange(String, Comparable, Comparable)} or
+   * {@link #otherwise(String)} are guarded by a case testing the value
+   * extracted from the context by the given function.
+   *
+   * When the choice is reached, the enabled transition is looked up in a
+   * hashed or sorted index of the cases instead of evaluating every guard in
+   * turn.
+   *
+   * @param key Extracts from the context the value the cases are tested
+   * against.
+   * @return The current choice builder.
+   * @throws IllegalStateException When a decision key has already been set.
+   *
+   * @see DecisionTable
+   */
+  public ChoiceBuilder<C> decisionKey(final Function<? super C, ?> key) {
+    if (decisionTable != null) {
+      throw new IllegalStateException("Choice " + getName() + " already has a decision key.");
+    }
+    this.decisionTable = new DecisionTable<>(key);
+    return this;
+  }
+
+  /**
+   * Adds an outgoing transition enabled when the decision key equals the
+   * given value.
+   *
+   * @param name The name of the transition.
+   * @param value The value the decision key must be equal to.
+   * @return An interface to set the effect and target of the transition.
+   * @throws IllegalStateException When no decision key has been set.
+   */
+  public PseudoTransitionEffect<ChoiceBuilder<C>, C> when(final String name, final Object value) {
+    return decision(name, decisionTable().equalTo(value));
+  }
+
+  /**
+   * Adds an outgoing transition enabled when the decision key is in the given
+   * half-open range. Ranges of a same choice may not overlap.
+   *
+   * @param <K> Type of the decision key.
+   * @param name The name of the transition.
+   * @param fromInclusive The lower bound of the range.
+   * @param toExclusive The upper bound of the range.
+   * @return An interface to set the effect and target of the transition.
+   * @throws IllegalStateException When no decision key has been set.
+   * @throws IllegalArgumentException When the range is empty or overlaps
+   * another range of this choice.
+   */
+  public <K extends Comparable<? super K>> PseudoTransitionEffect<ChoiceBuilder<C>, C> whenRange(final String name, final K fromInclusive, final K toExclusive) {
+    return decision(name, decisionTable().range(fromInclusive, toExclusive));
+  }
+
+  /**
+   * Adds an outgoing transition enabled when none of the other cases of the
+   * decision table holds.
+   *
+   * @param name The name of the transition.
+   * @return An interface to set the effect and target of the transition.
+   * @throws IllegalStateException When no decision key has been set or when
+   * the decision table already has an otherwise transition.
+   */
+  public PseudoTransitionEffect<ChoiceBuilder<C>, C> otherwise(final String name) {
+    return decision(name, decisionTable().otherwise());
+  }
+
+  private DecisionTable<C> decisionTable() {
+    if (decisionTable == null) {
+      throw new IllegalStateException("decisionKey() must be invoked before adding cases to choice " + getName());
+    }
+    return decisionTable;
+  }
+
+  private PseudoTransitionEffect<ChoiceBuilder<C>, C> decision(final String name, final DecisionTable.Case<C> guard) {
+    PseudoErnalTransitionBuilder<ChoiceBuilder<C>, C> transition = new PseudoErnalTransitionBuilder<>(TransitionKind.EXTERNAL, name, this);
+    transition.guard(guard);
+    outgoing().add(transition);
+    return transition;
+  }
 }
@@ -16,6 +16,7 @@
 package com.lympid.core.behaviorstatemachines.builder;
 
 import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.behaviorstatemachines.AsyncStateBehavior;
 import com.lympid.core.behaviorstatemachines.StateBehavior;
 
 /**
@@ -56,4 +57,18 @@ public interface CompositeStateActivity<V extends StateBuilder<?, C>, C> extends
    * the composite/orthogonal state.
    */
   CompositeStateTransitionSource<V, TransitionTrigger<V, C, CompletionEvent>, C, CompletionEvent> activity(Class<? extends StateBehavior<C>> activity);
+
+  /**
+   * Set an asynchronous state activity.
+   *
+   * The activity does not hold any thread while it runs: the state completes
+   * once the stage returned by the activity completes, and the stage is
+   * cancelled if the state is exited first. An {@link AsyncStateBehavior}
+   * type can also be given to {@link #activity(Class)}.
+   *
+   * @param activity The asynchronous state activity.
+   * @return An interface to build local, internal and external transitions to
+   * the composite/orthogonal state.
+   */
+  CompositeStateTransitionSource<V, TransitionTrigger<V, C, CompletionEvent>, C, CompletionEvent> asyncActivity(AsyncStateBehavior<C> activity);
 }
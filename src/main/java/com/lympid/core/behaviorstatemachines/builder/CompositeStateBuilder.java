@@ -16,6 +16,7 @@
 package com.lympid.core.behaviorstatemachines.builder;
 
 import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.behaviorstatemachines.AsyncStateBehavior;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateBehavior;
 import com.lympid.core.behaviorstatemachines.TransitionKind;
@@ -106,6 +107,12 @@ public final class CompositeStateBuilder<C> extends StateBuilder<CompositeStateB
     return this;
   }
 
+  @Override
+  public final CompositeStateTransitionSource<CompositeStateBuilder<C>, TransitionTrigger<CompositeStateBuilder<C>, C, CompletionEvent>, C, CompletionEvent> asyncActivity(final AsyncStateBehavior<C> activity) {
+    setActivity(activity);
+    return this;
+  }
+
   /**
    * Adds an outgoing transition of the specified kind to the composite state.
    *
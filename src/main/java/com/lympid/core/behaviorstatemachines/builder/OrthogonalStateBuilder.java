@@ -16,6 +16,7 @@
 package com.lympid.core.behaviorstatemachines.builder;
 
 import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.behaviorstatemachines.AsyncStateBehavior;
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateBehavior;
@@ -98,6 +99,12 @@ public final class OrthogonalStateBuilder<C> extends StateBuilder<OrthogonalStat
     return this;
   }
 
+  @Override
+  public final CompositeStateTransitionSource<OrthogonalStateBuilder<C>, TransitionTrigger<OrthogonalStateBuilder<C>, C, CompletionEvent>, C, CompletionEvent> asyncActivity(final AsyncStateBehavior<C> activity) {
+    setActivity(activity);
+    return this;
+  }
+
   private TransitionTrigger<OrthogonalStateBuilder<C>, C, CompletionEvent> transition(final String name, final TransitionKind kind) {
     ErnalTransitionBuilder transition = new ErnalTransitionBuilder(kind, name, this);
     outgoing().add(transition);
@@ -16,6 +16,7 @@
 package com.lympid.core.behaviorstatemachines.builder;
 
 import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.behaviorstatemachines.AsyncStateBehavior;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateBehavior;
 import com.lympid.core.behaviorstatemachines.TransitionKind;
@@ -74,6 +75,12 @@ public final class SimpleStateBuilder<C> extends StateBuilder<SimpleStateBuilder
     return this;
   }
 
+  @Override
+  public final StateTransitionSource<SimpleStateBuilder<C>, TransitionTrigger<SimpleStateBuilder<C>, C, CompletionEvent>, C> asyncActivity(final AsyncStateBehavior<C> activity) {
+    setActivity(activity);
+    return this;
+  }
+
   @Override
   public TransitionTrigger<SimpleStateBuilder<C>, C, CompletionEvent> transition(final String name) {
     ErnalTransitionBuilder transition = new ErnalTransitionBuilder(TransitionKind.EXTERNAL, name, this);
@@ -16,6 +16,7 @@
 package com.lympid.core.behaviorstatemachines.builder;
 
 import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.behaviorstatemachines.AsyncStateBehavior;
 import com.lympid.core.behaviorstatemachines.StateBehavior;
 
 /**
@@ -57,4 +58,18 @@ public interface StateActivity<V extends StateBuilder<?, C>, C> extends StateTra
    * the simple/submachine state.
    */
   StateTransitionSource<V, TransitionTrigger<V, C, CompletionEvent>, C> activity(Class<? extends StateBehavior<C>> activity);
+
+  /**
+   * Set an asynchronous state activity.
+   *
+   * The activity does not hold any thread while it runs: the state completes
+   * once the stage returned by the activity completes, and the stage is
+   * cancelled if the state is exited first. An {@link AsyncStateBehavior}
+   * type can also be given to {@link #activity(Class)}.
+   *
+   * @param activity The asynchronous state activity.
+   * @return An interface to build local, internal and external transitions to
+   * the simple/submachine state.
+   */
+  StateTransitionSource<V, TransitionTrigger<V, C, CompletionEvent>, C> asyncActivity(AsyncStateBehavior<C> activity);
 }
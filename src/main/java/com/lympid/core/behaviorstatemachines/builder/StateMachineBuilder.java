@@ -17,6 +17,9 @@ package com.lympid.core.behaviorstatemachines.builder;
 
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.impl.CompoundTransitionVisitor;
+import com.lympid.core.behaviorstatemachines.impl.DecisionTableVisitor;
+import com.lympid.core.behaviorstatemachines.impl.EventRegistryVisitor;
 import com.lympid.core.behaviorstatemachines.impl.MutableRegion;
 import com.lympid.core.behaviorstatemachines.impl.MutableStateMachine;
 import com.lympid.core.behaviorstatemachines.impl.StateMachineMetaVisitor;
@@ -133,7 +136,10 @@ public class StateMachineBuilder<C> implements Visitable {
    * <p>
    * This operation transforms all the data collected via the builders into an
    * actual {@link StateMachine} that can be executed. Validation and metadata
-   * are collected as part of that build.</p>
+   * are collected as part of that build. Once validated, chains of static
+   * pseudo states are collapsed into compound transitions, the decision
+   * tables of choice pseudo states are indexed and the events triggering
+   * transitions are interned in the event registry of the machine.</p>
    *
    * <p>
    * The newly built machine is then cached and calling further this method will
@@ -148,6 +154,12 @@ public class StateMachineBuilder<C> implements Visitable {
       MutableStateMachine m = build();
 
       m.accept(new AllValidatorVisitor());
+      m.accept(new CompoundTransitionVisitor());
+      m.accept(new DecisionTableVisitor());
+
+      EventRegistryVisitor eventVisitor = new EventRegistryVisitor();
+      m.accept(eventVisitor);
+      m.setEventRegistry(eventVisitor.getRegistry());
 
       StateMachineMetaVisitor metaVisitor = new StateMachineMetaVisitor();
       m.accept(metaVisitor);
@@ -16,6 +16,7 @@
 package com.lympid.core.behaviorstatemachines.builder;
 
 import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.behaviorstatemachines.AsyncStateBehavior;
 import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
@@ -90,6 +91,12 @@ public final class SubMachineStateBuilder<C> extends StateBuilder<SubMachineStat
     return this;
   }
 
+  @Override
+  public final StateTransitionSource<SubMachineStateBuilder<C>, TransitionTrigger<SubMachineStateBuilder<C>, C, CompletionEvent>, C> asyncActivity(final AsyncStateBehavior<C> activity) {
+    setActivity(activity);
+    return this;
+  }
+
   private TransitionTrigger<SubMachineStateBuilder<C>, C, CompletionEvent> transition(final String name, final TransitionKind kind) {
     ErnalTransitionBuilder transition = new ErnalTransitionBuilder(kind, name, this);
     outgoing().add(transition);
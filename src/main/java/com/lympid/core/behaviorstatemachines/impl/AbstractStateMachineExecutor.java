@@ -17,7 +17,11 @@ package com.lympid.core.behaviorstatemachines.impl;
 
 import com.lympid.core.basicbehaviors.CompletionEvent;
 import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+import com.lympid.core.basicbehaviors.PayloadEvent;
 import com.lympid.core.basicbehaviors.TimeEvent;
+import com.lympid.core.behaviorstatemachines.AsyncStateBehavior;
+import com.lympid.core.behaviorstatemachines.EventRegistry;
 import com.lympid.core.behaviorstatemachines.FinalState;
 import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.Region;
@@ -29,6 +33,7 @@ import com.lympid.core.behaviorstatemachines.StateMachineSnapshot;
 import com.lympid.core.behaviorstatemachines.Transition;
 import com.lympid.core.behaviorstatemachines.Vertex;
 import com.lympid.core.behaviorstatemachines.VertexUtils;
+import com.lympid.core.behaviorstatemachines.metrics.ExecutorMetrics;
 import com.lympid.core.common.TreeNode;
 
 import java.util.ArrayList;
@@ -37,9 +42,16 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 /**
  *
@@ -53,7 +65,24 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
   private final StateMachineState machineState;
   private final C context;
   private final ExecutorConfiguration configuration;
+  private final GuardCache guardCache;
+  private final GuardStatistics guardStatistics;
+  private final ExecutorMetrics metrics;
+  private final ForkJoinPool parallelRegions;
+  /**
+   * The type of the event being processed when it is registered in the event
+   * registry of the machine. Held in a single field so that steps processed
+   * concurrently on distinct regions never see the event of one step with
+   * the code of another.
+   */
+  private EventType codedType;
   private ExecutorListener listeners = ExecutorListener.DEFAULT;
+  /**
+   * Immutable view of the ids of the active states, published at the end of
+   * every run-to-completion step for lock-free reads from any thread.
+   */
+  private volatile Set<String> activeStateIds = Collections.EMPTY_SET;
+  private final Object publication = new Object();
   private boolean go;
 
   public AbstractStateMachineExecutor(
@@ -68,13 +97,26 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
     this.name = name;
     this.machine = machine;
     this.configuration = configuration;
-    this.machineState = createMachineState(machine);
+    this.parallelRegions = configuration.parallelRegions();
+    this.machineState = parallelRegions == null
+      ? createMachineState(machine)
+      : synchronizedMachineState(createMachineState(machine));
+    this.guardCache = configuration.guardMemoization()
+      ? new GuardCache(machine.metadata().countOfTransitions())
+      : null;
+    this.guardStatistics = configuration.guardOrdering() == ExecutorConfiguration.GuardOrdering.DECLARATION
+      ? null
+      : new GuardStatistics(machine.metadata().countOfTransitions());
+    this.metrics = configuration.metrics() == null
+      ? null
+      : new ExecutorMetrics(configuration.metrics());
     if (snapshot == null) {
       this.context = context;
     } else {
       this.machineState.pause();
       this.machineState.set(snapshot);
       this.context = snapshot.context();
+      publishActiveStates();
     }
   }
 
@@ -93,6 +135,16 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
     return machine;
   }
 
+  @Override
+  public boolean isActive(final String stateId) {
+    return activeStateIds.contains(stateId);
+  }
+
+  @Override
+  public Set<String> activeStateIds() {
+    return activeStateIds;
+  }
+
   @Override
   public ExecutorListener listeners() {
     if (listeners == ExecutorListener.DEFAULT) {
@@ -101,10 +153,42 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
     return listeners;
   }
 
+  /**
+   * Gets the hit and miss counts of the guards evaluated by this executor.
+   *
+   * @return The guard statistics or null when the executor is configured with
+   * {@link ExecutorConfiguration.GuardOrdering#DECLARATION}.
+   */
+  public GuardStatistics guardStatistics() {
+    return guardStatistics;
+  }
+
+  /**
+   * Gets the metrics of this executor.
+   *
+   * @return The metrics of this executor or null when its configuration does
+   * not have any.
+   *
+   * @see ExecutorConfiguration#metrics(com.lympid.core.behaviorstatemachines.metrics.StateMachineMetrics)
+   */
+  public ExecutorMetrics metrics() {
+    return metrics;
+  }
+
   protected StateMachineState createMachineState(final StateMachine machine) {
     return StateMachineStateFactory.get(machine.metadata());
   }
 
+  /**
+   * Makes the machine state safe to update from the threads running regions
+   * in parallel.
+   */
+  private static StateMachineState synchronizedMachineState(final StateMachineState machineState) {
+    return machineState instanceof StateMachineState.SynchronizedStateMachineState
+      ? machineState
+      : StateMachineState.synchronizedMachineState(machineState);
+  }
+
   @Override
   public void go() {
     internalGo();
@@ -112,6 +196,7 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
 
   private void internalGo() {
     checkConfiguration();
+    invalidateGuards();
     
     if (machineState.isPaused()) {
       internalResume();
@@ -150,45 +235,274 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
 
   @Override
   public void take(final Event event) {
-    if (!machineState.hasStarted()) {
-      if (!go) {
-        throw new IllegalStartException("go() must be invoked before the state machine executor can process any events.");
+    internalTake(event, encode(event));
+  }
+
+  /**
+   * Takes an event interned by the event registry of the state machine. The
+   * code of the event is known up front: unlike {@link #take(Event)}, the
+   * event is not looked up in the registry.
+   *
+   * @param type The type of the event to process. Types registered by another
+   * state machine are looked up by their event.
+   */
+  @Override
+  public void take(final EventType type) {
+    internalTake(type.event(), registered(type));
+  }
+
+  private void internalTake(final Event event, final EventType type) {
+    try {
+      invalidateGuards();
+      codedType = type;
+      if (!machineState.hasStarted()) {
+        if (!go) {
+          throw new IllegalStartException("go() must be invoked before the state machine executor can process any events.");
+        }
+        start();
+      }
+      if (machineState.isTerminatedOrPaused()) {
+        onEventDenied(event);
+        return;
       }
-      start();
-    }
-    if (machineState.isTerminatedOrPaused()) {
-      onEventDenied(event);
-      return;
-    }
 
-    /*
-     * Fire all the transition paths found for the given event applied to the
-     * active state configuration.
-     */
-    fireManyAndBeyond(event, transitionPaths(event, machineState.activeStates()));
+      /*
+       * Fire all the transition paths found for the given event applied to the
+       * active state configuration.
+       */
+      if (metrics == null) {
+        fireManyAndBeyond(event, transitionPaths(event, machineState.activeStates()));
+      } else {
+        long start = System.nanoTime();
+        fireManyAndBeyond(event, transitionPaths(event, machineState.activeStates()));
+        metrics.recordTake(System.nanoTime() - start);
+      }
+    } finally {
+      release(event);
+    }
   }
 
   protected void take(final Event event, final State state) {
+    take(event, state, null);
+  }
+
+  /**
+   * Takes an event which only triggers transitions between vertices of the
+   * given region.
+   *
+   * Only the active states of the region are looked up and, once the
+   * transitions are fired, only the completion events and time events of the
+   * states of the region are processed. This lets executors process events
+   * concerning distinct regions concurrently.
+   *
+   * Callers must guarantee that the state machine has started, that the event
+   * can not trigger transitions outside of the region and that firing those
+   * transitions can neither leave nor complete the region.
+   *
+   * @param event The event to process.
+   * @param region The region the event is scoped to.
+   */
+  protected void take(final Event event, final Region region) {
+    internalTake(event, encode(event), region);
+  }
+
+  /**
+   * Takes an event interned by the event registry of the state machine which
+   * only triggers transitions between vertices of the given region.
+   *
+   * @param type The type of the event to process.
+   * @param region The region the event is scoped to.
+   *
+   * @see #take(Event, Region)
+   */
+  protected void take(final EventType type, final Region region) {
+    internalTake(type.event(), registered(type), region);
+  }
+
+  private void internalTake(final Event event, final EventType type, final Region region) {
+    try {
+      invalidateGuards();
+      codedType = type;
+      if (machineState.isTerminatedOrPaused()) {
+        onEventDenied(event);
+        return;
+      }
+
+      if (metrics == null) {
+        fireManyAndBeyond(event, transitionPaths(event, region), region);
+      } else {
+        long start = System.nanoTime();
+        fireManyAndBeyond(event, transitionPaths(event, region), region);
+        metrics.recordTake(System.nanoTime() - start);
+      }
+    } finally {
+      release(event);
+    }
+  }
+
+  /**
+   * Takes an event targeting a given state.
+   *
+   * @param event The event to process.
+   * @param state The state which must handle the event.
+   * @param scope The region the event is scoped to or null when the event is
+   * not scoped.
+   *
+   * @see #take(Event, Region)
+   */
+  protected void take(final Event event, final State state, final Region scope) {
+    invalidateGuards();
+    codedType = encode(event);
     if (machineState.isTerminatedOrPaused() || !machineState.isActive(state)) {
       onEventDenied(event);
       return;
     }
 
-    fireOneAndBeyond(event, transitionPath(event, state));
+    if (metrics == null) {
+      fireOneAndBeyond(event, transitionPath(event, state), scope);
+    } else {
+      long start = System.nanoTime();
+      fireOneAndBeyond(event, transitionPath(event, state), scope);
+      metrics.recordTake(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Gets whether the state machine has started, i.e. whether the transition
+   * out of the initial pseudo state of the top level state machine has been
+   * fired.
+   *
+   * @return true when the state machine has started.
+   */
+  protected boolean hasStarted() {
+    return machineState.hasStarted();
   }
 
   protected void takeCompletionEvent() {
+    invalidateGuards();
     if (machineState.isTerminatedOrPaused()) {
       return;
     }
 
-    postFire();
+    if (metrics == null) {
+      postFire();
+    } else {
+      long start = System.nanoTime();
+      postFire();
+      metrics.recordTake(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Waits for a task run on behalf of an executor by another thread.
+   *
+   * @param <T> Type of the result of the task.
+   * @param future The task to wait for.
+   * @param executor The executor the task is run for.
+   * @return The result of the task.
+   * @throws IllegalStateException When the current thread is interrupted, in
+   * which case its interrupt flag is set again, or when the task failed with a
+   * checked exception.
+   */
+  static <T> T await(final Future<T> future, final StateMachineExecutor executor) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for " + executor.getName(), ex);
+    } catch (ExecutionException ex) {
+      final Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Task failed for " + executor.getName(), cause);
+    }
+  }
+
+  /**
+   * Signals the end of the run-to-completion step to reusable events.
+   *
+   * @param event The event which has just been processed.
+   */
+  static void release(final Event event) {
+    if (event instanceof PayloadEvent) {
+      ((PayloadEvent) event).release();
+    }
+  }
+
+  /**
+   * Looks up the code of the event about to be processed, once for the whole
+   * step. Only needed when the event was not taken by its type.
+   *
+   * @param event The event about to be processed.
+   * @return The type of the event or null when it is not registered.
+   */
+  private EventType encode(final Event event) {
+    return machine.events().type(event);
+  }
+
+  /**
+   * Checks that an event type taken by a producer was registered by the event
+   * registry of the state machine, which is an array lookup.
+   *
+   * @param type The type of the event about to be processed.
+   * @return The given type, or the type of its event in the registry of the
+   * state machine when it was registered by another one.
+   */
+  private EventType registered(final EventType type) {
+    final EventRegistry events = machine.events();
+    return type.code() < events.size() && events.type(type.code()) == type ? type : encode(type.event());
+  }
+
+  /**
+   * Gets the outgoing transitions of a vertex triggered by an event. The
+   * lookup is done by code when the event is equal to the one being
+   * processed. Events taken by their type are the interned instance itself
+   * and completion events are never coded: neither is compared with equals.
+   *
+   * @param vertex Any vertex.
+   * @param event The event triggering the transitions.
+   * @return The outgoing transitions triggered by the event.
+   */
+  private Collection<? extends Transition> outgoing(final Vertex vertex, final Event event) {
+    final EventType type = codedType;
+    if (type != null
+      && vertex instanceof MutableVertex
+      && (type.event() == event || (event != CompletionEvent.INSTANCE && type.event().equals(event)))) {
+      return ((MutableVertex) vertex).outgoing(type.code());
+    }
+    return vertex.outgoing(event);
   }
 
   protected Future scheduleEvent(final TimeEvent event, final State state, final long delay) {
     return configuration.executor().schedule(new RunnableEvent(event, state), delay, TimeUnit.MILLISECONDS);
   }
 
+  /**
+   * Starts running the activity of a state in background.
+   *
+   * @param activity The task running the activity.
+   * @return The future cancelled when the state is exited.
+   */
+  protected Future<?> submitActivity(final Runnable activity) {
+    return configuration.executor().submit(activity);
+  }
+
+  /**
+   * Gets whether this executor can schedule time events and run activities,
+   * i.e. whether {@link #scheduleEvent} and {@link #submitActivity} can be
+   * used.
+   *
+   * @return true when the configuration of this executor has an executor
+   * service.
+   */
+  protected boolean hasBackgroundExecutor() {
+    return configuration.executor() != null;
+  }
+
   private void start() {
     PseudoState initial = machine.region().get(0).initial();
     TreeNode<Transition> path = transitionPath(CompletionEvent.INSTANCE, initial);
@@ -206,28 +520,56 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
   }
 
   private void postFire() {
+    postFire(null);
+  }
+
+  /**
+   * Processes completion events and schedules time events.
+   *
+   * @param scope The only region of which to process completion events and
+   * schedule time events, or null for the whole state machine.
+   */
+  private void postFire(final Region scope) {
     /*
      * Completion events have priority over any over events that might be in the
      * queue.
      */
     if (!machineState.isTerminatedOrPaused() && machine.metadata().hasCompletionEvents()) {
-      internalTakeCompletionEvents();
+      internalTakeCompletionEvents(scope);
     }
 
     /*
      * Schedules all time events at once
      */
-    scheduleAllTimeEvents();
+    scheduleAllTimeEvents(scope);
+
+    publishActiveStates();
+  }
+
+  /**
+   * Publishes the active states at the end of a step.
+   *
+   * Steps of some executors run concurrently. Copies are published in the
+   * order they were taken so that an older copy never overwrites a newer one:
+   * the last one published was taken after every step that has published its
+   * own was done.
+   */
+  private void publishActiveStates() {
+    synchronized (publication) {
+      activeStateIds = machineState.activeStateIds();
+    }
   }
 
-  private void internalTakeCompletionEvents() {
-    while (machineState.hasCompletedStates()) {
-      int stateHashBefore = machineState.completedStates().hashCode();
+  private void internalTakeCompletionEvents(final Region scope) {
+    Set<State> completedStates = completedStates(scope);
+    while (!completedStates.isEmpty()) {
+      int stateHashBefore = completedStates.hashCode();
       int contextHashBefore = Objects.hashCode(context);
 
-      fireMany(CompletionEvent.INSTANCE, transitionPaths(CompletionEvent.INSTANCE, machineState.completedStates()));
+      fireMany(CompletionEvent.INSTANCE, transitionPaths(CompletionEvent.INSTANCE, completedStates));
 
-      int stateHashAfter = machineState.completedStates().hashCode();
+      completedStates = completedStates(scope);
+      int stateHashAfter = completedStates.hashCode();
       int contextHashAfter = Objects.hashCode(context);
 
       /*
@@ -248,9 +590,16 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
     }
   }
 
-  private void scheduleAllTimeEvents() {
+  private Set<State> completedStates(final Region scope) {
+    return scope == null ? machineState.completedStates() : machineState.completedStates(scope);
+  }
+
+  private void scheduleAllTimeEvents(final Region scope) {
     if (!machineState.isTerminatedOrPaused() && machine.metadata().hasTimeEvents()) {
-      scheduleTimeEvents(machineState.activeStates());
+      final StateConfiguration<?> stateConfig = scope == null ? machineState.activeStates() : machineState.activeStates(scope);
+      if (stateConfig != null) {
+        scheduleTimeEvents(stateConfig);
+      }
     }
   }
 
@@ -285,8 +634,12 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
   }
 
   private void fireManyAndBeyond(final Event event, final Collection<TreeNode<Transition>> paths) {
+    fireManyAndBeyond(event, paths, null);
+  }
+
+  private void fireManyAndBeyond(final Event event, final Collection<TreeNode<Transition>> paths, final Region scope) {
     if (fireMany(event, paths)) {
-      postFire();
+      postFire(scope);
     } else {
       onEventDenied(event);
       // TODO: deferred triggers
@@ -294,8 +647,12 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
   }
 
   private void fireOneAndBeyond(final Event event, final TreeNode<Transition> path) {
+    fireOneAndBeyond(event, path, null);
+  }
+
+  private void fireOneAndBeyond(final Event event, final TreeNode<Transition> path, final Region scope) {
     if (fireOne(event, path)) {
-      postFire();
+      postFire(scope);
     } else {
       onEventDenied(event);
       // TODO: deferred triggers
@@ -317,6 +674,9 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
     if (paths.isEmpty()) {
       return false;
     }
+    if (parallelRegions != null && paths.size() > 1) {
+      return fireParallel(event, paths);
+    }
 
     boolean accepted = false;
     for (TreeNode<Transition> path : paths) {
@@ -340,6 +700,55 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
     return accepted;
   }
 
+  /**
+   * Fire all transition trees concurrently, one per orthogonal region, and
+   * wait for all of them to be fired.
+   *
+   * @param event The event that triggered those transitions.
+   * @param paths A collection of transitions that can be fired in parallel.
+   *
+   * @return true when the event actually resulted in firing a transition.
+   */
+  private boolean fireParallel(final Event event, final Collection<TreeNode<Transition>> paths) {
+    final List<ForkJoinTask<?>> tasks = new ArrayList<>(paths.size());
+    for (TreeNode<Transition> path : paths) {
+      if (path.hasChildren()) {
+        final TreeNode<Transition> transitionNode = path.children().get(0);
+        tasks.add(ForkJoinTask.adapt(() -> fire(event, transitionNode)));
+      }
+    }
+    if (tasks.isEmpty()) {
+      return false;
+    }
+
+    onEventAccepted(event);
+    invokeAll(tasks);
+
+    if (machineState.isTerminated()) {
+      if (listeners.hasMachineTerminatedListener()) {
+        listeners.onMachineTerminated(this, machine, context);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Runs tasks on the parallel regions pool and waits for all of them to
+   * complete. Tasks forked from a task already running in a fork-join pool
+   * stay in that pool.
+   *
+   * @param tasks The tasks to run.
+   */
+  private void invokeAll(final List<ForkJoinTask<?>> tasks) {
+    if (tasks.size() == 1) {
+      tasks.get(0).invoke();
+    } else if (ForkJoinTask.inForkJoinPool()) {
+      ForkJoinTask.invokeAll(tasks);
+    } else {
+      parallelRegions.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+  }
+
   private boolean fireOne(final Event event, final TreeNode<Transition> path) {
     if (path.isLeaf()) {
       return false;
@@ -428,9 +837,13 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
           listeners.onStateExitBeforeExecution(this, machine, context, state);
         }
 
+        long start = metrics == null ? 0 : System.nanoTime();
         for (StateBehavior b : state.exit()) {
           b.accept(context);
         }
+        if (metrics != null) {
+          metrics.recordExit(state, System.nanoTime() - start);
+        }
 
         if (listeners.hasStateExitAfterExecution()) {
           listeners.onStateExitAfterExecution(this, machine, context, state);
@@ -441,6 +854,7 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
           listeners.onStateExitException(this, machine, context, state, ex);
         }
       }
+      invalidateGuards();
     }
   }
 
@@ -507,9 +921,13 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
           listeners.onStateEnterBeforeExecution(this, machine, context, state);
         }
 
+        long start = metrics == null ? 0 : System.nanoTime();
         for (StateBehavior b : state.entry()) {
           b.accept(context);
         }
+        if (metrics != null) {
+          metrics.recordEntry(state, System.nanoTime() - start);
+        }
 
         if (listeners.hasStateEnterAfterExecution()) {
           listeners.onStateEnterAfterExecution(this, machine, context, state);
@@ -520,6 +938,7 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
           listeners.onStateEnterException(this, machine, context, state, ex);
         }
       }
+      invalidateGuards();
     }
 
     if (state.doActivity() != null) {
@@ -534,8 +953,16 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
       }
     } else {
       assert state.isComposite() || state.isSubMachineState();
-      for (Region r : state.region()) {
-        enter(r);
+      if (parallelRegions != null && state.region().size() > 1) {
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>(state.region().size());
+        for (Region r : state.region()) {
+          tasks.add(ForkJoinTask.adapt(() -> enter(r)));
+        }
+        invokeAll(tasks);
+      } else {
+        for (Region r : state.region()) {
+          enter(r);
+        }
       }
     }
   }
@@ -555,9 +982,14 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
   }
 
   private void doActivity(final State state) {
+    if (state.doActivity() instanceof AsyncStateBehavior) {
+      new AsyncActivity(this, state).start();
+      return;
+    }
+
     try {
       machineState.activityLock(state).lock();
-      Future<?> f = configuration.executor().submit(new RunnableActivity(this, state));
+      Future<?> f = submitActivity(new RunnableActivity(this, state));
       machineState.setActivity(state, f);
     } finally {
       machineState.activityLock(state).unlock();
@@ -720,6 +1152,11 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
     }
   }
 
+  private Collection<TreeNode<Transition>> transitionPaths(final Event event, final Region region) {
+    final StateConfiguration<?> stateConfig = machineState.activeStates(region);
+    return stateConfig == null ? Collections.EMPTY_LIST : transitionPaths(event, stateConfig);
+  }
+
   private Collection<TreeNode<Transition>> transitionPaths(final Event event, final Collection<State> states) {
     final Collection<TreeNode<Transition>> allPaths = new LinkedList<>();
     for (State s : states) {
@@ -742,76 +1179,199 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
   }
 
   private boolean transitionPath(final Event event, final Vertex vertex, final TreeNode<Transition> paths) {
-    final Collection<? extends Transition> candidates = vertex.outgoing(event);
+    final MutablePseudoState decider = vertex instanceof MutablePseudoState ? (MutablePseudoState) vertex : null;
+    if (decider != null && decisionPath(event, decider, paths)) {
+      return true;
+    }
+
+    final Collection<? extends Transition> candidates = outgoing(vertex, event);
+    if (candidates.size() > 1
+      && configuration.guardOrdering() == ExecutorConfiguration.GuardOrdering.ADAPTIVE
+      && !VertexUtils.fork(vertex)) {
+      return adaptiveTransitionPath(event, decider, candidates, paths);
+    }
 
     boolean found = false;
     for (Transition t : candidates) {
+      if (decider != null && decider.isDecision(t)) {
+        continue;
+      }
       if (transitionGuard(event, t)) {
         TreeNode<Transition> tn = new TreeNode<>(t);
-
-        if (t.target() instanceof State) {
+        if (compoundTransitionPath(t, tn)) {
           found = paths.add(tn);
-        } else {
-          PseudoState ps = (PseudoState) t.target();
-
-          switch (ps.kind()) {
-            /*
-             * Terminating the state machine means the executor must go no
-             * farther that vertex. Reaching a choice vertex requires to fire
-             * all transitions to go to that vertex first and then figure out
-             * where to go from there (dynamic conditional branching).
-             */
-            case CHOICE:
-            case TERMINATE:
-              found = paths.add(tn);
-              break;
-            /*
-             * For history vertices, either:
-             *  - an history does not exist in which case the outgoing
-             * transition of the history vertex will be fired; if such
-             * transition does not exist, the transition might not be enabled or
-             * the code may throw an exception depending on the running
-             * configuration.
-             * - an history exists in which case we want to reach directly that
-             * history pseudo vertex.
-             */
-            case SHALLOW_HISTORY:
-            case DEEP_HISTORY:
-              StateConfiguration stateConfig = machineState.restore(ps.container());
-              if (stateConfig == null) {
-                if (transitionPath(CompletionEvent.INSTANCE, t.target(), tn)) {
-                  found = paths.add(tn);
-                } else {
-                  switch (configuration.defaultHistoryFailover()) {
-                    case DISABLE_TRANSITION:
-                      break; // Transition has not been added. Nothing else to do.
-                    case EXCEPTION:
-                      throw new DefaultHistoryEntryException(ps, configuration.defaultHistoryFailover(), "History vertex is unreacheable because this region never had an activate state before and the vertex does not have a valid outgoing transition.");
-                    default:
-                      throw new UnsupportedOperationException("Unknown default history failover value: " + configuration.defaultHistoryFailover());
-                  }
-                }
-              } else {
-                found = paths.add(tn);
-              }
-              break;
-            case JOIN:
-              if (machineState.joinReached(ps, t) && transitionPath(CompletionEvent.INSTANCE, t.target(), tn)) {
-                found = paths.add(tn);
-              }
-              break;
-            default:
-              if (transitionPath(CompletionEvent.INSTANCE, t.target(), tn)) {
-                found = paths.add(tn);
-              }
-              break;
-          }
         }
       }
     }
     return found;
   }
 
+  /**
+   * Finds the enabled transition out of a choice pseudo state via its decision
+   * table, if it has one.
+   *
+   * The transition found is enabled without evaluating its guard again: guard
+   * listeners, metrics and statistics are notified as if its guard had been
+   * evaluated to true. When the decision key throws an exception, every
+   * transition of the decision table is reported as if its guard had thrown
+   * it.
+   *
+   * @param event The event being processed.
+   * @param pseudoState The pseudo state to leave.
+   * @param paths The tree node to which the path of the enabled transition is
+   * added.
+   * @return true when the decision table found an enabled transition. When
+   * false, the outgoing transitions which are not part of the decision table
+   * must be tested.
+   *
+   * @see DecisionTable
+   */
+  private boolean decisionPath(final Event event, final MutablePseudoState pseudoState, final TreeNode<Transition> paths) {
+    final long start = metrics == null ? 0 : System.nanoTime();
+    final Transition t;
+    try {
+      t = pseudoState.decide(context);
+    } catch (RuntimeException ex) {
+      for (Transition d : pseudoState.outgoing()) {
+        if (pseudoState.isDecision(d)) {
+          if (listeners.hasTransitionGuardExceptionListener()) {
+            listeners.onTransitionGuardException(this, machine, context, event, d, ex);
+          }
+          if (guardStatistics != null) {
+            guardStatistics.record(d, false);
+          }
+        }
+      }
+      return false;
+    }
+    if (t == null) {
+      return false;
+    }
+
+    if (listeners.hasTransitionGuardBeforeExecutionListener()) {
+      listeners.onTransitionGuardBeforeExecution(this, machine, context, event, t);
+    }
+    if (metrics != null) {
+      metrics.recordGuard(t, System.nanoTime() - start);
+    }
+    if (listeners.hasTransitionGuardAfterExecutionListener()) {
+      listeners.onTransitionGuardAfterExecution(this, machine, context, event, t);
+    }
+    if (guardStatistics != null) {
+      guardStatistics.record(t, true);
+    }
+
+    TreeNode<Transition> tn = new TreeNode<>(t);
+    return compoundTransitionPath(t, tn) && paths.add(tn);
+  }
+
+  /**
+   * Finds the first enabled transition among the candidates, testing them
+   * from the most to the least likely to be enabled.
+   *
+   * @param event The event being processed.
+   * @param decider The vertex when it has a decision table whose transitions
+   * have already been tested, null otherwise.
+   * @param candidates The outgoing transitions of a vertex for {@code event}.
+   * @param paths The tree node to which the path of the enabled transition is
+   * added.
+   * @return true when an enabled transition has been found.
+   *
+   * @see GuardStatistics
+   */
+  private boolean adaptiveTransitionPath(final Event event, final MutablePseudoState decider, final Collection<? extends Transition> candidates, final TreeNode<Transition> paths) {
+    final Transition[] order = guardStatistics.order(candidates);
+    for (int i = 0; i < order.length; i++) {
+      Transition t = order[i];
+      if (decider != null && decider.isDecision(t)) {
+        continue;
+      }
+      if (transitionGuard(event, t)) {
+        TreeNode<Transition> tn = new TreeNode<>(t);
+        if (compoundTransitionPath(t, tn)) {
+          paths.add(tn);
+          guardStatistics.promote(order, i);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Completes the path of an enabled transition.
+   *
+   * The static continuation of the transition, if any, is appended first. It
+   * leads to the first vertex that is not a static pseudo state and from which
+   * the path is then resolved dynamically.
+   *
+   * @param transition The enabled transition.
+   * @param node The tree node holding {@code transition}.
+   * @return true when the path reaches a vertex the executor can stop at.
+   *
+   * @see CompoundTransitionVisitor
+   */
+  private boolean compoundTransitionPath(final Transition transition, final TreeNode<Transition> node) {
+    Transition t = transition;
+    TreeNode<Transition> tn = node;
+    if (transition instanceof MutableTransition) {
+      for (Transition c : ((MutableTransition) transition).continuation()) {
+        TreeNode<Transition> cn = new TreeNode<>(c);
+        tn.add(cn);
+        tn = cn;
+        t = c;
+      }
+    }
+    return targetPath(t, tn);
+  }
+
+  private boolean targetPath(final Transition t, final TreeNode<Transition> tn) {
+    if (t.target() instanceof State) {
+      return true;
+    }
+
+    PseudoState ps = (PseudoState) t.target();
+    switch (ps.kind()) {
+      /*
+       * Terminating the state machine means the executor must go no
+       * farther that vertex. Reaching a choice vertex requires to fire
+       * all transitions to go to that vertex first and then figure out
+       * where to go from there (dynamic conditional branching).
+       */
+      case CHOICE:
+      case TERMINATE:
+        return true;
+      /*
+       * For history vertices, either:
+       *  - an history does not exist in which case the outgoing
+       * transition of the history vertex will be fired; if such
+       * transition does not exist, the transition might not be enabled or
+       * the code may throw an exception depending on the running
+       * configuration.
+       * - an history exists in which case we want to reach directly that
+       * history pseudo vertex.
+       */
+      case SHALLOW_HISTORY:
+      case DEEP_HISTORY:
+        StateConfiguration stateConfig = machineState.restore(ps.container());
+        if (stateConfig != null || transitionPath(CompletionEvent.INSTANCE, ps, tn)) {
+          return true;
+        }
+        switch (configuration.defaultHistoryFailover()) {
+          case DISABLE_TRANSITION:
+            return false; // Transition has not been added. Nothing else to do.
+          case EXCEPTION:
+            throw new DefaultHistoryEntryException(ps, configuration.defaultHistoryFailover(), "History vertex is unreacheable because this region never had an activate state before and the vertex does not have a valid outgoing transition.");
+          default:
+            throw new UnsupportedOperationException("Unknown default history failover value: " + configuration.defaultHistoryFailover());
+        }
+      case JOIN:
+        return machineState.joinReached(ps, t) && transitionPath(CompletionEvent.INSTANCE, ps, tn);
+      default:
+        return transitionPath(CompletionEvent.INSTANCE, ps, tn);
+    }
+  }
+
   /**
    * Finds the immediate parent state of the given vertex.
    *
@@ -840,6 +1400,26 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
       return true;
     }
 
+    boolean result;
+    if (guardCache != null && transition instanceof MutableTransition) {
+      int ordinal = ((MutableTransition) transition).ordinal();
+      if (guardCache.contains(ordinal, event)) {
+        result = guardCache.get(ordinal);
+      } else {
+        result = evaluateGuard(event, transition);
+        guardCache.put(ordinal, event, result);
+      }
+    } else {
+      result = evaluateGuard(event, transition);
+    }
+
+    if (guardStatistics != null) {
+      guardStatistics.record(transition, result);
+    }
+    return result;
+  }
+
+  private boolean evaluateGuard(final Event event, final Transition transition) {
     boolean result;
     try {
 
@@ -847,7 +1427,13 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
         listeners.onTransitionGuardBeforeExecution(this, machine, context, event, transition);
       }
 
-      result = transition.guard().test(event, context);
+      if (metrics == null) {
+        result = transition.guard().test(event, context);
+      } else {
+        long start = System.nanoTime();
+        result = transition.guard().test(event, context);
+        metrics.recordGuard(transition, System.nanoTime() - start);
+      }
 
       if (listeners.hasTransitionGuardAfterExecutionListener()) {
         listeners.onTransitionGuardAfterExecution(this, machine, context, event, transition);
@@ -873,7 +1459,13 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
         listeners.onTransitionEffectBeforeExecution(this, machine, context, event, transition);
       }
 
-      transition.effect().accept(event, context);
+      if (metrics == null) {
+        transition.effect().accept(event, context);
+      } else {
+        long start = System.nanoTime();
+        transition.effect().accept(event, context);
+        metrics.recordEffect(transition, System.nanoTime() - start);
+      }
 
       if (listeners.hasTransitionEffectAfterExecutionListener()) {
         listeners.onTransitionEffectAfterExecution(this, machine, context, event, transition);
@@ -884,6 +1476,18 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
         listeners.onTransitionEffectException(this, machine, context, event, transition, ex);
       }
     }
+    invalidateGuards();
+  }
+
+  /**
+   * Forgets all memoized guard results, if any. Must be invoked at the
+   * beginning of every run-to-completion step and after running any behavior
+   * that may have changed the context.
+   */
+  private void invalidateGuards() {
+    if (guardCache != null) {
+      guardCache.invalidate();
+    }
   }
 
   private void terminate() {
@@ -896,8 +1500,16 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
   }
 
   private void checkConfiguration() {
-    if (configuration.executor() == null) {
-      if (machine.metadata().hasActivities()) {
+    if (parallelRegions != null) {
+      if (configuration.guardMemoization()) {
+        throw new BadConfigurationException("Guard memoization can not be used along with parallel regions.");
+      }
+      if (configuration.guardOrdering() != ExecutorConfiguration.GuardOrdering.DECLARATION) {
+        throw new BadConfigurationException("Only the DECLARATION guard ordering can be used along with parallel regions.");
+      }
+    }
+    if (!hasBackgroundExecutor()) {
+      if (machine.metadata().hasBlockingActivities()) {
         throw new BadConfigurationException("The state machine has activities but its executor's configuration does not have any thread pool executors to run them.");
       }
       if (machine.metadata().hasTimeEvents()) {
@@ -907,12 +1519,18 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
   }
 
   private void onEventAccepted(final Event event) {
+    if (metrics != null) {
+      metrics.eventAccepted();
+    }
     if (listeners.hasEventAcceptedListener()) {
       listeners.onEventAccepted(this, machine, context, event);
     }
   }
 
   private void onEventDenied(final Event event) {
+    if (metrics != null) {
+      metrics.eventDenied();
+    }
     if (listeners.hasEventDeniedListener()) {
       listeners.onEventDenied(this, machine, context, event);
     }
@@ -945,7 +1563,13 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
           listeners.onStateActivityBeforeExecution(executor, machine, context, state);
         }
 
-        state.doActivity().accept(context);
+        if (metrics == null) {
+          state.doActivity().accept(context);
+        } else {
+          long start = System.nanoTime();
+          state.doActivity().accept(context);
+          metrics.recordActivity(state, System.nanoTime() - start);
+        }
 
         if (listeners.hasStateActivityAfterExecution()) {
           listeners.onStateActivityAfterExecution(executor, machine, context, state);
@@ -966,6 +1590,80 @@ public abstract class AbstractStateMachineExecutor<C> implements StateMachineExe
     
   }
 
+  /**
+   * Activity started by the thread entering the state and completed by
+   * whichever thread completes the stage it returned.
+   *
+   * An activity completed before it is even started, e.g. one that failed
+   * right away or had nothing to wait for, is completed by the thread
+   * entering the state as part of the ongoing run-to-completion step. A
+   * cancelled activity, i.e. one whose state was exited, is ignored.
+   */
+  private final class AsyncActivity implements BiConsumer<Object, Throwable> {
+
+    private static final int STARTING = 0;
+    private static final int STARTED = 1;
+    private static final int COMPLETED = 2;
+    private final AbstractStateMachineExecutor executor;
+    private final State state;
+    private final AtomicInteger phase = new AtomicInteger(STARTING);
+    private CompletableFuture<?> future;
+    private long start;
+
+    AsyncActivity(final AbstractStateMachineExecutor executor, final State state) {
+      this.executor = executor;
+      this.state = state;
+    }
+
+    void start() {
+      if (listeners.hasStateActivityBeforeExecution()) {
+        listeners.onStateActivityBeforeExecution(executor, machine, context, state);
+      }
+
+      start = System.nanoTime();
+      try {
+        future = ((AsyncStateBehavior<C>) state.doActivity()).start(context).toCompletableFuture();
+      } catch (Exception ex) {
+        future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+      }
+      machineState.setActivity(state, future);
+      future.whenComplete(this);
+
+      if (!phase.compareAndSet(STARTING, STARTED)) {
+        if (state.region().isEmpty()) {
+          machineState.activityCompleted(state);
+        } else {
+          machineState.setActivity(state, null);
+        }
+      }
+    }
+
+    @Override
+    public void accept(final Object result, final Throwable failure) {
+      if (future.isCancelled()) {
+        return;
+      }
+
+      if (metrics != null) {
+        metrics.recordActivity(state, System.nanoTime() - start);
+      }
+      if (failure == null) {
+        if (listeners.hasStateActivityAfterExecution()) {
+          listeners.onStateActivityAfterExecution(executor, machine, context, state);
+        }
+      } else if (listeners.hasStateActivityException()) {
+        final Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        listeners.onStateActivityException(executor, machine, context, state, cause instanceof Exception ? (Exception) cause : new CompletionException(cause));
+      }
+
+      if (!phase.compareAndSet(STARTING, COMPLETED) && machineState.activityCompleted(state)) {
+        takeCompletionEvent();
+      }
+    }
+
+  }
+
   private final class RunnableEvent implements Runnable {
 
     private final State state;
@@ -22,6 +22,7 @@ import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachineMeta;
 import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.VertexUtils;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -167,6 +168,34 @@ abstract class AbstractStateMachineState extends ResumableStateMachineState {
     return completedStates;
   }
 
+  @Override
+  public Set<State> completedStates(final Region region) {
+    if (completedStates.isEmpty()) {
+      return Collections.EMPTY_SET;
+    }
+
+    final Set<State> states = new HashSet<>();
+    for (State s : completedStates) {
+      if (VertexUtils.contains(region, s)) {
+        states.add(s);
+      }
+    }
+    return states;
+  }
+
+  @Override
+  public Set<String> activeStateIds() {
+    if (activeStateStatutes.isEmpty()) {
+      return Collections.EMPTY_SET;
+    }
+
+    final Set<String> ids = new HashSet<>(activeStateStatutes.size() * 2);
+    for (State s : activeStateStatutes.keySet()) {
+      ids.add(s.getId());
+    }
+    return Collections.unmodifiableSet(ids);
+  }
+
   @Override
   public void removeCompletedState(final State state) {
     completedStates.remove(state);
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.StateMachineSnapshot;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Synchronous state machine executor built for many threads taking events at
+ * the same time.
+ *
+ * <p>
+ * Instead of having every producer wait for a lock in turn, each producer
+ * thread publishes its event into a slot of its own. Whichever thread gets
+ * the lock becomes the combiner: it processes the pending events of all the
+ * slots in one pass before releasing the lock, while the other producers spin
+ * until their event has been processed. This is known as flat combining.</p>
+ *
+ * <p>
+ * {@link #take(Event)} still returns once the event has been processed and
+ * rethrows any exception processing it threw. Events of distinct producers
+ * may however be processed by the thread of another producer. Events a
+ * behavior takes while an event is being processed are processed right away,
+ * as with {@link SyncStateMachineExecutor}.</p>
+ *
+ * <p>
+ * A slot is allocated the first time a thread takes an event and is released
+ * once the thread has died.</p>
+ *
+ * @author Fabien Renaud
+ */
+public class CombiningStateMachineExecutor<C> extends AbstractStateMachineExecutor<C> {
+
+  /**
+   * Number of times a producer yields, waiting for a combiner to process its
+   * event, before blocking on the lock.
+   */
+  private static final int SPINS = 64;
+  /**
+   * Maximum number of passes over the slots a combiner makes before releasing
+   * the lock.
+   */
+  private static final int PASSES = 4;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final AtomicReference<Slot> slots = new AtomicReference<>();
+  private final ThreadLocal<Slot> slot = ThreadLocal.withInitial(this::register);
+
+  private CombiningStateMachineExecutor(
+    final int id,
+    final String name,
+    final StateMachine machine,
+    final C context,
+    final ExecutorConfiguration configuration,
+    final StateMachineSnapshot<C> snapshot
+  ) {
+    super(id, name, machine, context, configuration, snapshot);
+  }
+
+  @Override
+  protected StateMachineState createMachineState(final StateMachine machine) {
+    return StateMachineState.synchronizedMachineState(super.createMachineState(machine));
+  }
+
+  @Override
+  public void go() {
+    lock.lock();
+    try {
+      super.go();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void take(final Event event) {
+    if (lock.isHeldByCurrentThread()) {
+      super.take(event);
+      return;
+    }
+
+    publish(event, null);
+  }
+
+  @Override
+  public void take(final EventType type) {
+    if (lock.isHeldByCurrentThread()) {
+      super.take(type);
+      return;
+    }
+
+    publish(type.event(), type);
+  }
+
+  /**
+   * Publishes an event in the slot of the current thread and waits until a
+   * combiner, possibly the current thread, has processed it.
+   *
+   * @param event The event to process.
+   * @param type The type of the event when it was taken by its type, null
+   * otherwise.
+   */
+  private void publish(final Event event, final EventType type) {
+    final Slot s = slot.get();
+    s.type = type;
+    s.event = event;
+
+    int spins = 0;
+    while (s.event != null) {
+      if (lock.tryLock()) {
+        try {
+          combine();
+        } finally {
+          lock.unlock();
+        }
+      } else if (spins < SPINS) {
+        spins++;
+        Thread.yield();
+      } else {
+        lock.lock();
+        try {
+          combine();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+
+    final Throwable failure = s.failure;
+    if (failure != null) {
+      s.failure = null;
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      throw (Error) failure;
+    }
+  }
+
+  /**
+   * Processes the pending events of all slots. Must be invoked with the lock
+   * held.
+   */
+  private void combine() {
+    for (int pass = 0; pass < PASSES; pass++) {
+      boolean processed = false;
+      Slot previous = null;
+      for (Slot s = slots.get(); s != null; s = s.next) {
+        final Event event = s.event;
+        if (event != null) {
+          try {
+            if (s.type == null) {
+              super.take(event);
+            } else {
+              super.take(s.type);
+            }
+          } catch (RuntimeException | Error ex) {
+            s.failure = ex;
+          }
+          s.type = null;
+          s.event = null;
+          processed = true;
+        } else if (previous != null && !s.owner.isAlive()) {
+          previous.next = s.next;
+          continue;
+        }
+        previous = s;
+      }
+      if (!processed) {
+        return;
+      }
+    }
+  }
+
+  private Slot register() {
+    final Slot s = new Slot(Thread.currentThread());
+    Slot head;
+    do {
+      head = slots.get();
+      s.next = head;
+    } while (!slots.compareAndSet(head, s));
+    return s;
+  }
+
+  @Override
+  protected void take(final Event event, final State state) {
+    lock.lock();
+    try {
+      super.take(event, state);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  protected void takeCompletionEvent() {
+    lock.lock();
+    try {
+      super.takeCompletionEvent();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public StateMachineSnapshot<C> snapshot() {
+    lock.lock();
+    try {
+      return super.snapshot();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void pause() {
+    lock.lock();
+    try {
+      super.pause();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void resume() {
+    lock.lock();
+    try {
+      super.resume();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static final class Slot {
+
+    private final Thread owner;
+    /**
+     * The type of the pending event when it was taken by its type. Written
+     * before and cleared before {@link #event}.
+     */
+    private EventType type;
+    private volatile Event event;
+    private Throwable failure;
+    private volatile Slot next;
+
+    Slot(final Thread owner) {
+      this.owner = owner;
+    }
+  }
+
+  public static final class Builder<C> extends AbstractBuilder<C> {
+
+    @Override
+    public StateMachineExecutor<C> build() {
+      return new CombiningStateMachineExecutor<>(
+        getId(),
+        getName(),
+        getMachine(),
+        getContext(),
+        getConfiguration(),
+        getSnapshot()
+      );
+    }
+
+  }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collapses static pseudo state chains into compound transitions.
+ *
+ * <p>
+ * From UML superstructure 2.4.1, chapter 15.3.14 Transition # Compound
+ * transitions: a compound transition is an acyclical unbroken chain of
+ * transitions joined via join, junction, or fork pseudostates [...]. Junction,
+ * entry point and exit point vertices which have a single outgoing transition
+ * with no guard are static: whatever the event or the context, the executor
+ * always takes that outgoing transition once the vertex is reached.</p>
+ *
+ * <p>
+ * For every transition that targets such a vertex, this visitor precomputes
+ * the chain of transitions that statically follows and stores it as the
+ * continuation of the transition. The executor then appends the continuation
+ * to the transition path in one go instead of looking up the outgoing
+ * transitions of each pseudo state of the chain on every event.</p>
+ *
+ * <p>
+ * Transitions are not altered in any other way: the original transitions, and
+ * thus their ids, are still the ones being fired and reported to listeners.</p>
+ *
+ * @see MutableTransition#continuation()
+ *
+ * @author Fabien Renaud
+ */
+public class CompoundTransitionVisitor extends SimpleVisitor {
+
+  @Override
+  public void visit(final ConnectionPointReference visitable) {
+  }
+
+  @Override
+  public void visit(final State visitable) {
+  }
+
+  @Override
+  public void visit(final PseudoState visitable) {
+  }
+
+  @Override
+  public void visit(final FinalState visitable) {
+  }
+
+  @Override
+  public void visit(final Region visitable) {
+  }
+
+  @Override
+  public void visit(final StateMachine visitable) {
+  }
+
+  @Override
+  public void visit(final Transition visitable) {
+    if (visitable instanceof MutableTransition) {
+      MutableTransition transition = (MutableTransition) visitable;
+      transition.setContinuation(continuation(transition));
+    }
+  }
+
+  /**
+   * Gets the chain of transitions that are always fired after the given
+   * transition.
+   *
+   * @param transition The transition that begins the chain.
+   * @return The transitions that statically follow {@code transition}, in
+   * firing order. The list is empty when the target of {@code transition} is
+   * not a static pseudo state.
+   */
+  static List<Transition> continuation(final Transition transition) {
+    final List<Transition> chain = new ArrayList<>();
+    final Set<Vertex> visited = new HashSet<>();
+
+    Transition next = staticOutgoing(transition.target());
+    while (next != null && visited.add(next.source())) {
+      chain.add(next);
+      next = staticOutgoing(next.target());
+    }
+    return chain;
+  }
+
+  /**
+   * Gets the only transition that can ever be taken out of a vertex.
+   *
+   * @param vertex Any vertex.
+   * @return The single outgoing transition of {@code vertex} when it is a
+   * junction, entry point or exit point with exactly one outgoing transition
+   * that has no guard; null otherwise.
+   */
+  private static Transition staticOutgoing(final Vertex vertex) {
+    if (!(vertex instanceof PseudoState)) {
+      return null;
+    }
+
+    switch (((PseudoState) vertex).kind()) {
+      case JUNCTION:
+      case ENTRY_POINT:
+      case EXIT_POINT:
+        Collection<? extends Transition> outgoing = vertex.outgoing();
+        if (outgoing.size() != 1) {
+          return null;
+        }
+        Transition t = outgoing.iterator().next();
+        if (t.guard() != null || !vertex.outgoing(CompletionEvent.INSTANCE).contains(t)) {
+          return null;
+        }
+        return t;
+      default:
+        return null;
+    }
+  }
+}
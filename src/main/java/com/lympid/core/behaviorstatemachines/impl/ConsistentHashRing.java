@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.Arrays;
+
+/**
+ * Maps keys to shards with consistent hashing.
+ *
+ * Every shard owns a fixed number of points, or virtual nodes, placed on a
+ * ring of 32 bit hashes. A key belongs to the shard owning the first point at
+ * or after the hash of the key. The points of a shard only depend on its
+ * index: going from {@code n} to {@code n + 1} shards only moves the keys
+ * that now fall on the points of the new shard, i.e. about
+ * {@code 1 / (n + 1)} of them. Keys that stay in place are not affected.
+ *
+ * @author Fabien Renaud
+ */
+final class ConsistentHashRing {
+
+  /**
+   * Number of points per shard. The more points, the more even the spread of
+   * the keys over the shards.
+   */
+  static final int VIRTUAL_NODES = 160;
+  private final int[] hashes;
+  private final int[] shards;
+  private final int size;
+
+  ConsistentHashRing(final int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Ring size must be positive: " + size);
+    }
+    this.size = size;
+
+    final long[] points = new long[size * VIRTUAL_NODES];
+    for (int s = 0; s < size; s++) {
+      for (int v = 0; v < VIRTUAL_NODES; v++) {
+        points[s * VIRTUAL_NODES + v] = ((long) mix(((long) s << 32) | v) << 32) | s;
+      }
+    }
+    Arrays.sort(points);
+
+    this.hashes = new int[points.length];
+    this.shards = new int[points.length];
+    for (int i = 0; i < points.length; i++) {
+      hashes[i] = (int) (points[i] >> 32);
+      shards[i] = (int) points[i];
+    }
+  }
+
+  /**
+   * Gets the number of shards of the ring.
+   *
+   * @return The number of shards.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Gets the shard a key belongs to.
+   *
+   * @param key Any object with a stable {@link Object#hashCode()}.
+   * @return The index of the shard, between 0 and {@link #size()} excluded.
+   */
+  int shard(final Object key) {
+    final int h = mix(key.hashCode());
+    int i = Arrays.binarySearch(hashes, h);
+    if (i < 0) {
+      i = -i - 1;
+      if (i == hashes.length) {
+        i = 0;
+      }
+    }
+    return shards[i];
+  }
+
+  /**
+   * Spreads the bits of a value over a 32 bit hash. This is the finalizer of
+   * SplitMix64.
+   */
+  private static int mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return (int) (z ^ (z >>> 31));
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.TransitionConstraint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Lookup table of the outgoing transitions of a choice pseudo state whose
+ * guards all test the same value extracted from the context.
+ *
+ * <p>
+ * Each case of the table is the guard of one outgoing transition of the
+ * choice. A case is either an equality to a value, a half-open range of values
+ * or the otherwise case which holds when no other case does. Equality cases
+ * are hashed and range cases are kept sorted by lower bound so that the case
+ * matching a key is found in O(1) or O(log n) instead of testing every guard
+ * in turn.</p>
+ *
+ * <p>
+ * Cases can still be evaluated one by one like any other guard. Cases may not
+ * overlap: no two equality cases have the same value, no two ranges share a
+ * value and no equality case lies within a range. At most one case therefore
+ * holds for any key and the lookup always agrees with evaluating the guards
+ * in declaration order.</p>
+ *
+ * @param <C> Type of the state machine context.
+ *
+ * @see com.lympid.core.behaviorstatemachines.builder.ChoiceBuilder
+ * @see DecisionTableVisitor
+ *
+ * @author Fabien Renaud
+ */
+public final class DecisionTable<C> {
+
+  private final Function<? super C, ?> key;
+  private final Map<Object, Case<C>> equalities = new HashMap<>();
+  private final List<Case<C>> ranges = new ArrayList<>();
+  private Case<C> otherwise;
+
+  /**
+   * Instantiates an empty decision table.
+   *
+   * @param key Extracts from the context the value all cases are tested
+   * against.
+   */
+  public DecisionTable(final Function<? super C, ?> key) {
+    this.key = key;
+  }
+
+  /**
+   * Adds a case that holds when the key equals the given value.
+   *
+   * @param value The value to compare the key to.
+   * @return The guard of the case.
+   * @throws IllegalArgumentException When the table already has a case for
+   * that value.
+   */
+  public Case<C> equalTo(final Object value) {
+    if (equalities.containsKey(value)
+      || (value != null && !ranges.isEmpty() && comparable(ranges.get(0).from, value) && lookupRange(value) != null)) {
+      throw new IllegalArgumentException("Value " + value + " overlaps another case.");
+    }
+
+    Case<C> c = new Case<>(this, value, null);
+    equalities.put(value, c);
+    return c;
+  }
+
+  /**
+   * Adds a case that holds when the key is greater than or equal to
+   * {@code fromInclusive} and strictly less than {@code toExclusive}.
+   *
+   * @param <K> Type of the key.
+   * @param fromInclusive The lower bound of the range.
+   * @param toExclusive The upper bound of the range.
+   * @return The guard of the case.
+   * @throws IllegalArgumentException When the range is empty, overlaps a
+   * range already in the table or contains the value of an equality case.
+   */
+  public <K extends Comparable<? super K>> Case<C> range(final K fromInclusive, final K toExclusive) {
+    if (fromInclusive.compareTo(toExclusive) >= 0) {
+      throw new IllegalArgumentException("Empty range [" + fromInclusive + ", " + toExclusive + ")");
+    }
+
+    int index = 0;
+    while (index < ranges.size() && compare(ranges.get(index).from, fromInclusive) < 0) {
+      index++;
+    }
+    if ((index > 0 && compare(ranges.get(index - 1).to, fromInclusive) > 0)
+      || (index < ranges.size() && compare(ranges.get(index).from, toExclusive) < 0)) {
+      throw new IllegalArgumentException("Range [" + fromInclusive + ", " + toExclusive + ") overlaps another range.");
+    }
+    for (Object value : equalities.keySet()) {
+      if (value != null && comparable(fromInclusive, value) && compare(fromInclusive, value) <= 0 && compare(toExclusive, value) > 0) {
+        throw new IllegalArgumentException("Range [" + fromInclusive + ", " + toExclusive + ") contains the value " + value + " of another case.");
+      }
+    }
+
+    Case<C> c = new Case<>(this, fromInclusive, toExclusive);
+    ranges.add(index, c);
+    return c;
+  }
+
+  /**
+   * Adds the case that holds when no other case does.
+   *
+   * @return The guard of the case.
+   * @throws IllegalStateException When the table already has an otherwise
+   * case.
+   */
+  public Case<C> otherwise() {
+    if (otherwise != null) {
+      throw new IllegalStateException("A decision table can only have one otherwise case.");
+    }
+    otherwise = new Case<>(this, null, null);
+    return otherwise;
+  }
+
+  /**
+   * Finds the case that holds for the given context.
+   *
+   * @param context The state machine context.
+   * @return The matching case, the otherwise case or null.
+   */
+  Case<C> lookup(final C context) {
+    Case<C> c = lookupKey(key.apply(context));
+    return c == null ? otherwise : c;
+  }
+
+  private Case<C> lookupKey(final Object k) {
+    Case<C> c = equalities.get(k);
+    if (c != null || k == null) {
+      return c;
+    }
+    return lookupRange(k);
+  }
+
+  private Case<C> lookupRange(final Object k) {
+    if (ranges.isEmpty()) {
+      return null;
+    }
+
+    /*
+     * Binary search for the last range whose lower bound is lower than or
+     * equal to the key.
+     */
+    int low = 0;
+    int high = ranges.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (compare(ranges.get(mid).from, k) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    if (high >= 0 && compare(ranges.get(high).to, k) > 0) {
+      return ranges.get(high);
+    }
+    return null;
+  }
+
+  private static boolean comparable(final Object bound, final Object k) {
+    return bound.getClass().isInstance(k);
+  }
+
+  private static int compare(final Object o1, final Object o2) {
+    return ((Comparable) o1).compareTo(o2);
+  }
+
+  /**
+   * A case of a decision table, used as the guard of an outgoing transition of
+   * a choice pseudo state.
+   *
+   * @param <C> Type of the state machine context.
+   */
+  public static final class Case<C> implements TransitionConstraint<C> {
+
+    private final DecisionTable<C> table;
+    private final Object from;
+    private final Object to;
+
+    private Case(final DecisionTable<C> table, final Object from, final Object to) {
+      this.table = table;
+      this.from = from;
+      this.to = to;
+    }
+
+    /**
+     * Gets the decision table this case belongs to.
+     *
+     * @return The decision table of this case.
+     */
+    public DecisionTable<C> table() {
+      return table;
+    }
+
+    @Override
+    public boolean test(final C ctx) {
+      if (this == table.otherwise) {
+        return table.lookupKey(table.key.apply(ctx)) == null;
+      }
+
+      Object k = table.key.apply(ctx);
+      if (to == null) {
+        return Objects.equals(from, k);
+      }
+      return k != null && compare(from, k) <= 0 && compare(to, k) > 0;
+    }
+
+  }
+}
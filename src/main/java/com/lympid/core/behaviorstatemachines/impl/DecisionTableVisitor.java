@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.PseudoStateKind;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Binds the decision table of every choice pseudo state to its outgoing
+ * transitions.
+ *
+ * <p>
+ * The outgoing transitions of a choice whose guards are cases of the same
+ * {@link DecisionTable} are indexed by case. The executor then finds the
+ * transition to fire with a single lookup in the table instead of evaluating
+ * every guard in turn. Outgoing transitions with other guards are only
+ * evaluated when no case of the table holds.</p>
+ *
+ * @see DecisionTable
+ * @see MutablePseudoState#setDecisionTable(DecisionTable, Map)
+ *
+ * @author Fabien Renaud
+ */
+public class DecisionTableVisitor extends SimpleVisitor {
+
+  @Override
+  public void visit(final ConnectionPointReference visitable) {
+  }
+
+  @Override
+  public void visit(final State visitable) {
+  }
+
+  @Override
+  public void visit(final PseudoState visitable) {
+    if (visitable.kind() != PseudoStateKind.CHOICE || !(visitable instanceof MutablePseudoState)) {
+      return;
+    }
+
+    DecisionTable table = null;
+    final Map<DecisionTable.Case, Transition> decisions = new IdentityHashMap<>();
+    for (Transition t : visitable.outgoing()) {
+      if (t.guard() instanceof DecisionTable.Case) {
+        DecisionTable.Case c = (DecisionTable.Case) t.guard();
+        if (table == null) {
+          table = c.table();
+        }
+        if (c.table() == table) {
+          decisions.putIfAbsent(c, t);
+        }
+      }
+    }
+
+    if (table != null) {
+      ((MutablePseudoState) visitable).setDecisionTable(table, decisions);
+    }
+  }
+
+  @Override
+  public void visit(final FinalState visitable) {
+  }
+
+  @Override
+  public void visit(final Region visitable) {
+  }
+
+  @Override
+  public void visit(final StateMachine visitable) {
+  }
+
+  @Override
+  public void visit(final Transition visitable) {
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the worker pool of an elastic
+ * {@link StateMachineShardPoolExecutor}.
+ *
+ * The shards of an elastic pool are virtual: there are usually many more of
+ * them than there are threads. Whenever a shard has pending tasks, it is
+ * scheduled on the worker pool and drained by the first idle worker. A shard
+ * is never drained by two workers at once, so the tasks of an executor are
+ * still run one at a time and in order, whichever worker runs them.
+ *
+ * The number of workers is adjusted between a minimum and a maximum depending
+ * on how busy they are. Utilization is sampled as tasks are run: the pool
+ * grows by one worker when utilization is above the high mark and shrinks by
+ * one worker when it is below the low mark.
+ *
+ * @see StateMachineShardPoolExecutor#StateMachineShardPoolExecutor(int,
+ * java.util.concurrent.ThreadFactory, MailboxConfiguration,
+ * ElasticConfiguration)
+ *
+ * @author Fabien Renaud
+ */
+public class ElasticConfiguration {
+
+  private int minThreads = 1;
+  private int maxThreads = Runtime.getRuntime().availableProcessors();
+  private int throughput = 64;
+  private long samplePeriod = TimeUnit.MILLISECONDS.toNanos(100);
+  private double lowUtilization = 0.25;
+  private double highUtilization = 0.75;
+
+  public ElasticConfiguration() {
+  }
+
+  /**
+   * Sets the number of workers the pool never shrinks below. These workers
+   * are started along with the pool.
+   *
+   * Default is 1.
+   *
+   * @param minThreads The minimum number of workers.
+   * @return Returns the current configuration instance.
+   */
+  public ElasticConfiguration minThreads(final int minThreads) {
+    if (minThreads <= 0) {
+      throw new IllegalArgumentException("Thread count must be positive: " + minThreads);
+    }
+    this.minThreads = minThreads;
+    return this;
+  }
+
+  /**
+   * Gets the minimum number of workers.
+   *
+   * @return The minimum number of workers.
+   */
+  int minThreads() {
+    return minThreads;
+  }
+
+  /**
+   * Sets the number of workers the pool never grows beyond.
+   *
+   * Default is the number of available processors.
+   *
+   * @param maxThreads The maximum number of workers.
+   * @return Returns the current configuration instance.
+   */
+  public ElasticConfiguration maxThreads(final int maxThreads) {
+    if (maxThreads <= 0) {
+      throw new IllegalArgumentException("Thread count must be positive: " + maxThreads);
+    }
+    this.maxThreads = maxThreads;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of workers.
+   *
+   * @return The maximum number of workers.
+   */
+  int maxThreads() {
+    return maxThreads;
+  }
+
+  /**
+   * Sets the maximum number of tasks a worker runs from a shard before moving
+   * on to the next pending shard. Lower values are fairer to the other
+   * shards, higher values reschedule busy shards less often.
+   *
+   * Default is 64.
+   *
+   * @param throughput The maximum number of tasks run per shard at once.
+   * @return Returns the current configuration instance.
+   */
+  public ElasticConfiguration throughput(final int throughput) {
+    if (throughput <= 0) {
+      throw new IllegalArgumentException("Throughput must be positive: " + throughput);
+    }
+    this.throughput = throughput;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of tasks run per shard at once.
+   *
+   * @return The maximum number of tasks run per shard at once.
+   */
+  int throughput() {
+    return throughput;
+  }
+
+  /**
+   * Sets how often the utilization of the workers is sampled and the size of
+   * the pool adjusted.
+   *
+   * Default is 100 milliseconds.
+   *
+   * @param samplePeriod The time between two samples.
+   * @param unit The time unit of {@code samplePeriod}.
+   * @return Returns the current configuration instance.
+   */
+  public ElasticConfiguration samplePeriod(final long samplePeriod, final TimeUnit unit) {
+    if (samplePeriod <= 0) {
+      throw new IllegalArgumentException("Sample period must be positive: " + samplePeriod);
+    }
+    this.samplePeriod = unit.toNanos(samplePeriod);
+    return this;
+  }
+
+  /**
+   * Gets the time between two samples, in nanoseconds.
+   *
+   * @return The time between two samples, in nanoseconds.
+   */
+  long samplePeriod() {
+    return samplePeriod;
+  }
+
+  /**
+   * Sets the utilization marks, between 0 and 1, below which the pool shrinks
+   * and above which it grows. Utilization is the share of the time the
+   * workers spent running tasks since the previous sample.
+   *
+   * Default is 0.25 and 0.75.
+   *
+   * @param low The utilization below which a worker is stopped.
+   * @param high The utilization above which a worker is added.
+   * @return Returns the current configuration instance.
+   */
+  public ElasticConfiguration utilization(final double low, final double high) {
+    if (low < 0 || high > 1 || low >= high) {
+      throw new IllegalArgumentException("Utilization marks must be such that 0 <= low < high <= 1: " + low + ", " + high);
+    }
+    this.lowUtilization = low;
+    this.highUtilization = high;
+    return this;
+  }
+
+  /**
+   * Gets the utilization below which the pool shrinks.
+   *
+   * @return The low utilization mark.
+   */
+  double lowUtilization() {
+    return lowUtilization;
+  }
+
+  /**
+   * Gets the utilization above which the pool grows.
+   *
+   * @return The high utilization mark.
+   */
+  double highUtilization() {
+    return highUtilization;
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Thread of a {@link StateMachineEventLoopGroup}. Runs the tasks of the
+ * executors it owns and fires their timers.
+ *
+ * <p>
+ * Tasks queued by other threads go through a lock-free inbox. Tasks queued by
+ * the loop thread itself, e.g. events taken by behaviors, go into a local
+ * queue and are run once the current task is done, with no synchronization at
+ * all. Timers are kept in a {@link TimerWheel} only the loop thread touches:
+ * scheduling, firing and cancelling them never crosses threads.</p>
+ *
+ * <p>
+ * The loop parks when it has nothing to do, until the next tick of the wheel
+ * when timers are pending.</p>
+ *
+ * @author Fabien Renaud
+ */
+final class EventLoop implements Runnable {
+
+  /**
+   * Maximum number of tasks of the inbox run before timers are expired again.
+   */
+  private static final int INBOX_BATCH = 256;
+  private static final int RUNNING = 0;
+  private static final int SHUTDOWN = 1;
+  private static final int STOPPED = 2;
+
+  private final ConcurrentLinkedQueue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+  private final ArrayDeque<Runnable> local = new ArrayDeque<>();
+  private final TimerWheel timers;
+  private final Thread thread;
+  private final CountDownLatch terminated = new CountDownLatch(1);
+  private volatile int state = RUNNING;
+  private volatile boolean parked;
+
+  EventLoop(final ThreadFactory threadFactory, final int wheelSize, final long tickNanos) {
+    this.timers = new TimerWheel(wheelSize, tickNanos, System.nanoTime());
+    this.thread = threadFactory.newThread(this);
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  /**
+   * Gets whether the calling thread is the thread of this loop.
+   *
+   * @return true when called from the loop.
+   */
+  boolean inLoop() {
+    return Thread.currentThread() == thread;
+  }
+
+  /**
+   * Queues a task. Tasks queued by a thread are run in the order they were
+   * queued in.
+   *
+   * @param task The task to run on the loop.
+   * @throws RejectedExecutionException When the loop is shut down.
+   */
+  void execute(final Runnable task) {
+    if (inLoop()) {
+      local.addLast(task);
+      return;
+    }
+    if (state != RUNNING) {
+      throw new RejectedExecutionException("Event loop is shut down.");
+    }
+    inbox.offer(task);
+    if (parked) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * Queues a task whose future can be cancelled without ever interrupting the
+   * loop thread.
+   *
+   * @param task The task to run on the loop.
+   * @return The future of the task.
+   */
+  Future<?> submit(final Runnable task) {
+    final FutureTask<?> f = new LoopTask(task);
+    execute(f);
+    return f;
+  }
+
+  /**
+   * Schedules a task on the timer wheel of the loop. Must be called from the
+   * loop.
+   *
+   * @param task The task to run once the delay has elapsed.
+   * @param delay The delay.
+   * @param unit The time unit of {@code delay}.
+   * @return The timer, to cancel the task with from the loop.
+   */
+  Future<?> schedule(final Runnable task, final long delay, final TimeUnit unit) {
+    assert inLoop();
+    return timers.schedule(task, delay, unit, System.nanoTime());
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (state != STOPPED) {
+        runLocal();
+        Runnable task;
+        int count = 0;
+        while (count++ < INBOX_BATCH && (task = inbox.poll()) != null) {
+          run(task);
+          runLocal();
+        }
+        if (!timers.isEmpty()) {
+          timers.expire(System.nanoTime());
+          runLocal();
+        }
+        if (inbox.isEmpty()) {
+          if (state == SHUTDOWN) {
+            break;
+          }
+          park();
+        }
+      }
+    } finally {
+      terminated.countDown();
+    }
+  }
+
+  private void runLocal() {
+    Runnable task;
+    while (state != STOPPED && (task = local.pollFirst()) != null) {
+      run(task);
+    }
+  }
+
+  private void run(final Runnable task) {
+    try {
+      task.run();
+    } catch (RuntimeException | Error ex) {
+      thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+    }
+  }
+
+  private void park() {
+    parked = true;
+    if (inbox.isEmpty() && state == RUNNING) {
+      if (timers.isEmpty()) {
+        LockSupport.park(this);
+      } else {
+        LockSupport.parkNanos(this, timers.nanosToNextTick(System.nanoTime()));
+      }
+    }
+    parked = false;
+    Thread.interrupted();
+  }
+
+  /**
+   * Stops accepting tasks from other threads. The loop runs the tasks already
+   * queued, drops its pending timers and terminates.
+   */
+  void shutdown() {
+    if (state == RUNNING) {
+      state = SHUTDOWN;
+    }
+    LockSupport.unpark(thread);
+  }
+
+  /**
+   * Stops the loop once the task being run, if any, is done.
+   *
+   * @return The tasks queued by other threads that were never run.
+   */
+  List<Runnable> shutdownNow() {
+    state = STOPPED;
+    LockSupport.unpark(thread);
+    final List<Runnable> list = new ArrayList<>();
+    Runnable task;
+    while ((task = inbox.poll()) != null) {
+      list.add(task);
+    }
+    return list;
+  }
+
+  boolean isShutdown() {
+    return state != RUNNING;
+  }
+
+  boolean isTerminated() {
+    return terminated.getCount() == 0;
+  }
+
+  boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return terminated.await(timeout, unit);
+  }
+
+  /**
+   * Task cancelled without interrupting the loop, which may be running the
+   * task that cancels it.
+   */
+  private static final class LoopTask extends FutureTask<Object> {
+
+    LoopTask(final Runnable task) {
+      super(task, null);
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      return super.cancel(false);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+import com.lympid.core.basicbehaviors.TimeEvent;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.StateMachineSnapshot;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor run by an event loop of a {@link StateMachineEventLoopGroup}.
+ *
+ * All the tasks of the executor are run on the thread of its loop. Events
+ * taken by the loop thread itself, e.g. by behaviors, are processed once the
+ * current run-to-completion step is done. Time events are scheduled on the
+ * timer wheel of the loop and processed by the loop right when they fire.
+ *
+ * @author Fabien Renaud
+ */
+public class EventLoopStateMachineExecutor<C> extends AbstractStateMachineExecutor<C> {
+
+  private final EventLoop loop;
+  private final ScheduledExecutorService background;
+
+  private EventLoopStateMachineExecutor(
+    final int id,
+    final String name,
+    final StateMachine machine,
+    final C context,
+    final ExecutorConfiguration configuration,
+    final StateMachineSnapshot<C> snapshot,
+    final StateMachineEventLoopGroup<C> group,
+    final Object loopKey
+  ) {
+    super(id, name, machine, context, configuration, snapshot);
+    this.loop = group.loop(loopKey == null ? id : loopKey);
+    this.background = configuration.executor();
+  }
+
+  @Override
+  public void go() {
+    loop.execute(this::doGo);
+  }
+
+  private void doGo() {
+    super.go();
+  }
+
+  @Override
+  public void take(final Event event) {
+    loop.execute(() -> doTake(event));
+  }
+
+  private void doTake(final Event event) {
+    super.take(event);
+  }
+
+  @Override
+  public void take(final EventType type) {
+    loop.execute(() -> doTake(type));
+  }
+
+  private void doTake(final EventType type) {
+    super.take(type);
+  }
+
+  @Override
+  protected void take(final Event event, final State state) {
+    if (loop.inLoop()) {
+      super.take(event, state);
+    } else {
+      loop.execute(() -> doTake(event, state));
+    }
+  }
+
+  private void doTake(final Event event, final State state) {
+    super.take(event, state);
+  }
+
+  @Override
+  protected void takeCompletionEvent() {
+    if (loop.inLoop()) {
+      super.takeCompletionEvent();
+    } else {
+      loop.execute(this::doTakeCompletionEvent);
+    }
+  }
+
+  private void doTakeCompletionEvent() {
+    super.takeCompletionEvent();
+  }
+
+  @Override
+  public void resume() {
+    loop.execute(this::doResume);
+  }
+
+  private void doResume() {
+    super.resume();
+  }
+
+  @Override
+  public void pause() {
+    loop.execute(this::doPause);
+  }
+
+  private void doPause() {
+    super.pause();
+  }
+
+  @Override
+  public StateMachineSnapshot<C> snapshot() {
+    if (loop.inLoop()) {
+      return super.snapshot();
+    }
+
+    final FutureTask<StateMachineSnapshot<C>> f = new FutureTask<>(this::doSnapshot);
+    loop.execute(f);
+    return await(f, this);
+  }
+
+  private StateMachineSnapshot<C> doSnapshot() {
+    return super.snapshot();
+  }
+
+  /**
+   * Schedules the time event on the timer wheel of the loop. The time event
+   * is processed by the loop as soon as it fires.
+   */
+  @Override
+  protected Future scheduleEvent(final TimeEvent event, final State state, final long delay) {
+    return loop.schedule(() -> take(event, state), delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Runs the activity on the loop unless the configuration of the executor
+   * has an executor service.
+   */
+  @Override
+  protected Future<?> submitActivity(final Runnable activity) {
+    return background == null ? loop.submit(activity) : super.submitActivity(activity);
+  }
+
+  @Override
+  protected boolean hasBackgroundExecutor() {
+    return true;
+  }
+
+  public static final class Builder<C> extends AbstractBuilder<C> {
+
+    private final StateMachineEventLoopGroup<C> group;
+    private Object loopKey;
+
+    public Builder(final StateMachineEventLoopGroup<C> group) {
+      this.group = group;
+    }
+
+    /**
+     * Sets the key routing the executor to its loop. Executors built with
+     * equal keys run on the same loop.
+     *
+     * Default is null, i.e. the executor is routed by its id.
+     *
+     * @param loopKey Any object with a stable {@link Object#hashCode()} or
+     * null.
+     * @return Returns the current builder instance.
+     * @see StateMachineEventLoopGroup#loopOf(Object)
+     */
+    public Builder<C> setLoopKey(final Object loopKey) {
+      this.loopKey = loopKey;
+      return this;
+    }
+
+    @Override
+    public StateMachineExecutor<C> build() {
+      return new EventLoopStateMachineExecutor<>(
+        getId(),
+        getName(),
+        getMachine(),
+        getContext(),
+        getConfiguration(),
+        getSnapshot(),
+        group,
+        loopKey
+      );
+    }
+
+  }
+}
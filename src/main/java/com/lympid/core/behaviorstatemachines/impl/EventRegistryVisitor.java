@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.TimeEvent;
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.common.Trigger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interns the events triggering the transitions of a state machine and its
+ * sub machines into an event registry.
+ *
+ * <p>
+ * Every vertex also gets its outgoing transitions indexed by event code. Once
+ * the executor knows the code of the event it processes, it finds the
+ * candidate transitions of a vertex by indexing an array instead of hashing
+ * the event into a map for every vertex it visits.</p>
+ *
+ * @see MutableEventRegistry
+ * @see MutableVertex#outgoing(int)
+ *
+ * @author Fabien Renaud
+ */
+public class EventRegistryVisitor extends SimpleVisitor {
+
+  private final MutableEventRegistry registry = new MutableEventRegistry();
+
+  public MutableEventRegistry getRegistry() {
+    return registry;
+  }
+
+  @Override
+  public void visit(final ConnectionPointReference visitable) {
+    index(visitable);
+  }
+
+  @Override
+  public void visit(final State visitable) {
+    index(visitable);
+  }
+
+  @Override
+  public void visit(final PseudoState visitable) {
+    index(visitable);
+  }
+
+  @Override
+  public void visit(final FinalState visitable) {
+    index(visitable);
+  }
+
+  @Override
+  public void visit(final Region visitable) {
+  }
+
+  @Override
+  public void visit(final StateMachine visitable) {
+  }
+
+  @Override
+  public void visit(final Transition visitable) {
+  }
+
+  private void index(final Vertex vertex) {
+    if (!(vertex instanceof MutableVertex)) {
+      return;
+    }
+
+    final MutableVertex mutable = (MutableVertex) vertex;
+    final List<Event> events = new ArrayList<>();
+    int maxCode = -1;
+    for (Transition t : vertex.outgoing()) {
+      for (Trigger tr : t.triggers()) {
+        Event event = tr.event();
+        if (!(event instanceof TimeEvent) && !events.contains(event)) {
+          events.add(event);
+          maxCode = Math.max(maxCode, registry.register(event).code());
+        }
+      }
+    }
+
+    final List<Transition>[] byCode = new List[maxCode + 1];
+    for (Event event : events) {
+      byCode[registry.code(event)] = (List<Transition>) mutable.outgoing(event);
+    }
+    mutable.setOutgoingByCode(byCode);
+  }
+}
@@ -15,6 +15,8 @@
  */
 package com.lympid.core.behaviorstatemachines.impl;
 
+import com.lympid.core.behaviorstatemachines.metrics.StateMachineMetrics;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 
 /**
@@ -30,6 +32,10 @@ public class ExecutorConfiguration {
   private DefaultEntryRule defaultEntryRule = DefaultEntryRule.INITIAL;
   private DefaultHistoryFailover defaultHistoryFailover = DefaultHistoryFailover.EXCEPTION;
   private ScheduledExecutorService executor;
+  private boolean guardMemoization;
+  private GuardOrdering guardOrdering = GuardOrdering.DECLARATION;
+  private StateMachineMetrics metrics;
+  private ForkJoinPool parallelRegions;
 
   public ExecutorConfiguration() {
   }
@@ -128,9 +134,9 @@ public class ExecutorConfiguration {
    *
    * If set, this will be used for: - activities: activities will always be run
    * in background - kick off timers for transactions which accept time events.
-   * - orthogonal states: orthogonal states will be executed concurrently with
-   * the given scheduled executor service under the condition that the
-   * 'concurrentOrthogonal' property has been enabled.
+   *
+   * Orthogonal regions are run concurrently by the pool set with
+   * {@link #parallelRegions(ForkJoinPool)}, not by this executor service.
    *
    * @param executor The scheduled executor service for the state machine.
    * @return Returns the current configuration instance.
@@ -149,6 +155,132 @@ public class ExecutorConfiguration {
     return executor;
   }
 
+  /**
+   * Sets whether guard results are memoized for the duration of a
+   * run-to-completion step.
+   *
+   * When enabled, a guard evaluated more than once for the same transition and
+   * the same event within a step, e.g. when several enabled transitions lead
+   * to the same junction, is only evaluated the first time. All memoized
+   * results are forgotten as soon as a transition effect, an entry behavior or
+   * an exit behavior runs, and when the step ends.
+   *
+   * Guards must only depend on the event and the context for this to be safe.
+   * Activities running in background while a step is processed are not
+   * tracked. Listeners for guard execution are only notified when a guard is
+   * actually evaluated.
+   *
+   * Default is false.
+   *
+   * @param guardMemoization Set to true to memoize guard results.
+   * @return Returns the current configuration instance.
+   */
+  public ExecutorConfiguration guardMemoization(final boolean guardMemoization) {
+    this.guardMemoization = guardMemoization;
+    return this;
+  }
+
+  /**
+   * Gets whether guard results are memoized within a run-to-completion step.
+   *
+   * Default is false.
+   *
+   * @return true when guard results are memoized.
+   */
+  boolean guardMemoization() {
+    return guardMemoization;
+  }
+
+  /**
+   * Sets the order in which the outgoing transitions of a vertex are tested
+   * for a given event.
+   *
+   * Default is DECLARATION.
+   *
+   * @param guardOrdering The guard ordering.
+   * @return Returns the current configuration instance.
+   */
+  public ExecutorConfiguration guardOrdering(final GuardOrdering guardOrdering) {
+    this.guardOrdering = guardOrdering;
+    return this;
+  }
+
+  /**
+   * Gets the order in which the outgoing transitions of a vertex are tested
+   * for a given event.
+   *
+   * Default is DECLARATION.
+   *
+   * @return The guard ordering.
+   */
+  GuardOrdering guardOrdering() {
+    return guardOrdering;
+  }
+
+  /**
+   * Sets the metrics the executor reports to.
+   *
+   * When set, every executor created with this configuration measures how
+   * long it takes to process events and to run guards, effects, entry and exit
+   * behaviors and activities, and counts accepted and denied events. Executors
+   * sharing the same configuration aggregate their measures in the same
+   * metrics.
+   *
+   * Default is null, i.e. no metrics.
+   *
+   * @param metrics The metrics to report to or null.
+   * @return Returns the current configuration instance.
+   */
+  public ExecutorConfiguration metrics(final StateMachineMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
+  /**
+   * Gets the metrics executors report to.
+   *
+   * @return The metrics or null.
+   */
+  StateMachineMetrics metrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets the fork-join pool on which orthogonal regions run in parallel.
+   *
+   * When set, the transitions an event fires in distinct orthogonal regions
+   * are fired concurrently, and so are the entries of the regions of an
+   * orthogonal state. The run-to-completion step waits for all of them before
+   * completing. Within a region, exit behaviors, effects and entry behaviors
+   * still run in order. Once a region terminates the state machine, the other
+   * regions still complete their transitions.
+   *
+   * By setting this pool, the user declares all the behaviors of the state
+   * machine region-safe: the behaviors of distinct regions may run at the same
+   * time and must only share thread-safe parts of the context. Listeners must
+   * be thread-safe too. Guard memoization and guard orderings other than
+   * DECLARATION can not be used along with parallel regions.
+   *
+   * Default is null, i.e. regions are run one after another by the thread
+   * processing the event.
+   *
+   * @param parallelRegions The fork-join pool to run regions on or null.
+   * @return Returns the current configuration instance.
+   */
+  public ExecutorConfiguration parallelRegions(final ForkJoinPool parallelRegions) {
+    this.parallelRegions = parallelRegions;
+    return this;
+  }
+
+  /**
+   * Gets the fork-join pool on which orthogonal regions run in parallel.
+   *
+   * @return The fork-join pool or null when regions run sequentially.
+   */
+  ForkJoinPool parallelRegions() {
+    return parallelRegions;
+  }
+
   /**
    * Rules for when a transition terminates on an enclosing state and the
    * enclosed regions do not have an initial pseudostate.
@@ -209,4 +341,42 @@ public class ExecutorConfiguration {
     DISABLE_TRANSITION
     // more?
   }
+
+  /**
+   * Orders in which the outgoing transitions of a vertex that are triggered by
+   * the same event are tested.
+   *
+   * From UML superstructure 2.4.1, chapter 15.3.12 StateMachine # Conflicting
+   * transitions: if more than one transition within the same state machine is
+   * enabled, [...] one of them is selected [...] at random. Transitions leaving
+   * the same vertex on the same event therefore have no priority between them
+   * and may be tested in any order.
+   */
+  public enum GuardOrdering {
+
+    /**
+     * Transitions are tested in the order they were declared in and all of
+     * them are tested. The first enabled one is fired.
+     */
+    DECLARATION,
+    /**
+     * Same as DECLARATION but the hit and miss counts of every guard are
+     * recorded.
+     *
+     * @see GuardStatistics
+     */
+    STATISTICS,
+    /**
+     * Hit and miss counts of every guard are recorded and transitions are
+     * tested from the most to the least likely to be enabled. Testing stops at
+     * the first enabled transition, except for fork vertices.
+     *
+     * Which transition is fired when several are enabled at once depends on the
+     * history of the executor. Do not use this ordering when the declaration
+     * order matters.
+     *
+     * @see GuardStatistics
+     */
+    ADAPTIVE
+  }
 }
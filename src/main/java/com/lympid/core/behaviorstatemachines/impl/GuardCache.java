@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import java.util.Arrays;
+
+/**
+ * Remembers the results of the guards evaluated during one run-to-completion
+ * step.
+ *
+ * <p>
+ * Results are indexed by transition ordinal. Each result is stamped with the
+ * epoch it was computed in and with the event it was computed for. Invalidating
+ * the cache only moves to the next epoch, which makes every stored result
+ * stale at once without clearing anything.</p>
+ *
+ * <p>
+ * This class is not thread safe. It must only be accessed by the thread
+ * currently running the step of its executor.</p>
+ *
+ * @see ExecutorConfiguration#guardMemoization(boolean)
+ * @see MutableTransition#ordinal()
+ *
+ * @author Fabien Renaud
+ */
+final class GuardCache {
+
+  private final boolean[] results;
+  private final Event[] events;
+  private final int[] epochs;
+  private int epoch = 1;
+
+  GuardCache(final int size) {
+    this.results = new boolean[size];
+    this.events = new Event[size];
+    this.epochs = new int[size];
+  }
+
+  /**
+   * Gets whether a result is known for the given transition and event in the
+   * current epoch.
+   *
+   * @param ordinal The ordinal of the transition.
+   * @param event The event the guard is evaluated against.
+   * @return true when {@link #get(int)} can be used.
+   */
+  boolean contains(final int ordinal, final Event event) {
+    return ordinal >= 0 && ordinal < epochs.length
+      && epochs[ordinal] == epoch
+      && events[ordinal] == event;
+  }
+
+  boolean get(final int ordinal) {
+    return results[ordinal];
+  }
+
+  void put(final int ordinal, final Event event, final boolean result) {
+    if (ordinal >= 0 && ordinal < epochs.length) {
+      results[ordinal] = result;
+      events[ordinal] = event;
+      epochs[ordinal] = epoch;
+    }
+  }
+
+  /**
+   * Makes all the results currently stored stale.
+   */
+  void invalidate() {
+    if (++epoch == 0) {
+      /*
+       * The epoch wrapped around: old stamps could match again.
+       */
+      Arrays.fill(epochs, 0);
+      Arrays.fill(events, null);
+      epoch = 1;
+    }
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.Transition;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Hit and miss counts of the guards of the transitions of a state machine, as
+ * observed by one executor.
+ *
+ * <p>
+ * A hit is a guard that evaluated to true, a miss a guard that evaluated to
+ * false or threw an exception. Transitions without guards are never counted.
+ * </p>
+ *
+ * <p>
+ * When the executor is configured with
+ * {@link ExecutorConfiguration.GuardOrdering#ADAPTIVE}, these statistics also
+ * drive the order in which the outgoing transitions of a vertex are tested for
+ * a given event: every time a transition is fired, it moves one rank up if its
+ * selectivity is higher than the one of the transition tested right before it.
+ * Transitions without guards are never moved and guarded transitions are
+ * never moved ahead of them: an unguarded transition is always enabled and
+ * would otherwise hide the guarded transitions declared before it.
+ * </p>
+ *
+ * <p>
+ * Counts are updated by the thread running the executor. Reading them from
+ * another thread may return slightly outdated values.</p>
+ *
+ * @see ExecutorConfiguration#guardOrdering(ExecutorConfiguration.GuardOrdering)
+ * @see AbstractStateMachineExecutor#guardStatistics()
+ *
+ * @author Fabien Renaud
+ */
+public final class GuardStatistics {
+
+  private final long[] hits;
+  private final long[] misses;
+  private final Map<Collection<?>, Transition[]> orders = new IdentityHashMap<>();
+
+  GuardStatistics(final int size) {
+    this.hits = new long[size];
+    this.misses = new long[size];
+  }
+
+  /**
+   * Gets the number of times the guard of the given transition evaluated to
+   * true.
+   *
+   * @param transition A transition of the state machine.
+   * @return The number of hits.
+   */
+  public long hits(final Transition transition) {
+    int ordinal = ordinal(transition);
+    return ordinal < 0 ? 0 : hits[ordinal];
+  }
+
+  /**
+   * Gets the number of times the guard of the given transition evaluated to
+   * false or failed.
+   *
+   * @param transition A transition of the state machine.
+   * @return The number of misses.
+   */
+  public long misses(final Transition transition) {
+    int ordinal = ordinal(transition);
+    return ordinal < 0 ? 0 : misses[ordinal];
+  }
+
+  /**
+   * Gets the ratio of hits over the number of times the guard of the given
+   * transition was evaluated.
+   *
+   * @param transition A transition of the state machine.
+   * @return 1 when the transition has no guard, 0 when its guard has never
+   * been evaluated, a value between 0 and 1 otherwise.
+   */
+  public double selectivity(final Transition transition) {
+    if (transition.guard() == null) {
+      return 1;
+    }
+    int ordinal = ordinal(transition);
+    if (ordinal < 0) {
+      return 0;
+    }
+    long total = hits[ordinal] + misses[ordinal];
+    return total == 0 ? 0 : (double) hits[ordinal] / total;
+  }
+
+  /**
+   * Resets all counts to 0. The current evaluation orders are kept and will
+   * adapt again from there.
+   */
+  public void reset() {
+    Arrays.fill(hits, 0);
+    Arrays.fill(misses, 0);
+  }
+
+  void record(final Transition transition, final boolean result) {
+    int ordinal = ordinal(transition);
+    if (ordinal >= 0) {
+      if (result) {
+        hits[ordinal]++;
+      } else {
+        misses[ordinal]++;
+      }
+    }
+  }
+
+  /**
+   * Gets the current evaluation order of the given outgoing transitions.
+   *
+   * @param candidates Outgoing transitions of a vertex for an event, as
+   * returned by {@link com.lympid.core.behaviorstatemachines.Vertex#outgoing(com.lympid.core.basicbehaviors.Event)}.
+   * @return The transitions in the order they should be tested in.
+   */
+  Transition[] order(final Collection<? extends Transition> candidates) {
+    Transition[] order = orders.get(candidates);
+    if (order == null) {
+      order = candidates.toArray(new Transition[candidates.size()]);
+      orders.put(candidates, order);
+    }
+    return order;
+  }
+
+  /**
+   * Moves the transition that has just been fired one rank up in its
+   * evaluation order when its selectivity is higher than its predecessor's.
+   * Neither of them may be unguarded.
+   *
+   * @param order An evaluation order returned by {@link #order(Collection)}.
+   * @param index The index of the fired transition in {@code order}.
+   */
+  void promote(final Transition[] order, final int index) {
+    if (index > 0
+      && order[index].guard() != null
+      && order[index - 1].guard() != null
+      && selectivity(order[index]) > selectivity(order[index - 1])) {
+      Transition t = order[index];
+      order[index] = order[index - 1];
+      order[index - 1] = t;
+    }
+  }
+
+  private int ordinal(final Transition transition) {
+    if (transition instanceof MutableTransition) {
+      int ordinal = ((MutableTransition) transition).ordinal();
+      if (ordinal < hits.length) {
+        return ordinal;
+      }
+    }
+    return -1;
+  }
+
+}
@@ -34,11 +34,13 @@ public class ImmutableStateMachineMeta implements StateMachineMeta {
   private final boolean completionEvents;
   private final boolean timeEvents;
   private final boolean activities;
+  private final boolean blockingActivities;
   private final Map<PseudoStateKind, Integer> pseudoStateCounts;
   private final Map<String, State> stateById;
   private final Map<String, Region> regionById;
   private final int treeDepth;
   private final int countOfLeaves;
+  private final int countOfTransitions;
 
   public ImmutableStateMachineMeta(final MutableStateMachineMeta meta) {
     this.simpleStates = meta.hasSimpleStates();
@@ -48,11 +50,13 @@ public class ImmutableStateMachineMeta implements StateMachineMeta {
     this.completionEvents = meta.hasCompletionEvents();
     this.timeEvents = meta.hasTimeEvents();
     this.activities = meta.hasActivities();
+    this.blockingActivities = meta.hasBlockingActivities();
     this.pseudoStateCounts = meta.pseudoStateCounts();
     this.stateById = meta.stateById();
     this.regionById = meta.regionById();
     this.treeDepth = meta.treeDepth();
     this.countOfLeaves = meta.countOfLeaves();
+    this.countOfTransitions = meta.countOfTransitions();
   }
 
   @Override
@@ -90,6 +94,11 @@ public class ImmutableStateMachineMeta implements StateMachineMeta {
     return activities;
   }
 
+  @Override
+  public boolean hasBlockingActivities() {
+    return blockingActivities;
+  }
+
   @Override
   public int countOf(final PseudoStateKind kind) {
     return pseudoStateCounts.get(kind);
@@ -105,6 +114,11 @@ public class ImmutableStateMachineMeta implements StateMachineMeta {
     return countOfLeaves;
   }
 
+  @Override
+  public int countOfTransitions() {
+    return countOfTransitions;
+  }
+
   @Override
   public State state(final String id) {
     return stateById.get(id);
@@ -16,6 +16,7 @@
 package com.lympid.core.behaviorstatemachines.impl;
 
 import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachine;
 import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
@@ -67,6 +68,16 @@ public class LockStateMachineExecutor<C> extends AbstractStateMachineExecutor<C>
     }
   }
 
+  @Override
+  public void take(final EventType type) {
+    lock.writeLock().lock();
+    try {
+      super.take(type);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
   @Override
   protected synchronized void take(final Event event, final State state) {
     lock.writeLock().lock();
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the mailboxes of a {@link StateMachineShardPoolExecutor}.
+ *
+ * Only the events given to {@link PoolStateMachineExecutor#take} count against
+ * the capacities. Time events, completion events and the commands to start,
+ * pause, resume or snapshot an executor are internal to the state machine and
+ * are always accepted.
+ *
+ * @see StateMachineShardPoolExecutor#StateMachineShardPoolExecutor(int,
+ * java.util.concurrent.ThreadFactory, MailboxConfiguration)
+ *
+ * @author Fabien Renaud
+ */
+public class MailboxConfiguration {
+
+  public static final MailboxConfiguration DEFAULT = new MailboxConfiguration();
+
+  private int shardCapacity = Integer.MAX_VALUE;
+  private int executorCapacity = Integer.MAX_VALUE;
+  private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+  private long maxLatency = Long.MAX_VALUE;
+  private int maxBatchSize = 1;
+  private int ringCapacity = 1024;
+  private MailboxListener listener;
+
+  public MailboxConfiguration() {
+  }
+
+  /**
+   * Sets the maximum number of pending events per shard, all executors of the
+   * shard included.
+   *
+   * Default is unbounded.
+   *
+   * @param shardCapacity The maximum number of pending events of a shard.
+   * @return Returns the current configuration instance.
+   */
+  public MailboxConfiguration shardCapacity(final int shardCapacity) {
+    if (shardCapacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + shardCapacity);
+    }
+    this.shardCapacity = shardCapacity;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of pending events per shard.
+   *
+   * @return The maximum number of pending events of a shard.
+   */
+  int shardCapacity() {
+    return shardCapacity;
+  }
+
+  /**
+   * Sets the maximum number of pending events per executor.
+   *
+   * Default is unbounded.
+   *
+   * @param executorCapacity The maximum number of pending events of an
+   * executor.
+   * @return Returns the current configuration instance.
+   */
+  public MailboxConfiguration executorCapacity(final int executorCapacity) {
+    if (executorCapacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + executorCapacity);
+    }
+    this.executorCapacity = executorCapacity;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of pending events per executor.
+   *
+   * @return The maximum number of pending events of an executor.
+   */
+  int executorCapacity() {
+    return executorCapacity;
+  }
+
+  /**
+   * Sets what happens to an event that does not fit in its mailbox.
+   *
+   * Default is BLOCK.
+   *
+   * @param overflowPolicy The overflow policy.
+   * @return Returns the current configuration instance.
+   */
+  public MailboxConfiguration overflowPolicy(final OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+
+  /**
+   * Gets what happens to an event that does not fit in its mailbox.
+   *
+   * @return The overflow policy.
+   */
+  OverflowPolicy overflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Sets the maximum time an event may wait in the mailbox of a shard before
+   * the shard starts shedding new events. Only used by the
+   * {@link OverflowPolicy#SHED} policy.
+   *
+   * Default is unbounded.
+   *
+   * @param maxLatency The maximum queuing latency.
+   * @param unit The time unit of {@code maxLatency}.
+   * @return Returns the current configuration instance.
+   */
+  public MailboxConfiguration maxLatency(final long maxLatency, final TimeUnit unit) {
+    this.maxLatency = unit.toNanos(maxLatency);
+    return this;
+  }
+
+  /**
+   * Gets the maximum queuing latency, in nanoseconds.
+   *
+   * @return The maximum queuing latency, in nanoseconds.
+   */
+  long maxLatency() {
+    return maxLatency;
+  }
+
+  /**
+   * Sets the maximum number of tasks the worker of a shard drains from its
+   * mailbox at once. The drained tasks are run grouped by executor, the tasks
+   * of every executor in the order they were queued in, so that consecutive
+   * tasks of an executor are not interleaved with the tasks of other
+   * executors. The actual size of the batches adapts to the depth of the
+   * mailbox, from 1 up to this maximum.
+   *
+   * Tasks of distinct executors may thus run in a different order than the
+   * one they were queued in.
+   *
+   * Default is 1, i.e. tasks are run one at a time in the order they were
+   * queued in.
+   *
+   * @param maxBatchSize The maximum number of tasks run in a batch.
+   * @return Returns the current configuration instance.
+   */
+  public MailboxConfiguration maxBatchSize(final int maxBatchSize) {
+    if (maxBatchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+    }
+    this.maxBatchSize = maxBatchSize;
+    return this;
+  }
+
+  /**
+   * Gets the maximum number of tasks run in a batch.
+   *
+   * @return The maximum number of tasks run in a batch.
+   */
+  int maxBatchSize() {
+    return maxBatchSize;
+  }
+
+  /**
+   * Sets the number of preallocated command slots of every shard. Commands
+   * queued by executors, i.e. events, time events and the commands to start
+   * and resume, are written into these slots without allocating any memory.
+   * Completion events have the same number of slots of their own. Commands
+   * that do not fit in the slots are allocated and queued after them, in
+   * order.
+   *
+   * This is not a capacity: use {@link #shardCapacity(int)} and
+   * {@link #executorCapacity(int)} to bound mailboxes.
+   *
+   * Default is 1024. Rounded up to the next power of 2.
+   *
+   * @param ringCapacity The number of preallocated command slots per shard.
+   * @return Returns the current configuration instance.
+   */
+  public MailboxConfiguration ringCapacity(final int ringCapacity) {
+    if (ringCapacity <= 0 || ringCapacity > 1 << 30) {
+      throw new IllegalArgumentException("Ring capacity must be positive and at most 2^30: " + ringCapacity);
+    }
+    this.ringCapacity = ringCapacity;
+    return this;
+  }
+
+  /**
+   * Gets the number of preallocated command slots per shard.
+   *
+   * @return The number of preallocated command slots per shard.
+   */
+  int ringCapacity() {
+    return ringCapacity;
+  }
+
+  /**
+   * Sets the listener notified of every decision taken by the overflow policy.
+   *
+   * @param listener The mailbox listener or null.
+   * @return Returns the current configuration instance.
+   */
+  public MailboxConfiguration listener(final MailboxListener listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * Gets the listener notified of every decision taken by the overflow policy.
+   *
+   * @return The mailbox listener or null.
+   */
+  MailboxListener listener() {
+    return listener;
+  }
+
+  /**
+   * Gets whether events have to be counted at all.
+   *
+   * @return true when a capacity or a maximum latency is set.
+   */
+  boolean isBounded() {
+    return shardCapacity != Integer.MAX_VALUE
+      || executorCapacity != Integer.MAX_VALUE
+      || (overflowPolicy == OverflowPolicy.SHED && maxLatency != Long.MAX_VALUE);
+  }
+
+  /**
+   * What to do with an event that does not fit in the mailbox of its shard or
+   * of its executor.
+   */
+  public enum OverflowPolicy {
+
+    /**
+     * The thread taking the event blocks until there is room for it. A worker
+     * of the pool, i.e. a behavior run by the pool taking an event, never
+     * blocks: its event is queued beyond the capacity of the mailbox instead,
+     * so that the shard can not wait for itself.
+     */
+    BLOCK,
+    /**
+     * The event is not queued and a
+     * {@link java.util.concurrent.RejectedExecutionException} is thrown to the
+     * thread taking the event.
+     */
+    REJECT,
+    /**
+     * The oldest pending event of the full mailbox is discarded to make room
+     * for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * The new event is discarded.
+     */
+    DROP_NEWEST,
+    /**
+     * The new event is discarded when the mailbox is full or when the last
+     * event dequeued by the shard waited for more than the maximum latency.
+     */
+    SHED
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+
+/**
+ * Listener of the decisions taken when an event does not fit in the mailbox
+ * of a {@link StateMachineShardPoolExecutor}.
+ *
+ * Listeners are invoked by the thread taking the event and must return
+ * quickly. They are typically used to apply backpressure upstream.
+ *
+ * @see MailboxConfiguration#listener(MailboxListener)
+ *
+ * @author Fabien Renaud
+ */
+public interface MailboxListener {
+
+  /**
+   * Invoked when the overflow policy of a mailbox applies to an event.
+   *
+   * @param executor The executor the event was given to.
+   * @param event The event the decision applies to. For
+   * {@link Decision#DROPPED_OLDEST}, this is the pending event that was
+   * discarded, not the new one.
+   * @param decision What happened to the event.
+   */
+  void onOverflow(StateMachineExecutor executor, Event event, Decision decision);
+
+  /**
+   * Decisions of the overflow policies.
+   */
+  enum Decision {
+
+    /**
+     * The thread taking the event is about to block until there is room for
+     * it.
+     */
+    BLOCKED,
+    /**
+     * The event has been queued beyond the capacity of the mailbox because
+     * the thread taking it is a worker of the pool and must not block.
+     */
+    OVERDRAWN,
+    /**
+     * The event has been rejected with an exception.
+     */
+    REJECTED,
+    /**
+     * A pending event has been discarded to make room for a new one.
+     */
+    DROPPED_OLDEST,
+    /**
+     * The new event has been discarded.
+     */
+    DROPPED_NEWEST,
+    /**
+     * The new event has been discarded because of the queuing latency of its
+     * shard.
+     */
+    SHED
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.EventRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public final class MutableEventRegistry implements EventRegistry {
+
+  private final List<EventType> types = new ArrayList<>();
+  private final Map<Event, EventType> byEvent = new HashMap<>();
+  private final Map<String, EventType> byName = new HashMap<>();
+
+  /**
+   * Registers an event if no equal event is registered yet.
+   *
+   * @param event The event to register.
+   * @return The type of the event or of the equal event registered before.
+   */
+  public EventType register(final Event event) {
+    EventType type = byEvent.get(event);
+    if (type == null) {
+      type = new EventType(types.size(), event);
+      types.add(type);
+      byEvent.put(event, type);
+      if (event instanceof StringEvent) {
+        byName.put(event.toString(), type);
+      }
+    }
+    return type;
+  }
+
+  @Override
+  public int size() {
+    return types.size();
+  }
+
+  @Override
+  public EventType type(final int code) {
+    if (code < 0 || code >= types.size()) {
+      throw new IllegalArgumentException("No event has code " + code);
+    }
+    return types.get(code);
+  }
+
+  @Override
+  public EventType type(final Event event) {
+    return byEvent.get(event);
+  }
+
+  @Override
+  public EventType type(final String name) {
+    return byName.get(name);
+  }
+
+  @Override
+  public int code(final Event event) {
+    EventType type = byEvent.get(event);
+    return type == null ? -1 : type.code();
+  }
+
+}
@@ -19,7 +19,9 @@ import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.PseudoStateKind;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
 import com.lympid.core.behaviorstatemachines.Visitor;
+import java.util.Map;
 
 /**
  *
@@ -30,6 +32,8 @@ public final class MutablePseudoState extends MutableVertex implements PseudoSta
   private final PseudoStateKind kind;
   private StateMachine stateMachine;
   private State state;
+  private DecisionTable decisionTable;
+  private Map<DecisionTable.Case, Transition> decisions;
 
   public MutablePseudoState(final String id, PseudoStateKind kind) {
     super(id);
@@ -64,6 +68,50 @@ public final class MutablePseudoState extends MutableVertex implements PseudoSta
     this.state = state;
   }
 
+  /**
+   * Sets the decision table which indexes the outgoing transitions of this
+   * pseudo state.
+   *
+   * @param decisionTable The decision table shared by the guards of the
+   * outgoing transitions.
+   * @param decisions The outgoing transition guarded by each case of the
+   * table.
+   *
+   * @see DecisionTableVisitor
+   */
+  public void setDecisionTable(final DecisionTable decisionTable, final Map<DecisionTable.Case, Transition> decisions) {
+    this.decisionTable = decisionTable;
+    this.decisions = decisions;
+  }
+
+  /**
+   * Looks up the outgoing transition of this pseudo state that is enabled for
+   * the given context via its decision table.
+   *
+   * @param context The state machine context.
+   * @return The outgoing transition whose decision table case holds or null
+   * when this pseudo state has no decision table or when no case holds.
+   * @throws RuntimeException Any exception thrown by the decision key.
+   */
+  Transition decide(final Object context) {
+    if (decisionTable == null) {
+      return null;
+    }
+    return decisions.get(decisionTable.lookup(context));
+  }
+
+  /**
+   * Gets whether the given outgoing transition of this pseudo state is
+   * selected by its decision table rather than by evaluating its guard.
+   *
+   * @param transition An outgoing transition of this pseudo state.
+   * @return true when the guard of {@code transition} is a case of the
+   * decision table of this pseudo state.
+   */
+  boolean isDecision(final Transition transition) {
+    return decisionTable != null && decisions.get(transition.guard()) == transition;
+  }
+
   @Override
   public void accept(Visitor visitor) {
     visitor.visitOnEntry(this);
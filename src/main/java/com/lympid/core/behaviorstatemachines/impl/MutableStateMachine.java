@@ -15,6 +15,7 @@
  */
 package com.lympid.core.behaviorstatemachines.impl;
 
+import com.lympid.core.behaviorstatemachines.EventRegistry;
 import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.StateMachine;
@@ -42,6 +43,7 @@ public final class MutableStateMachine implements StateMachine {
   private List<Region> region = Collections.EMPTY_LIST;
   private final Set<PseudoState> connectionPoint = new HashSet<>();
   private StateMachineMeta metadata;
+  private EventRegistry events = new MutableEventRegistry();
 
   public MutableStateMachine(final String id) {
     this.id = id;
@@ -96,6 +98,15 @@ public final class MutableStateMachine implements StateMachine {
     return metadata;
   }
 
+  public void setEventRegistry(final EventRegistry events) {
+    this.events = events;
+  }
+
+  @Override
+  public EventRegistry events() {
+    return events;
+  }
+
   @Override
   public void accept(Visitor visitor) {
     visitor.visitOnEntry(this);
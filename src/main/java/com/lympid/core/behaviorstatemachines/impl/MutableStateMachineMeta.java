@@ -15,12 +15,14 @@
  */
 package com.lympid.core.behaviorstatemachines.impl;
 
+import com.lympid.core.behaviorstatemachines.AsyncStateBehavior;
 import com.lympid.core.behaviorstatemachines.PseudoState;
 import com.lympid.core.behaviorstatemachines.PseudoStateKind;
 import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachine;
 import com.lympid.core.behaviorstatemachines.StateMachineMeta;
+import com.lympid.core.behaviorstatemachines.Transition;
 import com.lympid.core.common.TreeNode;
 import java.util.EnumMap;
 import java.util.HashMap;
@@ -39,6 +41,8 @@ public class MutableStateMachineMeta implements StateMachineMeta {
   private int completionEvents;
   private int timeEvents;
   private int activities;
+  private int blockingActivities;
+  private int transitions;
   private final Map<PseudoStateKind, Integer> pseudoStateCounts = new EnumMap<>(PseudoStateKind.class);
   private TreeNode<Region> tree;
   private final Map<Region, TreeNode<Region>> nodesByRegion = new HashMap<>();
@@ -95,6 +99,11 @@ public class MutableStateMachineMeta implements StateMachineMeta {
     return activities > 0;
   }
 
+  @Override
+  public boolean hasBlockingActivities() {
+    return blockingActivities > 0;
+  }
+
   void register(final PseudoState pseudoState) {
     Integer count = pseudoStateCounts.get(pseudoState.kind());
     pseudoStateCounts.put(pseudoState.kind(), count + 1);
@@ -123,6 +132,9 @@ public class MutableStateMachineMeta implements StateMachineMeta {
 
     if (state.doActivity() != null) {
       activities++;
+      if (!(state.doActivity() instanceof AsyncStateBehavior)) {
+        blockingActivities++;
+      }
     }
 
     if (state.isSubMachineState()) {
@@ -150,6 +162,10 @@ public class MutableStateMachineMeta implements StateMachineMeta {
     regionById.put(region.getId(), region);
   }
 
+  int register(final Transition transition) {
+    return transitions++;
+  }
+
   @Override
   public int treeDepth() {
     return treeDepth(tree);
@@ -185,6 +201,11 @@ public class MutableStateMachineMeta implements StateMachineMeta {
     return leaves;
   }
 
+  @Override
+  public int countOfTransitions() {
+    return transitions;
+  }
+
   @Override
   public State state(final String id) {
     return stateById.get(id);
@@ -24,8 +24,11 @@ import com.lympid.core.behaviorstatemachines.Vertex;
 import com.lympid.core.behaviorstatemachines.VertexUtils;
 import com.lympid.core.behaviorstatemachines.Visitor;
 import com.lympid.core.common.Trigger;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -44,6 +47,8 @@ public final class MutableTransition implements Transition {
   private final Vertex source;
   private final Vertex target;
   private Region container;
+  private List<Transition> continuation = Collections.EMPTY_LIST;
+  private int ordinal = -1;
 
   public MutableTransition(Region container, Vertex source, Vertex target, BiTransitionConstraint guard, BiTransitionBehavior effect, TransitionKind kind, final String id) {
     this.id = id;
@@ -112,6 +117,44 @@ public final class MutableTransition implements Transition {
     this.container = container;
   }
 
+  /**
+   * Gets the transitions that are always fired right after this one because
+   * they are the single unguarded outgoing transitions of the junction, entry
+   * point or exit point vertices this transition leads to.
+   *
+   * @return The static continuation of this transition, in firing order. Never
+   * null.
+   *
+   * @see CompoundTransitionVisitor
+   */
+  public List<Transition> continuation() {
+    return continuation;
+  }
+
+  public void setContinuation(final List<Transition> continuation) {
+    this.continuation = continuation.isEmpty()
+      ? Collections.EMPTY_LIST
+      : new ArrayList<>(continuation);
+  }
+
+  /**
+   * Gets the index of this transition among all the transitions of its state
+   * machine.
+   *
+   * @return A number between 0 and
+   * {@link com.lympid.core.behaviorstatemachines.StateMachineMeta#countOfTransitions()}
+   * excluded, or -1 when the state machine has not been finalized.
+   *
+   * @see StateMachineMetaVisitor
+   */
+  public int ordinal() {
+    return ordinal;
+  }
+
+  public void setOrdinal(final int ordinal) {
+    this.ordinal = ordinal;
+  }
+
   @Override
   public void accept(Visitor visitor) {
     visitor.visitOnEntry(this);
@@ -45,6 +45,7 @@ public abstract class MutableVertex implements Vertex {
   private final String id;
   private List<Transition> outgoing = Collections.EMPTY_LIST;
   private Map<Event, List<Transition>> outgoingByEvent = Collections.EMPTY_MAP;
+  private List<Transition>[] outgoingByCode = new List[0];
   private List<TimeEvent> outgoingTimeEvents = Collections.EMPTY_LIST;
   private final Set<Transition> incoming = new HashSet<>();
   private String name;
@@ -83,6 +84,24 @@ public abstract class MutableVertex implements Vertex {
     return transitions == null ? Collections.emptyList() : transitions;
   }
 
+  /**
+   * Gets the outgoing transitions triggered by an event of the event registry
+   * of the state machine.
+   *
+   * @param code The code of the event.
+   * @return The outgoing transitions triggered by the event.
+   *
+   * @see EventRegistryVisitor
+   */
+  public Collection<Transition> outgoing(final int code) {
+    Collection<Transition> transitions = code < outgoingByCode.length ? outgoingByCode[code] : null;
+    return transitions == null ? Collections.emptyList() : transitions;
+  }
+
+  void setOutgoingByCode(final List<Transition>[] outgoingByCode) {
+    this.outgoingByCode = outgoingByCode;
+  }
+
   @Override
   public Collection<? extends TimeEvent> outgoingTimeEvents() {
     return outgoingTimeEvents;
@@ -16,12 +16,15 @@
 package com.lympid.core.behaviorstatemachines.impl;
 
 import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachine;
 import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
 import com.lympid.core.behaviorstatemachines.StateMachineSnapshot;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
  * Note: needs to synchronize for activities
@@ -31,6 +34,16 @@ import java.util.concurrent.Future;
 public class PoolStateMachineExecutor<C> extends AbstractStateMachineExecutor<C> {
 
   private final StateMachineShardPoolExecutor<C> pool;
+  private static final AtomicReferenceFieldUpdater<PoolStateMachineExecutor, ShardMigration> MIGRATION = AtomicReferenceFieldUpdater.newUpdater(PoolStateMachineExecutor.class, ShardMigration.class, "migration");
+  private final StateMachineShardPoolExecutor.Permits mailboxPermits;
+  /**
+   * Threads queuing tasks for this executor, by parity of the routing epoch
+   * they read the shard in.
+   */
+  private final AtomicInteger[] producers = {new AtomicInteger(), new AtomicInteger()};
+  private volatile int shard;
+  private volatile int epoch;
+  private volatile ShardMigration migration;
 
   private PoolStateMachineExecutor(
     final int id,
@@ -39,10 +52,85 @@ public class PoolStateMachineExecutor<C> extends AbstractStateMachineExecutor<C>
     final C context,
     final ExecutorConfiguration configuration,
     final StateMachineSnapshot<C> snapshot,
-    final StateMachineShardPoolExecutor<C> pool
+    final StateMachineShardPoolExecutor<C> pool,
+    final Object shardKey
   ) {
     super(id, name, machine, context, configuration, snapshot);
     this.pool = pool;
+    this.mailboxPermits = pool.executorPermits();
+    this.shard = pool.shardOf(shardKey == null ? id : shardKey);
+  }
+
+  /**
+   * Gets the index of the shard this executor runs on.
+   *
+   * @return The index of the shard of this executor in its pool.
+   */
+  int shard() {
+    return shard;
+  }
+
+  StateMachineShardPoolExecutor<C> pool() {
+    return pool;
+  }
+
+  /**
+   * Registers the calling thread as about to read the shard of this executor
+   * and to queue a task in it.
+   *
+   * @return The epoch to give back to {@link #exit(int)} once the task is
+   * queued.
+   */
+  int enter() {
+    for (;;) {
+      final int e = epoch;
+      producers[e & 1].incrementAndGet();
+      if (epoch == e) {
+        return e;
+      }
+      producers[e & 1].decrementAndGet();
+    }
+  }
+
+  void exit(final int epoch) {
+    producers[epoch & 1].decrementAndGet();
+  }
+
+  /**
+   * Routes this executor to another shard and waits for the threads that may
+   * still be queuing tasks in the previous shard to be done.
+   *
+   * @param shard The index of the new shard.
+   */
+  void route(final int shard) {
+    this.shard = shard;
+    final int e = epoch;
+    epoch = e + 1;
+    while (producers[e & 1].get() != 0) {
+      Thread.yield();
+    }
+  }
+
+  ShardMigration migration() {
+    return migration;
+  }
+
+  boolean startMigration(final ShardMigration migration) {
+    return MIGRATION.compareAndSet(this, null, migration);
+  }
+
+  void endMigration() {
+    migration = null;
+  }
+
+  /**
+   * Gets the semaphore bounding the number of pending events of this executor
+   * in the mailbox of its shard.
+   *
+   * @return A semaphore or null when the capacity is unbounded.
+   */
+  StateMachineShardPoolExecutor.Permits mailboxPermits() {
+    return mailboxPermits;
   }
 
   @Override
@@ -63,6 +151,15 @@ public class PoolStateMachineExecutor<C> extends AbstractStateMachineExecutor<C>
     super.take(event);
   }
 
+  @Override
+  public void take(final EventType type) {
+    pool.take(this, type);
+  }
+
+  void doTake(final EventType type) {
+    super.take(type);
+  }
+
   @Override
   protected void take(final Event event, final State state) {
     pool.take(this, event, state);
@@ -120,11 +217,28 @@ public class PoolStateMachineExecutor<C> extends AbstractStateMachineExecutor<C>
   public static final class Builder<C> extends AbstractBuilder<C> {
 
     private final StateMachineShardPoolExecutor<C> pool;
-    
+    private Object shardKey;
+
     public Builder(final StateMachineShardPoolExecutor<C> pool) {
       this.pool = pool;
     }
-    
+
+    /**
+     * Sets the key routing the executor to its shard. Executors built with
+     * equal keys, e.g. all the executors of a customer, run on the same shard.
+     *
+     * Default is null, i.e. the executor is routed by its id.
+     *
+     * @param shardKey Any object with a stable {@link Object#hashCode()} or
+     * null.
+     * @return Returns the current builder instance.
+     * @see StateMachineShardPoolExecutor#shardOf(Object)
+     */
+    public Builder<C> setShardKey(final Object shardKey) {
+      this.shardKey = shardKey;
+      return this;
+    }
+
     @Override
     public StateMachineExecutor<C> build() {
       return new PoolStateMachineExecutor<>(
@@ -134,7 +248,8 @@ public class PoolStateMachineExecutor<C> extends AbstractStateMachineExecutor<C>
         getContext(),
         getConfiguration(),
         getSnapshot(),
-        pool
+        pool,
+        shardKey
       );
     }
 
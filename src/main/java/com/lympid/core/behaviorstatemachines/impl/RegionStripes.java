@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+import com.lympid.core.basicbehaviors.TimeEvent;
+import com.lympid.core.behaviorstatemachines.ConnectionPointReference;
+import com.lympid.core.behaviorstatemachines.EventRegistry;
+import com.lympid.core.behaviorstatemachines.FinalState;
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SimpleVisitor;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.VertexUtils;
+import com.lympid.core.common.Trigger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a state machine into stripes which can process events
+ * independently.
+ *
+ * <p>
+ * Candidate stripes are the regions of the orthogonal states of the top level
+ * regions of the state machine. A region is a stripe when every transition
+ * going out of one of its vertices targets a vertex of that region, other than
+ * a final state of the region itself or a terminate pseudo state. Firing
+ * transitions of a stripe therefore never leaves nor completes it.</p>
+ *
+ * <p>
+ * An event belongs to a stripe when all the transitions it triggers go out of
+ * vertices of that stripe. All other events, as well as completion events,
+ * belong to the whole state machine.</p>
+ *
+ * @see StripedStateMachineExecutor
+ *
+ * @author Fabien Renaud
+ */
+final class RegionStripes {
+
+  /**
+   * Stripe of the events and states which do not belong to any region stripe.
+   */
+  static final int MACHINE = -1;
+  private static final int UNSET = -2;
+
+  private final EventRegistry events;
+  private final Region[] regions;
+  private final int[] stripeByCode;
+
+  RegionStripes(final StateMachine machine) {
+    final List<Region> candidates = new ArrayList<>();
+    for (Region r : machine.region()) {
+      for (Vertex v : r.subVertex()) {
+        if (v instanceof State && ((State) v).region().size() > 1) {
+          candidates.addAll(((State) v).region());
+        }
+      }
+    }
+
+    final TransitionCollector collector = new TransitionCollector();
+    machine.accept(collector);
+
+    final boolean[] eligible = new boolean[candidates.size()];
+    Arrays.fill(eligible, true);
+    for (Transition t : collector.transitions) {
+      int c = indexOf(candidates, t.source());
+      if (c != MACHINE && !local(candidates.get(c), t)) {
+        eligible[c] = false;
+      }
+    }
+
+    final List<Region> stripes = new ArrayList<>(candidates.size());
+    for (int i = 0; i < eligible.length; i++) {
+      if (eligible[i]) {
+        stripes.add(candidates.get(i));
+      }
+    }
+    this.regions = stripes.toArray(new Region[stripes.size()]);
+
+    this.events = machine.events();
+    this.stripeByCode = new int[events.size()];
+    Arrays.fill(stripeByCode, UNSET);
+    for (Transition t : collector.transitions) {
+      int stripe = stripe(t.source());
+      for (Trigger tr : t.triggers()) {
+        Event event = tr.event();
+        int code = event instanceof TimeEvent ? -1 : events.code(event);
+        if (code >= 0) {
+          stripeByCode[code] = stripeByCode[code] == UNSET || stripeByCode[code] == stripe ? stripe : MACHINE;
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the number of stripes.
+   *
+   * @return The number of region stripes.
+   */
+  int size() {
+    return regions.length;
+  }
+
+  /**
+   * Gets the region of a stripe.
+   *
+   * @param stripe A stripe between 0 and {@link #size()}, exclusive.
+   * @return The region of the stripe.
+   */
+  Region region(final int stripe) {
+    return regions[stripe];
+  }
+
+  /**
+   * Gets the stripe an event belongs to.
+   *
+   * @param event Any event.
+   * @return The stripe of the event or {@link #MACHINE}.
+   */
+  int stripe(final Event event) {
+    final int code = events.code(event);
+    return code < 0 || stripeByCode[code] == UNSET ? MACHINE : stripeByCode[code];
+  }
+
+  /**
+   * Gets the stripe an event belongs to from its code.
+   *
+   * @param type The type of an event. Types registered by another state
+   * machine are looked up by their event.
+   * @return The stripe of the event or {@link #MACHINE}.
+   */
+  int stripe(final EventType type) {
+    final int code = type.code();
+    if (code >= stripeByCode.length || events.type(code) != type) {
+      return stripe(type.event());
+    }
+    return stripeByCode[code] == UNSET ? MACHINE : stripeByCode[code];
+  }
+
+  /**
+   * Gets the stripe a vertex belongs to.
+   *
+   * @param vertex Any vertex.
+   * @return The stripe of the vertex or {@link #MACHINE}.
+   */
+  int stripe(final Vertex vertex) {
+    for (int i = 0; i < regions.length; i++) {
+      if (VertexUtils.contains(regions[i], vertex)) {
+        return i;
+      }
+    }
+    return MACHINE;
+  }
+
+  private static int indexOf(final List<Region> regions, final Vertex vertex) {
+    for (int i = 0; i < regions.size(); i++) {
+      if (VertexUtils.contains(regions.get(i), vertex)) {
+        return i;
+      }
+    }
+    return MACHINE;
+  }
+
+  private static boolean local(final Region region, final Transition transition) {
+    final Vertex target = transition.target();
+    return VertexUtils.contains(region, target)
+      && !(target instanceof FinalState && target.container() == region)
+      && !VertexUtils.terminate(target);
+  }
+
+  private static final class TransitionCollector extends SimpleVisitor {
+
+    private final List<Transition> transitions = new ArrayList<>();
+
+    @Override
+    public void visit(final ConnectionPointReference visitable) {
+    }
+
+    @Override
+    public void visit(final State visitable) {
+    }
+
+    @Override
+    public void visit(final PseudoState visitable) {
+    }
+
+    @Override
+    public void visit(final FinalState visitable) {
+    }
+
+    @Override
+    public void visit(final Region visitable) {
+    }
+
+    @Override
+    public void visit(final StateMachine visitable) {
+    }
+
+    @Override
+    public void visit(final Transition visitable) {
+      transitions.add(visitable);
+    }
+
+  }
+}
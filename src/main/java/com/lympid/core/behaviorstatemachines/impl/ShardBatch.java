@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor.ShardTask;
+
+/**
+ * Tasks a shard worker drains from its mailbox at once and runs grouped by
+ * executor.
+ *
+ * The tasks of an executor are run one after another, in the order they were
+ * queued in. Executors are run in the order their first task was queued in.
+ * Tasks inserted at the head of the mailbox while the batch runs, like
+ * completion events, pause and snapshot requests, are run before the next
+ * task of the batch, exactly as they would be without batching.
+ *
+ * The size of the batches adapts to the depth of the mailbox: it doubles, up
+ * to the configured maximum, every time a batch is full and more tasks are
+ * pending. It halves every time a batch is less than half full. Shallow
+ * mailboxes are thus processed one task at a time.
+ *
+ * There is only one batch per shard. It is reused by the worker for every
+ * batch it takes.
+ *
+ * @author Fabien Renaud
+ */
+final class ShardBatch implements Runnable {
+
+  private final ShardQueue queue;
+  private final ShardStatistics statistics;
+  private final ShardTask[] tasks;
+  private int size;
+  private int limit = 1;
+
+  ShardBatch(final ShardQueue queue, final ShardStatistics statistics, final int maxSize) {
+    this.queue = queue;
+    this.statistics = statistics;
+    this.tasks = new ShardTask[maxSize];
+  }
+
+  /**
+   * Fills the batch with the given task followed by the pending tasks of the
+   * mailbox, up to the current size limit.
+   *
+   * @param first The first task of the batch.
+   * @return The given task when it is the only one pending, the batch
+   * otherwise.
+   */
+  Runnable fill(final Runnable first) {
+    if (!(first instanceof ShardTask) || isMigration(first)) {
+      return first;
+    }
+
+    tasks[0] = (ShardTask) first;
+    size = 1;
+    Runnable r;
+    while (size < limit && (r = queue.pollNormal()) != null) {
+      if (!(r instanceof ShardTask) || isMigration(r)) {
+        queue.requeue(r);
+        break;
+      }
+      tasks[size++] = (ShardTask) r;
+    }
+
+    if (size == limit && !queue.isEmpty()) {
+      limit = Math.min(limit * 2, tasks.length);
+    } else if (size < limit / 2) {
+      limit = Math.max(limit / 2, 1);
+    }
+
+    if (size == 1) {
+      tasks[0] = null;
+      size = 0;
+      return first;
+    }
+    return this;
+  }
+
+  /**
+   * Migrations are always run on their own: the tasks of the executor queued
+   * after a migration command must not be run by the shard the executor
+   * leaves.
+   */
+  private static boolean isMigration(final Runnable r) {
+    return r instanceof StateMachineShardPoolExecutor.Command && ((StateMachineShardPoolExecutor.Command) r).isMigration();
+  }
+
+  /**
+   * Gets the current maximum number of tasks of a batch.
+   *
+   * @return The current size limit of the batch.
+   */
+  int limit() {
+    return limit;
+  }
+
+  @Override
+  public void run() {
+    try {
+      for (int i = 0; i < size; i++) {
+        if (tasks[i] == null) {
+          continue;
+        }
+        final PoolStateMachineExecutor<?> executor = tasks[i].executor();
+        for (int j = i; j < size; j++) {
+          final ShardTask task = tasks[j];
+          if (task != null && task.executor() == executor) {
+            tasks[j] = null;
+            runUrgent();
+            execute(task);
+          }
+        }
+      }
+    } finally {
+      for (int i = size - 1; i >= 0; i--) {
+        if (tasks[i] != null) {
+          queue.requeue(tasks[i]);
+          tasks[i] = null;
+        }
+      }
+      size = 0;
+    }
+  }
+
+  private void runUrgent() {
+    Runnable r;
+    while ((r = queue.pollUrgent()) != null) {
+      execute(r);
+    }
+  }
+
+  private void execute(final Runnable task) {
+    statistics.started(task);
+    try {
+      task.run();
+    } finally {
+      statistics.completed();
+    }
+  }
+}
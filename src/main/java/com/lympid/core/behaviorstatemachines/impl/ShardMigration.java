@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Migration of a {@link PoolStateMachineExecutor} from one shard to another.
+ *
+ * <ol>
+ * <li>The migration command is queued in the source shard after all the
+ * tasks of the executor queued so far.</li>
+ * <li>When the source shard runs it, the executor is routed to the target
+ * shard. Once all the threads that read the former route have queued their
+ * tasks, the tasks of the executor still pending in the source shard are
+ * removed from it and a release command is queued in the target shard.</li>
+ * <li>Until the target shard runs the release command, it holds back the
+ * tasks of the executor it runs into.</li>
+ * <li>The release command runs the tasks moved from the source shard, then
+ * the held back tasks, in order.</li>
+ * </ol>
+ *
+ * @author Fabien Renaud
+ */
+final class ShardMigration {
+
+  private final PoolStateMachineExecutor<?> executor;
+  private final ShardQueue source;
+  private final ShardStatistics sourceStatistics;
+  private final ShardQueue target;
+  private final ShardStatistics targetStatistics;
+  private final int targetShard;
+  /**
+   * Tasks held back by the target shard. Only accessed by the worker of the
+   * target shard.
+   */
+  private final List<Runnable> held = new ArrayList<>();
+  private List<Runnable> moved;
+  private volatile boolean holding;
+
+  ShardMigration(final PoolStateMachineExecutor<?> executor, final ShardQueue source, final ShardStatistics sourceStatistics, final ShardQueue target, final ShardStatistics targetStatistics, final int targetShard) {
+    this.executor = executor;
+    this.source = source;
+    this.sourceStatistics = sourceStatistics;
+    this.target = target;
+    this.targetStatistics = targetStatistics;
+    this.targetShard = targetShard;
+  }
+
+  /**
+   * Moves the executor to the target shard. Run by the source shard.
+   */
+  void migrate() {
+    holding = true;
+    executor.route(targetShard);
+    moved = source.removeAll(executor);
+    sourceStatistics.moved(moved.size());
+    target.append(StateMachineShardPoolExecutor.Command.Op.RELEASE, executor, null, null, null, null);
+    targetStatistics.enqueued();
+  }
+
+  /**
+   * Holds back a task of the executor until the release command runs.
+   *
+   * @param task A task of the executor the target shard is about to run.
+   * @return true when the task has been held back.
+   */
+  boolean hold(final StateMachineShardPoolExecutor.ShardTask task) {
+    if (!holding) {
+      return false;
+    }
+    held.add(task.detach());
+    return true;
+  }
+
+  /**
+   * Runs the tasks moved from the source shard, then the tasks held back.
+   * Run by the target shard.
+   *
+   * Completion events and other tasks inserted at the head of the target
+   * shard are run before each of them, as they would be otherwise. If a task
+   * fails, the tasks that have not run yet are put back at the front of the
+   * target shard.
+   */
+  void release() {
+    holding = false;
+    executor.endMigration();
+
+    final List<Runnable> tasks = new ArrayList<>(moved.size() + held.size());
+    tasks.addAll(moved);
+    tasks.addAll(held);
+    int i = 0;
+    try {
+      while (i < tasks.size()) {
+        Runnable r;
+        while ((r = target.pollUrgent()) != null) {
+          r.run();
+        }
+        tasks.get(i++).run();
+      }
+    } finally {
+      for (int j = tasks.size() - 1; j >= i; j--) {
+        target.requeue(tasks.get(j));
+      }
+    }
+  }
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor.Command;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor.Mailbox;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor.ShardTask;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free mailbox of a shard. Any thread can queue tasks without ever
+ * blocking. The single worker of the shard waits for tasks according to a
+ * {@link WaitStrategy}. The mailbox of a {@link VirtualShard} has no worker of
+ * its own and schedules its shard instead.
+ *
+ * <p>
+ * The mailbox is made of several lanes. The worker takes tasks from the
+ * first lane that is not empty, in this order:</p>
+ * <ol>
+ * <li>completion events, in a {@link ShardRing} of their own,</li>
+ * <li>completion events that did not fit in their ring,</li>
+ * <li>tasks inserted at the head, last inserted first,</li>
+ * <li>tasks of a failed {@link ShardBatch} that did not run,</li>
+ * <li>commands of executors, in a {@link ShardRing},</li>
+ * <li>commands that did not fit in the ring and any other task.</li>
+ * </ol>
+ *
+ * <p>
+ * Once a command has been queued in the last lane, commands are queued in
+ * that lane until it is empty again. Commands queued by a thread are thus
+ * always taken in the order they were queued in.</p>
+ *
+ * <p>
+ * When batching is enabled, the worker takes the tasks of the last three
+ * lanes by {@link ShardBatch}es and the batch runs the tasks of the first
+ * three lanes before each of its own.</p>
+ *
+ * @author Fabien Renaud
+ */
+final class ShardQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+  private final ShardRing completions;
+  private final ConcurrentLinkedDeque<Runnable> completionOverflow = new ConcurrentLinkedDeque<>();
+  private final ConcurrentLinkedDeque<Runnable> urgent = new ConcurrentLinkedDeque<>();
+  private final ConcurrentLinkedDeque<Runnable> requeued = new ConcurrentLinkedDeque<>();
+  private final ShardRing ring;
+  private final ConcurrentLinkedDeque<Runnable> overflow = new ConcurrentLinkedDeque<>();
+  private final WaitStrategy waitStrategy;
+  private ShardBatch batch;
+  private VirtualShard virtualShard;
+  /**
+   * The worker parked by {@link WaitStrategy#BLOCKING}, if any.
+   */
+  private volatile Thread waiter;
+
+  ShardQueue(final WaitStrategy waitStrategy, final int ringCapacity) {
+    this.waitStrategy = waitStrategy;
+    this.completions = new ShardRing(ringCapacity);
+    this.ring = new ShardRing(ringCapacity);
+  }
+
+  /**
+   * Enables batching. Must be set before the worker starts taking tasks.
+   *
+   * @param batch The batch the worker is given tasks through.
+   */
+  void batch(final ShardBatch batch) {
+    this.batch = batch;
+  }
+
+  /**
+   * Makes the queue the mailbox of a virtual shard: queuing a task schedules
+   * the shard instead of waking a worker up. Must be set before any task is
+   * queued.
+   *
+   * @param virtualShard The shard to schedule.
+   */
+  void virtualShard(final VirtualShard virtualShard) {
+    this.virtualShard = virtualShard;
+  }
+
+  /**
+   * Queues a command of an executor.
+   */
+  void append(final Command.Op op, final PoolStateMachineExecutor<?> executor, final Event event, final EventType type, final State state, final Mailbox mailbox) {
+    final Command c = overflow.isEmpty() ? ring.claim() : null;
+    if (c == null) {
+      overflow.addLast(new Command().set(op, executor, event, type, state, mailbox));
+    } else {
+      ring.publish(c.set(op, executor, event, type, state, mailbox));
+    }
+    signal();
+  }
+
+  /**
+   * Queues a completion event of an executor.
+   *
+   * @param executor The executor to take a completion event.
+   */
+  void appendCompletion(final PoolStateMachineExecutor<?> executor) {
+    final Command c = completions.claim();
+    if (c == null) {
+      completionOverflow.addLast(new Command().set(Command.Op.COMPLETION_EVENT, executor, null, null, null, null));
+    } else {
+      completions.publish(c.set(Command.Op.COMPLETION_EVENT, executor, null, null, null, null));
+    }
+    signal();
+  }
+
+  /**
+   * Queues any task after all the others.
+   *
+   * @param e The task to queue.
+   * @return true
+   */
+  @Override
+  public boolean offer(final Runnable e) {
+    overflow.addLast(e);
+    signal();
+    return true;
+  }
+
+  /**
+   * Inserts a task at the head of the queue.
+   *
+   * @param e The task to run next.
+   */
+  void addFirst(final Runnable e) {
+    urgent.addFirst(e);
+    signal();
+  }
+
+  /**
+   * Puts back a task taken in a batch that could not be run, ahead of all the
+   * tasks not inserted at the head.
+   *
+   * @param e The task to put back.
+   */
+  void requeue(final Runnable e) {
+    requeued.addFirst(e);
+  }
+
+  /**
+   * Retrieves and removes the next completion event or task inserted at the
+   * head.
+   *
+   * @return A task or null when there are none.
+   */
+  Runnable pollUrgent() {
+    Runnable r = completions.poll();
+    if (r == null) {
+      r = completionOverflow.pollFirst();
+      if (r == null) {
+        r = urgent.pollFirst();
+      }
+    }
+    return r;
+  }
+
+  /**
+   * Retrieves and removes the next task that is neither a completion event
+   * nor inserted at the head.
+   *
+   * @return A task or null when there are none.
+   */
+  Runnable pollNormal() {
+    Runnable r = requeued.pollFirst();
+    if (r == null) {
+      r = ring.poll();
+      if (r == null) {
+        r = overflow.pollFirst();
+      }
+    }
+    return r;
+  }
+
+  /**
+   * Cancels the oldest pending event.
+   *
+   * @param executor The executor the event must be pending for, or null for
+   * any executor.
+   * @return A command holding the executor and the event that have been
+   * cancelled, or null when there is no such event.
+   */
+  Command cancelOldestEvent(final PoolStateMachineExecutor<?> executor) {
+    Command c = cancelOldestEvent(requeued, executor);
+    if (c == null) {
+      c = ring.cancelOldestEvent(executor);
+      if (c == null) {
+        c = cancelOldestEvent(overflow, executor);
+      }
+    }
+    return c;
+  }
+
+  /**
+   * Removes all the pending tasks of an executor. No thread must be queuing
+   * tasks for the executor meanwhile.
+   *
+   * @param executor The executor to remove the tasks of.
+   * @return The removed tasks, in the order the worker would have taken them.
+   * None of them is part of a ring.
+   */
+  List<Runnable> removeAll(final PoolStateMachineExecutor<?> executor) {
+    final List<Runnable> removed = new ArrayList<>();
+    completions.cancelAll(executor, removed);
+    removeAll(completionOverflow, executor, removed);
+    removeAll(urgent, executor, removed);
+    removeAll(requeued, executor, removed);
+    ring.cancelAll(executor, removed);
+    removeAll(overflow, executor, removed);
+    return removed;
+  }
+
+  private static void removeAll(final ConcurrentLinkedDeque<Runnable> lane, final PoolStateMachineExecutor<?> executor, final List<Runnable> out) {
+    for (Runnable r : lane) {
+      if (r instanceof ShardTask && ((ShardTask) r).executor() == executor && lane.removeFirstOccurrence(r)) {
+        if (r instanceof Command) {
+          out.add(((Command) r).copy());
+          ((Command) r).recycle();
+        } else {
+          out.add(r);
+        }
+      }
+    }
+  }
+
+  private static Command cancelOldestEvent(final ConcurrentLinkedDeque<Runnable> lane, final PoolStateMachineExecutor<?> executor) {
+    for (Runnable r : lane) {
+      if (r instanceof Command) {
+        final Command c = (Command) r;
+        final Command copy = c.copy();
+        if (copy.isEvent() && (executor == null || copy.executor() == executor) && lane.removeFirstOccurrence(c)) {
+          c.recycle();
+          return copy;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void put(final Runnable e) {
+    offer(e);
+  }
+
+  @Override
+  public boolean offer(final Runnable e, final long timeout, final TimeUnit unit) {
+    return offer(e);
+  }
+
+  @Override
+  public Runnable poll() {
+    final Runnable r = pollUrgent();
+    return r != null ? r : pollNormal();
+  }
+
+  @Override
+  public Runnable peek() {
+    final Iterator<Runnable> it = iterator();
+    return it.hasNext() ? it.next() : null;
+  }
+
+  /**
+   * Retrieves and removes the next task, or the next batch of tasks when
+   * batching is enabled.
+   *
+   * Virtual shards are drained with this method rather than with
+   * {@link #take()}.
+   *
+   * @return A task, a batch or null when the queue is empty.
+   */
+  Runnable next() {
+    Runnable r = pollUrgent();
+    if (r != null) {
+      return r;
+    }
+    r = pollNormal();
+    return r == null || batch == null ? r : batch.fill(r);
+  }
+
+  @Override
+  public Runnable take() throws InterruptedException {
+    Runnable r;
+    int attempts = 0;
+    while ((r = next()) == null) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      waitStrategy.idle(this, attempts++, Long.MAX_VALUE);
+    }
+    return r;
+  }
+
+  @Override
+  public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    Runnable r;
+    int attempts = 0;
+    while ((r = next()) == null) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      final long nanos = deadline - System.nanoTime();
+      if (nanos <= 0) {
+        return null;
+      }
+      waitStrategy.idle(this, attempts++, nanos);
+    }
+    return r;
+  }
+
+  /**
+   * Parks the calling thread until a task is queued, it is interrupted or the
+   * given time elapses. May return spuriously.
+   *
+   * @param nanos The maximum time to park for, in nanoseconds.
+   * {@link Long#MAX_VALUE} to park with no time limit.
+   */
+  void park(final long nanos) {
+    waiter = Thread.currentThread();
+    if (isEmpty()) {
+      if (nanos == Long.MAX_VALUE) {
+        LockSupport.park(this);
+      } else {
+        LockSupport.parkNanos(this, nanos);
+      }
+    }
+    waiter = null;
+  }
+
+  private void signal() {
+    final VirtualShard v = virtualShard;
+    if (v != null) {
+      v.schedule();
+      return;
+    }
+    final Thread t = waiter;
+    if (t != null) {
+      LockSupport.unpark(t);
+    }
+  }
+
+  /**
+   * Removes a task. Commands queued in a ring can not be removed.
+   *
+   * @param o The task to remove.
+   * @return true when the task was found and removed.
+   */
+  @Override
+  public boolean remove(final Object o) {
+    return removeFirstOccurrence(o);
+  }
+
+  /**
+   * Removes the first occurrence of a task. Commands queued in a ring can not
+   * be removed.
+   *
+   * @param o The task to remove.
+   * @return true when the task was found and removed.
+   */
+  boolean removeFirstOccurrence(final Object o) {
+    return completionOverflow.removeFirstOccurrence(o)
+      || urgent.removeFirstOccurrence(o)
+      || requeued.removeFirstOccurrence(o)
+      || overflow.removeFirstOccurrence(o);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return completions.isEmpty()
+      && completionOverflow.isEmpty()
+      && urgent.isEmpty()
+      && requeued.isEmpty()
+      && ring.isEmpty()
+      && overflow.isEmpty();
+  }
+
+  /**
+   * Counts the tasks in the queue. This is not a constant time operation.
+   *
+   * @return The number of tasks in the queue.
+   */
+  @Override
+  public int size() {
+    return completions.size()
+      + completionOverflow.size()
+      + urgent.size()
+      + requeued.size()
+      + ring.size()
+      + overflow.size();
+  }
+
+  /**
+   * Iterates over the lanes in the order the worker takes tasks from them.
+   * Removal is not supported for commands queued in a ring.
+   *
+   * @return An iterator over the tasks of the queue.
+   */
+  @Override
+  public Iterator<Runnable> iterator() {
+    final Iterator<Iterable<? extends Runnable>> lanes = Arrays.<Iterable<? extends Runnable>>asList(
+      completions, completionOverflow, urgent, requeued, ring, overflow
+    ).iterator();
+
+    return new Iterator<Runnable>() {
+
+      private Iterator<? extends Runnable> it = lanes.next().iterator();
+      private Iterator<? extends Runnable> returnedBy;
+
+      @Override
+      public boolean hasNext() {
+        while (!it.hasNext() && lanes.hasNext()) {
+          it = lanes.next().iterator();
+        }
+        return it.hasNext();
+      }
+
+      @Override
+      public Runnable next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        returnedBy = it;
+        return it.next();
+      }
+
+      @Override
+      public void remove() {
+        if (returnedBy == null) {
+          throw new IllegalStateException();
+        }
+        returnedBy.remove();
+        returnedBy = null;
+      }
+
+    };
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Integer.MAX_VALUE;
+  }
+
+  @Override
+  public int drainTo(final Collection<? super Runnable> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(final Collection<? super Runnable> c, final int maxElements) {
+    int n = 0;
+    Runnable r;
+    while (n < maxElements && (r = poll()) != null) {
+      c.add(r);
+      n++;
+    }
+    return n;
+  }
+}
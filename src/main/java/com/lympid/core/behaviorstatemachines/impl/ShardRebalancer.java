@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Moves executors from overloaded shards to less loaded ones.
+ *
+ * Every time it runs, the rebalancer compares the queue depths of the shards
+ * of its pool. When the deepest queue is at least {@link #minQueueDepth(int)}
+ * deep and {@link #imbalance(double)} times as deep as the shallowest one,
+ * the executor with the most pending tasks in the deepest shard is migrated
+ * to the shallowest shard, unless that would just move the overload.
+ *
+ * The rebalancer does not run by itself. Schedule it, e.g. with
+ * {@link java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay},
+ * or run it whenever the shard statistics call for it.
+ *
+ * @see StateMachineShardPoolExecutor#migrate(com.lympid.core.behaviorstatemachines.StateMachineExecutor,
+ * int)
+ *
+ * @author Fabien Renaud
+ */
+public final class ShardRebalancer<C> implements Runnable {
+
+  private final StateMachineShardPoolExecutor<C> pool;
+  private int minQueueDepth = 64;
+  private double imbalance = 2;
+
+  public ShardRebalancer(final StateMachineShardPoolExecutor<C> pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Sets the queue depth under which a shard is never considered overloaded.
+   *
+   * Default is 64.
+   *
+   * @param minQueueDepth The minimum queue depth of an overloaded shard.
+   * @return Returns the current rebalancer instance.
+   */
+  public ShardRebalancer<C> minQueueDepth(final int minQueueDepth) {
+    this.minQueueDepth = minQueueDepth;
+    return this;
+  }
+
+  /**
+   * Sets how many times deeper than the shallowest queue the deepest queue
+   * must be for an executor to be migrated.
+   *
+   * Default is 2.
+   *
+   * @param imbalance The minimum ratio between the deepest and the shallowest
+   * queues.
+   * @return Returns the current rebalancer instance.
+   */
+  public ShardRebalancer<C> imbalance(final double imbalance) {
+    this.imbalance = imbalance;
+    return this;
+  }
+
+  @Override
+  public void run() {
+    rebalance();
+  }
+
+  /**
+   * Migrates at most one executor from the most to the least loaded shard.
+   *
+   * @return true when an executor has been migrated.
+   */
+  public boolean rebalance() {
+    int busiest = 0;
+    int idlest = 0;
+    final int[] depths = new int[pool.size()];
+    for (int i = 0; i < depths.length; i++) {
+      depths[i] = pool.statistics(i).getQueueDepth();
+      if (depths[i] > depths[busiest]) {
+        busiest = i;
+      }
+      if (depths[i] < depths[idlest]) {
+        idlest = i;
+      }
+    }
+
+    if (busiest == idlest
+      || depths[busiest] < minQueueDepth
+      || depths[busiest] < imbalance * Math.max(depths[idlest], 1)) {
+      return false;
+    }
+
+    final Map<PoolStateMachineExecutor<?>, Integer> pending = new IdentityHashMap<>();
+    PoolStateMachineExecutor<?> hottest = null;
+    int max = 0;
+    for (Runnable r : pool.queue(busiest)) {
+      if (r instanceof StateMachineShardPoolExecutor.ShardTask) {
+        final PoolStateMachineExecutor<?> executor = ((StateMachineShardPoolExecutor.ShardTask) r).executor();
+        final int count = pending.merge(executor, 1, Integer::sum);
+        if (count > max) {
+          max = count;
+          hottest = executor;
+        }
+      }
+    }
+
+    /*
+     * Moving an executor that holds most of the backlog would only overload
+     * the other shard.
+     */
+    if (hottest == null || depths[idlest] + max >= depths[busiest]) {
+      return false;
+    }
+    return pool.migrate((PoolStateMachineExecutor<C>) hottest, idlest);
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor.Command;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded ring of preallocated {@link Command}s. Any number of threads can
+ * queue commands in the ring without locking nor allocating. Only the worker
+ * of the shard takes them out.
+ *
+ * <p>
+ * Every command of the ring is a slot with a sequence stamping the position
+ * it is used for. A slot at position {@code p} is free when its sequence is
+ * {@code p}, holds a published command when its sequence is {@code p + 1} and
+ * is being run, or has been cancelled, when its sequence is
+ * {@code -(p + 1)}. Once run, the slot is released for the position
+ * {@code p + capacity}.</p>
+ *
+ * <p>
+ * Slots are released by {@link Command#run()}, not when they are taken out of
+ * the ring. A command taken by a batch thus holds its slot until the batch
+ * runs it.</p>
+ *
+ * @author Fabien Renaud
+ */
+final class ShardRing implements Iterable<Command> {
+
+  private final Command[] slots;
+  private final int mask;
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long head;
+
+  ShardRing(final int capacity) {
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    this.slots = new Command[size];
+    this.mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Command(this, i);
+    }
+  }
+
+  /**
+   * Claims the next free slot of the ring. The claimed command must be filled
+   * and then {@link #publish(Command) published}.
+   *
+   * @return A command or null when the ring is full.
+   */
+  Command claim() {
+    long pos = tail.get();
+    for (;;) {
+      final Command c = slots[(int) pos & mask];
+      final long diff = c.sequence() - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          c.position(pos);
+          return c;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        return null;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  /**
+   * Makes a claimed and filled command visible to the worker.
+   *
+   * @param c A command returned by {@link #claim()}.
+   */
+  void publish(final Command c) {
+    c.sequence(c.position() + 1);
+  }
+
+  /**
+   * Takes the next published command out of the ring. Cancelled commands are
+   * skipped and their slots released.
+   *
+   * @return A command or null when the next slot is not published yet.
+   */
+  Command poll() {
+    for (;;) {
+      final long pos = head;
+      final Command c = slots[(int) pos & mask];
+      final long seq = c.sequence();
+      if (seq == pos + 1) {
+        if (c.compareAndSetSequence(pos + 1, -(pos + 1))) {
+          head = pos + 1;
+          return c;
+        }
+      } else if (seq == -(pos + 1)) {
+        head = pos + 1;
+        c.recycle();
+      } else {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Cancels the oldest pending event of the ring.
+   *
+   * @param executor The executor the event must be pending for, or null for
+   * any executor.
+   * @return A copy of the cancelled command, which is not part of the ring, or
+   * null when there is no such event.
+   */
+  Command cancelOldestEvent(final PoolStateMachineExecutor<?> executor) {
+    final long end = tail.get();
+    for (long pos = head; pos < end; pos++) {
+      final Command c = slots[(int) pos & mask];
+      if (c.sequence() != pos + 1) {
+        continue;
+      }
+      final Command copy = c.copy();
+      if (copy.isEvent()
+        && (executor == null || copy.executor() == executor)
+        && c.compareAndSetSequence(pos + 1, -(pos + 1))) {
+        return copy;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Cancels all the pending commands of an executor. No thread must be
+   * queuing commands for the executor meanwhile.
+   *
+   * @param executor The executor to cancel the commands of.
+   * @param out The list copies of the cancelled commands, which are not part of
+   * the ring, are added to, in queuing order.
+   */
+  void cancelAll(final PoolStateMachineExecutor<?> executor, final List<? super Command> out) {
+    final long end = tail.get();
+    for (long pos = head; pos < end; pos++) {
+      final Command c = slots[(int) pos & mask];
+      if (c.sequence() != pos + 1) {
+        continue;
+      }
+      final Command copy = c.copy();
+      if (copy.executor() == executor && c.compareAndSetSequence(pos + 1, -(pos + 1))) {
+        out.add(copy);
+      }
+    }
+  }
+
+  /**
+   * Frees the slot of a command that has been run or cancelled.
+   *
+   * @param c A command of this ring.
+   */
+  void release(final Command c) {
+    c.sequence(c.position() + slots.length);
+  }
+
+  boolean isEmpty() {
+    return tail.get() == head;
+  }
+
+  int size() {
+    return (int) Math.max(tail.get() - head, 0);
+  }
+
+  int capacity() {
+    return slots.length;
+  }
+
+  /**
+   * Iterates over the commands published in the ring at the time they are
+   * reached. Commands may be taken out of the ring, and their slots reused,
+   * while iterating: the iterator is only meant for monitoring.
+   *
+   * @return An iterator that does not support removal.
+   */
+  @Override
+  public Iterator<Command> iterator() {
+    return new Iterator<Command>() {
+
+      private final long end = tail.get();
+      private long pos = head;
+      private Command next;
+
+      @Override
+      public boolean hasNext() {
+        while (next == null && pos < end) {
+          final Command c = slots[(int) pos & mask];
+          if (c.sequence() == pos + 1) {
+            next = c;
+          }
+          pos++;
+        }
+        return next != null;
+      }
+
+      @Override
+      public Command next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        final Command c = next;
+        next = null;
+        return c;
+      }
+
+    };
+  }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load statistics of a shard of a {@link StateMachineShardPoolExecutor}.
+ *
+ * Tasks are counted when queued by any thread. Everything else is only
+ * written by the single worker thread of the shard and read by anyone.
+ *
+ * @author Fabien Renaud
+ */
+final class ShardStatistics implements StateMachineShardMXBean {
+
+  private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+  private final int shard;
+  private final BlockingQueue<Runnable> queue;
+  private final long createdAt = System.nanoTime();
+  private final LongAdder enqueued = new LongAdder();
+  private volatile long dequeued;
+  private volatile long events;
+  private volatile long completionEvents;
+  private volatile long busy;
+  /**
+   * Time at which the running task started or 0 when the worker is idle.
+   */
+  private volatile long startedAt;
+
+  private long sampledAt = createdAt;
+  private long sampledEnqueued;
+  private long sampledDequeued;
+  private double enqueueRate;
+  private double dequeueRate;
+
+  ShardStatistics(final int shard, final BlockingQueue<Runnable> queue) {
+    this.shard = shard;
+    this.queue = queue;
+  }
+
+  void enqueued() {
+    enqueued.increment();
+  }
+
+  void started(final Runnable task) {
+    startedAt = System.nanoTime();
+    dequeued++;
+    if (task instanceof StateMachineShardPoolExecutor.ShardTask) {
+      switch (((StateMachineShardPoolExecutor.ShardTask) task).kind()) {
+        case EVENT:
+          events++;
+          break;
+        case COMPLETION_EVENT:
+          completionEvents++;
+          break;
+        default:
+          break;
+      }
+    }
+  }
+
+  /**
+   * Counts tasks moved out of the shard without being run.
+   *
+   * @param count The number of tasks moved.
+   */
+  void moved(final int count) {
+    dequeued += count;
+  }
+
+  void completed() {
+    busy += System.nanoTime() - startedAt;
+    startedAt = 0;
+  }
+
+  @Override
+  public int getShard() {
+    return shard;
+  }
+
+  @Override
+  public int getQueueDepth() {
+    return queue.size();
+  }
+
+  @Override
+  public long getEnqueuedCount() {
+    return enqueued.sum();
+  }
+
+  @Override
+  public long getDequeuedCount() {
+    return dequeued;
+  }
+
+  @Override
+  public synchronized double getEnqueueRate() {
+    sample();
+    return enqueueRate;
+  }
+
+  @Override
+  public synchronized double getDequeueRate() {
+    sample();
+    return dequeueRate;
+  }
+
+  private void sample() {
+    final long now = System.nanoTime();
+    final long elapsed = now - sampledAt;
+    if (elapsed < SAMPLE_INTERVAL) {
+      return;
+    }
+
+    final long enq = enqueued.sum();
+    final long deq = dequeued;
+    enqueueRate = (enq - sampledEnqueued) * 1e9 / elapsed;
+    dequeueRate = (deq - sampledDequeued) * 1e9 / elapsed;
+    sampledAt = now;
+    sampledEnqueued = enq;
+    sampledDequeued = deq;
+  }
+
+  private long busyNanos(final long now) {
+    final long started = startedAt;
+    return started == 0 ? busy : busy + now - started;
+  }
+
+  @Override
+  public long getBusyTimeMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(busyNanos(System.nanoTime()));
+  }
+
+  @Override
+  public long getIdleTimeMillis() {
+    final long now = System.nanoTime();
+    return TimeUnit.NANOSECONDS.toMillis(now - createdAt - busyNanos(now));
+  }
+
+  @Override
+  public double getUtilization() {
+    final long now = System.nanoTime();
+    final long lifetime = now - createdAt;
+    return lifetime == 0 ? 0 : (double) busyNanos(now) / lifetime;
+  }
+
+  @Override
+  public long getOldestTaskAgeMillis() {
+    final long now = System.nanoTime();
+    long age = 0;
+    for (Runnable r : queue) {
+      if (r instanceof StateMachineShardPoolExecutor.ShardTask) {
+        age = Math.max(age, now - ((StateMachineShardPoolExecutor.ShardTask) r).enqueuedAt());
+      }
+    }
+    return TimeUnit.NANOSECONDS.toMillis(age);
+  }
+
+  @Override
+  public long getEventCount() {
+    return events;
+  }
+
+  @Override
+  public long getCompletionEventCount() {
+    return completionEvents;
+  }
+
+}
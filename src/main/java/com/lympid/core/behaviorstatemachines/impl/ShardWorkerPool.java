@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Workers of an elastic {@link StateMachineShardPoolExecutor}. Runs the
+ * {@link VirtualShard}s that have pending tasks.
+ *
+ * The number of workers is the core pool size. It is adjusted by one worker at
+ * a time, at most once per sample period, from the time the workers spent
+ * running shards since the previous sample. Workers in excess stop as soon as
+ * they are idle.
+ *
+ * @author Fabien Renaud
+ */
+final class ShardWorkerPool extends ThreadPoolExecutor {
+
+  private final int minThreads;
+  private final long samplePeriod;
+  private final double lowUtilization;
+  private final double highUtilization;
+  private final LongAdder busy = new LongAdder();
+  private final AtomicBoolean sampling = new AtomicBoolean();
+  private volatile long sampledAt = System.nanoTime();
+  private long sampledBusy;
+  private volatile boolean stopped;
+
+  ShardWorkerPool(final ElasticConfiguration configuration, final ThreadFactory threadFactory) {
+    super(configuration.minThreads(), configuration.maxThreads(), 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+    this.minThreads = configuration.minThreads();
+    this.samplePeriod = configuration.samplePeriod();
+    this.lowUtilization = configuration.lowUtilization();
+    this.highUtilization = configuration.highUtilization();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    stopped = true;
+    return super.shutdownNow();
+  }
+
+  /**
+   * Gets whether the workers were shut down with {@link #shutdownNow()}, in
+   * which case shards must not run their pending tasks anymore.
+   *
+   * @return true once {@link #shutdownNow()} has been called.
+   */
+  boolean isStopped() {
+    return stopped;
+  }
+
+  /**
+   * Records the time a worker spent running a shard and resizes the pool when
+   * a sample period has elapsed.
+   *
+   * @param nanos The time spent running the shard, in nanoseconds.
+   */
+  void ran(final long nanos) {
+    busy.add(nanos);
+    final long now = System.nanoTime();
+    if (now - sampledAt >= samplePeriod && sampling.compareAndSet(false, true)) {
+      try {
+        resize(now);
+      } finally {
+        sampling.set(false);
+      }
+    }
+  }
+
+  private void resize(final long now) {
+    final long elapsed = now - sampledAt;
+    if (elapsed < samplePeriod) {
+      return;
+    }
+
+    final long b = busy.sum();
+    final int threads = getCorePoolSize();
+    final double utilization = (double) (b - sampledBusy) / ((double) elapsed * threads);
+    sampledBusy = b;
+    sampledAt = now;
+
+    if (utilization > highUtilization && threads < getMaximumPoolSize()) {
+      setCorePoolSize(threads + 1);
+    } else if (utilization < lowUtilization && threads > minThreads) {
+      setCorePoolSize(threads - 1);
+    }
+  }
+}
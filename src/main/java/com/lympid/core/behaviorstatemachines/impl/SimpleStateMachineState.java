@@ -20,6 +20,7 @@ import com.lympid.core.behaviorstatemachines.Region;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachineMeta;
 import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.VertexUtils;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
@@ -117,6 +118,24 @@ public class SimpleStateMachineState extends ResumableStateMachineState {
     return completed;
   }
 
+  @Override
+  public Set<State> completedStates(final Region region) {
+    final Set<State> states = new HashSet<>();
+    for (State s : completed) {
+      if (VertexUtils.contains(region, s)) {
+        states.add(s);
+      }
+    }
+    return states;
+  }
+
+  @Override
+  public Set<String> activeStateIds() {
+    return activeStates.state() == null
+      ? Collections.EMPTY_SET
+      : Collections.singleton(activeStates.state().getId());
+  }
+
   @Override
   public void removeCompletedState(final State state) {
     completed.remove(state);
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link EventLoopStateMachineExecutor}s on a fixed number of event
+ * loops. Every executor belongs to a single loop which runs all of its tasks,
+ * one after another, on the same thread.
+ *
+ * <p>
+ * Each loop owns a timer wheel: the time events of its executors are
+ * scheduled, fired and cancelled on the loop thread, and a time event is
+ * processed by the loop right when it fires, with neither locks nor any
+ * handoff to another thread. The resolution of time events is the tick of the
+ * wheels, one millisecond by default.</p>
+ *
+ * <p>
+ * Activities of executors whose configuration has no executor service are
+ * cooperative: they run on the loop, in between the other tasks of the loop,
+ * and must thus be short and never block. Activities of executors configured
+ * with an executor service run on that executor service as usual.</p>
+ *
+ * <p>
+ * The loop of an executor is given by its loop key, or by its id when it has
+ * none, see {@link #loopOf(Object)}.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class StateMachineEventLoopGroup<C> {
+
+  private static final int WHEEL_SIZE = 512;
+  private final EventLoop[] loops;
+  private final ConsistentHashRing router;
+
+  public StateMachineEventLoopGroup(final int loopCount) {
+    this(loopCount, Executors.defaultThreadFactory());
+  }
+
+  public StateMachineEventLoopGroup(final int loopCount, final ThreadFactory threadFactory) {
+    this(loopCount, threadFactory, 1, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param loopCount The number of loops, i.e. of threads.
+   * @param threadFactory The factory of the threads of the loops.
+   * @param tick The resolution of the timer wheels.
+   * @param unit The time unit of {@code tick}.
+   */
+  public StateMachineEventLoopGroup(final int loopCount, final ThreadFactory threadFactory, final long tick, final TimeUnit unit) {
+    if (tick <= 0) {
+      throw new IllegalArgumentException("Tick must be positive: " + tick);
+    }
+    this.loops = new EventLoop[loopCount];
+    this.router = new ConsistentHashRing(loopCount);
+    for (int i = 0; i < loopCount; i++) {
+      loops[i] = new EventLoop(threadFactory, WHEEL_SIZE, unit.toNanos(tick));
+      loops[i].start();
+    }
+  }
+
+  /**
+   * Gets the number of loops of this group.
+   *
+   * @return The number of loops.
+   */
+  public int size() {
+    return loops.length;
+  }
+
+  /**
+   * Gets the loop the executors built with the given loop key are run on.
+   *
+   * @param key Any object with a stable {@link Object#hashCode()}.
+   * @return The index of the loop.
+   * @see EventLoopStateMachineExecutor.Builder#setLoopKey(Object)
+   */
+  public int loopOf(final Object key) {
+    return router.shard(key);
+  }
+
+  EventLoop loop(final Object key) {
+    return loops[loopOf(key)];
+  }
+
+  /**
+   * Stops all the loops once they have run the tasks already queued. Pending
+   * timers are dropped.
+   */
+  public void shutdown() {
+    for (EventLoop loop : loops) {
+      loop.shutdown();
+    }
+  }
+
+  /**
+   * Stops all the loops once they are done with the task they are running,
+   * if any.
+   *
+   * @return The tasks that were queued and never run.
+   */
+  public List<Runnable> shutdownNow() {
+    final List<Runnable> list = new ArrayList<>();
+    for (EventLoop loop : loops) {
+      list.addAll(loop.shutdownNow());
+    }
+    return list;
+  }
+
+  /**
+   * Returns true if all loops have been shut down.
+   *
+   * @return true if all loops have been shut down
+   */
+  public boolean isShutdown() {
+    for (EventLoop loop : loops) {
+      if (!loop.isShutdown()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if all loops have terminated following shut down.
+   *
+   * @return true if all loops have terminated
+   */
+  public boolean isTerminated() {
+    for (EventLoop loop : loops) {
+      if (!loop.isTerminated()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Blocks until all loops have terminated after a shutdown request, or the
+   * timeout occurs, or the current thread is interrupted, whichever happens
+   * first.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the time unit of the timeout argument
+   * @return true if all the loops terminated and false if the timeout elapsed
+   * before termination for any of them
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (EventLoop loop : loops) {
+      if (!loop.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
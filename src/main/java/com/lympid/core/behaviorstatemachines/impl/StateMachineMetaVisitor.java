@@ -69,6 +69,10 @@ public class StateMachineMetaVisitor extends SimpleVisitor {
   
   @Override
   public void visit(final Transition v) {
+    int ordinal = meta.register(v);
+    if (v instanceof MutableTransition) {
+      ((MutableTransition) v).setOrdinal(ordinal);
+    }
     if (v.triggers().isEmpty()) {
       meta.incCompletionEvents();
     } else if (hasTimeEvents(v)) {
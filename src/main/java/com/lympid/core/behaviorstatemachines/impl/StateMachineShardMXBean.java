@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+/**
+ * Management interface of a shard of a {@link StateMachineShardPoolExecutor}.
+ *
+ * All counters are cumulative since the creation of the shard. Rates are in
+ * tasks per second and are computed between two samples taken at least one
+ * second apart, a sample being taken whenever a rate is read.
+ *
+ * @see StateMachineShardPoolExecutor#registerMBeans(String)
+ *
+ * @author Fabien Renaud
+ */
+public interface StateMachineShardMXBean {
+
+  /**
+   * Gets the index of the shard in its pool.
+   *
+   * @return The index of the shard.
+   */
+  int getShard();
+
+  /**
+   * Gets the number of tasks waiting in the mailbox of the shard.
+   *
+   * @return The number of pending tasks.
+   */
+  int getQueueDepth();
+
+  /**
+   * Gets the number of tasks that have been queued in the mailbox of the
+   * shard.
+   *
+   * @return The number of queued tasks.
+   */
+  long getEnqueuedCount();
+
+  /**
+   * Gets the number of tasks the worker thread of the shard has started.
+   *
+   * @return The number of dequeued tasks.
+   */
+  long getDequeuedCount();
+
+  /**
+   * Gets the number of tasks queued per second.
+   *
+   * @return The enqueue rate.
+   */
+  double getEnqueueRate();
+
+  /**
+   * Gets the number of tasks dequeued per second.
+   *
+   * @return The dequeue rate.
+   */
+  double getDequeueRate();
+
+  /**
+   * Gets the time the worker thread of the shard has spent running tasks.
+   *
+   * @return The busy time, in milliseconds.
+   */
+  long getBusyTimeMillis();
+
+  /**
+   * Gets the time the worker thread of the shard has spent waiting for tasks.
+   *
+   * @return The idle time, in milliseconds.
+   */
+  long getIdleTimeMillis();
+
+  /**
+   * Gets the ratio of the busy time over the lifetime of the shard.
+   *
+   * @return A value between 0 and 1.
+   */
+  double getUtilization();
+
+  /**
+   * Gets how long the oldest task of the mailbox of the shard has been
+   * waiting.
+   *
+   * @return The age of the oldest pending task, in milliseconds, or 0 when the
+   * mailbox is empty.
+   */
+  long getOldestTaskAgeMillis();
+
+  /**
+   * Gets the number of events, other than completion events, that have been
+   * dequeued.
+   *
+   * @return The number of regular events.
+   */
+  long getEventCount();
+
+  /**
+   * Gets the number of completion events that have been dequeued.
+   *
+   * @return The number of completion events.
+   */
+  long getCompletionEventCount();
+
+}
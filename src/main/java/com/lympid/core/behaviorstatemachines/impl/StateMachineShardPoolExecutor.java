@@ -16,45 +16,158 @@
 package com.lympid.core.behaviorstatemachines.impl;
 
 import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
 import com.lympid.core.behaviorstatemachines.StateMachineSnapshot;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
+ * Runs {@link PoolStateMachineExecutor}s on a fixed number of single threaded
+ * shards. All the tasks of an executor are queued in the mailbox of the same
+ * shard and are thus processed sequentially.
+ *
+ * <p>
+ * An elastic pool, created with an {@link ElasticConfiguration}, has virtual
+ * shards instead: shards have no thread of their own and are run, one worker
+ * at a time, by a pool of workers that grows and shrinks with the load.</p>
+ *
+ * <p>
+ * The shard of an executor is given by its shard key, or by its id when it
+ * has none, see {@link #shardOf(Object)}. Executors sharing a key share a
+ * shard: events they take from one another are handed over without crossing
+ * threads.</p>
+ *
+ * <p>
+ * Mailboxes are unbounded by default. They can be bounded per shard and per
+ * executor with a {@link MailboxConfiguration}, in which case the overflow
+ * policy of the configuration decides what happens to the events that do not
+ * fit.</p>
+ *
+ * <p>
+ * The load of every shard is measured and can be published as a
+ * {@link StateMachineShardMXBean} with {@link #registerMBeans(String)}.
+ * Executors can be moved from one shard to another while they run with
+ * {@link #migrate(StateMachineExecutor, int)}, e.g. by a
+ * {@link ShardRebalancer}.</p>
+ *
+ * <p>
+ * Mailboxes are lock-free queues. How the worker of a shard waits for tasks
+ * when its mailbox is empty is set with a {@link WaitStrategy}. Workers park
+ * by default. Events and completion events are written into preallocated
+ * command slots, see {@link MailboxConfiguration#ringCapacity(int)}, so that
+ * queuing them does not allocate any memory.</p>
  *
  * @author Fabien Renaud
  */
 public final class StateMachineShardPoolExecutor<C> {
 
-  private final LinkedBlockingDeque<Runnable>[] queues;
+  /**
+   * The pool the current thread is a worker of, if any.
+   */
+  private static final ThreadLocal<StateMachineShardPoolExecutor<?>> WORKER = new ThreadLocal<>();
+  private final ShardQueue[] queues;
   private final ThreadPoolExecutor[] pools;
+  private final ShardWorkerPool workers;
+  private final MailboxConfiguration mailbox;
+  private final Mailbox[] mailboxes;
+  private final ShardStatistics[] statistics;
+  private final ConsistentHashRing router;
+  private ObjectName[] objectNames;
 
   public StateMachineShardPoolExecutor(final int poolSize) {
     this(poolSize, Executors.defaultThreadFactory());
   }
 
   public StateMachineShardPoolExecutor(final int poolSize, final ThreadFactory threadFactory) {
-    this.queues = new LinkedBlockingDeque[poolSize];
-    this.pools = new ThreadPoolExecutor[poolSize];
+    this(poolSize, threadFactory, MailboxConfiguration.DEFAULT);
+  }
+
+  public StateMachineShardPoolExecutor(final int poolSize, final ThreadFactory threadFactory, final MailboxConfiguration mailbox) {
+    this(poolSize, threadFactory, mailbox, WaitStrategy.BLOCKING);
+  }
+
+  public StateMachineShardPoolExecutor(final int poolSize, final ThreadFactory threadFactory, final MailboxConfiguration mailbox, final WaitStrategy waitStrategy) {
+    this(poolSize, mailbox, waitStrategy, new ThreadPoolExecutor[poolSize], null);
     for (int i = 0; i < poolSize; i++) {
-      queues[i] = new LinkedBlockingDeque<>();
-      pools[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queues[i], threadFactory);
+      pools[i] = new ShardThreadPoolExecutor(queues[i], workerFactory(threadFactory), statistics[i]);
       pools[i].prestartAllCoreThreads();
     }
   }
 
+  /**
+   * Creates an elastic pool. Shards are virtual and share a pool of workers
+   * which grows and shrinks with the load, see {@link ElasticConfiguration}.
+   * There can be many more shards than workers: a shard is run by any idle
+   * worker when it has pending tasks, but never by two workers at once, so the
+   * tasks of an executor are still run one at a time and in order.
+   *
+   * @param shardCount The number of virtual shards.
+   * @param threadFactory The factory of the workers.
+   * @param mailbox The configuration of the mailboxes of the shards.
+   * @param elastic The configuration of the workers.
+   */
+  public StateMachineShardPoolExecutor(final int shardCount, final ThreadFactory threadFactory, final MailboxConfiguration mailbox, final ElasticConfiguration elastic) {
+    this(shardCount, mailbox, WaitStrategy.BLOCKING, new ThreadPoolExecutor[1], new ShardWorkerPool(elastic, threadFactory));
+    pools[0] = workers;
+    workers.setThreadFactory(workerFactory(threadFactory));
+    for (int i = 0; i < shardCount; i++) {
+      queues[i].virtualShard(new VirtualShard(queues[i], statistics[i], workers, elastic.throughput()));
+    }
+    workers.prestartAllCoreThreads();
+  }
+
+  private StateMachineShardPoolExecutor(final int shardCount, final MailboxConfiguration mailbox, final WaitStrategy waitStrategy, final ThreadPoolExecutor[] pools, final ShardWorkerPool workers) {
+    this.queues = new ShardQueue[shardCount];
+    this.pools = pools;
+    this.workers = workers;
+    this.mailbox = mailbox;
+    this.mailboxes = new Mailbox[shardCount];
+    this.statistics = new ShardStatistics[shardCount];
+    this.router = new ConsistentHashRing(shardCount);
+    for (int i = 0; i < shardCount; i++) {
+      queues[i] = new ShardQueue(waitStrategy, mailbox.ringCapacity());
+      statistics[i] = new ShardStatistics(i, queues[i]);
+      if (mailbox.maxBatchSize() > 1) {
+        queues[i].batch(new ShardBatch(queues[i], statistics[i], mailbox.maxBatchSize()));
+      }
+      if (mailbox.isBounded()) {
+        mailboxes[i] = new Mailbox(mailbox.shardCapacity());
+      }
+    }
+  }
+
+  /**
+   * Wraps the factory of the workers so that they can be recognized when they
+   * take events.
+   *
+   * @param threadFactory The factory of the workers.
+   * @return A factory of threads which are workers of this pool.
+   */
+  private ThreadFactory workerFactory(final ThreadFactory threadFactory) {
+    return (r) -> threadFactory.newThread(() -> {
+      WORKER.set(this);
+      r.run();
+    });
+  }
+
   /**
    * Shuts down all the thread pools this {@link StateMachineShardPoolExecutor}
    * instance holds.
@@ -80,6 +193,12 @@ public final class StateMachineShardPoolExecutor<C> {
     for (ThreadPoolExecutor pool : pools) {
       list.addAll(pool.shutdownNow());
     }
+    if (workers != null) {
+      list.clear();
+      for (ShardQueue queue : queues) {
+        queue.drainTo(list);
+      }
+    }
     return list;
   }
 
@@ -173,138 +292,745 @@ public final class StateMachineShardPoolExecutor<C> {
     }
   }
 
+  /**
+   * Gets the number of shards of this pool.
+   *
+   * @return The number of shards.
+   */
+  public int size() {
+    return queues.length;
+  }
+
+  /**
+   * Gets the number of threads currently running the shards of this pool.
+   * That is the number of shards unless the pool is elastic.
+   *
+   * @return The number of worker threads.
+   */
+  public int threads() {
+    return workers == null ? pools.length : workers.getPoolSize();
+  }
+
+  /**
+   * Gets the shard the executors built with the given shard key are run on.
+   *
+   * Keys are mapped to shards with consistent hashing: the executors of the
+   * same key always share the same shard, and a pool with one more shard only
+   * maps a fraction of the keys, about one out of the new number of shards, to
+   * different shards.
+   *
+   * @param key Any object with a stable {@link Object#hashCode()}.
+   * @return The index of the shard.
+   * @see PoolStateMachineExecutor.Builder#setShardKey(Object)
+   */
+  public int shardOf(final Object key) {
+    return router.shard(key);
+  }
+
+  /**
+   * Gets the shard an executor currently runs on.
+   *
+   * @param executor An executor of this pool.
+   * @return The index of the shard of the executor.
+   * @throws IllegalArgumentException When the executor does not belong to
+   * this pool.
+   */
+  public int executorShard(final StateMachineExecutor<C> executor) {
+    return member(executor).shard();
+  }
+
+  /**
+   * Moves an executor to another shard, without pausing it nor any other
+   * executor.
+   *
+   * The migration is asynchronous. A migration command is queued in the
+   * mailbox of the current shard of the executor. When the shard runs it, the
+   * executor is routed to its new shard and the tasks of the executor still
+   * pending in its previous shard are moved to the new one. Until they have
+   * all been moved, the tasks the new shard receives for the executor are
+   * held back. The executor thus keeps processing its events in the order
+   * they were taken.
+   *
+   * @param executor An executor of this pool.
+   * @param shard The index of the shard to move the executor to.
+   * @return true when the migration has been queued, false when the executor
+   * already runs on that shard or is already being migrated.
+   * @throws IllegalArgumentException When the executor does not belong to
+   * this pool or when there is no such shard.
+   */
+  public boolean migrate(final StateMachineExecutor<C> executor, final int shard) {
+    final PoolStateMachineExecutor<C> e = member(executor);
+    if (shard < 0 || shard >= queues.length) {
+      throw new IllegalArgumentException("No such shard: " + shard);
+    }
+    if (e.shard() == shard) {
+      return false;
+    }
+    if (!e.startMigration(new ShardMigration(e, queues[e.shard()], statistics[e.shard()], queues[shard], statistics[shard], shard))) {
+      return false;
+    }
+    append(Command.Op.MIGRATE, e, null, null, null, null);
+    return true;
+  }
+
+  private PoolStateMachineExecutor<C> member(final StateMachineExecutor<C> executor) {
+    if (!(executor instanceof PoolStateMachineExecutor) || ((PoolStateMachineExecutor<C>) executor).pool() != this) {
+      throw new IllegalArgumentException("The executor " + executor.getName() + " does not belong to this pool.");
+    }
+    return (PoolStateMachineExecutor<C>) executor;
+  }
+
+  /**
+   * Gets the mailbox of a shard.
+   *
+   * @param shard The index of the shard.
+   * @return The mailbox of the shard.
+   */
+  ShardQueue queue(final int shard) {
+    return queues[shard];
+  }
+
+  /**
+   * Gets the load statistics of a shard.
+   *
+   * @param shard The index of the shard.
+   * @return The statistics of the shard.
+   */
+  public StateMachineShardMXBean statistics(final int shard) {
+    return statistics[shard];
+  }
+
+  /**
+   * Registers one {@link StateMachineShardMXBean} per shard in the platform
+   * MBean server. The object names of the beans are
+   * {@code com.lympid.core:type=StateMachineShardPoolExecutor,name=<name>,shard=<index>}.
+   *
+   * The beans remain registered after the pool is shut down, until
+   * {@link #unregisterMBeans()} is called.
+   *
+   * @param name The name identifying this pool among the registered ones.
+   * @throws JMException When any of the beans can not be registered. None of
+   * them is registered then.
+   * @throws IllegalStateException When the beans are already registered.
+   */
+  public synchronized void registerMBeans(final String name) throws JMException {
+    if (objectNames != null) {
+      throw new IllegalStateException("MBeans are already registered.");
+    }
+
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName[] names = new ObjectName[statistics.length];
+    try {
+      for (int i = 0; i < statistics.length; i++) {
+        ObjectName objectName = new ObjectName("com.lympid.core:type=StateMachineShardPoolExecutor,name=" + ObjectName.quote(name) + ",shard=" + i);
+        server.registerMBean(statistics[i], objectName);
+        names[i] = objectName;
+      }
+    } catch (JMException ex) {
+      unregister(server, names);
+      throw ex;
+    }
+    objectNames = names;
+  }
+
+  /**
+   * Unregisters the beans registered by {@link #registerMBeans(String)}. Does
+   * nothing if they are not registered.
+   */
+  public synchronized void unregisterMBeans() {
+    if (objectNames != null) {
+      unregister(ManagementFactory.getPlatformMBeanServer(), objectNames);
+      objectNames = null;
+    }
+  }
+
+  private static void unregister(final MBeanServer server, final ObjectName[] names) {
+    for (ObjectName objectName : names) {
+      if (objectName != null) {
+        try {
+          server.unregisterMBean(objectName);
+        } catch (JMException ex) {
+          // already unregistered by someone else
+        }
+      }
+    }
+  }
+
   void go(final PoolStateMachineExecutor<C> executor) {
-    queue(executor).add(new StateMachineStart<>(executor));
+    append(Command.Op.START, executor, null, null, null, null);
   }
 
   void take(final PoolStateMachineExecutor<C> executor, final Event event) {
-    queue(executor).add(new StateMachineEvent<>(executor, event));
+    enqueue(executor, event, null);
+  }
+
+  void take(final PoolStateMachineExecutor<C> executor, final EventType type) {
+    enqueue(executor, type.event(), type);
+  }
+
+  /**
+   * Queues an event, applying the overflow policy of the mailbox.
+   *
+   * @param type The type of the event when it was taken by its type, null
+   * otherwise.
+   */
+  private void enqueue(final PoolStateMachineExecutor<C> executor, final Event event, final EventType type) {
+    final int shard = executor.shard();
+    final Mailbox box = mailboxes[shard];
+    if (box == null || offer(box, queues[shard], executor, event)) {
+      append(Command.Op.EVENT, executor, event, type, null, box);
+    }
+  }
+
+  /**
+   * Applies the overflow policy to an event about to be queued.
+   *
+   * @return true when the event must be queued. Room for it has then been
+   * reserved in the mailboxes of its shard and of its executor.
+   * @throws RejectedExecutionException When the event is rejected.
+   */
+  private boolean offer(final Mailbox box, final ShardQueue queue, final PoolStateMachineExecutor<C> executor, final Event event) {
+    switch (mailbox.overflowPolicy()) {
+      case BLOCK:
+        if (!box.tryAcquire(executor)) {
+          if (WORKER.get() == this) {
+            /*
+             * A worker waiting for room would wait for itself or for other
+             * workers which might all be waiting too.
+             */
+            box.overdraw(executor);
+            onOverflow(executor, event, MailboxListener.Decision.OVERDRAWN);
+            return true;
+          }
+          onOverflow(executor, event, MailboxListener.Decision.BLOCKED);
+          try {
+            box.acquire(executor);
+          } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for room in the mailbox of " + executor.getName(), ex);
+          }
+        }
+        return true;
+      case REJECT:
+        if (!box.tryAcquire(executor)) {
+          onOverflow(executor, event, MailboxListener.Decision.REJECTED);
+          throw new RejectedExecutionException("The mailbox of " + executor.getName() + " is full.");
+        }
+        return true;
+      case DROP_OLDEST:
+        while (!box.tryAcquire(executor)) {
+          if (!evictOldest(box, queue, executor)) {
+            onOverflow(executor, event, MailboxListener.Decision.DROPPED_NEWEST);
+            return false;
+          }
+        }
+        return true;
+      case DROP_NEWEST:
+        if (!box.tryAcquire(executor)) {
+          onOverflow(executor, event, MailboxListener.Decision.DROPPED_NEWEST);
+          return false;
+        }
+        return true;
+      case SHED:
+        if ((box.latency > mailbox.maxLatency() && !queue.isEmpty()) || !box.tryAcquire(executor)) {
+          onOverflow(executor, event, MailboxListener.Decision.SHED);
+          return false;
+        }
+        return true;
+      default:
+        throw new UnsupportedOperationException("Unknown overflow policy: " + mailbox.overflowPolicy());
+    }
+  }
+
+  /**
+   * Discards the oldest pending event of the executor when its own mailbox is
+   * full, or the oldest pending event of the shard otherwise.
+   *
+   * @return true when an event has been discarded.
+   */
+  private boolean evictOldest(final Mailbox box, final ShardQueue queue, final PoolStateMachineExecutor<C> executor) {
+    final boolean executorFull = executor.mailboxPermits() != null && executor.mailboxPermits().availablePermits() <= 0;
+    final Command evicted = queue.cancelOldestEvent(executorFull ? executor : null);
+    if (evicted == null) {
+      return false;
+    }
+    box.release(evicted.executor());
+    onOverflow(evicted.executor(), evicted.event(), MailboxListener.Decision.DROPPED_OLDEST);
+    return true;
+  }
+
+  private void onOverflow(final StateMachineExecutor executor, final Event event, final MailboxListener.Decision decision) {
+    if (mailbox.listener() != null) {
+      mailbox.listener().onOverflow(executor, event, decision);
+    }
+    switch (decision) {
+      case DROPPED_OLDEST:
+      case DROPPED_NEWEST:
+      case SHED:
+        AbstractStateMachineExecutor.release(event);
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Creates the semaphore bounding the number of pending events of a new
+   * executor.
+   *
+   * @return A semaphore or null when executors have an unbounded capacity.
+   */
+  Permits executorPermits() {
+    return mailbox.isBounded() && mailbox.executorCapacity() != Integer.MAX_VALUE
+      ? new Permits(mailbox.executorCapacity())
+      : null;
   }
 
   void take(final PoolStateMachineExecutor<C> executor, final Event event, final State state) {
-    queue(executor).add(new StateMachineStateEvent<>(executor, event, state));
+    append(Command.Op.STATE_EVENT, executor, event, null, state, null);
   }
 
   void takeCompletionEvent(final PoolStateMachineExecutor<C> executor) {
-    queue(executor).addFirst(new StateMachineCompletionEvent<>(executor));
+    final int epoch = executor.enter();
+    try {
+      final int shard = executor.shard();
+      queues[shard].appendCompletion(executor);
+      statistics[shard].enqueued();
+    } finally {
+      executor.exit(epoch);
+    }
   }
 
-  private LinkedBlockingDeque<Runnable> queue(final StateMachineExecutor<C> executor) {
-    int shard = executor.getId() % queues.length;
-    return queues[shard];
+  /**
+   * Queues a command in the mailbox of the current shard of its executor.
+   */
+  private void append(final Command.Op op, final PoolStateMachineExecutor<C> executor, final Event event, final EventType type, final State state, final Mailbox box) {
+    final int epoch = executor.enter();
+    try {
+      final int shard = executor.shard();
+      queues[shard].append(op, executor, event, type, state, box);
+      statistics[shard].enqueued();
+    } finally {
+      executor.exit(epoch);
+    }
+  }
+
+  /**
+   * Inserts a task at the head of the mailbox of the current shard of its
+   * executor.
+   */
+  private void prepend(final ShardTask task) {
+    final PoolStateMachineExecutor<?> executor = task.executor();
+    final int epoch = executor.enter();
+    try {
+      final int shard = executor.shard();
+      queues[shard].addFirst(task);
+      statistics[shard].enqueued();
+    } finally {
+      executor.exit(epoch);
+    }
   }
 
   void resume(final PoolStateMachineExecutor<C> executor) {
-    queue(executor).add(new StateMachineResumeRunnable(executor));
+    append(Command.Op.RESUME, executor, null, null, null, null);
   }
 
   void pause(final PoolStateMachineExecutor<C> executor) {
-    queue(executor).addFirst(new StateMachinePauseRunnable(executor));
+    prepend(new StateMachinePauseRunnable(executor));
   }
 
   Future<StateMachineSnapshot<C>> snapshot(final PoolStateMachineExecutor<C> executor) {
     StateMachineSnapshotRunnable<C> runnable = new StateMachineSnapshotRunnable<>(executor);
-    queue(executor).addFirst(runnable);
+    prepend(runnable);
     return runnable;
   }
 
-  private static final class StateMachineStart<C> implements Runnable {
+  /**
+   * Task queued in the mailbox of a shard.
+   */
+  abstract static class ShardTask implements Runnable {
+
+    private long enqueuedAt = System.nanoTime();
 
-    private final PoolStateMachineExecutor<C> executor;
+    /**
+     * Gets the time at which the task was queued.
+     *
+     * @return A {@link System#nanoTime()} value.
+     */
+    final long enqueuedAt() {
+      return enqueuedAt;
+    }
 
-    public StateMachineStart(final PoolStateMachineExecutor<C> executor) {
-      this.executor = executor;
+    /**
+     * Sets the time at which a reused task is queued.
+     *
+     * @param enqueuedAt A {@link System#nanoTime()} value.
+     */
+    final void enqueuedAt(final long enqueuedAt) {
+      this.enqueuedAt = enqueuedAt;
     }
 
-    @Override
-    public void run() {
-      executor.doGo();
+    Kind kind() {
+      return Kind.CONTROL;
+    }
+
+    /**
+     * Gets the executor the task is run for.
+     *
+     * @return The executor the task is run for.
+     */
+    abstract PoolStateMachineExecutor<?> executor();
+
+    /**
+     * Holds the task back when its executor is being migrated to the shard
+     * running the task, until the tasks queued before it in the previous shard
+     * have been moved.
+     *
+     * @return true when the task has been held back and must not run now.
+     */
+    final boolean hold() {
+      final ShardMigration migration = executor().migration();
+      return migration != null && migration.hold(this);
+    }
+
+    /**
+     * Gets the task to run later in place of this one.
+     *
+     * @return This task, or a copy of it when this task is reused.
+     */
+    ShardTask detach() {
+      return this;
+    }
+
+    enum Kind {
+      EVENT,
+      COMPLETION_EVENT,
+      CONTROL
     }
 
   }
 
-  private static final class StateMachineEvent<C> implements Runnable {
+  /**
+   * Single threaded pool reporting the activity of its worker. Batches report
+   * the activity of each of their tasks themselves.
+   */
+  private static final class ShardThreadPoolExecutor extends ThreadPoolExecutor {
 
-    private final PoolStateMachineExecutor<C> executor;
-    private final Event event;
+    private final ShardStatistics statistics;
 
-    public StateMachineEvent(final PoolStateMachineExecutor<C> executor, final Event event) {
-      this.executor = executor;
-      this.event = event;
+    ShardThreadPoolExecutor(final ShardQueue queue, final ThreadFactory threadFactory, final ShardStatistics statistics) {
+      super(1, 1, 0, TimeUnit.MILLISECONDS, queue, threadFactory);
+      this.statistics = statistics;
     }
 
     @Override
-    public void run() {
-      executor.doTake(event);
+    protected void beforeExecute(final Thread t, final Runnable r) {
+      if (!(r instanceof ShardBatch)) {
+        statistics.started(r);
+      }
+    }
+
+    @Override
+    protected void afterExecute(final Runnable r, final Throwable t) {
+      if (!(r instanceof ShardBatch)) {
+        statistics.completed();
+      }
     }
 
   }
 
-  private static final class StateMachineStateEvent<C> implements Runnable {
+  /**
+   * Command queued in the mailbox of a shard on behalf of an executor.
+   *
+   * Commands are reused: the commands of a {@link ShardRing} are preallocated
+   * slots filled every time a command is queued and released once run. Only
+   * the commands queued when a ring is full are allocated.
+   */
+  static final class Command extends ShardTask {
+
+    private static final AtomicLongFieldUpdater<Command> SEQUENCE = AtomicLongFieldUpdater.newUpdater(Command.class, "sequence");
+    private final ShardRing ring;
+    private volatile long sequence;
+    private long position;
+    private Op op;
+    private PoolStateMachineExecutor<?> executor;
+    private Event event;
+    private EventType type;
+    private State state;
+    private Mailbox mailbox;
+
+    Command() {
+      this(null, 0);
+    }
 
-    private final PoolStateMachineExecutor<C> executor;
-    private final Event event;
-    private final State state;
+    Command(final ShardRing ring, final long sequence) {
+      this.ring = ring;
+      this.sequence = sequence;
+    }
 
-    public StateMachineStateEvent(final PoolStateMachineExecutor<C> executor, final Event event, final State state) {
+    /**
+     * Fills the command.
+     *
+     * @return This command.
+     */
+    Command set(final Op op, final PoolStateMachineExecutor<?> executor, final Event event, final EventType type, final State state, final Mailbox mailbox) {
+      this.op = op;
       this.executor = executor;
       this.event = event;
+      this.type = type;
       this.state = state;
+      this.mailbox = mailbox;
+      enqueuedAt(System.nanoTime());
+      return this;
+    }
+
+    /**
+     * Copies the command into a new command that is not part of any ring.
+     *
+     * @return A copy of this command.
+     */
+    Command copy() {
+      Command c = new Command().set(op, executor, event, type, state, mailbox);
+      c.enqueuedAt(enqueuedAt());
+      return c;
+    }
+
+    long sequence() {
+      return sequence;
+    }
+
+    void sequence(final long sequence) {
+      this.sequence = sequence;
+    }
+
+    boolean compareAndSetSequence(final long expect, final long update) {
+      return SEQUENCE.compareAndSet(this, expect, update);
+    }
+
+    long position() {
+      return position;
+    }
+
+    void position(final long position) {
+      this.position = position;
+    }
+
+    boolean isEvent() {
+      return op == Op.EVENT;
+    }
+
+    boolean isMigration() {
+      return op == Op.MIGRATE;
+    }
+
+    @Override
+    ShardTask detach() {
+      return copy();
+    }
+
+    Event event() {
+      return event;
+    }
+
+    @Override
+    PoolStateMachineExecutor<?> executor() {
+      return executor;
+    }
+
+    @Override
+    Kind kind() {
+      switch (op) {
+        case EVENT:
+        case STATE_EVENT:
+          return Kind.EVENT;
+        case COMPLETION_EVENT:
+          return Kind.COMPLETION_EVENT;
+        default:
+          return Kind.CONTROL;
+      }
     }
 
     @Override
     public void run() {
-      executor.doTake(event, state);
+      try {
+        if (op != Op.MIGRATE && op != Op.RELEASE && hold()) {
+          return;
+        }
+        switch (op) {
+          case START:
+            executor.doGo();
+            break;
+          case EVENT:
+            if (mailbox != null) {
+              mailbox.latency = System.nanoTime() - enqueuedAt();
+              mailbox.release(executor);
+            }
+            if (type == null) {
+              executor.doTake(event);
+            } else {
+              executor.doTake(type);
+            }
+            break;
+          case STATE_EVENT:
+            executor.doTake(event, state);
+            break;
+          case COMPLETION_EVENT:
+            executor.doTakeCompletionEvent();
+            break;
+          case RESUME:
+            executor.doResume();
+            break;
+          case MIGRATE:
+            executor.migration().migrate();
+            break;
+          case RELEASE:
+            executor.migration().release();
+            break;
+          default:
+            throw new UnsupportedOperationException("Unknown command: " + op);
+        }
+      } finally {
+        recycle();
+      }
+    }
+
+    /**
+     * Clears the command and releases its slot when it is part of a ring.
+     */
+    void recycle() {
+      op = null;
+      executor = null;
+      event = null;
+      type = null;
+      state = null;
+      mailbox = null;
+      if (ring != null) {
+        ring.release(this);
+      }
+    }
+
+    enum Op {
+      START,
+      EVENT,
+      STATE_EVENT,
+      COMPLETION_EVENT,
+      RESUME,
+      MIGRATE,
+      RELEASE
     }
 
   }
 
-  private static final class StateMachineCompletionEvent<C> implements Runnable {
+  /**
+   * Counts the pending events of a shard when mailboxes are bounded.
+   */
+  static final class Mailbox {
 
-    private final PoolStateMachineExecutor<C> executor;
+    private final Permits permits;
+    /**
+     * Time, in nanoseconds, the last dequeued event waited in the mailbox.
+     */
+    private volatile long latency;
 
-    public StateMachineCompletionEvent(final PoolStateMachineExecutor<C> executor) {
-      this.executor = executor;
+    Mailbox(final int capacity) {
+      this.permits = capacity == Integer.MAX_VALUE ? null : new Permits(capacity);
     }
 
-    @Override
-    public void run() {
-      executor.doTakeCompletionEvent();
+    boolean tryAcquire(final PoolStateMachineExecutor<?> executor) {
+      final Permits executorPermits = executor.mailboxPermits();
+      if (executorPermits != null && !executorPermits.tryAcquire()) {
+        return false;
+      }
+      if (permits != null && !permits.tryAcquire()) {
+        if (executorPermits != null) {
+          executorPermits.release();
+        }
+        return false;
+      }
+      return true;
+    }
+
+    void acquire(final PoolStateMachineExecutor<?> executor) throws InterruptedException {
+      final Permits executorPermits = executor.mailboxPermits();
+      if (executorPermits != null) {
+        executorPermits.acquire();
+      }
+      if (permits != null) {
+        try {
+          permits.acquire();
+        } catch (InterruptedException ex) {
+          if (executorPermits != null) {
+            executorPermits.release();
+          }
+          throw ex;
+        }
+      }
+    }
+
+    /**
+     * Takes room for an event whether there is room left or not. The room
+     * taken beyond the capacity is given back by {@link #release}.
+     */
+    void overdraw(final PoolStateMachineExecutor<?> executor) {
+      if (executor.mailboxPermits() != null) {
+        executor.mailboxPermits().overdraw();
+      }
+      if (permits != null) {
+        permits.overdraw();
+      }
+    }
+
+    void release(final PoolStateMachineExecutor<?> executor) {
+      if (executor.mailboxPermits() != null) {
+        executor.mailboxPermits().release();
+      }
+      if (permits != null) {
+        permits.release();
+      }
     }
 
   }
 
-  private static final class StateMachinePauseRunnable<C> implements Runnable {
+  /**
+   * Semaphore whose permits can be taken beyond the ones available.
+   */
+  static final class Permits extends Semaphore {
 
-    private final PoolStateMachineExecutor<C> executor;
+    private static final long serialVersionUID = 1L;
 
-    public StateMachinePauseRunnable(final PoolStateMachineExecutor<C> executor) {
-      this.executor = executor;
+    Permits(final int permits) {
+      super(permits);
     }
 
-    @Override
-    public void run() {
-      executor.doPause();
+    void overdraw() {
+      reducePermits(1);
     }
 
   }
 
-  private static final class StateMachineResumeRunnable<C> implements Runnable {
+  private static final class StateMachinePauseRunnable<C> extends ShardTask {
 
     private final PoolStateMachineExecutor<C> executor;
 
-    public StateMachineResumeRunnable(final PoolStateMachineExecutor<C> executor) {
+    public StateMachinePauseRunnable(final PoolStateMachineExecutor<C> executor) {
       this.executor = executor;
     }
 
+    @Override
+    PoolStateMachineExecutor<C> executor() {
+      return executor;
+    }
+
     @Override
     public void run() {
-      executor.doResume();
+      if (!hold()) {
+        executor.doPause();
+      }
     }
 
   }
 
-  private static abstract class StateMachineSnapshotFuture<C> implements Future<StateMachineSnapshot>, Runnable {
+  private static abstract class StateMachineSnapshotFuture<C> extends ShardTask implements Future<StateMachineSnapshot> {
 
     private final CountDownLatch latch = new CountDownLatch(1);
     private final AtomicInteger status = new AtomicInteger();
@@ -339,6 +1065,9 @@ public final class StateMachineShardPoolExecutor<C> {
 
     @Override
     public void run() {
+      if (hold()) {
+        return;
+      }
       if (isCancelled()) {
         latch.countDown();
         return;
@@ -361,6 +1090,11 @@ public final class StateMachineShardPoolExecutor<C> {
       this.executor = executor;
     }
 
+    @Override
+    PoolStateMachineExecutor<C> executor() {
+      return executor;
+    }
+
     @Override
     StateMachineSnapshot<C> snapshot() {
       return executor.doSnapshot();
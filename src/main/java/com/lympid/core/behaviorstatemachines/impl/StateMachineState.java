@@ -47,6 +47,10 @@ public interface StateMachineState {
 
   Set<State> completedStates();
 
+  Set<State> completedStates(Region region);
+
+  Set<String> activeStateIds();
+
   void removeCompletedState(State state);
 
   void deactivate(State state);
@@ -152,6 +156,24 @@ public interface StateMachineState {
       return out;
     }
 
+    @Override
+    public Set<State> completedStates(Region region) {
+      Set<State> out;
+      synchronized (mutex) {
+        out = inst.completedStates(region);
+      }
+      return out;
+    }
+
+    @Override
+    public Set<String> activeStateIds() {
+      Set<String> out;
+      synchronized (mutex) {
+        out = inst.activeStateIds();
+      }
+      return out;
+    }
+
     @Override
     public void removeCompletedState(State state) {
       synchronized (mutex) {
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.StateMachineSnapshot;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * State machine executor with one lock per region of the orthogonal states of
+ * the top level state machine.
+ *
+ * <p>
+ * Events which only trigger transitions within one such region hold a read
+ * lock on the whole state machine plus the lock of their region: events
+ * concerning distinct regions are processed concurrently. All other events,
+ * completion events, snapshots and state machine wide operations hold the
+ * write lock on the whole state machine.</p>
+ *
+ * <p>
+ * Behaviors and listeners of distinct regions may thus run at the same time
+ * and must be thread-safe with respect to each other. Events, completion
+ * events, pauses and resumes a behavior run within a region submits to its
+ * own executor are deferred until the event being processed in that region is
+ * done: processing them right away could require the write lock or the lock
+ * of another region while the read lock and the lock of the region are held.
+ * Such a behavior can not take a snapshot of its executor. Guard memoization
+ * and guard orderings other than DECLARATION can not be used with this
+ * executor.</p>
+ *
+ * @see RegionStripes
+ *
+ * @author Fabien Renaud
+ */
+public class StripedStateMachineExecutor<C> extends AbstractStateMachineExecutor<C> {
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  /**
+   * Tasks submitted by the current thread while it processes an event within
+   * a region.
+   */
+  private final ThreadLocal<ArrayDeque<Runnable>> deferred = ThreadLocal.withInitial(ArrayDeque::new);
+  private final RegionStripes stripes;
+  private final Lock[] stripeLocks;
+
+  private StripedStateMachineExecutor(
+    final int id,
+    final String name,
+    final StateMachine machine,
+    final C context,
+    final ExecutorConfiguration configuration,
+    final StateMachineSnapshot<C> snapshot
+  ) {
+    super(id, name, machine, context, configuration, snapshot);
+    if (configuration.guardMemoization()) {
+      throw new BadConfigurationException("Guard memoization can not be used with a striped executor.");
+    }
+    if (configuration.guardOrdering() != ExecutorConfiguration.GuardOrdering.DECLARATION) {
+      throw new BadConfigurationException("Only the DECLARATION guard ordering can be used with a striped executor.");
+    }
+    this.stripes = new RegionStripes(machine);
+    this.stripeLocks = new Lock[stripes.size()];
+    for (int i = 0; i < stripeLocks.length; i++) {
+      stripeLocks[i] = new ReentrantLock();
+    }
+  }
+
+  @Override
+  protected StateMachineState createMachineState(final StateMachine machine) {
+    return StateMachineState.synchronizedMachineState(super.createMachineState(machine));
+  }
+
+  /**
+   * Gets the number of regions events can be processed concurrently in.
+   *
+   * @return The number of region stripes.
+   */
+  public int stripes() {
+    return stripes.size();
+  }
+
+  @Override
+  public void go() {
+    lock.writeLock().lock();
+    try {
+      super.go();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void take(final Event event) {
+    if (defer(() -> take(event))) {
+      return;
+    }
+    dispatch(event, null);
+  }
+
+  @Override
+  public void take(final EventType type) {
+    if (defer(() -> take(type))) {
+      return;
+    }
+    dispatch(type.event(), type);
+  }
+
+  /**
+   * Takes an event within its region when it belongs to one, within the
+   * whole state machine otherwise.
+   *
+   * @param event The event to process.
+   * @param type The type of the event when it was taken by its type, null
+   * otherwise.
+   */
+  private void dispatch(final Event event, final EventType type) {
+    int stripe = RegionStripes.MACHINE;
+    lock.readLock().lock();
+    try {
+      if (hasStarted()) {
+        stripe = type == null ? stripes.stripe(event) : stripes.stripe(type);
+      }
+      if (stripe != RegionStripes.MACHINE) {
+        stripeLocks[stripe].lock();
+        try {
+          if (type == null) {
+            super.take(event, stripes.region(stripe));
+          } else {
+            super.take(type, stripes.region(stripe));
+          }
+        } finally {
+          stripeLocks[stripe].unlock();
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    if (stripe == RegionStripes.MACHINE) {
+      lock.writeLock().lock();
+      try {
+        if (type == null) {
+          super.take(event);
+        } else {
+          super.take(type);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    } else {
+      runDeferred();
+    }
+  }
+
+  @Override
+  protected void take(final Event event, final State state) {
+    if (defer(() -> take(event, state))) {
+      return;
+    }
+
+    final int stripe = stripes.stripe(state);
+    if (stripe == RegionStripes.MACHINE) {
+      lock.writeLock().lock();
+      try {
+        super.take(event, state);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    } else {
+      lock.readLock().lock();
+      stripeLocks[stripe].lock();
+      try {
+        super.take(event, state, stripes.region(stripe));
+      } finally {
+        stripeLocks[stripe].unlock();
+        lock.readLock().unlock();
+      }
+      runDeferred();
+    }
+  }
+
+  @Override
+  protected void takeCompletionEvent() {
+    if (defer(this::takeCompletionEvent)) {
+      return;
+    }
+
+    lock.writeLock().lock();
+    try {
+      super.takeCompletionEvent();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public StateMachineSnapshot<C> snapshot() {
+    if (inRegion()) {
+      throw new IllegalStateException("A snapshot can not be taken while an event is processed within a region by the same thread.");
+    }
+
+    lock.writeLock().lock();
+    try {
+      return super.snapshot();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void pause() {
+    if (defer(this::pause)) {
+      return;
+    }
+
+    lock.writeLock().lock();
+    try {
+      super.pause();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public void resume() {
+    if (defer(this::resume)) {
+      return;
+    }
+
+    lock.writeLock().lock();
+    try {
+      super.resume();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets whether the current thread is processing an event within a region,
+   * i.e. holds the read lock but not the write lock.
+   *
+   * @return true when the current thread must not wait for the write lock nor
+   * for the lock of a region.
+   */
+  private boolean inRegion() {
+    return lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread();
+  }
+
+  /**
+   * Defers a task submitted while the current thread processes an event within
+   * a region.
+   *
+   * @param task The task to run once the event has been processed.
+   * @return true when the task has been deferred, false when it must be run
+   * right away.
+   */
+  private boolean defer(final Runnable task) {
+    if (inRegion()) {
+      deferred.get().add(task);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Runs the tasks deferred while the current thread processed an event within
+   * a region, in the order they were submitted.
+   */
+  private void runDeferred() {
+    final ArrayDeque<Runnable> tasks = deferred.get();
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      task.run();
+    }
+  }
+
+  public static final class Builder<C> extends AbstractBuilder<C> {
+
+    @Override
+    public StateMachineExecutor<C> build() {
+      return new StripedStateMachineExecutor<>(
+        getId(),
+        getName(),
+        getMachine(),
+        getContext(),
+        getConfiguration(),
+        getSnapshot()
+      );
+    }
+
+  }
+
+}
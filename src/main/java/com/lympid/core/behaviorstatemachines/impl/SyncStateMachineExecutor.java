@@ -16,6 +16,7 @@
 package com.lympid.core.behaviorstatemachines.impl;
 
 import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
 import com.lympid.core.behaviorstatemachines.State;
 import com.lympid.core.behaviorstatemachines.StateMachine;
 import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
@@ -53,6 +54,11 @@ public class SyncStateMachineExecutor<C> extends AbstractStateMachineExecutor<C>
     super.take(event);
   }
 
+  @Override
+  public synchronized void take(final EventType type) {
+    super.take(type);
+  }
+
   @Override
   protected synchronized void take(final Event event, final State state) {
     super.take(event, state);
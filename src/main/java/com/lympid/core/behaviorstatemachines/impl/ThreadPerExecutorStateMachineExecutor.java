@@ -0,0 +1,249 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.StateMachineSnapshot;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Executor with a mailbox of its own, drained by a thread of its own.
+ *
+ * <p>
+ * Whenever a task is queued in the mailbox of an idle executor, a drain task
+ * is given to the thread executor of the state machine executor, which runs
+ * it on a new thread or on any idle one. The drain task runs the tasks of the
+ * mailbox one after another, in order, and returns as soon as the mailbox is
+ * empty. There is at most one drain task per executor at any time.</p>
+ *
+ * <p>
+ * Behaviors may thus block: a blocked behavior only stalls its own executor,
+ * never the executors sharing a thread pool with it as with
+ * {@link StateMachineShardPoolExecutor}. With a thread executor starting a
+ * virtual thread per task, see {@link #newThreadPerTaskExecutor()}, blocked
+ * executors only cost the memory of their virtual thread and any number of
+ * them can be blocked at once. Idle executors cost no thread at all.</p>
+ *
+ * @author Fabien Renaud
+ */
+public class ThreadPerExecutorStateMachineExecutor<C> extends AbstractStateMachineExecutor<C> {
+
+  private final Executor threads;
+  private final ConcurrentLinkedQueue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+  private final Runnable drain = this::drain;
+  /**
+   * The thread draining the mailbox, if any.
+   */
+  private volatile Thread drainer;
+
+  private ThreadPerExecutorStateMachineExecutor(
+    final int id,
+    final String name,
+    final StateMachine machine,
+    final C context,
+    final ExecutorConfiguration configuration,
+    final StateMachineSnapshot<C> snapshot,
+    final Executor threads
+  ) {
+    super(id, name, machine, context, configuration, snapshot);
+    this.threads = threads;
+  }
+
+  /**
+   * Creates a thread executor starting a virtual thread per task when the
+   * runtime has virtual threads, i.e. Java 21 or later, and a cached thread
+   * pool otherwise.
+   *
+   * @return A new thread executor to give to
+   * {@link Builder#Builder(Executor)}.
+   */
+  public static ExecutorService newThreadPerTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException ex) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  private void execute(final Runnable task) {
+    mailbox.offer(task);
+    if (!scheduled.get()) {
+      schedule();
+    }
+  }
+
+  /**
+   * Gives a drain task to the thread executor unless one is already
+   * scheduled. When the thread executor rejects it, the executor is left
+   * unscheduled so that the next task queued schedules a drain task again.
+   *
+   * @throws RuntimeException When the thread executor rejects the drain
+   * task.
+   */
+  private void schedule() {
+    if (scheduled.compareAndSet(false, true)) {
+      try {
+        threads.execute(drain);
+      } catch (RuntimeException ex) {
+        scheduled.set(false);
+        throw ex;
+      }
+    }
+  }
+
+  private void drain() {
+    final Thread thread = Thread.currentThread();
+    drainer = thread;
+    try {
+      Runnable task;
+      while ((task = mailbox.poll()) != null) {
+        try {
+          task.run();
+        } catch (RuntimeException ex) {
+          thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+        }
+      }
+    } finally {
+      drainer = null;
+      scheduled.set(false);
+      if (!mailbox.isEmpty()) {
+        try {
+          schedule();
+        } catch (RuntimeException ex) {
+          thread.getUncaughtExceptionHandler().uncaughtException(thread, ex);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void go() {
+    execute(this::doGo);
+  }
+
+  private void doGo() {
+    super.go();
+  }
+
+  @Override
+  public void take(final Event event) {
+    execute(() -> doTake(event));
+  }
+
+  private void doTake(final Event event) {
+    super.take(event);
+  }
+
+  @Override
+  public void take(final EventType type) {
+    execute(() -> doTake(type));
+  }
+
+  private void doTake(final EventType type) {
+    super.take(type);
+  }
+
+  @Override
+  protected void take(final Event event, final State state) {
+    execute(() -> doTake(event, state));
+  }
+
+  private void doTake(final Event event, final State state) {
+    super.take(event, state);
+  }
+
+  @Override
+  protected void takeCompletionEvent() {
+    execute(this::doTakeCompletionEvent);
+  }
+
+  private void doTakeCompletionEvent() {
+    super.takeCompletionEvent();
+  }
+
+  @Override
+  public void resume() {
+    execute(this::doResume);
+  }
+
+  private void doResume() {
+    super.resume();
+  }
+
+  @Override
+  public void pause() {
+    execute(this::doPause);
+  }
+
+  private void doPause() {
+    super.pause();
+  }
+
+  @Override
+  public StateMachineSnapshot<C> snapshot() {
+    if (drainer == Thread.currentThread()) {
+      return super.snapshot();
+    }
+
+    final FutureTask<StateMachineSnapshot<C>> f = new FutureTask<>(this::doSnapshot);
+    execute(f);
+    return await(f, this);
+  }
+
+  private StateMachineSnapshot<C> doSnapshot() {
+    return super.snapshot();
+  }
+
+  public static final class Builder<C> extends AbstractBuilder<C> {
+
+    private final Executor threads;
+
+    /**
+     * @param threads The thread executor running the mailboxes of the
+     * executors, e.g.
+     * {@link ThreadPerExecutorStateMachineExecutor#newThreadPerTaskExecutor()}.
+     * Several executors
+     * may share it.
+     */
+    public Builder(final Executor threads) {
+      this.threads = threads;
+    }
+
+    @Override
+    public StateMachineExecutor<C> build() {
+      return new ThreadPerExecutorStateMachineExecutor<>(
+        getId(),
+        getName(),
+        getMachine(),
+        getContext(),
+        getConfiguration(),
+        getSnapshot(),
+        threads
+      );
+    }
+
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Hashed timer wheel owned by a single thread.
+ *
+ * Time is divided into ticks. A timer is put in the bucket of the tick it
+ * expires at, modulo the number of buckets, so that scheduling and cancelling
+ * a timer are constant time operations. Expiring timers only looks at the
+ * buckets of the ticks elapsed since the previous call. Timers are thus fired
+ * up to one tick late, never early.
+ *
+ * There is no synchronization at all: timers must only be scheduled, expired
+ * and cancelled by the thread owning the wheel. Other threads may only query
+ * timers and wait for them.
+ *
+ * @author Fabien Renaud
+ */
+final class TimerWheel {
+
+  private final Timeout[] buckets;
+  private final int mask;
+  private final long tickNanos;
+  private final long origin;
+  private long tick;
+  private int size;
+  /**
+   * The thread owning the wheel, i.e. the last one to have scheduled a timer.
+   */
+  private Thread owner;
+
+  /**
+   * @param bucketCount The number of buckets. Rounded up to the next power of
+   * 2.
+   * @param tickNanos The duration of a tick, in nanoseconds.
+   * @param now The current time, in nanoseconds.
+   */
+  TimerWheel(final int bucketCount, final long tickNanos, final long now) {
+    final int n = bucketCount <= 1 ? 1 : Integer.highestOneBit(bucketCount - 1) << 1;
+    this.buckets = new Timeout[n];
+    this.mask = n - 1;
+    this.tickNanos = tickNanos;
+    this.origin = now;
+  }
+
+  /**
+   * Schedules a task.
+   *
+   * @param task The task to run once the delay has elapsed.
+   * @param delay The delay.
+   * @param unit The time unit of {@code delay}.
+   * @param now The current time, in nanoseconds.
+   * @return The timer, to cancel the task with.
+   */
+  Timeout schedule(final Runnable task, final long delay, final TimeUnit unit, final long now) {
+    final long deadline = now - origin + Math.max(0, unit.toNanos(delay));
+    final long t = Math.max((deadline + tickNanos - 1) / tickNanos, tick + 1);
+    owner = Thread.currentThread();
+    final Timeout timeout = new Timeout(this, task, t);
+    final int i = (int) (t & mask);
+    timeout.next = buckets[i];
+    if (timeout.next != null) {
+      timeout.next.prev = timeout;
+    }
+    buckets[i] = timeout;
+    size++;
+    return timeout;
+  }
+
+  /**
+   * Runs the tasks of all the timers expired at the given time. Timers
+   * scheduled by these tasks are only fired by a later call.
+   *
+   * @param now The current time, in nanoseconds.
+   * @return The number of tasks run.
+   */
+  int expire(final long now) {
+    final long target = (now - origin) / tickNanos;
+    if (target <= tick) {
+      return 0;
+    }
+
+    int count = 0;
+    long t = Math.max(tick, target - buckets.length);
+    tick = target;
+    while (t < target && size > 0) {
+      t++;
+      Timeout timeout = buckets[(int) (t & mask)];
+      while (timeout != null) {
+        final Timeout next = timeout.next;
+        if (timeout.tick <= target && timeout.remove()) {
+          try {
+            timeout.task.run();
+          } finally {
+            timeout.complete(Timeout.FIRED);
+          }
+          count++;
+        }
+        timeout = next;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Gets the time left until the next tick.
+   *
+   * @param now The current time, in nanoseconds.
+   * @return The time left until the next tick, in nanoseconds.
+   */
+  long nanosToNextTick(final long now) {
+    return Math.max(0, (tick + 1) * tickNanos - (now - origin));
+  }
+
+  /**
+   * Gets the number of pending timers.
+   *
+   * @return The number of timers neither fired nor cancelled.
+   */
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Pending task of a {@link TimerWheel}. Unlinked from its bucket once fired
+   * or cancelled. A timer keeps its link to the next timer of its bucket once
+   * unlinked so that a bucket can be walked while its timers are cancelled.
+   *
+   * A timer is done once its task has run or once it is cancelled. Any thread
+   * can wait for it to be done, except the thread owning the wheel: it would
+   * wait for itself to fire the timer.
+   */
+  static final class Timeout implements Future<Void> {
+
+    private static final int PENDING = 0;
+    private static final int FIRED = 1;
+    private static final int CANCELLED = 2;
+
+    private final TimerWheel wheel;
+    private final Runnable task;
+    private final long tick;
+    private Timeout prev;
+    private Timeout next;
+    private boolean unlinked;
+    private volatile int state = PENDING;
+    private volatile boolean waiting;
+
+    private Timeout(final TimerWheel wheel, final Runnable task, final long tick) {
+      this.wheel = wheel;
+      this.task = task;
+      this.tick = tick;
+    }
+
+    /**
+     * Unlinks the timer from its bucket.
+     *
+     * @return false when the timer was already fired or cancelled.
+     */
+    private boolean remove() {
+      if (unlinked) {
+        return false;
+      }
+      unlinked = true;
+      if (prev == null) {
+        wheel.buckets[(int) (tick & wheel.mask)] = next;
+      } else {
+        prev.next = next;
+      }
+      if (next != null) {
+        next.prev = prev;
+      }
+      wheel.size--;
+      return true;
+    }
+
+    /**
+     * Marks the timer done and wakes up the threads waiting for it.
+     *
+     * @param outcome Either {@link #FIRED} or {@link #CANCELLED}.
+     */
+    private void complete(final int outcome) {
+      state = outcome;
+      if (waiting) {
+        synchronized (this) {
+          notifyAll();
+        }
+      }
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      if (remove()) {
+        complete(CANCELLED);
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return state == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+      return state != PENDING;
+    }
+
+    /**
+     * Waits for the timer to be done.
+     *
+     * @return null once the task of the timer has run.
+     * @throws CancellationException When the timer was cancelled.
+     * @throws IllegalStateException When the timer is pending and the calling
+     * thread owns the wheel.
+     * @throws InterruptedException When interrupted while waiting.
+     */
+    @Override
+    public Void get() throws InterruptedException {
+      if (state == PENDING) {
+        checkNotOwner();
+        synchronized (this) {
+          waiting = true;
+          while (state == PENDING) {
+            wait();
+          }
+        }
+      }
+      return report();
+    }
+
+    /**
+     * Waits at most the given time for the timer to be done.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit The time unit of {@code timeout}.
+     * @return null once the task of the timer has run.
+     * @throws CancellationException When the timer was cancelled.
+     * @throws IllegalStateException When the timer is pending and the calling
+     * thread owns the wheel.
+     * @throws InterruptedException When interrupted while waiting.
+     * @throws TimeoutException When the timer is still pending once the time
+     * has elapsed.
+     */
+    @Override
+    public Void get(final long timeout, final TimeUnit unit) throws InterruptedException, TimeoutException {
+      if (state == PENDING) {
+        checkNotOwner();
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+          waiting = true;
+          long left;
+          while (state == PENDING) {
+            left = deadline - System.nanoTime();
+            if (left <= 0) {
+              throw new TimeoutException();
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+          }
+        }
+      }
+      return report();
+    }
+
+    private void checkNotOwner() {
+      if (wheel.owner == Thread.currentThread()) {
+        throw new IllegalStateException("A pending timer can not be waited for by the thread firing it.");
+      }
+    }
+
+    private Void report() {
+      if (state == CANCELLED) {
+        throw new CancellationException();
+      }
+      return null;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Shard of an elastic {@link StateMachineShardPoolExecutor}. It has no thread
+ * of its own: it is scheduled on the {@link ShardWorkerPool} whenever a task
+ * is queued in its mailbox and drained by whichever worker picks it.
+ *
+ * A shard is scheduled at most once at any time. The worker draining it
+ * clears the scheduled flag when done and checks the mailbox again, so that
+ * no task queued meanwhile is left behind. Tasks of a shard are thus run by a
+ * single worker at a time, in order, and the next worker to drain the shard
+ * sees everything the previous one did.
+ *
+ * @author Fabien Renaud
+ */
+final class VirtualShard implements Runnable {
+
+  private final ShardQueue queue;
+  private final ShardStatistics statistics;
+  private final ShardWorkerPool workers;
+  private final int throughput;
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  VirtualShard(final ShardQueue queue, final ShardStatistics statistics, final ShardWorkerPool workers, final int throughput) {
+    this.queue = queue;
+    this.statistics = statistics;
+    this.workers = workers;
+    this.throughput = throughput;
+  }
+
+  /**
+   * Schedules the shard on the workers unless it already is. Called every
+   * time a task is queued in the mailbox of the shard.
+   *
+   * Once the workers are shut down, tasks are left in the mailbox.
+   */
+  void schedule() {
+    if (!scheduled.get() && scheduled.compareAndSet(false, true)) {
+      try {
+        workers.execute(this);
+      } catch (RejectedExecutionException ex) {
+        scheduled.set(false);
+      }
+    }
+  }
+
+  /**
+   * Runs the pending tasks of the shard, up to the throughput of the shard.
+   * The shard is drained to the end once the workers are shut down, and not
+   * drained at all anymore once they are stopped.
+   */
+  @Override
+  public void run() {
+    final long start = System.nanoTime();
+    try {
+      Runnable r;
+      int count = 0;
+      while (!workers.isStopped() && (count++ < throughput || workers.isShutdown()) && (r = queue.next()) != null) {
+        if (r instanceof ShardBatch) {
+          r.run();
+        } else {
+          statistics.started(r);
+          try {
+            r.run();
+          } finally {
+            statistics.completed();
+          }
+        }
+      }
+    } finally {
+      scheduled.set(false);
+      workers.ran(System.nanoTime() - start);
+      if (!queue.isEmpty()) {
+        schedule();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How the worker of a shard waits for tasks when its mailbox is empty.
+ *
+ * Mailboxes are lock-free queues: producers never block on them. Only the
+ * way the worker waits differs from one strategy to another, trading CPU
+ * usage for the latency between a task being queued and the worker picking
+ * it up.
+ *
+ * @see StateMachineShardPoolExecutor#StateMachineShardPoolExecutor(int,
+ * java.util.concurrent.ThreadFactory, MailboxConfiguration, WaitStrategy)
+ *
+ * @author Fabien Renaud
+ */
+public enum WaitStrategy {
+
+  /**
+   * The worker parks until a task is queued. Idle shards use no CPU but every
+   * task queued to an idle shard pays for waking the worker up.
+   */
+  BLOCKING {
+    @Override
+    void idle(final ShardQueue queue, final int attempts, final long nanos) {
+      queue.park(nanos);
+    }
+  },
+  /**
+   * The worker spins, then yields, then sleeps for the shortest time the
+   * platform allows, usually a few tens of microseconds, until a task is
+   * queued. Idle shards use little CPU and producers never have to wake the
+   * worker up.
+   */
+  SLEEPING {
+    @Override
+    void idle(final ShardQueue queue, final int attempts, final long nanos) {
+      if (attempts < SPINS) {
+        spin(queue, 1);
+      } else if (attempts < SPINS + YIELDS) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(queue, Math.min(nanos, SLEEP_NANOS));
+      }
+    }
+  },
+  /**
+   * The worker spins, then yields the CPU to other threads until a task is
+   * queued. Idle shards keep their core busy unless other threads need it.
+   */
+  YIELDING {
+    @Override
+    void idle(final ShardQueue queue, final int attempts, final long nanos) {
+      if (attempts < SPINS) {
+        spin(queue, 1);
+      } else {
+        Thread.yield();
+      }
+    }
+  },
+  /**
+   * The worker never leaves its core. It polls its mailbox at exponentially
+   * growing intervals, up to a short maximum, to reduce the traffic on the
+   * mailbox while it stays empty. Every idle shard burns a core: use at most
+   * as many shards as there are cores to spare.
+   */
+  BUSY_SPIN {
+    @Override
+    void idle(final ShardQueue queue, final int attempts, final long nanos) {
+      spin(queue, 1 << Math.min(attempts, MAX_BACKOFF_SHIFT));
+    }
+  };
+
+  private static final int SPINS = 100;
+  private static final int YIELDS = 100;
+  private static final int MAX_BACKOFF_SHIFT = 10;
+  private static final long SLEEP_NANOS = 100;
+
+  /**
+   * Waits for a task to be queued.
+   *
+   * @param queue The empty queue the worker polls.
+   * @param attempts The number of times in a row the worker has found its
+   * queue empty before this call.
+   * @param nanos The maximum time to wait for, in nanoseconds.
+   */
+  abstract void idle(ShardQueue queue, int attempts, long nanos);
+
+  private static void spin(final ShardQueue queue, final int iterations) {
+    for (int i = 0; i < iterations && queue.isEmpty(); i++) {
+      // busy wait
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram backed by an array of atomic counters.
+ *
+ * Compact and lock-free, it suits histograms mostly written by one thread at
+ * a time such as the ones of a single executor.
+ *
+ * @author Fabien Renaud
+ */
+public final class AtomicLatencyHistogram extends LatencyHistogram {
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong sum = new AtomicLong();
+
+  @Override
+  public void record(final long nanos) {
+    counts.incrementAndGet(bucket(nanos));
+    sum.addAndGet(Math.max(0, nanos));
+  }
+
+  @Override
+  public long count(final int bucket) {
+    return counts.get(bucket);
+  }
+
+  @Override
+  public long sum() {
+    return sum.get();
+  }
+
+}
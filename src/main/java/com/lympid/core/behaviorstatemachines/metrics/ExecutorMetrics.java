@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.Transition;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of a single executor.
+ *
+ * <p>
+ * The latency of processing events and the accepted and denied counters are
+ * kept per executor in lock-free atomic counters. Every recorded value is also
+ * aggregated in the {@link StateMachineMetrics} the executor reports to, which
+ * additionally breaks down latencies per state and per transition.</p>
+ *
+ * @author Fabien Renaud
+ */
+public final class ExecutorMetrics {
+
+  private final StateMachineMetrics machine;
+  private final AtomicLatencyHistogram take = new AtomicLatencyHistogram();
+  private final AtomicLong accepted = new AtomicLong();
+  private final AtomicLong denied = new AtomicLong();
+
+  /**
+   * Instantiates the metrics of an executor.
+   *
+   * @param machine The metrics to aggregate into.
+   */
+  public ExecutorMetrics(final StateMachineMetrics machine) {
+    this.machine = machine;
+  }
+
+  /**
+   * Gets the aggregated metrics this executor reports to.
+   *
+   * @return The aggregated metrics.
+   */
+  public StateMachineMetrics machine() {
+    return machine;
+  }
+
+  /**
+   * Gets the latency of processing an event, completion events included.
+   *
+   * @return The latency of processing an event by this executor.
+   */
+  public LatencyHistogram take() {
+    return take;
+  }
+
+  /**
+   * Gets the number of events that fired at least one transition.
+   *
+   * @return The number of events accepted by this executor.
+   */
+  public long accepted() {
+    return accepted.get();
+  }
+
+  /**
+   * Gets the number of events that did not fire any transitions.
+   *
+   * @return The number of events denied by this executor.
+   */
+  public long denied() {
+    return denied.get();
+  }
+
+  public void recordTake(final long nanos) {
+    take.record(nanos);
+    machine.recordTake(nanos);
+  }
+
+  public void eventAccepted() {
+    accepted.incrementAndGet();
+    machine.eventAccepted();
+  }
+
+  public void eventDenied() {
+    denied.incrementAndGet();
+    machine.eventDenied();
+  }
+
+  public void recordGuard(final Transition transition, final long nanos) {
+    machine.transition(transition).guard().record(nanos);
+  }
+
+  public void recordEffect(final Transition transition, final long nanos) {
+    machine.transition(transition).effect().record(nanos);
+  }
+
+  public void recordEntry(final State state, final long nanos) {
+    machine.state(state).entry().record(nanos);
+  }
+
+  public void recordExit(final State state, final long nanos) {
+    machine.state(state).exit().record(nanos);
+  }
+
+  public void recordActivity(final State state, final long nanos) {
+    machine.state(state).activity().record(nanos);
+  }
+
+}
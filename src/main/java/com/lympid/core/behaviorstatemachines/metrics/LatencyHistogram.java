@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+/**
+ * Histogram of latencies, in nanoseconds, with logarithmic buckets.
+ *
+ * <p>
+ * Bucket 0 counts latencies of 0 nanoseconds and bucket {@code i > 0} counts
+ * latencies in the range {@code [2^(i-1), 2^i)}. Recording a value is a single
+ * lock-free increment, which keeps the histogram cheap enough to be always on
+ * at the cost of a precision of a factor 2.</p>
+ *
+ * @see AtomicLatencyHistogram
+ * @see StripedLatencyHistogram
+ *
+ * @author Fabien Renaud
+ */
+public abstract class LatencyHistogram {
+
+  /**
+   * Number of buckets of every histogram.
+   */
+  public static final int BUCKETS = 64;
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos A latency in nanoseconds. Negative values count as 0.
+   */
+  public abstract void record(long nanos);
+
+  /**
+   * Gets the number of latencies recorded in a bucket.
+   *
+   * @param bucket A bucket index between 0 and {@link #BUCKETS} excluded.
+   * @return The number of latencies recorded in the bucket.
+   */
+  public abstract long count(int bucket);
+
+  /**
+   * Gets the sum of all the latencies recorded.
+   *
+   * @return The sum of all the latencies recorded, in nanoseconds.
+   */
+  public abstract long sum();
+
+  /**
+   * Gets the number of latencies recorded.
+   *
+   * @return The number of latencies recorded.
+   */
+  public long count() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += count(i);
+    }
+    return count;
+  }
+
+  /**
+   * Gets the average latency.
+   *
+   * @return The average latency in nanoseconds or 0 when nothing has been
+   * recorded.
+   */
+  public double mean() {
+    long count = count();
+    return count == 0 ? 0 : (double) sum() / count;
+  }
+
+  /**
+   * Gets an upper bound of the latency under which the given fraction of the
+   * recorded latencies are.
+   *
+   * @param quantile A number between 0 and 1, e.g. 0.99 for the 99th
+   * percentile.
+   * @return The upper bound, in nanoseconds, of the bucket the quantile falls
+   * in or 0 when nothing has been recorded.
+   */
+  public long percentile(final double quantile) {
+    final long[] counts = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = count(i);
+      total += counts[i];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    final long rank = (long) Math.ceil(quantile * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= rank && counts[i] > 0) {
+        return upperBound(i);
+      }
+    }
+    return upperBound(BUCKETS - 1);
+  }
+
+  /**
+   * Gets the bucket a latency falls in.
+   *
+   * @param nanos A latency in nanoseconds.
+   * @return The index of the bucket.
+   */
+  public static int bucket(final long nanos) {
+    return nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+  }
+
+  /**
+   * Gets the largest latency a bucket can count.
+   *
+   * @param bucket A bucket index.
+   * @return The largest latency of the bucket, in nanoseconds.
+   */
+  public static long upperBound(final int bucket) {
+    return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+  }
+
+}
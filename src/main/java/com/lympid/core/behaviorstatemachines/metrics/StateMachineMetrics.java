@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.Transition;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics aggregated over all the executors sharing the same instance, which
+ * are typically all the executors of a state machine.
+ *
+ * <p>
+ * Latencies of event processing, guards, effects, entry and exit behaviors
+ * and activities are recorded in {@link StripedLatencyHistogram}s and events
+ * are counted with {@link LongAdder}s so that executors running on different
+ * threads do not contend on the same counters.</p>
+ *
+ * @see com.lympid.core.behaviorstatemachines.impl.ExecutorConfiguration#metrics(StateMachineMetrics)
+ * @see ExecutorMetrics
+ *
+ * @author Fabien Renaud
+ */
+public final class StateMachineMetrics {
+
+  private final StripedLatencyHistogram take = new StripedLatencyHistogram();
+  private final LongAdder accepted = new LongAdder();
+  private final LongAdder denied = new LongAdder();
+  private final ConcurrentMap<State, StateMetrics> states = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Transition, TransitionMetrics> transitions = new ConcurrentHashMap<>();
+
+  /**
+   * Gets the latency of processing an event, completion events included.
+   *
+   * @return The latency of processing an event.
+   */
+  public LatencyHistogram take() {
+    return take;
+  }
+
+  /**
+   * Gets the number of events that fired at least one transition.
+   *
+   * @return The number of accepted events.
+   */
+  public long accepted() {
+    return accepted.sum();
+  }
+
+  /**
+   * Gets the number of events that did not fire any transitions.
+   *
+   * @return The number of denied events.
+   */
+  public long denied() {
+    return denied.sum();
+  }
+
+  /**
+   * Gets the metrics of a state.
+   *
+   * @param state A state of the state machine.
+   * @return The metrics of the state.
+   */
+  public StateMetrics state(final State state) {
+    StateMetrics m = states.get(state);
+    return m == null ? states.computeIfAbsent(state, (s) -> new StateMetrics()) : m;
+  }
+
+  /**
+   * Gets the metrics of a transition.
+   *
+   * @param transition A transition of the state machine.
+   * @return The metrics of the transition.
+   */
+  public TransitionMetrics transition(final Transition transition) {
+    TransitionMetrics m = transitions.get(transition);
+    return m == null ? transitions.computeIfAbsent(transition, (t) -> new TransitionMetrics()) : m;
+  }
+
+  void recordTake(final long nanos) {
+    take.record(nanos);
+  }
+
+  void eventAccepted() {
+    accepted.increment();
+  }
+
+  void eventDenied() {
+    denied.increment();
+  }
+
+  /**
+   * Latencies of the behaviors of a state.
+   */
+  public static final class StateMetrics {
+
+    private final StripedLatencyHistogram entry = new StripedLatencyHistogram();
+    private final StripedLatencyHistogram exit = new StripedLatencyHistogram();
+    private final StripedLatencyHistogram activity = new StripedLatencyHistogram();
+
+    private StateMetrics() {
+    }
+
+    public LatencyHistogram entry() {
+      return entry;
+    }
+
+    public LatencyHistogram exit() {
+      return exit;
+    }
+
+    public LatencyHistogram activity() {
+      return activity;
+    }
+
+  }
+
+  /**
+   * Latencies of the guard and the effect of a transition.
+   */
+  public static final class TransitionMetrics {
+
+    private final StripedLatencyHistogram guard = new StripedLatencyHistogram();
+    private final StripedLatencyHistogram effect = new StripedLatencyHistogram();
+
+    private TransitionMetrics() {
+    }
+
+    public LatencyHistogram guard() {
+      return guard;
+    }
+
+    public LatencyHistogram effect() {
+      return effect;
+    }
+
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram backed by striped counters.
+ *
+ * Counters spread their updates over several cells under contention, which
+ * suits histograms written concurrently by many threads such as the ones
+ * aggregating all the executors of a state machine.
+ *
+ * @see LongAdder
+ *
+ * @author Fabien Renaud
+ */
+public final class StripedLatencyHistogram extends LatencyHistogram {
+
+  private final LongAdder[] counts = new LongAdder[BUCKETS];
+  private final LongAdder sum = new LongAdder();
+
+  public StripedLatencyHistogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  @Override
+  public void record(final long nanos) {
+    counts[bucket(nanos)].increment();
+    sum.add(Math.max(0, nanos));
+  }
+
+  @Override
+  public long count(final int bucket) {
+    return counts[bucket].sum();
+  }
+
+  @Override
+  public long sum() {
+    return sum.sum();
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.basicbehaviors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class PayloadEventPoolTest {
+
+  @Test
+  public void acquire() {
+    PayloadEventPool<String> pool = new PayloadEventPool<>("msg", 1);
+    PayloadEvent<String> evt1 = pool.acquire("a");
+    PayloadEvent<String> evt2 = pool.acquire("b");
+    assertNotSame(evt1, evt2);
+    assertEquals("msg", evt1.type());
+    assertEquals("a", evt1.payload());
+    assertEquals("b", evt2.payload());
+    assertEquals(0, pool.available());
+
+    evt1.release();
+    assertEquals(1, pool.available());
+    evt2.release();
+    assertEquals(1, pool.available());
+
+    PayloadEvent<String> evt3 = pool.acquire("c");
+    assertSame(evt1, evt3);
+    assertEquals("c", evt3.payload());
+    assertEquals(0, pool.available());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor() {
+    new PayloadEventPool<>(null, 1);
+  }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.basicbehaviors;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class PayloadEventTest {
+
+  @Test
+  public void testEquals() {
+    PayloadEvent<Integer> evt1 = new PayloadEvent<Integer>("order").payload(1);
+    PayloadEvent<Integer> evt2 = new PayloadEvent<Integer>("order").payload(2);
+    PayloadEvent<Integer> evt3 = new PayloadEvent<Integer>("cancel").payload(1);
+    StringEvent evt4 = new StringEvent("order");
+
+    assertFalse(evt1.equals(null));
+    assertTrue(evt1.equals(evt1));
+    assertTrue(evt1.equals(evt2));
+    assertEquals(evt1.hashCode(), evt2.hashCode());
+    assertFalse(evt1.equals(evt3));
+    assertFalse(evt1.equals(evt4));
+    assertFalse(evt4.equals(evt1));
+  }
+
+  @Test
+  public void testToString() {
+    assertEquals("order", new PayloadEvent<>("order").payload(5).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testConstructor() {
+    new PayloadEvent<>(null);
+  }
+
+  @Test
+  public void testRelease() {
+    List<PayloadEvent<Integer>> released = new ArrayList<>();
+    PayloadEvent<Integer> evt = new PayloadEvent<>("order", released::add);
+    assertSame(evt, evt.payload(3));
+    assertEquals(3, evt.payload().intValue());
+
+    evt.release();
+    assertNull(evt.payload());
+    assertEquals(1, released.size());
+    assertSame(evt, released.get(0));
+
+    new PayloadEvent<Integer>("order").payload(4).release();
+  }
+
+}
@@ -82,6 +82,35 @@ public class VertexUtilsTest {
     assertFalse(VertexUtils.ancestor(state2, state12));
   }
 
+  /**
+   * Test of contains method, of class VertexUtils.
+   */
+  @Test
+  public void testContains() {
+    MutableRegion region0 = new MutableRegion();
+    MutableState state1 = new MutableState();
+    MutableState state2 = new MutableState();
+    region0.addVertex(state1);
+    region0.addVertex(state2);
+    assertFalse(VertexUtils.contains(region0, null));
+    assertTrue(VertexUtils.contains(region0, state1));
+    assertTrue(VertexUtils.contains(region0, state2));
+
+    MutableRegion region1 = new MutableRegion();
+    state1.setRegions(Collections.singletonList(region1));
+    region1.setState(state1);
+    MutableState state11 = new MutableState();
+    region1.addVertex(state11);
+    MutablePseudoState exitPoint = new MutablePseudoState(PseudoStateKind.EXIT_POINT);
+    exitPoint.setState(state1);
+    assertTrue(VertexUtils.contains(region0, state11));
+    assertTrue(VertexUtils.contains(region1, state11));
+    assertFalse(VertexUtils.contains(region1, state1));
+    assertFalse(VertexUtils.contains(region1, state2));
+    assertTrue(VertexUtils.contains(region0, exitPoint));
+    assertFalse(VertexUtils.contains(region1, exitPoint));
+  }
+
   /**
    * Test of allRegionsOfOrthogonalState method, of class VertexUtils.
    */
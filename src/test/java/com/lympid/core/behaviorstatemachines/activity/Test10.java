@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.activity;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.AbstractStateMachineTest;
+import com.lympid.core.behaviorstatemachines.ActiveStateTree;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.activity.Test10.Context;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+import static com.lympid.core.behaviorstatemachines.StateMachineProcessorTester.assertSnapshotEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests an inner asynchronous state activity is cancelled when an outgoing
+ * transition of some parent state is fired, and that completing it afterwards
+ * has no effect.
+ *
+ * @author Fabien Renaud
+ */
+public class Test10 extends AbstractStateMachineTest<Context> {
+
+  @Test
+  public void run() {
+    Context ctx = new Context();
+    StateMachineExecutor<Context> fsm = fsm(ctx);
+    fsm.go();
+
+    assertSnapshotEquals(fsm, new ActiveStateTree(this).branch("A", "B"));
+    assertFalse(ctx.future.isDone());
+
+    fsm.take(new StringEvent("end"));
+    assertSnapshotEquals(fsm, new ActiveStateTree(this).branch("end"));
+    assertTrue(ctx.future.isCancelled());
+
+    ctx.future.complete("late");
+    assertSnapshotEquals(fsm, new ActiveStateTree(this).branch("end"));
+    assertEquals(0, ctx.completed);
+  }
+
+  @Override
+  public StateMachineBuilder<Context> topLevelMachineBuilder() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("B");
+
+    builder
+      .region()
+        .state(composite("A"))
+          .transition("t1")
+            .on("end")
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    return builder;
+  }
+
+  private CompositeStateBuilder<Context> composite(final String name) {
+    CompositeStateBuilder<Context> builder = new CompositeStateBuilder<>(name);
+
+    builder
+      .region()
+        .state("B")
+          .asyncActivity((c) -> c.future)
+          .transition("t2")
+            .effect((e, c) -> c.completed++)
+            .target("C");
+
+    builder
+      .region()
+        .state("C");
+
+    return builder;
+  }
+
+  @Override
+  public String stdOut() {
+    return STDOUT;
+  }
+
+  public static final class Context {
+    final CompletableFuture<Object> future = new CompletableFuture<>();
+    volatile int completed;
+  }
+
+  private static final String STDOUT = "StateMachine: \"" + Test10.class.getSimpleName() + "\"\n" +
+"  Region: #2\n" +
+"    FinalState: \"end\"\n" +
+"    PseudoState: #3 kind: INITIAL\n" +
+"    State: \"A\"\n" +
+"      Region: #7\n" +
+"        State: \"B\"\n" +
+"        State: \"C\"\n" +
+"        Transition: \"t2\" --- \"B\" -> \"C\"\n" +
+"    Transition: \"t0\" --- #3 -> \"B\"\n" +
+"    Transition: \"t1\" --- \"A\" -> \"end\"";
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.activity;
+
+import com.lympid.core.behaviorstatemachines.AbstractStateMachineTest;
+import com.lympid.core.behaviorstatemachines.ActiveStateTree;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.activity.Test9.Context;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.impl.ExecutorConfiguration;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.listener.StateActivityExceptionListener;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+import static com.lympid.core.behaviorstatemachines.StateMachineProcessorTester.assertSnapshotEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests an asynchronous state activity completes its state once the stage it
+ * returned completes, without the executor having any thread pool.
+ *
+ * @author Fabien Renaud
+ */
+public class Test9 extends AbstractStateMachineTest<Context> {
+
+  @Test
+  public void run() {
+    Context ctx = new Context();
+    StateMachineExecutor<Context> fsm = threadlessFsm(ctx);
+    fsm.go();
+
+    assertSnapshotEquals(fsm, new ActiveStateTree(this).branch("A"));
+    assertEquals(1, ctx.started);
+    assertEquals(0, ctx.completed);
+
+    ctx.future.complete("done");
+    assertSnapshotEquals(fsm, new ActiveStateTree(this).branch("end"));
+    assertEquals(1, ctx.completed);
+  }
+
+  @Test
+  public void run_alreadyCompleted() {
+    Context ctx = new Context();
+    ctx.future.complete("done");
+    StateMachineExecutor<Context> fsm = threadlessFsm(ctx);
+    fsm.go();
+
+    assertSnapshotEquals(fsm, new ActiveStateTree(this).branch("end"));
+    assertEquals(1, ctx.completed);
+  }
+
+  @Test
+  public void run_failed() {
+    Context ctx = new Context();
+    StateMachineExecutor<Context> fsm = threadlessFsm(ctx);
+    StateActivityExceptionListener<Context> listener = (e, m, c, s, ex) -> c.failure = ex;
+    fsm.listeners().addStateActivityException(listener);
+    fsm.go();
+
+    IllegalStateException failure = new IllegalStateException();
+    ctx.future.completeExceptionally(failure);
+    assertSnapshotEquals(fsm, new ActiveStateTree(this).branch("end"));
+    assertSame(failure, ctx.failure);
+  }
+
+  private StateMachineExecutor<Context> threadlessFsm(final Context ctx) {
+    return new SyncStateMachineExecutor.Builder<Context>()
+      .setStateMachine(topLevelStateMachine())
+      .setContext(ctx)
+      .setConfiguration(new ExecutorConfiguration())
+      .build();
+  }
+
+  @Override
+  public StateMachineBuilder<Context> topLevelMachineBuilder() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .asyncActivity((c) -> {
+            c.started++;
+            return c.future;
+          })
+          .transition("t1")
+            .effect((e, c) -> c.completed++)
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    return builder;
+  }
+
+  @Override
+  public String stdOut() {
+    return STDOUT;
+  }
+
+  public static final class Context {
+    final CompletableFuture<Object> future = new CompletableFuture<>();
+    int started;
+    int completed;
+    Exception failure;
+  }
+
+  private static final String STDOUT = "StateMachine: \"" + Test9.class.getSimpleName() + "\"\n" +
+"  Region: #2\n" +
+"    PseudoState: #3 kind: INITIAL\n" +
+"    State: \"A\"\n" +
+"    FinalState: \"end\"\n" +
+"    Transition: \"t0\" --- #3 -> \"A\"\n" +
+"    Transition: \"t1\" --- \"A\" -> \"end\"";
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.StateMachineSnapshot;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ActiveStateIdsTest {
+
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder<>("active");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition()
+            .on("go")
+            .target("ortho");
+
+    OrthogonalStateBuilder<Object> ortho = new OrthogonalStateBuilder<>("ortho");
+    ortho
+      .region("r1")
+        .initial()
+          .transition()
+            .target("B");
+    ortho
+      .region("r1")
+        .state("B");
+    ortho
+      .region("r2")
+        .initial()
+          .transition()
+            .target("C");
+    ortho
+      .region("r2")
+        .state("C");
+
+    builder
+      .region()
+        .state(ortho)
+          .transition()
+            .on("end")
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    machine = builder.instance();
+  }
+
+  @Test
+  public void sync() {
+    StateMachineExecutor<Object> fsm = new SyncStateMachineExecutor.Builder<>()
+      .setStateMachine(machine)
+      .setContext(new Object())
+      .build();
+    assertTrue(fsm.activeStateIds().isEmpty());
+    assertFalse(fsm.isActive(id("A")));
+
+    fsm.go();
+    assertEquals(ids("A"), fsm.activeStateIds());
+    assertTrue(fsm.isActive(id("A")));
+
+    fsm.take(new StringEvent("unknown"));
+    assertEquals(ids("A"), fsm.activeStateIds());
+
+    fsm.take(new StringEvent("go"));
+    assertEquals(ids("ortho", "B", "C"), fsm.activeStateIds());
+    assertFalse(fsm.isActive(id("A")));
+    assertTrue(fsm.isActive(id("B")));
+
+    fsm.take(new StringEvent("end"));
+    assertEquals(ids("end"), fsm.activeStateIds());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void immutable() {
+    StateMachineExecutor<Object> fsm = new SyncStateMachineExecutor.Builder<>()
+      .setStateMachine(machine)
+      .setContext(new Object())
+      .build();
+    fsm.go();
+    fsm.take(new StringEvent("go"));
+    fsm.activeStateIds().add(id("A"));
+  }
+
+  @Test
+  public void snapshot() {
+    StateMachineExecutor<Object> fsm = new SyncStateMachineExecutor.Builder<>()
+      .setStateMachine(machine)
+      .setContext(new Object())
+      .build();
+    fsm.go();
+    fsm.take(new StringEvent("go"));
+
+    StateMachineExecutor<Object> fsm2 = new SyncStateMachineExecutor.Builder<>()
+      .setStateMachine(machine)
+      .setSnapshot(fsm.snapshot())
+      .build();
+    assertEquals(ids("ortho", "B", "C"), fsm2.activeStateIds());
+  }
+
+  @Test
+  public void defaults() {
+    StateMachineExecutor<Object> fsm = new SyncStateMachineExecutor.Builder<>()
+      .setStateMachine(machine)
+      .setContext(new Object())
+      .build();
+    StateMachineExecutor<Object> delegate = new DelegatingExecutor<>(fsm);
+    assertTrue(delegate.activeStateIds().isEmpty());
+
+    fsm.go();
+    fsm.take(new StringEvent("go"));
+    assertEquals(ids("ortho", "B", "C"), delegate.activeStateIds());
+    assertTrue(delegate.isActive(id("B")));
+    assertFalse(delegate.isActive(id("A")));
+  }
+
+  @Test
+  public void pool() throws InterruptedException {
+    StateMachineShardPoolExecutor<Object> pool = new StateMachineShardPoolExecutor<>(1);
+    try {
+      StateMachineExecutor<Object> fsm = new PoolStateMachineExecutor.Builder<>(pool)
+        .setStateMachine(machine)
+        .setContext(new Object())
+        .build();
+      CountDownLatch latch = new CountDownLatch(1);
+      fsm.listeners().addEventAcceptedListener((e, m, c, ev) -> latch.countDown());
+      fsm.go();
+      fsm.take(new StringEvent("go"));
+      assertTrue(latch.await(1, TimeUnit.SECONDS));
+
+      long deadline = System.currentTimeMillis() + 1000;
+      while (!fsm.isActive(id("B")) && System.currentTimeMillis() < deadline) {
+        Thread.yield();
+      }
+      assertEquals(ids("ortho", "B", "C"), fsm.activeStateIds());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private String id(final String name) {
+    State state = find(machine.region(), name);
+    if (state == null) {
+      throw new IllegalArgumentException("No such state: " + name);
+    }
+    return state.getId();
+  }
+
+  private static State find(final Iterable<? extends Region> regions, final String name) {
+    for (Region r : regions) {
+      for (Vertex v : r.subVertex()) {
+        if (v instanceof State) {
+          if (name.equals(v.getName())) {
+            return (State) v;
+          }
+          State s = find(((State) v).region(), name);
+          if (s != null) {
+            return s;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  private HashSet<String> ids(final String... names) {
+    HashSet<String> ids = new HashSet<>();
+    for (String n : Arrays.asList(names)) {
+      ids.add(id(n));
+    }
+    return ids;
+  }
+
+  /**
+   * Executor implementing only the abstract methods of the interface.
+   */
+  private static final class DelegatingExecutor<C> implements StateMachineExecutor<C> {
+
+    private final StateMachineExecutor<C> executor;
+
+    DelegatingExecutor(final StateMachineExecutor<C> executor) {
+      this.executor = executor;
+    }
+
+    @Override
+    public int getId() {
+      return executor.getId();
+    }
+
+    @Override
+    public String getName() {
+      return executor.getName();
+    }
+
+    @Override
+    public StateMachine stateMachine() {
+      return executor.stateMachine();
+    }
+
+    @Override
+    public ExecutorListener listeners() {
+      return executor.listeners();
+    }
+
+    @Override
+    public void go() {
+      executor.go();
+    }
+
+    @Override
+    public void take(final Event event) {
+      executor.take(event);
+    }
+
+    @Override
+    public StateMachineSnapshot<C> snapshot() {
+      return executor.snapshot();
+    }
+
+    @Override
+    public void pause() {
+      executor.pause();
+    }
+
+    @Override
+    public void resume() {
+      executor.resume();
+    }
+
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class CombiningStateMachineExecutorTest {
+
+  private static final int THREADS = 8;
+  private static final int EVENTS = 5000;
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("combining");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .selfTransition()
+            .on(new Tick())
+            .effect((e, c) -> {
+              c.count++;
+              e.processed = true;
+            })
+            .target()
+          .selfTransition()
+            .on("nested")
+            .effect((e, c) -> c.executor.take(new Tick()))
+            .target()
+          .transition()
+            .on("go")
+            .target("B");
+
+    builder
+      .region()
+        .state("B");
+
+    machine = builder.instance();
+  }
+
+  @Test
+  public void multipleProducers() throws InterruptedException {
+    final Context ctx = new Context();
+    final StateMachineExecutor<Context> fsm = fsm(ctx);
+    fsm.go();
+
+    final AtomicInteger unprocessed = new AtomicInteger();
+    List<Thread> threads = new ArrayList<>(THREADS);
+    for (int i = 0; i < THREADS; i++) {
+      threads.add(new Thread(() -> {
+        for (int j = 0; j < EVENTS; j++) {
+          Tick tick = new Tick();
+          fsm.take(tick);
+          if (!tick.processed) {
+            unprocessed.incrementAndGet();
+          }
+        }
+      }));
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(0, unprocessed.get());
+    assertEquals(THREADS * EVENTS, ctx.count);
+  }
+
+  @Test
+  public void nested() {
+    final Context ctx = new Context();
+    final StateMachineExecutor<Context> fsm = fsm(ctx);
+    fsm.go();
+
+    fsm.take(new StringEvent("nested"));
+    assertEquals(1, ctx.count);
+
+    fsm.take(new StringEvent("go"));
+    fsm.take(new Tick());
+    assertEquals(1, ctx.count);
+  }
+
+  @Test(expected = IllegalStartException.class)
+  public void take_notStarted() {
+    fsm(new Context()).take(new Tick());
+  }
+
+  @Test
+  public void take_deadProducer() throws InterruptedException {
+    final Context ctx = new Context();
+    final StateMachineExecutor<Context> fsm = fsm(ctx);
+    fsm.go();
+
+    for (int i = 0; i < THREADS; i++) {
+      Thread t = new Thread(() -> fsm.take(new Tick()));
+      t.start();
+      t.join();
+    }
+    fsm.take(new Tick());
+    fsm.take(new Tick());
+    assertEquals(THREADS + 2, ctx.count);
+  }
+
+  private StateMachineExecutor<Context> fsm(final Context ctx) {
+    StateMachineExecutor<Context> fsm = new CombiningStateMachineExecutor.Builder<Context>()
+      .setStateMachine(machine)
+      .setContext(ctx)
+      .build();
+    ctx.executor = fsm;
+    return fsm;
+  }
+
+  private static final class Tick implements Event {
+
+    private boolean processed;
+
+    @Override
+    public int hashCode() {
+      return Tick.class.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj instanceof Tick;
+    }
+
+  }
+
+  private static final class Context {
+
+    private StateMachineExecutor<Context> executor;
+    private int count;
+  }
+}
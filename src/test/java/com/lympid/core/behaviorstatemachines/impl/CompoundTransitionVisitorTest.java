@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SequentialContext;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.builder.SequentialContextInjector;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.lympid.core.common.TestUtils.assertSequentialContextEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class CompoundTransitionVisitorTest {
+
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("compound");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("j1");
+
+    builder
+      .region()
+        .junction("j1")
+          .transition("t2")
+            .target("j2");
+
+    builder
+      .region()
+        .junction("j2")
+          .transition("t3")
+            .target("j3");
+
+    builder
+      .region()
+        .junction("j3")
+          .transition("t4")
+            .guard((c) -> true)
+            .target("B")
+          .transition("t5")
+            .guard((c) -> false)
+            .target("end");
+
+    builder
+      .region()
+        .state("B")
+          .transition("t6")
+            .on("go")
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    builder.accept(new SequentialContextInjector());
+    machine = builder.instance();
+  }
+
+  @Test
+  public void continuation_staticJunctions() {
+    assertEquals(names("t2", "t3"), names(transition("t1").continuation()));
+    assertEquals(names("t3"), names(transition("t2").continuation()));
+  }
+
+  @Test
+  public void continuation_guardedJunction() {
+    assertTrue(transition("t3").continuation().isEmpty());
+    assertTrue(transition("t4").continuation().isEmpty());
+    assertTrue(transition("t5").continuation().isEmpty());
+  }
+
+  @Test
+  public void continuation_stateTarget() {
+    assertTrue(transition("t0").continuation().isEmpty());
+    assertTrue(transition("t6").continuation().isEmpty());
+  }
+
+  @Test
+  public void run() {
+    SequentialContext expected = new SequentialContext();
+    SequentialContext ctx = new SequentialContext();
+
+    StateMachineExecutor<SequentialContext> fsm = new SyncStateMachineExecutor.Builder<SequentialContext>()
+      .setStateMachine(machine)
+      .setContext(ctx)
+      .build();
+    fsm.go();
+
+    expected.effect("t0").enter("A");
+    assertSequentialContextEquals(expected, fsm);
+
+    fsm.take(new StringEvent("go"));
+    expected.exit("A").effect("t1").effect("t2").effect("t3").effect("t4").enter("B");
+    assertSequentialContextEquals(expected, fsm);
+
+    fsm.take(new StringEvent("go"));
+    expected.exit("B").effect("t6");
+    assertSequentialContextEquals(expected, fsm);
+  }
+
+  private MutableTransition transition(final String name) {
+    for (Region r : machine.region()) {
+      for (Transition t : r.transition()) {
+        if (name.equals(t.getName())) {
+          return (MutableTransition) t;
+        }
+      }
+    }
+    throw new IllegalArgumentException("No such transition: " + name);
+  }
+
+  private static List<String> names(final String... names) {
+    List<String> list = new ArrayList<>(names.length);
+    for (String n : names) {
+      list.add(n);
+    }
+    return list;
+  }
+
+  private static List<String> names(final List<Transition> transitions) {
+    List<String> list = new ArrayList<>(transitions.size());
+    for (Transition t : transitions) {
+      list.add(t.getName());
+    }
+    return list;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ConsistentHashRingTest {
+
+  private static final int KEYS = 20000;
+
+  @Test(expected = IllegalArgumentException.class)
+  public void size_zero() {
+    new ConsistentHashRing(0);
+  }
+
+  @Test
+  public void shard_singleShard() {
+    ConsistentHashRing ring = new ConsistentHashRing(1);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(0, ring.shard("customer-" + i));
+    }
+  }
+
+  @Test
+  public void shard_stable() {
+    ConsistentHashRing a = new ConsistentHashRing(8);
+    ConsistentHashRing b = new ConsistentHashRing(8);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(a.shard("customer-" + i), b.shard("customer-" + i));
+      assertEquals(a.shard(i), b.shard(i));
+    }
+  }
+
+  @Test
+  public void shard_balanced() {
+    ConsistentHashRing ring = new ConsistentHashRing(8);
+    int[] counts = new int[ring.size()];
+    for (int i = 0; i < KEYS; i++) {
+      counts[ring.shard("customer-" + i)]++;
+    }
+    for (int count : counts) {
+      assertTrue("" + count, count > KEYS / 8 * 0.7 && count < KEYS / 8 * 1.3);
+    }
+  }
+
+  @Test
+  public void shard_minimalMove() {
+    ConsistentHashRing before = new ConsistentHashRing(8);
+    ConsistentHashRing after = new ConsistentHashRing(9);
+    int moved = 0;
+    for (int i = 0; i < KEYS; i++) {
+      int from = before.shard("customer-" + i);
+      int to = after.shard("customer-" + i);
+      if (from != to) {
+        assertEquals(8, to);
+        moved++;
+      }
+    }
+    assertTrue("" + moved, moved > KEYS / 9 * 0.7 && moved < KEYS / 9 * 1.3);
+  }
+}
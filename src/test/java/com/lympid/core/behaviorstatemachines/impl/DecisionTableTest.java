@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.PseudoState;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.ChoiceBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class DecisionTableTest {
+
+  private DecisionTable<Integer> table;
+  private DecisionTable.Case<Integer> low;
+  private DecisionTable.Case<Integer> high;
+  private DecisionTable.Case<Integer> exact;
+
+  @Before
+  public void setUp() {
+    table = new DecisionTable<>((c) -> c);
+    high = table.range(10, 20);
+    low = table.range(0, 10);
+    exact = table.equalTo(42);
+  }
+
+  @Test
+  public void lookup_ranges() {
+    assertSame(low, table.lookup(0));
+    assertSame(low, table.lookup(9));
+    assertSame(high, table.lookup(10));
+    assertSame(high, table.lookup(19));
+    assertNull(table.lookup(20));
+    assertNull(table.lookup(-1));
+    assertNull(table.lookup(null));
+  }
+
+  @Test
+  public void lookup_equality() {
+    assertSame(exact, table.lookup(42));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void equalTo_twice() {
+    table.equalTo(42);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void equalTo_insideRange() {
+    table.equalTo(15);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void range_containsEquality() {
+    table.range(40, 50);
+  }
+
+  @Test
+  public void lookup_otherwise() {
+    DecisionTable.Case<Integer> otherwise = table.otherwise();
+    assertSame(otherwise, table.lookup(20));
+    assertSame(otherwise, table.lookup(null));
+    assertSame(low, table.lookup(5));
+  }
+
+  @Test
+  public void test_matchesLookup() {
+    DecisionTable.Case<Integer> otherwise = table.otherwise();
+    for (int i = -5; i < 25; i++) {
+      DecisionTable.Case<Integer> c = table.lookup(i);
+      assertTrue(c.test(i));
+      assertTrue(c == otherwise || !otherwise.test(i));
+    }
+    assertFalse(low.test(null));
+    assertTrue(otherwise.test(null));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void range_overlapsLower() {
+    table.range(-5, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void range_overlapsUpper() {
+    table.range(19, 30);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void range_empty() {
+    table.range(30, 30);
+  }
+
+  @Test
+  public void range_adjacent() {
+    DecisionTable.Case<Integer> c = table.range(20, 30);
+    assertSame(c, table.lookup(20));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void otherwise_twice() {
+    table.otherwise();
+    table.otherwise();
+  }
+
+  @Test
+  public void visitor() {
+    MutablePseudoState choice = decisionChoice();
+    assertEquals("t1", choice.decide(5).getName());
+    assertEquals("t2", choice.decide(10).getName());
+    assertTrue(choice.isDecision(choice.decide(5)));
+  }
+
+  @Test(expected = ClassCastException.class)
+  public void visitor_keyFailurePropagates() {
+    decisionChoice().decide("not an integer");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void decisionKey_twice() {
+    new ChoiceBuilder<Integer>("c")
+      .decisionKey((c) -> c)
+      .decisionKey((c) -> c + 1);
+  }
+
+  private static MutablePseudoState decisionChoice() {
+    StateMachineBuilder<Integer> builder = new StateMachineBuilder<>("decision");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("c");
+
+    builder
+      .region()
+        .choice("c")
+          .decisionKey((c) -> c)
+          .whenRange("t1", 0, 10)
+            .target("A")
+          .otherwise("t2")
+            .target("B");
+
+    builder
+      .region()
+        .state("A");
+
+    builder
+      .region()
+        .state("B");
+
+    StateMachine machine = builder.instance();
+    for (Vertex v : machine.region().get(0).subVertex()) {
+      if (v instanceof PseudoState && "c".equals(v.getName())) {
+        return (MutablePseudoState) v;
+      }
+    }
+    throw new IllegalStateException("No choice c");
+  }
+
+}
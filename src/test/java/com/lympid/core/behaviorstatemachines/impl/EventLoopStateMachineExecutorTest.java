@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.AbstractStateMachineTest;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests time events and activities run by an event loop.
+ *
+ * @author Fabien Renaud
+ */
+public class EventLoopStateMachineExecutorTest {
+
+  private static final long TIMEOUT = 5000;
+  private static StateMachine machine;
+  private StateMachineEventLoopGroup<Context> group;
+
+  @Before
+  public void setUp() {
+    group = new StateMachineEventLoopGroup<>(2);
+    if (machine == null) {
+      StateMachineBuilder<Context> builder = new StateMachineBuilder<>("loop");
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("A");
+
+      builder
+        .region()
+          .state("A")
+            .entry((c) -> c.loop = Thread.currentThread())
+            .transition("t1")
+              .after(20, TimeUnit.MILLISECONDS)
+              .effect((e, c) -> {
+                c.timer = Thread.currentThread();
+                c.timers.incrementAndGet();
+              })
+              .target("B")
+            .transition("t2")
+              .on("skip")
+              .target("C");
+
+      builder
+        .region()
+          .state("B")
+            .activity((c) -> c.activity = Thread.currentThread())
+            .transition("t3")
+              .target("C");
+
+      builder
+        .region()
+          .state("C")
+            .entry((c) -> c.reached.countDown())
+            .transition("t4")
+              .on("go")
+              .target("end");
+
+      builder
+        .region()
+          .finalState("end");
+
+      machine = builder.instance();
+    }
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    group.shutdown();
+    assertTrue(group.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void run_timeEventAndActivityOnLoop() throws InterruptedException {
+    Context ctx = new Context();
+    StateMachineExecutor<Context> fsm = fsm(ctx, new ExecutorConfiguration());
+    fsm.go();
+
+    assertTrue(ctx.reached.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    assertSame(ctx.loop, ctx.timer);
+    assertSame(ctx.loop, ctx.activity);
+    assertEquals(1, ctx.timers.get());
+
+    fsm.snapshot();
+    assertTrue(fsm.isActive(stateId("C")));
+    fsm.take(new StringEvent("go"));
+    fsm.snapshot();
+    assertTrue(fsm.isActive(stateId("end")));
+  }
+
+  @Test
+  public void run_timeEventCancelled() throws InterruptedException {
+    Context ctx = new Context();
+    StateMachineExecutor<Context> fsm = fsm(ctx, new ExecutorConfiguration());
+    fsm.go();
+    fsm.take(new StringEvent("skip"));
+
+    assertTrue(ctx.reached.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    Thread.sleep(60);
+    fsm.snapshot();
+    assertEquals(0, ctx.timers.get());
+    assertTrue(fsm.isActive(stateId("C")));
+  }
+
+  @Test
+  public void run_backgroundActivity() throws InterruptedException {
+    Context ctx = new Context();
+    StateMachineExecutor<Context> fsm = fsm(ctx, new ExecutorConfiguration().executor(AbstractStateMachineTest.THREAD_POOL));
+    fsm.go();
+
+    assertTrue(ctx.reached.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    assertSame(ctx.loop, ctx.timer);
+    assertNotSame(ctx.loop, ctx.activity);
+  }
+
+  @Test
+  public void loopKey() {
+    for (int i = 0; i < 10; i++) {
+      String key = "customer-" + i;
+      assertEquals(group.loopOf(key), group.loopOf(key));
+      assertTrue(group.loopOf(key) >= 0 && group.loopOf(key) < group.size());
+    }
+  }
+
+  @Test
+  public void snapshot_interrupted() throws InterruptedException {
+    StateMachineExecutor<Context> fsm = new EventLoopStateMachineExecutor.Builder<Context>(group)
+      .setLoopKey("busy")
+      .setStateMachine(machine)
+      .setContext(new Context())
+      .build();
+    CountDownLatch busy = new CountDownLatch(1);
+    group.loop("busy").execute(() -> {
+      try {
+        busy.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    });
+
+    Thread.currentThread().interrupt();
+    try {
+      fsm.snapshot();
+      fail("The snapshot should have been interrupted.");
+    } catch (IllegalStateException ex) {
+      assertTrue(Thread.interrupted());
+    } finally {
+      busy.countDown();
+    }
+  }
+
+  private StateMachineExecutor<Context> fsm(final Context ctx, final ExecutorConfiguration configuration) {
+    return new EventLoopStateMachineExecutor.Builder<>(group)
+      .setStateMachine(machine)
+      .setContext(ctx)
+      .setConfiguration(configuration)
+      .build();
+  }
+
+  private static String stateId(final String name) {
+    for (Vertex v : machine.region().get(0).subVertex()) {
+      if (name.equals(v.getName())) {
+        return v.getId();
+      }
+    }
+    throw new IllegalArgumentException("No such state: " + name);
+  }
+
+  public static final class Context {
+
+    final CountDownLatch reached = new CountDownLatch(1);
+    final AtomicInteger timers = new AtomicInteger();
+    volatile Thread loop;
+    volatile Thread timer;
+    volatile Thread activity;
+  }
+}
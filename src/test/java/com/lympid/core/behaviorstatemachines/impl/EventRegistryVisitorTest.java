@@ -0,0 +1,325 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.Event;
+import com.lympid.core.basicbehaviors.EventType;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.AbstractStateMachineTest;
+import com.lympid.core.behaviorstatemachines.EventRegistry;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.SequentialContext;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.SequentialContextInjector;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.lympid.core.common.TestUtils.assertSequentialContextEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class EventRegistryVisitorTest {
+
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<SequentialContext> builder = new StateMachineBuilder<>("events");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("B")
+          .transition("t2")
+            .after(1, TimeUnit.HOURS)
+            .target("B");
+
+    builder
+      .region()
+        .state("B")
+          .transition("t3")
+            .on("go")
+            .target("A")
+          .transition("t4")
+            .on("stop")
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    builder.accept(new SequentialContextInjector());
+    machine = builder.instance();
+  }
+
+  @Test
+  public void registry() {
+    EventRegistry registry = machine.events();
+    assertEquals(2, registry.size());
+
+    EventType go = registry.type("go");
+    EventType stop = registry.type("stop");
+    assertEquals(0, go.code());
+    assertEquals(1, stop.code());
+    assertSame(go, registry.type(0));
+    assertSame(stop, registry.type(1));
+    assertSame(go, registry.type(new StringEvent("go")));
+    assertEquals(1, registry.code(new StringEvent("stop")));
+
+    assertNull(registry.type("unknown"));
+    assertNull(registry.type(new StringEvent("unknown")));
+    assertEquals(-1, registry.code(new StringEvent("unknown")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void registry_unknownCode() {
+    machine.events().type(2);
+  }
+
+  @Test
+  public void outgoingByCode() {
+    EventRegistry registry = machine.events();
+    for (Region r : machine.region()) {
+      for (Vertex v : r.subVertex()) {
+        MutableVertex vertex = (MutableVertex) v;
+        for (int code = 0; code < registry.size(); code++) {
+          assertEquals(vertex.outgoing(registry.type(code).event()), vertex.outgoing(code));
+        }
+      }
+    }
+    assertTrue(((MutableVertex) vertex("A")).outgoing(registry.type("stop").code()).isEmpty());
+    assertEquals(1, ((MutableVertex) vertex("B")).outgoing(registry.type("stop").code()).size());
+  }
+
+  @Test
+  public void take() {
+    SequentialContext expected = new SequentialContext();
+    SequentialContext ctx = new SequentialContext();
+
+    StateMachineExecutor<SequentialContext> fsm = new SyncStateMachineExecutor.Builder<SequentialContext>()
+      .setStateMachine(machine)
+      .setConfiguration(new ExecutorConfiguration().executor(AbstractStateMachineTest.THREAD_POOL))
+      .setContext(ctx)
+      .build();
+    fsm.go();
+    expected.effect("t0").enter("A");
+
+    fsm.take(machine.events().type("go"));
+    expected.exit("A").effect("t1").enter("B");
+    assertSequentialContextEquals(expected, fsm);
+
+    fsm.take(machine.events().type("go").code());
+    expected.exit("B").effect("t3").enter("A");
+    assertSequentialContextEquals(expected, fsm);
+
+    fsm.take(new StringEvent("go"));
+    expected.exit("A").effect("t1").enter("B");
+    assertSequentialContextEquals(expected, fsm);
+
+    fsm.take(machine.events().type("stop").code());
+    expected.exit("B").effect("t4");
+    assertSequentialContextEquals(expected, fsm);
+  }
+
+  @Test
+  public void take_foreignType() {
+    MutableEventRegistry foreign = new MutableEventRegistry();
+    EventType stop = foreign.register(new StringEvent("stop"));
+    EventType go = foreign.register(new StringEvent("go"));
+    SequentialContext expected = new SequentialContext();
+    SequentialContext ctx = new SequentialContext();
+
+    StateMachineExecutor<SequentialContext> fsm = new SyncStateMachineExecutor.Builder<SequentialContext>()
+      .setStateMachine(machine)
+      .setConfiguration(new ExecutorConfiguration().executor(AbstractStateMachineTest.THREAD_POOL))
+      .setContext(ctx)
+      .build();
+    fsm.go();
+    expected.effect("t0").enter("A");
+
+    fsm.take(go);
+    expected.exit("A").effect("t1").enter("B");
+    assertSequentialContextEquals(expected, fsm);
+
+    fsm.take(stop);
+    expected.exit("B").effect("t4");
+    assertSequentialContextEquals(expected, fsm);
+  }
+
+  @Test
+  public void take_skipsRegistry() throws InterruptedException {
+    StateMachine coded = codedMachine();
+    EventType ping = coded.events().type(new CountingEvent("ping"));
+    EventType pong = coded.events().type(new CountingEvent("pong"));
+
+    StateMachineShardPoolExecutor<AtomicInteger> pool = new StateMachineShardPoolExecutor<>(1);
+    StateMachineEventLoopGroup<AtomicInteger> group = new StateMachineEventLoopGroup<>(1);
+    ExecutorService threads = ThreadPerExecutorStateMachineExecutor.newThreadPerTaskExecutor();
+    List<StateMachineExecutor.Builder<AtomicInteger>> builders = Arrays.asList(
+      new SyncStateMachineExecutor.Builder<>(),
+      new LockStateMachineExecutor.Builder<>(),
+      new PoolStateMachineExecutor.Builder<>(pool),
+      new StripedStateMachineExecutor.Builder<>(),
+      new CombiningStateMachineExecutor.Builder<>(),
+      new EventLoopStateMachineExecutor.Builder<>(group),
+      new ThreadPerExecutorStateMachineExecutor.Builder<>(threads)
+    );
+
+    try {
+      for (StateMachineExecutor.Builder<AtomicInteger> builder : builders) {
+        AtomicInteger ctx = new AtomicInteger();
+        StateMachineExecutor<AtomicInteger> fsm = builder
+          .setStateMachine(coded)
+          .setContext(ctx)
+          .build();
+        fsm.go();
+
+        CountingEvent.LOOKUPS.set(0);
+        for (int i = 0; i < 10; i++) {
+          fsm.take(ping);
+          fsm.take(pong.code());
+        }
+        awaitCount(ctx, 20);
+        assertEquals(fsm.getClass().getSimpleName(), 0, CountingEvent.LOOKUPS.get());
+
+        fsm.take(new CountingEvent("ping"));
+        awaitCount(ctx, 21);
+        assertTrue(fsm.getClass().getSimpleName(), CountingEvent.LOOKUPS.get() > 0);
+      }
+    } finally {
+      pool.shutdown();
+      group.shutdown();
+      threads.shutdown();
+    }
+  }
+
+  private static void awaitCount(final AtomicInteger ctx, final int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (ctx.get() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertEquals(count, ctx.get());
+  }
+
+  /**
+   * A state machine whose events are processed within either of two
+   * orthogonal regions.
+   */
+  private static StateMachine codedMachine() {
+    StateMachineBuilder<AtomicInteger> builder = new StateMachineBuilder<>("coded");
+    OrthogonalStateBuilder<AtomicInteger> ortho = new OrthogonalStateBuilder<>("ortho");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("ortho");
+
+    builder
+      .region()
+        .state(ortho);
+
+    for (String name : new String[]{"ping", "pong"}) {
+      ortho
+        .region(name)
+          .initial()
+            .transition()
+              .target(name + "A");
+
+      ortho
+        .region(name)
+          .state(name + "A")
+            .transition()
+              .on(new CountingEvent(name))
+              .effect((e, c) -> c.incrementAndGet())
+              .target(name + "B");
+
+      ortho
+        .region(name)
+          .state(name + "B")
+            .transition()
+              .on(new CountingEvent(name))
+              .effect((e, c) -> c.incrementAndGet())
+              .target(name + "A");
+    }
+
+    return builder.instance();
+  }
+
+  /**
+   * Event counting the times it is hashed or compared, i.e. looked up in the
+   * event registry.
+   */
+  private static final class CountingEvent implements Event {
+
+    static final AtomicInteger LOOKUPS = new AtomicInteger();
+    private final String name;
+
+    CountingEvent(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    public int hashCode() {
+      LOOKUPS.incrementAndGet();
+      return name.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      LOOKUPS.incrementAndGet();
+      return obj instanceof CountingEvent && Objects.equals(name, ((CountingEvent) obj).name);
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private Vertex vertex(final String name) {
+    for (Vertex v : machine.region().iterator().next().subVertex()) {
+      if (name.equals(v.getName())) {
+        return v;
+      }
+    }
+    throw new IllegalArgumentException("No such vertex: " + name);
+  }
+}
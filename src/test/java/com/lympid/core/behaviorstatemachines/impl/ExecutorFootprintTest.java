@@ -0,0 +1,272 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.CompositeStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.SimpleStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.common.Footprint;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Enforces byte budgets on the heap retained by a started executor, for each
+ * {@link StateMachineState} variant, with and without listeners and time
+ * events.
+ *
+ * Budgets are upper bounds with about 25% headroom over the footprints
+ * measured on a 64-bit JVM with compressed references, enough to absorb the
+ * noise of measuring the heap across JVMs and garbage collectors. The tests
+ * are skipped on JVMs without compressed references. Lower a budget when the
+ * footprint goes down; only raise it for a change that is worth the bytes.
+ *
+ * @author Fabien Renaud
+ */
+public class ExecutorFootprintTest {
+
+  private static final int COUNT = 5000;
+  private static final ScheduledThreadPoolExecutor TIMERS = new ScheduledThreadPoolExecutor(1);
+
+  @Before
+  public void setUp() {
+    assumeTrue("Budgets assume compressed references", Footprint.compressedReferences());
+  }
+
+  @After
+  public void tearDown() {
+    TIMERS.getQueue().clear();
+  }
+
+  @Test
+  public void simple() {
+    assertBudget(Shape.SIMPLE, false, false, 640);
+  }
+
+  @Test
+  public void simple_listeners() {
+    assertBudget(Shape.SIMPLE, true, false, 1920);
+  }
+
+  @Test
+  public void simple_timeEvent() {
+    assertBudget(Shape.SIMPLE, false, true, 896);
+  }
+
+  @Test
+  public void composite() {
+    assertBudget(Shape.COMPOSITE, false, false, 1536);
+  }
+
+  @Test
+  public void composite_listeners() {
+    assertBudget(Shape.COMPOSITE, true, false, 2816);
+  }
+
+  @Test
+  public void composite_timeEvent() {
+    assertBudget(Shape.COMPOSITE, false, true, 1664);
+  }
+
+  @Test
+  public void orthogonal() {
+    assertBudget(Shape.ORTHOGONAL, false, false, 1920);
+  }
+
+  @Test
+  public void orthogonal_listeners() {
+    assertBudget(Shape.ORTHOGONAL, true, false, 3200);
+  }
+
+  @Test
+  public void orthogonal_timeEvent() {
+    assertBudget(Shape.ORTHOGONAL, false, true, 2432);
+  }
+
+  private void assertBudget(final Shape shape, final boolean listeners, final boolean timeEvent, final long budget) {
+    final StateMachine machine = shape.machine(timeEvent);
+    assertEquals(shape.variant, StateMachineStateFactory.get(machine.metadata()).getClass());
+
+    final ExecutorConfiguration configuration = new ExecutorConfiguration().executor(TIMERS);
+    final long bytes = Footprint.bytesPerInstance(COUNT, (i) -> {
+      StateMachineExecutor<Object> fsm = new SyncStateMachineExecutor.Builder<>()
+        .setStateMachine(machine)
+        .setConfiguration(configuration)
+        .setContext(new Object())
+        .build();
+      if (listeners) {
+        fsm.listeners().addEventAcceptedListener((e, m, c, ev) -> {});
+        fsm.listeners().addEventDeniedListener((e, m, c, ev) -> {});
+        fsm.listeners().addStateEnter((e, m, c, s) -> {});
+        fsm.listeners().addStateExit((e, m, c, s) -> {});
+        fsm.listeners().addTransitionStartedListener((e, m, c, ev, t) -> {});
+      }
+      fsm.go();
+      return fsm;
+    });
+
+    assertTrue(bytes + " bytes per executor exceed the budget of " + budget, bytes <= budget);
+  }
+
+  private enum Shape {
+
+    SIMPLE(SimpleStateMachineState.class) {
+      @Override
+      void build(final StateMachineBuilder<Object> builder, final boolean timeEvent) {
+        SimpleStateBuilder<Object> a = builder
+          .region()
+            .state("A");
+
+        a
+          .transition("t1")
+            .on("go")
+            .target("B");
+
+        if (timeEvent) {
+          a
+            .transition("t2")
+              .after(1, TimeUnit.HOURS)
+              .target("B");
+        }
+      }
+    },
+    COMPOSITE(CompositeStateMachineState.class) {
+      @Override
+      void build(final StateMachineBuilder<Object> builder, final boolean timeEvent) {
+        CompositeStateBuilder<Object> composite = new CompositeStateBuilder<>("A");
+
+        composite
+          .region()
+            .initial()
+              .transition("t10")
+                .target("A1");
+
+        SimpleStateBuilder<Object> a1 = composite
+          .region()
+            .state("A1");
+
+        a1
+          .transition("t11")
+            .on("go")
+            .target("A2");
+
+        if (timeEvent) {
+          a1
+            .transition("t12")
+              .after(1, TimeUnit.HOURS)
+              .target("A2");
+        }
+
+        composite
+          .region()
+            .state("A2");
+
+        builder
+          .region()
+            .state(composite)
+              .transition("t1")
+                .on("go")
+                .target("B");
+      }
+    },
+    ORTHOGONAL(OrthogonalStateMachineState.class) {
+      @Override
+      void build(final StateMachineBuilder<Object> builder, final boolean timeEvent) {
+        OrthogonalStateBuilder<Object> orthogonal = new OrthogonalStateBuilder<>("A");
+
+        for (String r : new String[]{"X", "Y"}) {
+          orthogonal
+            .region(r)
+              .initial()
+                .transition()
+                  .target(r + "1");
+
+          SimpleStateBuilder<Object> first = orthogonal
+            .region(r)
+              .state(r + "1");
+
+          first
+            .transition()
+              .on("go")
+              .target(r + "2");
+
+          if (timeEvent) {
+            first
+              .transition()
+                .after(1, TimeUnit.HOURS)
+                .target(r + "2");
+          }
+
+          orthogonal
+            .region(r)
+              .state(r + "2");
+        }
+
+        builder
+          .region()
+            .state(orthogonal)
+              .transition("t1")
+                .on("go")
+                .target("B");
+      }
+    };
+
+    private final Class<? extends StateMachineState> variant;
+    private final StateMachine[] machines = new StateMachine[2];
+
+    private Shape(final Class<? extends StateMachineState> variant) {
+      this.variant = variant;
+    }
+
+    /**
+     * Adds state "A", active once the machine is started, and its outgoing
+     * transitions to state "B". When {@code timeEvent} is true, every simple
+     * state active after the start also has a time event transition.
+     */
+    abstract void build(StateMachineBuilder<Object> builder, boolean timeEvent);
+
+    StateMachine machine(final boolean timeEvent) {
+      final int i = timeEvent ? 1 : 0;
+      if (machines[i] == null) {
+        StateMachineBuilder<Object> builder = new StateMachineBuilder<>(name());
+
+        builder
+          .region()
+            .initial()
+              .transition("t0")
+                .target("A");
+
+        build(builder, timeEvent);
+
+        builder
+          .region()
+            .state("B");
+
+        machines[i] = builder.instance();
+      }
+      return machines[i];
+    }
+  }
+}
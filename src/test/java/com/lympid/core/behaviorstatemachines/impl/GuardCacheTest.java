@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.CompletionEvent;
+import com.lympid.core.basicbehaviors.StringEvent;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class GuardCacheTest {
+
+  @Test
+  public void putAndGet() {
+    GuardCache cache = new GuardCache(3);
+    assertFalse(cache.contains(1, CompletionEvent.INSTANCE));
+
+    cache.put(1, CompletionEvent.INSTANCE, true);
+    cache.put(2, CompletionEvent.INSTANCE, false);
+    assertTrue(cache.contains(1, CompletionEvent.INSTANCE));
+    assertTrue(cache.get(1));
+    assertTrue(cache.contains(2, CompletionEvent.INSTANCE));
+    assertFalse(cache.get(2));
+    assertFalse(cache.contains(0, CompletionEvent.INSTANCE));
+  }
+
+  @Test
+  public void otherEvent() {
+    GuardCache cache = new GuardCache(1);
+    cache.put(0, new StringEvent("a"), true);
+    assertFalse(cache.contains(0, new StringEvent("a")));
+    assertFalse(cache.contains(0, CompletionEvent.INSTANCE));
+  }
+
+  @Test
+  public void invalidate() {
+    GuardCache cache = new GuardCache(2);
+    cache.put(0, CompletionEvent.INSTANCE, true);
+    cache.invalidate();
+    assertFalse(cache.contains(0, CompletionEvent.INSTANCE));
+
+    cache.put(0, CompletionEvent.INSTANCE, false);
+    assertTrue(cache.contains(0, CompletionEvent.INSTANCE));
+    assertFalse(cache.get(0));
+  }
+
+  @Test
+  public void outOfRange() {
+    GuardCache cache = new GuardCache(1);
+    cache.put(-1, CompletionEvent.INSTANCE, true);
+    cache.put(1, CompletionEvent.INSTANCE, true);
+    assertFalse(cache.contains(-1, CompletionEvent.INSTANCE));
+    assertFalse(cache.contains(1, CompletionEvent.INSTANCE));
+  }
+
+}
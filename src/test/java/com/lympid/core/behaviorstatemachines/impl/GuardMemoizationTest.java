@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Two transitions enabled by the same event lead to the same junction: the
+ * guard out of the junction is evaluated once per path unless memoized.
+ *
+ * @author Fabien Renaud
+ */
+public class GuardMemoizationTest {
+
+  private final AtomicInteger evaluations = new AtomicInteger();
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder<>("memo");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("j")
+          .transition("t2")
+            .on("go")
+            .target("j");
+
+    builder
+      .region()
+        .junction("j")
+          .transition("t3")
+            .guard((c) -> evaluations.incrementAndGet() > 0)
+            .target("A")
+          .transition("t4")
+            .guard((c) -> false)
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    machine = builder.instance();
+  }
+
+  @Test
+  public void ordinals() {
+    assertEquals(5, machine.metadata().countOfTransitions());
+  }
+
+  @Test
+  public void disabled() {
+    StateMachineExecutor<Object> fsm = executor(new ExecutorConfiguration());
+
+    fsm.take(new StringEvent("go"));
+    assertEquals(2, evaluations.get());
+
+    fsm.take(new StringEvent("go"));
+    assertEquals(4, evaluations.get());
+  }
+
+  @Test
+  public void enabled() {
+    StateMachineExecutor<Object> fsm = executor(new ExecutorConfiguration().guardMemoization(true));
+
+    fsm.take(new StringEvent("go"));
+    assertEquals(1, evaluations.get());
+
+    /*
+     * A new step never reuses the results of the previous one.
+     */
+    fsm.take(new StringEvent("go"));
+    assertEquals(2, evaluations.get());
+  }
+
+  private StateMachineExecutor<Object> executor(final ExecutorConfiguration config) {
+    StateMachineExecutor<Object> fsm = new SyncStateMachineExecutor.Builder<>()
+      .setStateMachine(machine)
+      .setConfiguration(config)
+      .setContext(new Object())
+      .build();
+    fsm.go();
+    return fsm;
+  }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class GuardStatisticsTest {
+
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<AtomicInteger> builder = new StateMachineBuilder<>("stats");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .guard((e, c) -> c.get() == 1)
+            .target("A")
+          .transition("t2")
+            .on("go")
+            .guard((e, c) -> c.get() == 2)
+            .target("A")
+          .transition("t3")
+            .on("go")
+            .guard((e, c) -> c.get() == 3)
+            .target("A");
+
+    machine = builder.instance();
+  }
+
+  @Test
+  public void declaration() {
+    SyncStateMachineExecutor<AtomicInteger> fsm = executor(ExecutorConfiguration.GuardOrdering.DECLARATION);
+    fsm.take(new StringEvent("go"));
+    assertNull(fsm.guardStatistics());
+  }
+
+  @Test
+  public void statistics() {
+    SyncStateMachineExecutor<AtomicInteger> fsm = executor(ExecutorConfiguration.GuardOrdering.STATISTICS);
+    for (int i = 0; i < 4; i++) {
+      fsm.take(new StringEvent("go"));
+    }
+
+    GuardStatistics stats = fsm.guardStatistics();
+    assertEquals(0, stats.hits(transition("t1")));
+    assertEquals(4, stats.misses(transition("t1")));
+    assertEquals(4, stats.misses(transition("t2")));
+    assertEquals(4, stats.hits(transition("t3")));
+    assertEquals(0, stats.misses(transition("t3")));
+    assertEquals(0, stats.selectivity(transition("t1")), 0);
+    assertEquals(1, stats.selectivity(transition("t3")), 0);
+    assertEquals(1, stats.selectivity(transition("t0")), 0);
+
+    stats.reset();
+    assertEquals(0, stats.hits(transition("t3")));
+    assertEquals(0, stats.misses(transition("t1")));
+  }
+
+  @Test
+  public void adaptive() {
+    SyncStateMachineExecutor<AtomicInteger> fsm = executor(ExecutorConfiguration.GuardOrdering.ADAPTIVE);
+    GuardStatistics stats = fsm.guardStatistics();
+
+    /*
+     * t1, t2, t3: t3 moves up one rank.
+     */
+    fsm.take(new StringEvent("go"));
+    assertEquals(1, stats.misses(transition("t1")));
+    assertEquals(1, stats.misses(transition("t2")));
+    assertEquals(1, stats.hits(transition("t3")));
+
+    /*
+     * t1, t3: t3 moves up to the first rank and t2 is not tested.
+     */
+    fsm.take(new StringEvent("go"));
+    assertEquals(2, stats.misses(transition("t1")));
+    assertEquals(1, stats.misses(transition("t2")));
+    assertEquals(2, stats.hits(transition("t3")));
+
+    /*
+     * t3 only.
+     */
+    fsm.take(new StringEvent("go"));
+    assertEquals(2, stats.misses(transition("t1")));
+    assertEquals(1, stats.misses(transition("t2")));
+    assertEquals(3, stats.hits(transition("t3")));
+  }
+
+  @Test
+  public void adaptive_unguardedNeverPromoted() {
+    StateMachineBuilder<AtomicInteger> builder = new StateMachineBuilder<>("catchAll");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .guard((e, c) -> c.get() == 1)
+            .target("B")
+          .transition("t2")
+            .on("go")
+            .target("A");
+
+    builder
+      .region()
+        .state("B");
+
+    machine = builder.instance();
+    AtomicInteger ctx = new AtomicInteger(0);
+    SyncStateMachineExecutor<AtomicInteger> fsm = executor(ExecutorConfiguration.GuardOrdering.ADAPTIVE, ctx);
+    GuardStatistics stats = fsm.guardStatistics();
+
+    /*
+     * The catch-all t2 fires first but must not be moved ahead of t1.
+     */
+    fsm.take(new StringEvent("go"));
+    fsm.take(new StringEvent("go"));
+    assertEquals(2, stats.misses(transition("t1")));
+
+    ctx.set(1);
+    fsm.take(new StringEvent("go"));
+    assertEquals(1, stats.hits(transition("t1")));
+    assertEquals(2, stats.misses(transition("t1")));
+  }
+
+  private SyncStateMachineExecutor<AtomicInteger> executor(final ExecutorConfiguration.GuardOrdering ordering) {
+    return executor(ordering, new AtomicInteger(3));
+  }
+
+  private SyncStateMachineExecutor<AtomicInteger> executor(final ExecutorConfiguration.GuardOrdering ordering, final AtomicInteger context) {
+    SyncStateMachineExecutor<AtomicInteger> fsm = (SyncStateMachineExecutor<AtomicInteger>) new SyncStateMachineExecutor.Builder<AtomicInteger>()
+      .setStateMachine(machine)
+      .setConfiguration(new ExecutorConfiguration().guardOrdering(ordering))
+      .setContext(context)
+      .build();
+    fsm.go();
+    return fsm;
+  }
+
+  private Transition transition(final String name) {
+    for (Region r : machine.region()) {
+      for (Transition t : r.transition()) {
+        if (name.equals(t.getName())) {
+          return t;
+        }
+      }
+    }
+    throw new IllegalArgumentException("No such transition: " + name);
+  }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Behaviors of distinct regions wait for each other on a barrier: they only
+ * all succeed when regions are run in parallel.
+ *
+ * @author Fabien Renaud
+ */
+public class ParallelRegionsTest {
+
+  private ForkJoinPool pool;
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    pool = new ForkJoinPool(2);
+
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("parallel");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("ortho");
+
+    builder
+      .region()
+        .state(orthogonal());
+
+    machine = builder.instance();
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void parallel() {
+    Context ctx = new Context(5000);
+    StateMachineExecutor<Context> fsm = fsm(new ExecutorConfiguration().parallelRegions(pool), ctx);
+    fsm.go();
+    assertEquals(0, ctx.failures.get());
+    assertEquals(new HashSet<>(Arrays.asList("A", "C")), new HashSet<>(ctx.log));
+
+    ctx.log.clear();
+    fsm.take(new StringEvent("go"));
+    assertEquals(0, ctx.failures.get());
+    assertEquals(new HashSet<>(Arrays.asList("t1", "t2", "B", "D")), new HashSet<>(ctx.log));
+
+    ctx.log.clear();
+    fsm.take(new StringEvent("go"));
+    assertEquals(0, ctx.failures.get());
+    assertTrue(ctx.log.isEmpty());
+  }
+
+  @Test
+  public void sequential() {
+    Context ctx = new Context(50);
+    StateMachineExecutor<Context> fsm = fsm(new ExecutorConfiguration(), ctx);
+    fsm.go();
+    assertEquals(2, ctx.failures.get());
+    assertEquals(new HashSet<>(Arrays.asList("A", "C")), new HashSet<>(ctx.log));
+  }
+
+  @Test(expected = BadConfigurationException.class)
+  public void guardMemoization() {
+    fsm(new ExecutorConfiguration().parallelRegions(pool).guardMemoization(true), new Context(0)).go();
+  }
+
+  @Test(expected = BadConfigurationException.class)
+  public void guardOrdering() {
+    fsm(new ExecutorConfiguration().parallelRegions(pool).guardOrdering(ExecutorConfiguration.GuardOrdering.ADAPTIVE), new Context(0)).go();
+  }
+
+  private StateMachineExecutor<Context> fsm(final ExecutorConfiguration configuration, final Context ctx) {
+    return new SyncStateMachineExecutor.Builder<Context>()
+      .setStateMachine(machine)
+      .setConfiguration(configuration)
+      .setContext(ctx)
+      .build();
+  }
+
+  private OrthogonalStateBuilder<Context> orthogonal() {
+    OrthogonalStateBuilder<Context> builder = new OrthogonalStateBuilder<>("ortho");
+
+    builder
+      .region("r1")
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region("r1")
+        .state("A")
+          .entry((c) -> c.await("A"))
+          .transition("t1")
+            .on("go")
+            .effect((e, c) -> c.await("t1"))
+            .target("B");
+
+    builder
+      .region("r1")
+        .state("B")
+          .entry((c) -> c.log.add("B"));
+
+    builder
+      .region("r2")
+        .initial()
+          .transition()
+            .target("C");
+
+    builder
+      .region("r2")
+        .state("C")
+          .entry((c) -> c.await("C"))
+          .transition("t2")
+            .on("go")
+            .effect((e, c) -> c.await("t2"))
+            .target("D");
+
+    builder
+      .region("r2")
+        .state("D")
+          .entry((c) -> c.log.add("D"));
+
+    return builder;
+  }
+
+  private static final class Context {
+
+    private final CyclicBarrier barrier = new CyclicBarrier(2);
+    private final long timeout;
+    private final Queue<String> log = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    Context(final long timeout) {
+      this.timeout = timeout;
+    }
+
+    void await(final String name) {
+      log.add(name);
+      try {
+        barrier.await(timeout, TimeUnit.MILLISECONDS);
+      } catch (Exception ex) {
+        failures.incrementAndGet();
+        barrier.reset();
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.PayloadEvent;
+import com.lympid.core.basicbehaviors.PayloadEventPool;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class PayloadEventExecutorTest {
+
+  private static final int EVENTS = 1000;
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<List<Integer>> builder = new StateMachineBuilder<>("payload");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition()
+            .on(new PayloadEvent<Integer>("order"))
+            .guard((e, c) -> e.payload() > 0)
+            .effect((e, c) -> c.add(e.payload()))
+            .target("B");
+
+    builder
+      .region()
+        .state("B")
+          .transition()
+            .on(new PayloadEvent<Integer>("order"))
+            .effect((e, c) -> c.add(-e.payload()))
+            .target("A");
+
+    machine = builder.instance();
+  }
+
+  @Test
+  public void sync() {
+    final PayloadEventPool<Integer> events = new PayloadEventPool<>("order", 1);
+    final List<Integer> ctx = new ArrayList<>();
+
+    StateMachineExecutor<List<Integer>> fsm = new SyncStateMachineExecutor.Builder<List<Integer>>()
+      .setStateMachine(machine)
+      .setContext(ctx)
+      .build();
+    fsm.go();
+
+    PayloadEvent<Integer> evt = events.acquire(1);
+    fsm.take(evt);
+    assertEquals(1, events.available());
+
+    for (int i = 2; i <= 4; i++) {
+      assertSame(evt, events.acquire(i));
+      fsm.take(evt);
+      assertEquals(1, events.available());
+    }
+    fsm.take(events.acquire(0));
+    fsm.take(events.acquire(5));
+
+    assertEquals(Arrays.asList(1, -2, 3, -4, 5), ctx);
+    assertEquals(1, events.available());
+  }
+
+  @Test
+  public void sync_notStarted() {
+    final PayloadEventPool<Integer> events = new PayloadEventPool<>("order", 1);
+    StateMachineExecutor<List<Integer>> fsm = new SyncStateMachineExecutor.Builder<List<Integer>>()
+      .setStateMachine(machine)
+      .setContext(new ArrayList<>())
+      .build();
+    try {
+      fsm.take(events.acquire(1));
+    } catch (RuntimeException ex) {
+      assertEquals(1, events.available());
+      return;
+    }
+    throw new AssertionError("take() must fail before go() is invoked.");
+  }
+
+  @Test
+  public void pool() throws InterruptedException {
+    final StateMachineShardPoolExecutor<List<Integer>> pool = new StateMachineShardPoolExecutor<>(2);
+    final CountDownLatch latch = new CountDownLatch(EVENTS);
+    final PayloadEventPool<Integer> events = new PayloadEventPool<>("order", 16);
+    final List<Integer> ctx = new ArrayList<>();
+
+    try {
+      StateMachineExecutor<List<Integer>> fsm = new PoolStateMachineExecutor.Builder<List<Integer>>(pool)
+        .setStateMachine(machine)
+        .setContext(ctx)
+        .build();
+      fsm.listeners().addEventAcceptedListener((e, m, c, ev) -> latch.countDown());
+      fsm.go();
+
+      for (int i = 1; i <= EVENTS; i++) {
+        fsm.take(events.acquire(i));
+      }
+      assertTrue(latch.await(5, TimeUnit.SECONDS));
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    assertEquals(EVENTS, ctx.size());
+    for (int i = 1; i <= EVENTS; i++) {
+      assertEquals(i % 2 == 1 ? i : -i, ctx.get(i - 1).intValue());
+    }
+    assertTrue(events.available() > 0);
+  }
+
+}
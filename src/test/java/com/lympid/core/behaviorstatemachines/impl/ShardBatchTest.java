@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ShardBatchTest {
+
+  private final List<String> log = new ArrayList<>();
+  private final ShardQueue queue = new ShardQueue(WaitStrategy.BLOCKING, 16);
+  private final ShardBatch batch = new ShardBatch(queue, new ShardStatistics(0, queue), 4);
+
+  @Test
+  public void fill_adaptive() throws InterruptedException {
+    queue.batch(batch);
+    for (int i = 0; i < 10; i++) {
+      queue.add(new Task("t" + i));
+    }
+
+    assertTrue(queue.take() instanceof Task);
+    assertEquals(2, batch.limit());
+    assertSame(batch, queue.take());
+    assertEquals(4, batch.limit());
+    batch.run();
+    assertSame(batch, queue.take());
+    batch.run();
+    assertEquals(4, batch.limit());
+    assertEquals(Arrays.asList("t1", "t2", "t3", "t4", "t5", "t6"), log);
+
+    assertSame(batch, queue.take());
+    assertEquals(4, batch.limit());
+    batch.run();
+    assertEquals(Arrays.asList("t1", "t2", "t3", "t4", "t5", "t6", "t7", "t8", "t9"), log);
+
+    queue.add(new Task("t10"));
+    assertTrue(queue.take() instanceof Task);
+    assertEquals(2, batch.limit());
+  }
+
+  @Test
+  public void run_urgentFirst() throws InterruptedException {
+    queue.batch(batch);
+    for (int i = 0; i < 4; i++) {
+      queue.add(new Task("t" + i));
+    }
+    queue.take().run();
+    queue.addFirst(new Task("u0"));
+    queue.take().run();
+
+    Runnable r = queue.take();
+    queue.add(new Task("t4"));
+    queue.addFirst(new Task("u1"));
+    r.run();
+    assertEquals(Arrays.asList("t0", "u0", "u1", "t1", "t2"), log);
+    assertEquals(2, queue.size());
+  }
+
+  @Test
+  public void run_failure() throws InterruptedException {
+    queue.batch(batch);
+    queue.add(new Task("t0"));
+    queue.add(new Task("fail"));
+    queue.add(new Task("t1"));
+    queue.add(new Task("t2"));
+    queue.take().run();
+
+    Runnable r = queue.take();
+    try {
+      r.run();
+      fail("Task should have failed.");
+    } catch (IllegalStateException ex) {
+    }
+    assertEquals(Arrays.asList("t0", "fail"), log);
+    assertEquals(2, queue.size());
+    assertEquals("t1", ((Task) queue.poll()).name);
+    assertEquals("t2", ((Task) queue.poll()).name);
+  }
+
+  private final class Task extends StateMachineShardPoolExecutor.ShardTask {
+
+    private final String name;
+
+    Task(final String name) {
+      this.name = name;
+    }
+
+    @Override
+    PoolStateMachineExecutor<?> executor() {
+      return null;
+    }
+
+    @Override
+    public void run() {
+      log.add(name);
+      if ("fail".equals(name)) {
+        throw new IllegalStateException();
+      }
+    }
+
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.PayloadEvent;
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the migration of executors between the shards of a pool.
+ *
+ * @author Fabien Renaud
+ */
+public class ShardMigrationTest {
+
+  private static final long TIMEOUT = 5000;
+  private static final int THREADS = 4;
+  private static final int EVENTS = 2000;
+  private StateMachine machine;
+  private StateMachineShardPoolExecutor<Context> pool;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("migration");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .selfTransition()
+            .on(new PayloadEvent<Integer>("e"))
+            .effect((e, c) -> c.processed.add(e.payload()))
+            .target()
+          .selfTransition()
+            .on("block")
+            .effect((e, c) -> {
+              c.started.release();
+              c.gate.acquireUninterruptibly();
+            })
+            .target();
+
+    machine = builder.instance();
+    pool = new StateMachineShardPoolExecutor<>(2);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    pool.shutdown();
+    pool.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void migrate_order() throws InterruptedException {
+    assertMigrationKeepsOrder();
+  }
+
+  @Test
+  public void migrate_orderBatched() throws InterruptedException {
+    pool.shutdown();
+    pool = new StateMachineShardPoolExecutor<>(2, Executors.defaultThreadFactory(), new MailboxConfiguration().maxBatchSize(16).ringCapacity(8));
+    assertMigrationKeepsOrder();
+  }
+
+  private void assertMigrationKeepsOrder() throws InterruptedException {
+    final Context ctx = new Context();
+    final StateMachineExecutor<Context> fsm = executor(ctx, 0);
+
+    List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < EVENTS; i++) {
+          fsm.take(new PayloadEvent<Integer>("e").payload(thread * EVENTS + i));
+        }
+      }));
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    int migrations = 0;
+    while (isAlive(threads)) {
+      if (pool.migrate(fsm, 1 - pool.executorShard(fsm))) {
+        migrations++;
+      }
+      Thread.yield();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    awaitCount(ctx, THREADS * EVENTS);
+
+    assertTrue(migrations > 0);
+    int[] last = new int[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      last[t] = -1;
+    }
+    for (int value : ctx.processed) {
+      int t = value / EVENTS;
+      assertTrue(value + " after " + last[t], value % EVENTS == last[t] + 1);
+      last[t] = value % EVENTS;
+    }
+  }
+
+  @Test
+  public void migrate_pendingTasks() throws InterruptedException {
+    final Context blocked = new Context();
+    final StateMachineExecutor<Context> blocker = executor(blocked, 0);
+    final Context ctx = new Context();
+    final StateMachineExecutor<Context> fsm = executor(ctx, 0);
+
+    blocker.take(new StringEvent("block"));
+    assertTrue(blocked.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+    for (int i = 0; i < 10; i++) {
+      fsm.take(new PayloadEvent<Integer>("e").payload(i));
+    }
+    assertTrue(pool.migrate(fsm, 1));
+    assertFalse(pool.migrate(fsm, 1));
+    for (int i = 10; i < 20; i++) {
+      fsm.take(new PayloadEvent<Integer>("e").payload(i));
+    }
+    assertEquals(0, pool.executorShard(fsm));
+    assertTrue(ctx.processed.isEmpty());
+
+    blocked.gate.release();
+    awaitCount(ctx, 20);
+    assertEquals(1, pool.executorShard(fsm));
+    for (int i = 0; i < 20; i++) {
+      assertEquals(i, (int) ctx.processed.get(i));
+    }
+
+    fsm.take(new PayloadEvent<Integer>("e").payload(20));
+    awaitCount(ctx, 21);
+    assertFalse(pool.migrate(fsm, 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void migrate_noSuchShard() {
+    pool.migrate(executor(new Context(), 0), 2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void migrate_foreignExecutor() {
+    StateMachineExecutor<Context> fsm = new SyncStateMachineExecutor.Builder<Context>()
+      .setStateMachine(machine)
+      .setContext(new Context())
+      .build();
+    pool.migrate(fsm, 1);
+  }
+
+  @Test
+  public void rebalance() throws InterruptedException {
+    final Context blocked = new Context();
+    final StateMachineExecutor<Context> blocker = executor(blocked, 0);
+    final Context hot = new Context();
+    final StateMachineExecutor<Context> hotFsm = executor(hot, 0);
+    final Context warm = new Context();
+    final StateMachineExecutor<Context> warmFsm = executor(warm, 0);
+    ShardRebalancer<Context> rebalancer = new ShardRebalancer<>(pool).minQueueDepth(10);
+
+    blocker.take(new StringEvent("block"));
+    assertTrue(blocked.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+    for (int i = 0; i < 30; i++) {
+      hotFsm.take(new PayloadEvent<Integer>("e").payload(i));
+    }
+    assertFalse(rebalancer.rebalance());
+
+    for (int i = 0; i < 20; i++) {
+      warmFsm.take(new PayloadEvent<Integer>("e").payload(i));
+    }
+    assertTrue(rebalancer.rebalance());
+
+    blocked.gate.release();
+    awaitCount(hot, 30);
+    awaitCount(warm, 20);
+    assertEquals(1, pool.executorShard(hotFsm));
+    assertEquals(0, pool.executorShard(warmFsm));
+    assertFalse(rebalancer.rebalance());
+  }
+
+  private StateMachineExecutor<Context> executor(final Context ctx, final int shard) {
+    int key = 0;
+    while (pool.shardOf(key) != shard) {
+      key++;
+    }
+    StateMachineExecutor<Context> fsm = new PoolStateMachineExecutor.Builder<Context>(pool)
+      .setShardKey(key)
+      .setStateMachine(machine)
+      .setContext(ctx)
+      .build();
+    fsm.go();
+    return fsm;
+  }
+
+  private static boolean isAlive(final List<Thread> threads) {
+    for (Thread t : threads) {
+      if (t.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void awaitCount(final Context ctx, final int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (ctx.processed.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(count, ctx.processed.size());
+  }
+
+  public static final class Context {
+
+    final List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+    final Semaphore started = new Semaphore(0);
+    final Semaphore gate = new Semaphore(0);
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ShardQueueTest {
+
+  private static final long TIMEOUT = 5000;
+
+  @Test
+  public void order() throws InterruptedException {
+    ShardQueue queue = new ShardQueue(WaitStrategy.BLOCKING, 16);
+    Runnable a = () -> {
+    };
+    Runnable b = () -> {
+    };
+    Runnable c = () -> {
+    };
+    queue.add(a);
+    queue.add(b);
+    queue.addFirst(c);
+    assertEquals(3, queue.size());
+
+    assertTrue(queue.removeFirstOccurrence(a));
+    List<Runnable> drained = new ArrayList<>();
+    assertEquals(2, queue.drainTo(drained));
+    assertEquals(Arrays.asList(c, b), drained);
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void append_overflow() {
+    ShardQueue queue = new ShardQueue(WaitStrategy.BLOCKING, 2);
+    for (int i = 0; i < 3; i++) {
+      queue.append(StateMachineShardPoolExecutor.Command.Op.EVENT, null, new StringEvent("e" + i), null, null, null);
+    }
+    StateMachineShardPoolExecutor.Command c = (StateMachineShardPoolExecutor.Command) queue.poll();
+    assertEquals("e0", c.event().toString());
+    c.recycle();
+    queue.append(StateMachineShardPoolExecutor.Command.Op.EVENT, null, new StringEvent("e3"), null, null, null);
+    queue.appendCompletion(null);
+    assertEquals(4, queue.size());
+
+    List<String> events = new ArrayList<>();
+    Runnable r;
+    while ((r = queue.poll()) != null) {
+      c = (StateMachineShardPoolExecutor.Command) r;
+      events.add(c.kind() + ":" + c.event());
+      c.recycle();
+    }
+    assertEquals(Arrays.asList("COMPLETION_EVENT:null", "EVENT:e1", "EVENT:e2", "EVENT:e3"), events);
+  }
+
+  @Test
+  public void take() throws InterruptedException {
+    for (WaitStrategy strategy : WaitStrategy.values()) {
+      final ShardQueue queue = new ShardQueue(strategy, 16);
+      final AtomicReference<Runnable> taken = new AtomicReference<>();
+      final CountDownLatch latch = new CountDownLatch(1);
+      Thread worker = new Thread(() -> {
+        try {
+          taken.set(queue.take());
+          latch.countDown();
+        } catch (InterruptedException ex) {
+        }
+      });
+      worker.start();
+      Thread.sleep(10);
+
+      Runnable r = () -> {
+      };
+      queue.add(r);
+      assertTrue(strategy.name(), latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+      assertSame(r, taken.get());
+    }
+  }
+
+  @Test
+  public void take_interrupted() throws InterruptedException {
+    for (WaitStrategy strategy : WaitStrategy.values()) {
+      final ShardQueue queue = new ShardQueue(strategy, 16);
+      final CountDownLatch latch = new CountDownLatch(1);
+      Thread worker = new Thread(() -> {
+        try {
+          queue.take();
+        } catch (InterruptedException ex) {
+          latch.countDown();
+        }
+      });
+      worker.start();
+      Thread.sleep(10);
+
+      worker.interrupt();
+      assertTrue(strategy.name(), latch.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  @Test
+  public void poll_timeout() throws InterruptedException {
+    for (WaitStrategy strategy : WaitStrategy.values()) {
+      ShardQueue queue = new ShardQueue(strategy, 16);
+      long start = System.nanoTime();
+      assertNull(strategy.name(), queue.poll(20, TimeUnit.MILLISECONDS));
+      assertTrue(strategy.name(), System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+  }
+}
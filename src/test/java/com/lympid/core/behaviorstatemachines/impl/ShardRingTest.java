@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.impl.StateMachineShardPoolExecutor.Command;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ShardRingTest {
+
+  @Test
+  public void capacity() {
+    assertEquals(1, new ShardRing(1).capacity());
+    assertEquals(4, new ShardRing(3).capacity());
+    assertEquals(16, new ShardRing(16).capacity());
+  }
+
+  @Test
+  public void claim_full() {
+    ShardRing ring = new ShardRing(2);
+    Command a = ring.claim();
+    Command b = ring.claim();
+    assertNotSame(a, b);
+    assertNull(ring.claim());
+
+    ring.publish(event(a, "a"));
+    ring.publish(event(b, "b"));
+    assertEquals(2, ring.size());
+
+    Command c = ring.poll();
+    assertSame(a, c);
+    assertNull(ring.claim());
+    c.recycle();
+    assertSame(a, ring.claim());
+  }
+
+  @Test
+  public void poll_unpublished() {
+    ShardRing ring = new ShardRing(4);
+    Command a = ring.claim();
+    Command b = ring.claim();
+    ring.publish(event(b, "b"));
+    assertNull(ring.poll());
+
+    ring.publish(event(a, "a"));
+    assertSame(a, ring.poll());
+    assertSame(b, ring.poll());
+    assertNull(ring.poll());
+    assertTrue(ring.isEmpty());
+  }
+
+  @Test
+  public void reuse() {
+    ShardRing ring = new ShardRing(2);
+    List<String> events = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      ring.publish(event(ring.claim(), "e" + i));
+      Command c = ring.poll();
+      events.add(c.event().toString());
+      c.recycle();
+    }
+    assertEquals(Arrays.asList("e0", "e1", "e2", "e3", "e4", "e5", "e6", "e7", "e8", "e9"), events);
+  }
+
+  @Test
+  public void cancelOldestEvent() {
+    ShardRing ring = new ShardRing(4);
+    Command a = ring.claim();
+    ring.publish(a.set(Command.Op.START, null, null, null, null, null));
+    ring.publish(event(ring.claim(), "b"));
+    ring.publish(event(ring.claim(), "c"));
+
+    Command cancelled = ring.cancelOldestEvent(null);
+    assertEquals("b", cancelled.event().toString());
+    assertEquals(2, count(ring));
+
+    assertSame(a, ring.poll());
+    a.recycle();
+    assertEquals("c", ring.poll().event().toString());
+    assertNull(ring.poll());
+    assertNull(ring.cancelOldestEvent(null));
+  }
+
+  private static int count(final ShardRing ring) {
+    int n = 0;
+    for (Command c : ring) {
+      n++;
+    }
+    return n;
+  }
+
+  private static Command event(final Command c, final String event) {
+    return c.set(Command.Op.EVENT, null, new StringEvent(event), null, null, null);
+  }
+}
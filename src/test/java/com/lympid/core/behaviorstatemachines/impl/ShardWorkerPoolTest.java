@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ShardWorkerPoolTest {
+
+  private ShardWorkerPool workers;
+
+  @After
+  public void tearDown() throws InterruptedException {
+    if (workers != null) {
+      workers.shutdown();
+      workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void resize() throws InterruptedException {
+    workers = new ShardWorkerPool(new ElasticConfiguration()
+      .minThreads(1)
+      .maxThreads(3)
+      .samplePeriod(1, TimeUnit.MILLISECONDS), Executors.defaultThreadFactory());
+    assertEquals(1, workers.getCorePoolSize());
+
+    busy();
+    assertEquals(2, workers.getCorePoolSize());
+    busy();
+    assertEquals(3, workers.getCorePoolSize());
+    busy();
+    assertEquals(3, workers.getCorePoolSize());
+
+    idle();
+    assertEquals(2, workers.getCorePoolSize());
+    idle();
+    assertEquals(1, workers.getCorePoolSize());
+    idle();
+    assertEquals(1, workers.getCorePoolSize());
+  }
+
+  @Test
+  public void resize_samplePeriod() throws InterruptedException {
+    workers = new ShardWorkerPool(new ElasticConfiguration()
+      .minThreads(1)
+      .maxThreads(3)
+      .samplePeriod(1, TimeUnit.HOURS), Executors.defaultThreadFactory());
+    workers.ran(TimeUnit.HOURS.toNanos(1));
+    assertEquals(1, workers.getCorePoolSize());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void utilization_invalid() {
+    new ElasticConfiguration().utilization(0.8, 0.2);
+  }
+
+  private void busy() throws InterruptedException {
+    Thread.sleep(2);
+    workers.ran(TimeUnit.SECONDS.toNanos(1));
+  }
+
+  private void idle() throws InterruptedException {
+    Thread.sleep(2);
+    workers.ran(0);
+  }
+}
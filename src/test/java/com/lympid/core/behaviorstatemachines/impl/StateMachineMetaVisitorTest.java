@@ -45,6 +45,7 @@ public class StateMachineMetaVisitorTest {
     assertNotNull(meta);
     assertEquals(0, meta.countOfLeaves());
     assertEquals(0, meta.treeDepth());
+    assertEquals(0, meta.countOfTransitions());
     assertFalse(meta.hasActivities());
     assertFalse(meta.hasCompletionEvents());
     assertFalse(meta.hasTimeEvents());
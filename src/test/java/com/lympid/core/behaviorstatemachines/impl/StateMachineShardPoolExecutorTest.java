@@ -0,0 +1,437 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the bounded mailboxes and the statistics of the shard pool.
+ *
+ * @author Fabien Renaud
+ */
+public class StateMachineShardPoolExecutorTest {
+
+  private static final long TIMEOUT = 5000;
+  private static StateMachine machine;
+  private final List<String> decisions = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+  private final Context ctx = new Context();
+  private StateMachineShardPoolExecutor<Context> pool;
+  private StateMachineExecutor<Context> fsm;
+
+  @Before
+  public void setUp() {
+    if (machine == null) {
+      StateMachineBuilder<Context> builder = new StateMachineBuilder<>("mailbox");
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("A");
+
+      builder
+        .region()
+          .state("A")
+            .transition("t1")
+              .on("block")
+              .effect((e, c) -> {
+                c.started.release();
+                c.gate.acquireUninterruptibly();
+              })
+              .target("A")
+            .transition("t2")
+              .on("fanout")
+              .effect((e, c) -> {
+                for (String name : new String[]{"x", "y", "z"}) {
+                  c.self.take(new StringEvent(name));
+                }
+              })
+              .target("A");
+
+      machine = builder.instance();
+    }
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    ctx.gate.release(100);
+    pool.shutdown();
+    pool.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void dropNewest() throws InterruptedException {
+    start(new MailboxConfiguration().executorCapacity(2).overflowPolicy(MailboxConfiguration.OverflowPolicy.DROP_NEWEST));
+    block();
+    take("a", "b", "c");
+    assertEquals(Arrays.asList("DROPPED_NEWEST:c"), decisions);
+
+    release();
+    awaitProcessed("a", "b");
+  }
+
+  @Test
+  public void dropOldest() throws InterruptedException {
+    start(new MailboxConfiguration().executorCapacity(2).overflowPolicy(MailboxConfiguration.OverflowPolicy.DROP_OLDEST));
+    block();
+    take("a", "b", "c");
+    assertEquals(Arrays.asList("DROPPED_OLDEST:a"), decisions);
+
+    release();
+    awaitProcessed("b", "c");
+  }
+
+  @Test
+  public void reject() throws InterruptedException {
+    start(new MailboxConfiguration().shardCapacity(1).overflowPolicy(MailboxConfiguration.OverflowPolicy.REJECT));
+    block();
+    take("a");
+    try {
+      take("b");
+      fail("Event should have been rejected.");
+    } catch (RejectedExecutionException ex) {
+    }
+    assertEquals(Arrays.asList("REJECTED:b"), decisions);
+
+    release();
+    awaitProcessed("a");
+  }
+
+  @Test
+  public void block_producer() throws InterruptedException {
+    start(new MailboxConfiguration().executorCapacity(1).overflowPolicy(MailboxConfiguration.OverflowPolicy.BLOCK));
+    block();
+    take("a");
+
+    Thread producer = new Thread(() -> take("b"));
+    producer.start();
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (decisions.isEmpty() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(Arrays.asList("BLOCKED:b"), decisions);
+    assertTrue(producer.isAlive());
+
+    release();
+    producer.join(TIMEOUT);
+    awaitProcessed("a", "b");
+  }
+
+  @Test
+  public void block_worker() throws InterruptedException {
+    start(new MailboxConfiguration().executorCapacity(1).overflowPolicy(MailboxConfiguration.OverflowPolicy.BLOCK));
+    ctx.self = fsm;
+    take("fanout");
+    awaitProcessed("x", "y", "z");
+    assertFalse(decisions.isEmpty());
+    for (String d : decisions) {
+      assertTrue(d, d.startsWith("OVERDRAWN:"));
+    }
+
+    /*
+     * The overdrawn room has been given back.
+     */
+    decisions.clear();
+    take("a");
+    awaitProcessed("x", "y", "z", "a");
+    assertTrue(decisions.isEmpty());
+  }
+
+  @Test
+  public void shed() throws InterruptedException {
+    start(new MailboxConfiguration().maxLatency(20, TimeUnit.MILLISECONDS).overflowPolicy(MailboxConfiguration.OverflowPolicy.SHED));
+    block();
+    take("a", "block");
+    Thread.sleep(100);
+    release();
+    assertTrue(ctx.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    /*
+     * "a" and "block" waited for more than 20 ms: new events are shed as long
+     * as the mailbox is not empty.
+     */
+    take("b", "c");
+    assertEquals(Arrays.asList("SHED:c"), decisions);
+
+    release();
+    awaitProcessed("a", "b");
+  }
+
+  @Test
+  public void waitStrategies() throws InterruptedException {
+    for (WaitStrategy strategy : WaitStrategy.values()) {
+      pool = new StateMachineShardPoolExecutor<>(1, Executors.defaultThreadFactory(), MailboxConfiguration.DEFAULT, strategy);
+      start();
+      processed.clear();
+      take("a", "b", "c");
+      awaitProcessed("a", "b", "c");
+
+      pool.shutdown();
+      assertTrue(strategy.name(), pool.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+  }
+
+  @Test
+  public void ring_overflow() throws InterruptedException {
+    start(new MailboxConfiguration().ringCapacity(2));
+    block();
+    String[] events = new String[50];
+    for (int i = 0; i < events.length; i++) {
+      events[i] = "e" + i;
+    }
+    take(events);
+    assertEquals(events.length, pool.statistics(0).getQueueDepth());
+
+    release();
+    awaitProcessed(events);
+    take(events);
+    awaitCount(2 * events.length);
+  }
+
+  @Test
+  public void batch() throws InterruptedException {
+    start(new MailboxConfiguration().maxBatchSize(4));
+    StateMachineExecutor<Context> other = new PoolStateMachineExecutor.Builder<>(pool)
+      .setStateMachine(machine)
+      .setContext(new Context())
+      .build();
+    other.listeners().addEventDeniedListener((e, m, c, ev) -> processed.add(ev.toString()));
+    other.go();
+
+    block();
+    List<String> a = new ArrayList<>();
+    List<String> b = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      a.add("a" + i);
+      b.add("b" + i);
+      take("a" + i);
+      other.take(new StringEvent("b" + i));
+    }
+    release();
+    awaitCount(40);
+
+    List<String> processedA = new ArrayList<>();
+    List<String> processedB = new ArrayList<>();
+    boolean grouped = false;
+    for (int i = 0; i < processed.size(); i++) {
+      String e = processed.get(i);
+      (e.startsWith("a") ? processedA : processedB).add(e);
+      grouped |= i > 0 && e.charAt(0) == processed.get(i - 1).charAt(0);
+    }
+    assertEquals(a, processedA);
+    assertEquals(b, processedB);
+    assertTrue(grouped);
+  }
+
+  @Test
+  public void elastic() throws InterruptedException {
+    pool = new StateMachineShardPoolExecutor<>(256, Executors.defaultThreadFactory(), MailboxConfiguration.DEFAULT,
+      new ElasticConfiguration().minThreads(1).maxThreads(3).throughput(4).samplePeriod(1, TimeUnit.MILLISECONDS));
+    assertEquals(256, pool.size());
+    assertEquals(1, pool.threads());
+
+    List<List<String>> lists = new ArrayList<>();
+    List<StateMachineExecutor<Context>> executors = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      List<String> list = Collections.synchronizedList(new ArrayList<>());
+      StateMachineExecutor<Context> executor = new PoolStateMachineExecutor.Builder<>(pool)
+        .setStateMachine(machine)
+        .setContext(new Context())
+        .build();
+      executor.listeners().addEventDeniedListener((e, m, c, ev) -> list.add(ev.toString()));
+      executor.go();
+      lists.add(list);
+      executors.add(executor);
+    }
+
+    Thread[] producers = new Thread[4];
+    for (int p = 0; p < producers.length; p++) {
+      final int first = p;
+      producers[p] = new Thread(() -> {
+        for (int e = 0; e < 500; e++) {
+          for (int i = first; i < executors.size(); i += producers.length) {
+            executors.get(i).take(new StringEvent("e" + e));
+          }
+        }
+      });
+      producers[p].start();
+    }
+    for (Thread producer : producers) {
+      producer.join(TIMEOUT);
+    }
+
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    for (List<String> list : lists) {
+      while (list.size() < 500 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(5);
+      }
+      assertEquals(500, list.size());
+      for (int e = 0; e < 500; e++) {
+        assertEquals("e" + e, list.get(e));
+      }
+    }
+    assertTrue(pool.threads() >= 1 && pool.threads() <= 3);
+  }
+
+  @Test
+  public void shardKey() {
+    pool = new StateMachineShardPoolExecutor<>(4);
+    for (int i = 0; i < 20; i++) {
+      String key = "customer-" + i;
+      PoolStateMachineExecutor<Context> a = (PoolStateMachineExecutor<Context>) new PoolStateMachineExecutor.Builder<Context>(pool)
+        .setShardKey(key)
+        .setStateMachine(machine)
+        .setContext(new Context())
+        .build();
+      PoolStateMachineExecutor<Context> b = (PoolStateMachineExecutor<Context>) new PoolStateMachineExecutor.Builder<Context>(pool)
+        .setShardKey(key)
+        .setStateMachine(machine)
+        .setContext(new Context())
+        .build();
+      assertEquals(pool.shardOf(key), a.shard());
+      assertEquals(a.shard(), b.shard());
+    }
+
+    PoolStateMachineExecutor<Context> c = (PoolStateMachineExecutor<Context>) new PoolStateMachineExecutor.Builder<Context>(pool)
+      .setStateMachine(machine)
+      .setContext(new Context())
+      .build();
+    assertEquals(pool.shardOf(c.getId()), c.shard());
+  }
+
+  @Test
+  public void statistics() throws InterruptedException {
+    start(new MailboxConfiguration());
+    block();
+    take("a", "b");
+    Thread.sleep(20);
+
+    StateMachineShardMXBean stats = pool.statistics(0);
+    assertEquals(0, stats.getShard());
+    assertEquals(2, stats.getQueueDepth());
+    assertTrue(stats.getOldestTaskAgeMillis() >= 20);
+    assertTrue(stats.getBusyTimeMillis() >= 20);
+    assertEquals(1, stats.getEventCount());
+    assertEquals(stats.getDequeuedCount() + 2, stats.getEnqueuedCount());
+
+    release();
+    awaitProcessed("a", "b");
+    assertEquals(0, stats.getQueueDepth());
+    assertEquals(0, stats.getOldestTaskAgeMillis());
+    assertEquals(3, stats.getEventCount());
+    assertEquals(stats.getEnqueuedCount(), stats.getDequeuedCount());
+    assertTrue(stats.getUtilization() > 0 && stats.getUtilization() <= 1);
+  }
+
+  @Test
+  public void registerMBeans() throws InterruptedException, JMException {
+    start(new MailboxConfiguration());
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName("com.lympid.core:type=StateMachineShardPoolExecutor,name=\"test\",shard=0");
+
+    pool.registerMBeans("test");
+    try {
+      block();
+      take("a");
+      assertEquals(1, server.getAttribute(name, "QueueDepth"));
+      assertEquals(1L, server.getAttribute(name, "EventCount"));
+      try {
+        pool.registerMBeans("test");
+        fail("MBeans should already be registered.");
+      } catch (IllegalStateException ex) {
+      }
+    } finally {
+      pool.unregisterMBeans();
+    }
+    assertFalse(server.isRegistered(name));
+  }
+
+  private void start(final MailboxConfiguration config) throws InterruptedException {
+    pool = new StateMachineShardPoolExecutor<>(1, Executors.defaultThreadFactory(), config.listener((e, ev, d) -> decisions.add(d + ":" + ev)));
+    start();
+  }
+
+  private void start() {
+    fsm = new PoolStateMachineExecutor.Builder<>(pool)
+      .setStateMachine(machine)
+      .setContext(ctx)
+      .build();
+    fsm.listeners().addEventDeniedListener((e, m, c, ev) -> processed.add(ev.toString()));
+    fsm.go();
+  }
+
+  private void block() throws InterruptedException {
+    take("block");
+    assertTrue(ctx.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+  }
+
+  private void release() {
+    ctx.gate.release();
+  }
+
+  private void take(final String... events) {
+    for (String e : events) {
+      fsm.take(new StringEvent(e));
+    }
+  }
+
+  private void awaitCount(final int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (processed.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(count, processed.size());
+  }
+
+  private void awaitProcessed(final String... expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (processed.size() < expected.length && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(Arrays.asList(expected), processed);
+  }
+
+  public static final class Context {
+
+    final Semaphore started = new Semaphore(0);
+    final Semaphore gate = new Semaphore(0);
+    volatile StateMachineExecutor<Context> self;
+  }
+}
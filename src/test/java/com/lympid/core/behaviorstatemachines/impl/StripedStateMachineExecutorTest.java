@@ -0,0 +1,295 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.OrthogonalStateBuilder;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.common.StringTree;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class StripedStateMachineExecutorTest {
+
+  private static final int EVENTS = 2000;
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>("striped");
+
+    builder
+      .region()
+        .initial()
+          .transition()
+            .target("ortho");
+
+    builder
+      .region()
+        .state(orthogonal())
+          .transition()
+            .on("stop")
+            .target("end");
+
+    builder
+      .region()
+        .finalState("end");
+
+    machine = builder.instance();
+  }
+
+  @Test
+  public void stripes() {
+    StripedStateMachineExecutor<Context> fsm = (StripedStateMachineExecutor<Context>) fsm(new Context(), new ExecutorConfiguration());
+    assertEquals(2, fsm.stripes());
+  }
+
+  @Test
+  public void concurrentRegions() throws InterruptedException {
+    final Context ctx = new Context();
+    ctx.barrier = new CyclicBarrier(2);
+    final StateMachineExecutor<Context> fsm = fsm(ctx, new ExecutorConfiguration());
+    fsm.go();
+
+    Thread t1 = new Thread(() -> fsm.take(new StringEvent("a")));
+    Thread t2 = new Thread(() -> fsm.take(new StringEvent("c")));
+    t1.start();
+    t2.start();
+    t1.join();
+    t2.join();
+
+    assertEquals(0, ctx.failures.get());
+    assertEquals(1, ctx.r1.get());
+    assertEquals(1, ctx.r2.get());
+  }
+
+  @Test
+  public void run() throws InterruptedException {
+    final Context ctx = new Context();
+    final StateMachineExecutor<Context> fsm = fsm(ctx, new ExecutorConfiguration());
+    fsm.go();
+
+    List<Thread> threads = new ArrayList<>();
+    for (String event : new String[]{"a", "c", "a", "c", "x", "shared"}) {
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < EVENTS; i++) {
+          fsm.take(new StringEvent(event));
+        }
+      }));
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+
+    assertEquals(0, ctx.failures.get());
+    assertEquals(2 * EVENTS, ctx.r1.get());
+    assertEquals(2 * EVENTS, ctx.r2.get());
+    assertEquals(1, ctx.r3.get());
+    assertEquals(EVENTS, ctx.shared.get());
+    assertEquals(EVENTS + 1, ctx.enterA.get());
+    assertEquals(EVENTS + 1, ctx.enterC.get());
+    assertEquals(ids(fsm.snapshot().stateConfiguration(), new HashSet<>()), fsm.activeStateIds());
+
+    fsm.take(new StringEvent("stop"));
+    assertEquals(1, ctx.exitOrtho.get());
+    fsm.take(new StringEvent("a"));
+    assertEquals(2 * EVENTS, ctx.r1.get());
+  }
+
+  @Test
+  public void machineEventFromRegion() throws InterruptedException {
+    final Context ctx = new Context();
+    final StateMachineExecutor<Context> fsm = fsm(ctx, new ExecutorConfiguration());
+    ctx.self = fsm;
+    fsm.go();
+
+    Thread t = new Thread(() -> fsm.take(new StringEvent("ping")));
+    t.start();
+    t.join(5000);
+
+    assertFalse(t.isAlive());
+    assertEquals(0, ctx.sharedAtPing);
+    assertTrue(ctx.snapshotRejected);
+    assertEquals(1, ctx.shared.get());
+    assertEquals(1, ctx.enterC.get());
+  }
+
+  @Test(expected = BadConfigurationException.class)
+  public void guardMemoization() {
+    fsm(new Context(), new ExecutorConfiguration().guardMemoization(true));
+  }
+
+  @Test(expected = BadConfigurationException.class)
+  public void guardOrdering() {
+    fsm(new Context(), new ExecutorConfiguration().guardOrdering(ExecutorConfiguration.GuardOrdering.STATISTICS));
+  }
+
+  private StateMachineExecutor<Context> fsm(final Context ctx, final ExecutorConfiguration configuration) {
+    return new StripedStateMachineExecutor.Builder<Context>()
+      .setStateMachine(machine)
+      .setConfiguration(configuration)
+      .setContext(ctx)
+      .build();
+  }
+
+  private static Set<String> ids(final StringTree node, final Set<String> ids) {
+    ids.add(node.state());
+    if (node.children() != null) {
+      for (StringTree child : node.children()) {
+        ids(child, ids);
+      }
+    }
+    return ids;
+  }
+
+  private OrthogonalStateBuilder<Context> orthogonal() {
+    OrthogonalStateBuilder<Context> builder = new OrthogonalStateBuilder<>("ortho");
+
+    builder
+      .exit((c) -> c.exitOrtho.incrementAndGet())
+      .selfTransition()
+        .on("shared")
+        .effect((e, c) -> c.shared.incrementAndGet())
+        .target();
+
+    builder
+      .region("r1")
+        .initial()
+          .transition()
+            .target("A");
+
+    builder
+      .region("r1")
+        .state("A")
+          .entry((c) -> c.enterA.incrementAndGet())
+          .transition()
+            .on("a")
+            .effect((e, c) -> c.await(c.r1))
+            .target("B");
+
+    builder
+      .region("r1")
+        .state("B")
+          .transition()
+            .on("a")
+            .effect((e, c) -> c.await(c.r1))
+            .target("A");
+
+    builder
+      .region("r2")
+        .initial()
+          .transition()
+            .target("C");
+
+    builder
+      .region("r2")
+        .state("C")
+          .entry((c) -> c.enterC.incrementAndGet())
+          .transition()
+            .on("c")
+            .effect((e, c) -> c.await(c.r2))
+            .target("D")
+          .transition()
+            .on("ping")
+            .effect((e, c) -> c.ping())
+            .target("D");
+
+    builder
+      .region("r2")
+        .state("D")
+          .transition()
+            .on("c")
+            .effect((e, c) -> c.await(c.r2))
+            .target("C");
+
+    builder
+      .region("r3")
+        .initial()
+          .transition()
+            .target("E");
+
+    builder
+      .region("r3")
+        .state("E")
+          .transition()
+            .on("x")
+            .effect((e, c) -> c.r3.incrementAndGet())
+            .target("end3");
+
+    builder
+      .region("r3")
+        .finalState("end3");
+
+    return builder;
+  }
+
+  private static final class Context {
+
+    private CyclicBarrier barrier;
+    private final AtomicInteger r1 = new AtomicInteger();
+    private final AtomicInteger r2 = new AtomicInteger();
+    private final AtomicInteger r3 = new AtomicInteger();
+    private final AtomicInteger shared = new AtomicInteger();
+    private final AtomicInteger enterA = new AtomicInteger();
+    private final AtomicInteger enterC = new AtomicInteger();
+    private final AtomicInteger exitOrtho = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile StateMachineExecutor<Context> self;
+    private volatile int sharedAtPing = -1;
+    private volatile boolean snapshotRejected;
+
+    void ping() {
+      self.take(new StringEvent("shared"));
+      sharedAtPing = shared.get();
+      try {
+        self.snapshot();
+      } catch (IllegalStateException ex) {
+        snapshotRejected = true;
+      }
+    }
+
+    void await(final AtomicInteger counter) {
+      counter.incrementAndGet();
+      if (barrier != null) {
+        try {
+          barrier.await(5, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+          failures.incrementAndGet();
+        }
+      }
+    }
+  }
+}
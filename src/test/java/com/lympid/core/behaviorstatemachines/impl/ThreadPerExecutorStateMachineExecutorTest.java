@@ -0,0 +1,239 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests executors blocking in their behaviors.
+ *
+ * @author Fabien Renaud
+ */
+public class ThreadPerExecutorStateMachineExecutorTest {
+
+  private static final long TIMEOUT = 5000;
+  private static StateMachine machine;
+  private ExecutorService threads;
+
+  @Before
+  public void setUp() {
+    threads = ThreadPerExecutorStateMachineExecutor.newThreadPerTaskExecutor();
+    if (machine == null) {
+      StateMachineBuilder<Context> builder = new StateMachineBuilder<>("blocking");
+
+      builder
+        .region()
+          .initial()
+            .transition("t0")
+              .target("A");
+
+      builder
+        .region()
+          .state("A")
+            .transition("t1")
+              .on("block")
+              .effect((e, c) -> {
+                c.started.release();
+                c.gate.acquireUninterruptibly();
+              })
+              .target("A");
+
+      machine = builder.instance();
+    }
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    threads.shutdown();
+    assertTrue(threads.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void block_otherExecutorsRun() throws InterruptedException {
+    Context blocked = new Context();
+    StateMachineExecutor<Context> a = fsm(blocked);
+    Context ctx = new Context();
+    StateMachineExecutor<Context> b = fsm(ctx);
+
+    a.take(new StringEvent("block"));
+    assertTrue(blocked.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+    a.take(new StringEvent("a"));
+    b.take(new StringEvent("b"));
+    awaitCount(ctx, 1);
+    assertEquals(0, blocked.processed.size());
+
+    blocked.gate.release();
+    awaitCount(blocked, 1);
+    assertEquals("a", blocked.processed.get(0));
+  }
+
+  @Test
+  public void block_many() throws InterruptedException {
+    List<Context> contexts = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      Context ctx = new Context();
+      fsm(ctx).take(new StringEvent("block"));
+      contexts.add(ctx);
+    }
+    for (Context ctx : contexts) {
+      assertTrue(ctx.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+    for (Context ctx : contexts) {
+      ctx.gate.release();
+    }
+  }
+
+  @Test
+  public void order() throws InterruptedException {
+    Context ctx = new Context();
+    StateMachineExecutor<Context> fsm = fsm(ctx);
+
+    Thread[] producers = new Thread[4];
+    for (int p = 0; p < producers.length; p++) {
+      final String prefix = "p" + p + "-";
+      producers[p] = new Thread(() -> {
+        for (int i = 0; i < 1000; i++) {
+          fsm.take(new StringEvent(prefix + i));
+        }
+      });
+      producers[p].start();
+    }
+    for (Thread producer : producers) {
+      producer.join(TIMEOUT);
+    }
+
+    fsm.snapshot();
+    assertEquals(4000, ctx.processed.size());
+    int[] next = new int[producers.length];
+    for (String e : ctx.processed) {
+      int p = e.charAt(1) - '0';
+      assertEquals("p" + p + "-" + next[p]++, e);
+    }
+  }
+
+  @Test
+  public void snapshot_interrupted() throws InterruptedException {
+    Context ctx = new Context();
+    StateMachineExecutor<Context> fsm = fsm(ctx);
+    fsm.take(new StringEvent("block"));
+    assertTrue(ctx.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+
+    Thread.currentThread().interrupt();
+    try {
+      fsm.snapshot();
+      fail("The snapshot should have been interrupted.");
+    } catch (IllegalStateException ex) {
+      assertTrue(Thread.interrupted());
+    } finally {
+      ctx.gate.release();
+    }
+  }
+
+  @Test
+  public void drain_rejected() throws InterruptedException {
+    /*
+     * The drain task is rescheduled when an error escapes from a task while
+     * others are queued. The thread executor rejects that second drain task.
+     */
+    List<Throwable> uncaught = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger drains = new AtomicInteger();
+    Executor rejecting = r -> {
+      if (drains.incrementAndGet() == 2) {
+        throw new RejectedExecutionException();
+      }
+      Thread thread = new Thread(r);
+      thread.setUncaughtExceptionHandler((t, ex) -> uncaught.add(ex));
+      thread.start();
+    };
+
+    Context ctx = new Context();
+    StateMachineExecutor<Context> fsm = new ThreadPerExecutorStateMachineExecutor.Builder<Context>(rejecting)
+      .setStateMachine(machine)
+      .setContext(ctx)
+      .build();
+    fsm.listeners().addEventDeniedListener((e, m, c, ev) -> {
+      ctx.processed.add(ev.toString());
+      if ("error".equals(ev.toString())) {
+        throw new AssertionError(ev.toString());
+      }
+    });
+    fsm.go();
+
+    fsm.take(new StringEvent("block"));
+    assertTrue(ctx.started.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS));
+    fsm.take(new StringEvent("error"));
+    fsm.take(new StringEvent("a"));
+    ctx.gate.release();
+    awaitCount(ctx, 1);
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (uncaught.size() < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(2, drains.get());
+    assertEquals(RejectedExecutionException.class, uncaught.get(0).getClass());
+    assertEquals(AssertionError.class, uncaught.get(1).getClass());
+
+    fsm.take(new StringEvent("b"));
+    awaitCount(ctx, 3);
+    assertEquals(3, drains.get());
+    assertEquals(Arrays.asList("error", "a", "b"), ctx.processed);
+  }
+
+  private StateMachineExecutor<Context> fsm(final Context ctx) {
+    StateMachineExecutor<Context> fsm = new ThreadPerExecutorStateMachineExecutor.Builder<Context>(threads)
+      .setStateMachine(machine)
+      .setContext(ctx)
+      .build();
+    fsm.listeners().addEventDeniedListener((e, m, c, ev) -> ctx.processed.add(ev.toString()));
+    fsm.go();
+    return fsm;
+  }
+
+  private static void awaitCount(final Context ctx, final int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+    while (ctx.processed.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertEquals(count, ctx.processed.size());
+  }
+
+  public static final class Context {
+
+    final Semaphore started = new Semaphore(0);
+    final Semaphore gate = new Semaphore(0);
+    final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.impl;
+
+import com.lympid.core.behaviorstatemachines.impl.TimerWheel.Timeout;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class TimerWheelTest {
+
+  private static final long TICK = TimeUnit.MILLISECONDS.toNanos(1);
+  private final List<String> fired = new ArrayList<>();
+  private final TimerWheel wheel = new TimerWheel(8, TICK, 0);
+
+  @Test
+  public void expire() {
+    schedule("b", 3);
+    schedule("a", 1);
+    schedule("c", 5);
+    assertEquals(3, wheel.size());
+
+    assertEquals(0, wheel.expire(TICK / 2));
+    assertEquals(1, wheel.expire(TICK));
+    assertEquals(Arrays.asList("a"), fired);
+    assertEquals(2, wheel.expire(5 * TICK));
+    assertEquals(Arrays.asList("a", "b", "c"), fired);
+    assertTrue(wheel.isEmpty());
+  }
+
+  @Test
+  public void expire_neverEarly() {
+    schedule("a", 0);
+    assertEquals(0, wheel.expire(0));
+    assertEquals(1, wheel.expire(TICK));
+    assertEquals(Arrays.asList("a"), fired);
+  }
+
+  @Test
+  public void expire_severalRounds() {
+    schedule("far", 20);
+    schedule("near", 4);
+    assertEquals(1, wheel.expire(12 * TICK));
+    assertEquals(Arrays.asList("near"), fired);
+    assertEquals(0, wheel.expire(19 * TICK));
+    assertEquals(1, wheel.expire(100 * TICK));
+    assertEquals(Arrays.asList("near", "far"), fired);
+  }
+
+  @Test
+  public void cancel() {
+    Timeout a = schedule("a", 2);
+    schedule("b", 2);
+    assertTrue(a.cancel(true));
+    assertTrue(a.isCancelled());
+    assertTrue(a.isDone());
+    assertFalse(a.cancel(true));
+    assertEquals(1, wheel.size());
+
+    wheel.expire(2 * TICK);
+    assertEquals(Arrays.asList("b"), fired);
+  }
+
+  @Test
+  public void cancel_whileFiring() {
+    Timeout[] timeouts = new Timeout[3];
+    for (int i = 0; i < timeouts.length; i++) {
+      final int n = i;
+      timeouts[i] = wheel.schedule(() -> {
+        fired.add("t" + n);
+        for (Timeout t : timeouts) {
+          t.cancel(true);
+        }
+      }, 1, TimeUnit.MILLISECONDS, 0);
+    }
+
+    assertEquals(1, wheel.expire(TICK));
+    assertEquals(1, fired.size());
+    assertTrue(wheel.isEmpty());
+  }
+
+  @Test
+  public void schedule_whileFiring() {
+    wheel.schedule(() -> {
+      fired.add("a");
+      schedule("b", 0);
+    }, 1, TimeUnit.MILLISECONDS, 0);
+
+    assertEquals(1, wheel.expire(TICK));
+    assertEquals(Arrays.asList("a"), fired);
+    assertEquals(1, wheel.expire(2 * TICK));
+    assertEquals(Arrays.asList("a", "b"), fired);
+  }
+
+  @Test
+  public void get_fired() throws InterruptedException, TimeoutException {
+    Timeout a = schedule("a", 1);
+    assertFalse(a.isDone());
+    wheel.expire(TICK);
+    assertTrue(a.isDone());
+    assertFalse(a.isCancelled());
+    assertNull(a.get());
+    assertNull(a.get(0, TimeUnit.MILLISECONDS));
+  }
+
+  @Test(expected = CancellationException.class)
+  public void get_cancelled() throws InterruptedException {
+    Timeout a = schedule("a", 1);
+    a.cancel(false);
+    a.get();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void get_pendingOnOwner() throws InterruptedException {
+    schedule("a", 1).get();
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void get_timeout() throws Throwable {
+    Timeout a = schedule("a", 1);
+    FutureTask<Void> waiter = new FutureTask<>(() -> a.get(1, TimeUnit.MILLISECONDS));
+    new Thread(waiter).start();
+    try {
+      waiter.get();
+    } catch (ExecutionException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  @Test
+  public void get_otherThread() throws Exception {
+    Timeout a = schedule("a", 1);
+    Timeout b = schedule("b", 1);
+    CountDownLatch waiting = new CountDownLatch(2);
+    FutureTask<Void> waiterA = new FutureTask<>(() -> {
+      waiting.countDown();
+      return a.get();
+    });
+    FutureTask<Boolean> waiterB = new FutureTask<>(() -> {
+      waiting.countDown();
+      try {
+        b.get();
+        return false;
+      } catch (CancellationException ex) {
+        return true;
+      }
+    });
+    new Thread(waiterA).start();
+    new Thread(waiterB).start();
+    assertTrue(waiting.await(5, TimeUnit.SECONDS));
+
+    b.cancel(false);
+    wheel.expire(TICK);
+    assertNull(waiterA.get(5, TimeUnit.SECONDS));
+    assertTrue(waiterB.get(5, TimeUnit.SECONDS));
+    assertEquals(Arrays.asList("a"), fired);
+  }
+
+  private Timeout schedule(final String name, final long delay) {
+    return wheel.schedule(() -> fired.add(name), delay, TimeUnit.MILLISECONDS, 0);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.Region;
+import com.lympid.core.behaviorstatemachines.State;
+import com.lympid.core.behaviorstatemachines.StateMachine;
+import com.lympid.core.behaviorstatemachines.Transition;
+import com.lympid.core.behaviorstatemachines.Vertex;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.impl.ExecutorConfiguration;
+import com.lympid.core.behaviorstatemachines.impl.SyncStateMachineExecutor;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class ExecutorMetricsTest {
+
+  private StateMachine machine;
+
+  @Before
+  public void setUp() {
+    StateMachineBuilder<Object> builder = new StateMachineBuilder<>("metrics");
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .entry((c) -> {})
+          .exit((c) -> {})
+          .transition("t1")
+            .on("go")
+            .guard((e, c) -> true)
+            .effect((e, c) -> {})
+            .target("A");
+
+    machine = builder.instance();
+  }
+
+  @Test
+  public void disabled() {
+    SyncStateMachineExecutor<Object> fsm = executor(new ExecutorConfiguration());
+    assertNull(fsm.metrics());
+  }
+
+  @Test
+  public void record() {
+    StateMachineMetrics metrics = new StateMachineMetrics();
+    ExecutorConfiguration config = new ExecutorConfiguration().metrics(metrics);
+    SyncStateMachineExecutor<Object> fsm1 = executor(config);
+    SyncStateMachineExecutor<Object> fsm2 = executor(config);
+    assertSame(metrics, fsm1.metrics().machine());
+
+    fsm1.take(new StringEvent("go"));
+    fsm1.take(new StringEvent("nope"));
+    fsm2.take(new StringEvent("go"));
+
+    /*
+     * Starting the executor accepts a completion event.
+     */
+    assertEquals(2, fsm1.metrics().take().count());
+    assertEquals(2, fsm1.metrics().accepted());
+    assertEquals(1, fsm1.metrics().denied());
+    assertEquals(1, fsm2.metrics().take().count());
+    assertEquals(2, fsm2.metrics().accepted());
+    assertEquals(0, fsm2.metrics().denied());
+
+    assertEquals(3, metrics.take().count());
+    assertEquals(4, metrics.accepted());
+    assertEquals(1, metrics.denied());
+
+    State a = state("A");
+    assertEquals(4, metrics.state(a).entry().count());
+    assertEquals(2, metrics.state(a).exit().count());
+    assertEquals(0, metrics.state(a).activity().count());
+    assertEquals(2, metrics.transition(transition("t1")).guard().count());
+    assertEquals(2, metrics.transition(transition("t1")).effect().count());
+  }
+
+  private SyncStateMachineExecutor<Object> executor(final ExecutorConfiguration config) {
+    SyncStateMachineExecutor<Object> fsm = (SyncStateMachineExecutor<Object>) new SyncStateMachineExecutor.Builder<>()
+      .setStateMachine(machine)
+      .setConfiguration(config)
+      .build();
+    fsm.go();
+    return fsm;
+  }
+
+  private State state(final String name) {
+    for (Vertex v : machine.region().get(0).subVertex()) {
+      if (name.equals(v.getName())) {
+        return (State) v;
+      }
+    }
+    throw new IllegalArgumentException("No such state: " + name);
+  }
+
+  private Transition transition(final String name) {
+    for (Region r : machine.region()) {
+      for (Transition t : r.transition()) {
+        if (name.equals(t.getName())) {
+          return t;
+        }
+      }
+    }
+    throw new IllegalArgumentException("No such transition: " + name);
+  }
+
+}
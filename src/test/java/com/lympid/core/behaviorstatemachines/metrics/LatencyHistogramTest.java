@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Fabien Renaud
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void bucket() {
+    assertEquals(0, LatencyHistogram.bucket(-5));
+    assertEquals(0, LatencyHistogram.bucket(0));
+    assertEquals(1, LatencyHistogram.bucket(1));
+    assertEquals(2, LatencyHistogram.bucket(2));
+    assertEquals(2, LatencyHistogram.bucket(3));
+    assertEquals(3, LatencyHistogram.bucket(4));
+    assertEquals(10, LatencyHistogram.bucket(1023));
+    assertEquals(11, LatencyHistogram.bucket(1024));
+    assertEquals(63, LatencyHistogram.bucket(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void upperBound() {
+    assertEquals(0, LatencyHistogram.upperBound(0));
+    assertEquals(1, LatencyHistogram.upperBound(1));
+    assertEquals(1023, LatencyHistogram.upperBound(10));
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(63));
+  }
+
+  @Test
+  public void atomic() {
+    record(new AtomicLatencyHistogram());
+  }
+
+  @Test
+  public void striped() {
+    record(new StripedLatencyHistogram());
+  }
+
+  @Test
+  public void empty() {
+    LatencyHistogram h = new StripedLatencyHistogram();
+    assertEquals(0, h.count());
+    assertEquals(0, h.mean(), 0);
+    assertEquals(0, h.percentile(0.99));
+  }
+
+  private void record(final LatencyHistogram h) {
+    for (int i = 0; i < 99; i++) {
+      h.record(100);
+    }
+    h.record(5000);
+
+    assertEquals(100, h.count());
+    assertEquals(99, h.count(LatencyHistogram.bucket(100)));
+    assertEquals(1, h.count(LatencyHistogram.bucket(5000)));
+    assertEquals(99 * 100 + 5000, h.sum());
+    assertEquals(149, h.mean(), 0);
+    assertEquals(127, h.percentile(0.5));
+    assertEquals(127, h.percentile(0.99));
+    assertEquals(8191, h.percentile(1));
+  }
+
+}
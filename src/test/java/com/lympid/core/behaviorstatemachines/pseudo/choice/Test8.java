@@ -0,0 +1,169 @@
+/*
+ * Copyright 2015 Lympid.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.behaviorstatemachines.pseudo.choice;
+
+import com.lympid.core.basicbehaviors.StringEvent;
+import com.lympid.core.behaviorstatemachines.AbstractStateMachineTest;
+import com.lympid.core.behaviorstatemachines.ActiveStateTree;
+import com.lympid.core.behaviorstatemachines.SequentialContext;
+import com.lympid.core.behaviorstatemachines.StateMachineExecutor;
+import com.lympid.core.behaviorstatemachines.builder.StateMachineBuilder;
+import com.lympid.core.behaviorstatemachines.pseudo.choice.Test8.Context;
+import org.junit.Test;
+
+import static com.lympid.core.behaviorstatemachines.StateMachineProcessorTester.assertSnapshotEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests a choice pseudo state defined as a decision table.
+ *
+ * @author Fabien Renaud
+ */
+public class Test8 extends AbstractStateMachineTest<Context> {
+
+  @Test
+  public void run_range_lowerBound() {
+    run(0, "t2", "cheap");
+  }
+
+  @Test
+  public void run_range_upperBound() {
+    run(99, "t2", "cheap");
+  }
+
+  @Test
+  public void run_range_secondRange() {
+    run(100, "t3", "mid");
+    run(999, "t3", "mid");
+  }
+
+  @Test
+  public void run_equality() {
+    run(5000, "t4", "exact");
+  }
+
+  @Test
+  public void run_otherwise() {
+    run(-1, "t5", "other");
+    run(1000, "t5", "other");
+  }
+
+  @Test
+  public void run_keyEvaluatedOnce() {
+    Context ctx = run(100, "t3", "mid");
+    assertEquals(1, ctx.keys);
+    ctx = run(-1, "t5", "other");
+    assertEquals(1, ctx.keys);
+  }
+
+  private Context run(final int amount, final String transition, final String state) {
+    SequentialContext expected = new SequentialContext();
+    Context ctx = new Context();
+    ctx.amount = amount;
+
+    StateMachineExecutor<Context> fsm = fsm(ctx);
+    fsm.go();
+
+    expected.effect("t0").enter("A");
+    assertSnapshotEquals(fsm, new ActiveStateTree(this).branch("A"));
+    assertSequentialContextEquals(expected, fsm);
+
+    fsm.take(new StringEvent("go"));
+    expected.exit("A").effect("t1").effect(transition).enter(state);
+    assertSnapshotEquals(fsm, new ActiveStateTree(this).branch(state));
+    assertSequentialContextEquals(expected, fsm);
+    return ctx;
+  }
+
+  @Override
+  public StateMachineBuilder<Context> topLevelMachineBuilder() {
+    StateMachineBuilder<Context> builder = new StateMachineBuilder<>(name());
+
+    builder
+      .region()
+        .initial()
+          .transition("t0")
+            .target("A");
+
+    builder
+      .region()
+        .state("A")
+          .transition("t1")
+            .on("go")
+            .target("price");
+
+    builder
+      .region()
+        .choice("price")
+          .decisionKey((c) -> {
+            c.keys++;
+            return c.amount;
+          })
+          .whenRange("t2", 0, 100)
+            .target("cheap")
+          .whenRange("t3", 100, 1000)
+            .target("mid")
+          .when("t4", 5000)
+            .target("exact")
+          .otherwise("t5")
+            .target("other");
+
+    builder
+      .region()
+        .state("cheap");
+
+    builder
+      .region()
+        .state("mid");
+
+    builder
+      .region()
+        .state("exact");
+
+    builder
+      .region()
+        .state("other");
+
+    return builder;
+  }
+
+  @Override
+  public String stdOut() {
+    return STDOUT;
+  }
+
+  public static final class Context extends SequentialContext {
+
+    int amount;
+    int keys;
+  }
+
+  private static final String STDOUT = "StateMachine: \"" + Test8.class.getSimpleName() + "\"\n" +
+"  Region: #2\n" +
+"    State: \"cheap\"\n" +
+"    State: \"mid\"\n" +
+"    PseudoState: #3 kind: INITIAL\n" +
+"    State: \"exact\"\n" +
+"    State: \"other\"\n" +
+"    State: \"A\"\n" +
+"    PseudoState: \"price\" kind: CHOICE\n" +
+"    Transition: \"t0\" --- #3 -> \"A\"\n" +
+"    Transition: \"t1\" --- \"A\" -> \"price\"\n" +
+"    Transition: \"t2\" --- \"price\" -> \"cheap\"\n" +
+"    Transition: \"t3\" --- \"price\" -> \"mid\"\n" +
+"    Transition: \"t4\" --- \"price\" -> \"exact\"\n" +
+"    Transition: \"t5\" --- \"price\" -> \"other\"";
+}
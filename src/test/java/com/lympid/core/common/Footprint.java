@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Fabien Renaud.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.lympid.core.common;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.function.IntFunction;
+
+/**
+ * Measures the heap retained by instances of objects.
+ *
+ * Many instances are created and kept alive at once. The size of the live
+ * heap is compared before and after, once garbage has been collected, and
+ * divided by the number of instances. Objects shared by all the instances,
+ * such as a state machine, must thus be created beforehand: they are not
+ * accounted for. Objects created for an instance and retained elsewhere, such
+ * as scheduled timers, are.
+ *
+ * @author Fabien Renaud
+ */
+public final class Footprint {
+
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  private Footprint() {
+  }
+
+  /**
+   * Measures the average number of bytes retained by an instance.
+   *
+   * @param count The number of instances to create. The higher, the more
+   * accurate.
+   * @param factory Creates the i-th instance.
+   * @return The average number of bytes retained by an instance.
+   */
+  public static long bytesPerInstance(final int count, final IntFunction<Object> factory) {
+    final Object[] instances = new Object[count];
+    instances[0] = factory.apply(0); // warm up, lazily initialized classes and caches
+
+    final long before = usedHeap();
+    for (int i = 1; i < count; i++) {
+      instances[i] = factory.apply(i);
+    }
+    final long after = usedHeap();
+
+    for (Object o : instances) {
+      if (o == null) {
+        throw new IllegalStateException("Factory returned null.");
+      }
+    }
+    return (after - before) / (count - 1);
+  }
+
+  /**
+   * Gets whether the JVM uses compressed references, which footprints depend
+   * on.
+   *
+   * @return true when the JVM is known to use compressed ordinary object
+   * pointers, false when it does not or when it can not be told.
+   */
+  public static boolean compressedReferences() {
+    try {
+      HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+      return hotspot != null && Boolean.parseBoolean(hotspot.getVMOption("UseCompressedOops").getValue());
+    } catch (RuntimeException | LinkageError ex) {
+      return false;
+    }
+  }
+
+  private static long usedHeap() {
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      used = Math.min(used, MEMORY.getHeapMemoryUsage().getUsed());
+    }
+    return used;
+  }
+}